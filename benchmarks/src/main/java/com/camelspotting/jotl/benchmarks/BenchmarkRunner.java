@@ -0,0 +1,38 @@
+package com.camelspotting.jotl.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that besides the throughput the
+ * bytes allocated per operation are reported as {@code gc.alloc.rate.norm}.
+ * Takes the usual JMH arguments, e.g. a regular expression selecting the
+ * benchmarks to run:
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar Parser
+ * </pre>
+ */
+public final class BenchmarkRunner
+{
+
+    private BenchmarkRunner()
+    {
+    }
+
+    public static void main( String[] args ) throws RunnerException, CommandLineOptionException
+    {
+        CommandLineOptions cmdOptions = new CommandLineOptions( args );
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent( cmdOptions );
+        if ( cmdOptions.getIncludes().isEmpty() )
+        {
+            builder.include( BenchmarkRunner.class.getPackage().getName() + "\\..*Benchmark" );
+        }
+        new Runner( builder.addProfiler( GCProfiler.class ).build() ).run();
+    }
+}
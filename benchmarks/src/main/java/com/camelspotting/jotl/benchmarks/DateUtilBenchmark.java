@@ -0,0 +1,45 @@
+package com.camelspotting.jotl.benchmarks;
+
+import com.camelspotting.jotl.udp.DateUtil;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converting between OpenTTD's day numbers and dates.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class DateUtilBenchmark
+{
+
+    /**
+     * A day late in a long game, 2050-06-15
+     */
+    private int days = DateUtil.convertYMDToDate( new LocalDate( 2050, 6, 15 ) );
+    private LocalDate date = new LocalDate( 2050, 6, 15 );
+
+    @Benchmark
+    public LocalDate convertDateToYMD()
+    {
+        return DateUtil.convertDateToYMD( days );
+    }
+
+    @Benchmark
+    public int convertYMDToDate()
+    {
+        return DateUtil.convertYMDToDate( date );
+    }
+}
@@ -0,0 +1,63 @@
+package com.camelspotting.jotl.benchmarks;
+
+import com.camelspotting.jotl.udp.BitUtil;
+import com.camelspotting.jotl.udp.PacketMetadata;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding the numbers and the header of a packet.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class DecoderBenchmark
+{
+
+    private final byte[] packet = Packets.G123_DETAIL_INFO;
+    /**
+     * Where the company value of the first company starts
+     */
+    private int offset = 34;
+
+    @Benchmark
+    public int parse8BitNumber()
+    {
+        return BitUtil.parse8BitNumber( packet, offset );
+    }
+
+    @Benchmark
+    public int parse16BitNumber()
+    {
+        return BitUtil.parse16BitNumber( packet, offset );
+    }
+
+    @Benchmark
+    public int parse32BitNumber()
+    {
+        return BitUtil.parse32BitNumber( packet, offset );
+    }
+
+    @Benchmark
+    public long parse64BitNumber()
+    {
+        return BitUtil.parse64BitNumber( packet, offset );
+    }
+
+    @Benchmark
+    public PacketMetadata parseMetadata()
+    {
+        return PacketMetadata.parseMetadata( packet );
+    }
+}
@@ -0,0 +1,155 @@
+package com.camelspotting.jotl.benchmarks;
+
+import com.camelspotting.jotl.GameQuerier;
+import com.camelspotting.jotl.ServerMonitor;
+import com.camelspotting.jotl.domain.ClientsDetails;
+import com.camelspotting.jotl.domain.ClientsDetailsV5;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import com.camelspotting.jotl.event.OpenTTDListener;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import com.camelspotting.jotl.parsing.Station;
+import com.camelspotting.jotl.parsing.Vehicle;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Detecting events in a {@link ServerMonitor} update. The monitor is fed a
+ * prepared cycle of games where companies come and go and change their
+ * figures, so that every update compares whole games and fires events, without
+ * any querying.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class EventDetectionBenchmark
+{
+
+    /**
+     * The number of games in the cycle
+     */
+    private static final int CYCLE = 64;
+    @Param(
+    {
+        "1", "15"
+    } )
+    public int companies;
+    private ServerMonitor monitor;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp( Blackhole blackhole ) throws JOTLException
+    {
+        this.blackhole = blackhole;
+        List<Game> games = new ArrayList<Game>( CYCLE );
+        LocalDate start = new LocalDate( 1950, 1, 1 );
+        for ( int i = 0; i < CYCLE; i++ )
+        {
+            List<Company> list = new ArrayList<Company>();
+            for ( int id = 0; id < companies; id++ )
+            {
+                // Every fourth update the last company is gone
+                if ( id == companies - 1 && id > 0 && i % 4 == 3 )
+                {
+                    continue;
+                }
+                list.add( company( id, i ) );
+            }
+            ServerDetails details = new ServerDetails( null, "Benchmark server", start.plusDays( i + 1 ), start, 15, list.size(), 10, 0, 25, list.size(), "1.2.3", 1, false, true, 0, 256, 512, "Random map" );
+            games.add( new Game( details, new ClientsDetailsV5( list ) ) );
+        }
+        monitor = new ServerMonitor( new CyclingGameQuerier( games ), 0, false, new OpenTTDListener()
+        {
+            @Override
+            public void eventOccured( OpenTTDEvent evt )
+            {
+                EventDetectionBenchmark.this.blackhole.consume( evt );
+            }
+        } );
+    }
+
+    private static Company company( int id, int update )
+    {
+        EnumMap<Vehicle, Integer> vehicles = new EnumMap<Vehicle, Integer>( Vehicle.class );
+        for ( Vehicle v : Vehicle.values() )
+        {
+            vehicles.put( v, update % 8 );
+        }
+        EnumMap<Station, Integer> stations = new EnumMap<Station, Integer>( Station.class );
+        for ( Station s : Station.values() )
+        {
+            stations.put( s, update % 4 );
+        }
+        long value = 100000L * ( id + 1 ) + 1000L * update;
+        return new Company( id, "Company " + id, 1950, value, value / 2, value / 10, ( id * 7 + update ) % 100, false, vehicles, stations );
+    }
+
+    @Benchmark
+    public void update() throws JOTLException
+    {
+        monitor.update();
+    }
+
+    /**
+     * Returns prepared games in an endless cycle.
+     */
+    private static final class CyclingGameQuerier implements GameQuerier
+    {
+
+        private final Server server = new Server( "127.0.0.1", 3979, null );
+        private final Game[] games;
+        private int next;
+
+        CyclingGameQuerier( List<Game> games )
+        {
+            this.games = games.toArray( new Game[games.size()] );
+        }
+
+        @Override
+        public ServerDetails getServerDetails() throws JOTLException
+        {
+            return getAllInformation().getServerDetails();
+        }
+
+        @Override
+        public ClientsDetails getClientsDetails() throws JOTLException
+        {
+            return getAllInformation().getClientDetails();
+        }
+
+        @Override
+        public Game getAllInformation()
+        {
+            Game game = games[next];
+            next = ( next + 1 ) % games.length;
+            return game;
+        }
+
+        @Override
+        public Server getServer()
+        {
+            return server;
+        }
+    }
+}
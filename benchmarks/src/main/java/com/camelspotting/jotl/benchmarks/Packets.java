@@ -0,0 +1,159 @@
+package com.camelspotting.jotl.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The packets the benchmarks parse: the replies recorded from real servers
+ * that the parser tests use, and synthetic replies of busy servers.
+ */
+final class Packets
+{
+
+    /**
+     * A server response from OpenTTD 1.0.5
+     */
+    static final byte[] G105_SERVER_RESPONSE =
+    {
+        47, 0, 1, 4, 0, 36, -34, 10, 0, 31, -34, 10, 0, 8, 1, 10, 115, 100, 0, 49, 46, 48, 46, 53, 0, 0, 0, 10, 1, 0, 82, 97, 110, 100, 111, 109, 32, 77, 97, 112, 0, 0, 1, 0, 1, 0, 0
+    };
+    /**
+     * Client details from OpenTTD 1.0.5
+     */
+    static final byte[] G105_DETAIL_INFO =
+    {
+        66, 0, 3, 6, 1, 0, 85, 110, 110, 97, 109, 101, 100, 0, -98, 7, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, -96, -122, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+    /**
+     * A server response from OpenTTD 1.2.3, with one NewGRF
+     */
+    static final byte[] G123_SERVER_RESPONSE =
+    {
+        110, 0, 1, 4, 1, -5, -5, -103, 5, -9, 71, 121, 122, 20, -86, -90, 70, 64, 45, -60, -31, 109, -27, -24, 44, 40, -10, 10, 0, 31, -34, 10, 0, 8, 1, 10, 115, 100, 0, 49, 46, 50, 46, 51, 0, 0, 0, 10, 1, 0, 65, 110, 100, 114, 101, 97, 115, 115, 101, 110, 32, 73, 110, 100, 117, 115, 116, 114, 105, 101, 115, 44, 32, 53, 116, 104, 32, 78, 111, 118, 32, 49, 57, 54, 54, 46, 115, 97, 118, 32, 40, 76, 111, 97, 100, 101, 100, 32, 103, 97, 109, 101, 41, 0, 0, 4, 0, 4, 0, 0
+    };
+    /**
+     * Client details from OpenTTD 1.2.3
+     */
+    static final byte[] G123_DETAIL_INFO =
+    {
+        80, 0, 3, 6, 1, 0, 65, 110, 100, 114, 101, 97, 115, 115, 101, 110, 32, 73, 110, 100, 117, 115, 116, 114, 105, 101, 115, 0, -98, 7, 0, 0, 18, -35, 4, 0, 0, 0, 0, 0, 83, 61, 0, 0, 0, 0, 0, 0, 5, -55, -3, -1, -1, -1, -1, -1, -10, 0, 0, 21, 0, 5, 0, 9, 0, 0, 0, 0, 0, 22, 0, 12, 0, 12, 0, 1, 0, 0, 0, 0
+    };
+
+    private Packets()
+    {
+    }
+
+    /**
+     * Builds a version 4 server response with many NewGRFs.
+     *
+     * @param grfs the number of NewGRFs
+     * @return the packet
+     */
+    static byte[] serverResponse( int grfs )
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream( 64 + grfs * 20 );
+        header( out, 1, 4 );
+        out.write( grfs );
+        for ( int g = 0; g < grfs; g++ )
+        {
+            int32( out, 0x4A4F0000 + g );
+            for ( int k = 0; k < 16; k++ )
+            {
+                out.write( g * 16 + k );
+            }
+        }
+        // 1966-11-06 and 1950-01-01
+        int32( out, 718376 );
+        int32( out, 712223 );
+        out.write( 15 );
+        out.write( 15 );
+        out.write( 10 );
+        string( out, "Synthetic server" );
+        string( out, "1.2.3" );
+        out.write( 0 );
+        out.write( 0 );
+        out.write( 25 );
+        out.write( 20 );
+        out.write( 2 );
+        string( out, "Random Map" );
+        int16( out, 512 );
+        int16( out, 512 );
+        out.write( 0 );
+        out.write( 1 );
+        return finish( out );
+    }
+
+    /**
+     * Builds a version 6 client details reply with many companies.
+     *
+     * @param companies the number of companies
+     * @return the packet
+     */
+    static byte[] clientsDetails( int companies )
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream( 64 + companies * 64 );
+        header( out, 3, 6 );
+        out.write( companies );
+        for ( int c = 0; c < companies; c++ )
+        {
+            out.write( c );
+            string( out, "Company " + c + " Transport" );
+            int32( out, 1950 + c );
+            int64( out, 1000000L * ( c + 1 ) );
+            int64( out, 250000L * ( c + 1 ) );
+            int64( out, -5000L * c );
+            int16( out, 100 + c );
+            out.write( c % 2 );
+            for ( int v = 0; v < 5; v++ )
+            {
+                int16( out, c * 5 + v );
+            }
+            for ( int s = 0; s < 5; s++ )
+            {
+                int16( out, c + s );
+            }
+        }
+        return finish( out );
+    }
+
+    private static void header( ByteArrayOutputStream out, int type, int version )
+    {
+        // The length is filled in when finished
+        int16( out, 0 );
+        out.write( type );
+        out.write( version );
+    }
+
+    private static byte[] finish( ByteArrayOutputStream out )
+    {
+        byte[] packet = out.toByteArray();
+        packet[0] = (byte) packet.length;
+        packet[1] = (byte) ( packet.length >>> 8 );
+        return packet;
+    }
+
+    private static void string( ByteArrayOutputStream out, String s )
+    {
+        byte[] b = s.getBytes( StandardCharsets.UTF_8 );
+        out.write( b, 0, b.length );
+        out.write( 0 );
+    }
+
+    private static void int16( ByteArrayOutputStream out, int v )
+    {
+        out.write( v );
+        out.write( v >>> 8 );
+    }
+
+    private static void int32( ByteArrayOutputStream out, int v )
+    {
+        int16( out, v );
+        int16( out, v >>> 16 );
+    }
+
+    private static void int64( ByteArrayOutputStream out, long v )
+    {
+        int32( out, (int) v );
+        int32( out, (int) ( v >>> 32 ) );
+    }
+}
@@ -0,0 +1,71 @@
+package com.camelspotting.jotl.benchmarks;
+
+import com.camelspotting.jotl.domain.ClientsDetails;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import com.camelspotting.jotl.udp.UDPPacketParser;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing the replies of servers: small replies recorded from real servers,
+ * and synthetic replies of a busy server with 60 NewGRFs and 15 companies.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ParserBenchmark
+{
+
+    @Param(
+    {
+        "G105", "G123", "SYNTHETIC"
+    } )
+    public String packets;
+    private byte[] serverResponse;
+    private byte[] detailInfo;
+
+    @Setup
+    public void setUp()
+    {
+        switch ( packets )
+        {
+            case "G105":
+                serverResponse = Packets.G105_SERVER_RESPONSE;
+                detailInfo = Packets.G105_DETAIL_INFO;
+                break;
+            case "G123":
+                serverResponse = Packets.G123_SERVER_RESPONSE;
+                detailInfo = Packets.G123_DETAIL_INFO;
+                break;
+            default:
+                serverResponse = Packets.serverResponse( 60 );
+                detailInfo = Packets.clientsDetails( 15 );
+        }
+    }
+
+    @Benchmark
+    public ServerDetails parseServerDetails() throws JOTLException
+    {
+        return UDPPacketParser.parseServerDetails( serverResponse );
+    }
+
+    @Benchmark
+    public ClientsDetails parseClientsDetails() throws JOTLException
+    {
+        return UDPPacketParser.parseClientsDetails( detailInfo );
+    }
+}
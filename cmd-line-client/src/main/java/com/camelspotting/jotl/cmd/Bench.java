@@ -0,0 +1,335 @@
+package com.camelspotting.jotl.cmd;
+
+import com.camelspotting.jotl.GameQuerier;
+import com.camelspotting.jotl.domain.ClientsDetailsV5;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import com.camelspotting.jotl.exceptions.UnreachableHostException;
+import com.camelspotting.jotl.parsing.Station;
+import com.camelspotting.jotl.parsing.Vehicle;
+import com.camelspotting.jotl.simulator.ServerFarm;
+import com.camelspotting.jotl.simulator.SimulatedServer;
+import com.camelspotting.jotl.udp.LatencyHistogram;
+import com.camelspotting.jotl.udp.UDPGameQuerier;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.joda.time.LocalDate;
+
+/**
+ * Queries a list of servers from a number of threads for a fixed time and
+ * reports how many queries were answered per second, how long they took, how
+ * many timed out and how much the querying threads allocated.
+ * <p>
+ * With a rate, query i is due at i / rate seconds after the start, and its
+ * latency is measured from when it was due. A query started late because the
+ * ones before it were slow is counted as slow too, rather than hiding the
+ * stall.
+ */
+final class Bench
+{
+
+    /**
+     * The percentiles reported
+     */
+    private static final double[] PERCENTILES =
+    {
+        50, 90, 99, 99.9
+    };
+    private final BenchParams params;
+    private final PrintStream out;
+
+    /**
+     * What each query asks for
+     */
+    enum Query
+    {
+
+        DETAILS
+        {
+            @Override
+            void run( GameQuerier querier ) throws JOTLException
+            {
+                querier.getServerDetails();
+            }
+        },
+        CLIENTS
+        {
+            @Override
+            void run( GameQuerier querier ) throws JOTLException
+            {
+                querier.getClientsDetails();
+            }
+        },
+        ALL
+        {
+            @Override
+            void run( GameQuerier querier ) throws JOTLException
+            {
+                querier.getAllInformation();
+            }
+        };
+
+        abstract void run( GameQuerier querier ) throws JOTLException;
+    }
+
+    Bench( BenchParams params, PrintStream out )
+    {
+        this.params = params;
+        this.out = out;
+    }
+
+    /**
+     * Starts the simulated servers, if any, warms up and measures.
+     *
+     * @throws JOTLException if a target is not a valid server
+     * @throws IOException if the simulated servers could not be started
+     */
+    void run() throws JOTLException, IOException
+    {
+        if ( params.concurrency < 1 || params.duration < 1 || params.rate < 0 || params.warmup < 0 )
+        {
+            throw new IllegalArgumentException( "The concurrency and duration must be positive, and the rate and warmup not negative." );
+        }
+        ServerFarm farm = null;
+        try
+        {
+            List<GameQuerier> queriers = new ArrayList<GameQuerier>();
+            for ( String target : params.targets )
+            {
+                int colon = target.lastIndexOf( ':' );
+                if ( colon < 0 )
+                {
+                    queriers.add( querier( target, 3979 ) );
+                }
+                else
+                {
+                    queriers.add( querier( target.substring( 0, colon ), Integer.parseInt( target.substring( colon + 1 ) ) ) );
+                }
+            }
+            if ( params.simulate > 0 )
+            {
+                farm = simulate();
+                for ( SimulatedServer s : farm.getServers() )
+                {
+                    queriers.add( querier( "127.0.0.1", s.getServer().getPort() ) );
+                }
+            }
+            if ( queriers.isEmpty() )
+            {
+                throw new IllegalArgumentException( "Nothing to query, give some targets or simulated servers." );
+            }
+            GameQuerier[] targets = queriers.toArray( new GameQuerier[queriers.size()] );
+            out.println( String.format( "Querying %d servers for %s from %d threads at %s.", targets.length, params.query, params.concurrency, params.rate > 0 ? params.rate + " queries/s" : "full speed" ) );
+            if ( params.warmup > 0 )
+            {
+                new Run( targets ).execute( params.warmup );
+            }
+            new Run( targets ).execute( params.duration ).report();
+        }
+        finally
+        {
+            if ( farm != null )
+            {
+                farm.close();
+            }
+        }
+    }
+
+    private GameQuerier querier( String host, int port ) throws JOTLException
+    {
+        // Every query binds a free local port, so queries can run at once
+        UDPGameQuerier querier = new UDPGameQuerier( host, 0, port );
+        querier.setTimeout( params.timeout );
+        return querier;
+    }
+
+    private ServerFarm simulate() throws IOException
+    {
+        ServerFarm farm = new ServerFarm();
+        LocalDate start = new LocalDate( 1950, 1, 1 );
+        List<Company> companies = new ArrayList<Company>();
+        for ( int id = 0; id < 8; id++ )
+        {
+            EnumMap<Vehicle, Integer> vehicles = new EnumMap<Vehicle, Integer>( Vehicle.class );
+            for ( Vehicle v : Vehicle.values() )
+            {
+                vehicles.put( v, 10 * id + v.getId() );
+            }
+            EnumMap<Station, Integer> stations = new EnumMap<Station, Integer>( Station.class );
+            for ( Station s : Station.values() )
+            {
+                stations.put( s, 5 * id + s.getId() );
+            }
+            companies.add( new Company( id, "Company " + id + " Transport", 1950 + id, 1000000L * ( id + 1 ), 250000L * id, 50000L * id, 100 + id, false, vehicles, stations ) );
+        }
+        ClientsDetailsV5 clients = new ClientsDetailsV5( companies );
+        for ( int i = 0; i < params.simulate; i++ )
+        {
+            ServerDetails details = new ServerDetails( null, "Simulated server " + i, start, start, 15, companies.size(), 10, 0, 25, companies.size(), "1.2.3", 1, false, true, 0, 256, 256, "Random map" );
+            SimulatedServer server = farm.add( details, clients );
+            server.setLatency( params.latency, params.jitter );
+            server.setLoss( params.loss );
+        }
+        farm.start();
+        return farm;
+    }
+
+    /**
+     * One timed run of all threads
+     */
+    private final class Run
+    {
+
+        private final GameQuerier[] targets;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        /**
+         * Numbers the queries, deciding when each is due and whom it asks
+         */
+        private final AtomicLong tickets = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        /**
+         * Bytes allocated by the querying threads
+         */
+        private final AtomicLong allocated = new AtomicLong();
+        /**
+         * Whether the JVM could not tell how much a thread allocated
+         */
+        private volatile boolean allocationUnknown;
+        private long elapsed;
+
+        Run( GameQuerier[] targets )
+        {
+            this.targets = targets;
+        }
+
+        Run execute( int seconds )
+        {
+            final long interval = params.rate > 0 ? TimeUnit.SECONDS.toNanos( 1 ) / params.rate : 0;
+            final long start = System.nanoTime();
+            final long deadline = start + TimeUnit.SECONDS.toNanos( seconds );
+            Thread[] threads = new Thread[ params.concurrency ];
+            for ( int i = 0; i < threads.length; i++ )
+            {
+                threads[i] = new Thread( "jotl-bench-" + i )
+                {
+                    @Override
+                    public void run()
+                    {
+                        long before = allocatedBytes();
+                        query( start, deadline, interval );
+                        long after = allocatedBytes();
+                        if ( before < 0 || after < 0 )
+                        {
+                            allocationUnknown = true;
+                        }
+                        else
+                        {
+                            allocated.addAndGet( after - before );
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for ( Thread t : threads )
+            {
+                try
+                {
+                    t.join();
+                }
+                catch ( InterruptedException ex )
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            elapsed = System.nanoTime() - start;
+            return this;
+        }
+
+        private void query( long start, long deadline, long interval )
+        {
+            while ( true )
+            {
+                long ticket = tickets.getAndIncrement();
+                long due = interval > 0 ? start + ticket * interval : System.nanoTime();
+                if ( due - deadline >= 0 )
+                {
+                    return;
+                }
+                long wait;
+                while ( ( wait = due - System.nanoTime() ) > 0 )
+                {
+                    LockSupport.parkNanos( wait );
+                }
+                try
+                {
+                    params.query.run( targets[(int) ( ticket % targets.length )] );
+                    latency.record( System.nanoTime() - due );
+                }
+                catch ( UnreachableHostException ex )
+                {
+                    timeouts.incrementAndGet();
+                }
+                catch ( JOTLException ex )
+                {
+                    errors.incrementAndGet();
+                }
+                catch ( RuntimeException ex )
+                {
+                    // A reply the parser could not handle
+                    errors.incrementAndGet();
+                }
+            }
+        }
+
+        void report()
+        {
+            long answered = latency.getCount();
+            long total = answered + timeouts.get() + errors.get();
+            double seconds = elapsed / 1e9;
+            out.println( String.format( "Queries:     %d in %.1f s, %.1f answered/s", total, seconds, answered / seconds ) );
+            out.println( String.format( "Timeouts:    %d (%.2f%%)", timeouts.get(), total > 0 ? 100.0 * timeouts.get() / total : 0 ) );
+            out.println( String.format( "Errors:      %d", errors.get() ) );
+            StringBuilder sb = new StringBuilder( "Latency:    " );
+            for ( double p : PERCENTILES )
+            {
+                sb.append( String.format( " p%s=%.2f ms", p == Math.rint( p ) ? Long.toString( (long) p ) : Double.toString( p ), latency.getValueAtPercentile( p ) / 1e6 ) );
+            }
+            sb.append( String.format( " max=%.2f ms", latency.getMax() / 1e6 ) );
+            out.println( sb.toString() );
+            if ( allocationUnknown )
+            {
+                out.println( "Allocation:  not supported by this JVM" );
+            }
+            else
+            {
+                out.println( String.format( "Allocation:  %.1f MB/s, %d bytes/query", allocated.get() / seconds / ( 1024 * 1024 ), total > 0 ? allocated.get() / total : 0 ) );
+            }
+        }
+    }
+
+    /**
+     * Getter for how much the current thread has allocated.
+     *
+     * @return the bytes, or -1 if the JVM cannot tell
+     */
+    private static long allocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if ( bean instanceof com.sun.management.ThreadMXBean )
+        {
+            return ( (com.sun.management.ThreadMXBean) bean ).getThreadAllocatedBytes( Thread.currentThread().getId() );
+        }
+        return -1;
+    }
+}
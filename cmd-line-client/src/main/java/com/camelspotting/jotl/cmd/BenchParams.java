@@ -0,0 +1,37 @@
+package com.camelspotting.jotl.cmd;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parameters of the bench command.
+ */
+@Parameters(commandDescription = "Queries servers as fast as allowed for a while and reports the throughput, latency and allocation.")
+public class BenchParams
+{
+
+    @Parameter(names={"-t","--targets"}, description = "Servers to query, as host:port separated by commas.")
+    public List<String> targets = new ArrayList<String>();
+    @Parameter(names={"-s","--simulate"}, description = "Number of simulated servers to start on loopback and query too.")
+    public int simulate = 0;
+    @Parameter(names={"--latency"}, description = "Latency of the simulated servers in ms.")
+    public int latency = 0;
+    @Parameter(names={"--jitter"}, description = "Jitter of the simulated servers in ms, either way.")
+    public int jitter = 0;
+    @Parameter(names={"--loss"}, description = "Share of queries the simulated servers do not answer, from 0 to 1.")
+    public double loss = 0;
+    @Parameter(names={"-c","--concurrency"}, description = "Number of queries in flight at once.")
+    public int concurrency = 4;
+    @Parameter(names={"-r","--rate"}, description = "Queries per second to start, or 0 for as many as possible.")
+    public int rate = 0;
+    @Parameter(names={"-d","--duration"}, description = "How long to query, in seconds.")
+    public int duration = 10;
+    @Parameter(names={"-w","--warmup"}, description = "How long to query before measuring, in seconds.")
+    public int warmup = 2;
+    @Parameter(names={"--timeout"}, description = "How long to wait for a reply, in ms.")
+    public int timeout = 1000;
+    @Parameter(names={"-q","--query"}, description = "What to query: DETAILS, CLIENTS or ALL.")
+    public Bench.Query query = Bench.Query.DETAILS;
+}
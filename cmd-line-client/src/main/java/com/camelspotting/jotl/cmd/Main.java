@@ -8,6 +8,7 @@ import com.camelspotting.jotl.udp.UDPGameQuerier;
 import com.camelspotting.jotl.domain.Game;
 import com.camelspotting.jotl.exceptions.IllegalHostException;
 import com.camelspotting.jotl.exceptions.UnreachableHostException;
+import java.io.IOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,10 +28,21 @@ public class Main
     public static void main( String... args )
     {
         Params params = new Params();
+        BenchParams benchParams = new BenchParams();
         JCommander com = new JCommander( params );
+        com.addCommand( "bench", benchParams );
         try
         {
             com.parse( args );
+            if ( "bench".equals( com.getParsedCommand() ) )
+            {
+                new Bench( benchParams, System.out ).run();
+                return;
+            }
+            if ( params.host == null )
+            {
+                throw new ParameterException( "The following option is required: -h, --host" );
+            }
             String host = params.host;
             int port = params.port;
             int localPort = params.localPort;
@@ -44,6 +56,10 @@ public class Main
             println( "Parse error: %s", ex.getMessage() );
             com.usage();
         }
+        catch ( IllegalArgumentException ex )
+        {
+            println( "Illegal parameters: %s", ex.getMessage() );
+        }
         catch ( UnreachableHostException ex )
         {
             println( "Could not reach %s. Cause: %s", ex.getServer(), ex.getMessage() );
@@ -57,6 +73,11 @@ public class Main
             LOG.error( ex.getMessage(), ex );
             println( ex.getMessage() );
         }
+        catch ( IOException ex )
+        {
+            LOG.error( ex.getMessage(), ex );
+            println( "Could not start the simulated servers: %s", ex.getMessage() );
+        }
     }
 
     private static void println( String format, Object... params )
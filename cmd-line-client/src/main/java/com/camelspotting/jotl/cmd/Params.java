@@ -11,7 +11,10 @@ public class Params
 
 //    @Parameter( names = { "-v", "--verbose" }, description = "Level of verbosity." )
 //    public Integer verbose = 1;
-    @Parameter(required=true, names={"-h","--host"}, description = "Host address (DNS name or IP).")
+    /**
+     * Required unless a command is given, which is checked by {@link Main}
+     */
+    @Parameter(names={"-h","--host"}, description = "Host address (DNS name or IP).")
     public String host;
     @Parameter(names={"-p","--port"}, description = "Host port.")
     public int port = 3979;
@@ -0,0 +1,105 @@
+package com.camelspotting.jotl;
+
+/**
+ * An update interval that follows the activity on a server. Idle servers
+ * drift towards the maximum interval while busy servers are pulled towards
+ * the minimum one. The interval moves a fraction of the remaining distance on
+ * each update, so it ramps smoothly instead of jumping between the bounds.
+ * Speeding up is quicker than slowing down so that a game coming back to life
+ * is noticed early.
+ *
+ * @see ServerMonitor#setAdaptiveUpdateInterval(int, int)
+ */
+public final class AdaptiveInterval
+{
+
+    /**
+     * How active a server appeared during the last update.
+     */
+    public enum Activity
+    {
+
+        /**
+         * The game is paused or nobody is connected
+         */
+        IDLE,
+        /**
+         * Nothing in particular happened
+         */
+        STEADY,
+        /**
+         * Events occured or the game date is advancing
+         */
+        BUSY;
+    }
+    /**
+     * The fraction of the distance covered when speeding up
+     */
+    private static final double SPEED_UP = 0.5;
+    /**
+     * The fraction of the distance covered when slowing down
+     */
+    private static final double SLOW_DOWN = 0.2;
+    private final int minInterval;
+    private final int maxInterval;
+    private double current;
+
+    /**
+     * Main constructor. The interval starts out at the minimum.
+     *
+     * @param minInterval the fastest update interval in milliseconds
+     * @param maxInterval the slowest update interval in milliseconds
+     */
+    public AdaptiveInterval( int minInterval, int maxInterval )
+    {
+        if ( minInterval <= 0 || maxInterval < minInterval )
+        {
+            throw new IllegalArgumentException( String.format( "Illegal interval bounds: [%d, %d]", minInterval, maxInterval ) );
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.current = minInterval;
+    }
+
+    /**
+     * Adjusts the interval to the observed activity.
+     *
+     * @param activity the activity seen during the last update
+     * @return the next update interval in milliseconds
+     */
+    public synchronized int next( Activity activity )
+    {
+        switch ( activity )
+        {
+            case IDLE:
+                current += ( maxInterval - current ) * SLOW_DOWN;
+                break;
+            case BUSY:
+                current += ( minInterval - current ) * SPEED_UP;
+                break;
+            default:
+                break;
+        }
+        return getCurrent();
+    }
+
+    /**
+     * Getter for the current interval.
+     *
+     * @return the current interval in milliseconds
+     */
+    public synchronized int getCurrent()
+    {
+        return (int) Math.round( current );
+    }
+
+    public int getMinInterval()
+    {
+        return minInterval;
+    }
+
+    public int getMaxInterval()
+    {
+        return maxInterval;
+    }
+}
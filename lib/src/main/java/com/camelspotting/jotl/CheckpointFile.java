@@ -0,0 +1,218 @@
+package com.camelspotting.jotl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A file holding the checkpoints of many monitors, so that they can be
+ * restored at once after a restart. The file is replaced atomically and
+ * carries a checksum, so a crash while writing leaves the previous
+ * checkpoints intact and a damaged file is never restored:
+ *
+ * <pre>
+ * CheckpointFile checkpoints = new CheckpointFile( new File( "monitors.ckpt" ) );
+ * checkpoints.restore( monitors );
+ * checkpoints.schedule( MonitorScheduler.getDefault(), monitors, 60000 );
+ * </pre>
+ */
+public class CheckpointFile
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( CheckpointFile.class );
+    /**
+     * 'JOTC' in ASCII
+     */
+    private static final int MAGIC = 0x4A4F5443;
+    private static final int VERSION = 1;
+    private final File file;
+    /**
+     * Whether regular writes are scheduled
+     */
+    private volatile boolean scheduled;
+
+    public CheckpointFile( File file )
+    {
+        this.file = file;
+    }
+
+    /**
+     * Checkpoints the monitors and replaces the file with the checkpoints.
+     *
+     * @param monitors the monitors
+     * @throws IOException if writing fails. The previous file is then left
+     * as it was.
+     */
+    public synchronized void write( Collection<ServerMonitor> monitors ) throws IOException
+    {
+        List<MonitorCheckpoint> checkpoints = new ArrayList<MonitorCheckpoint>( monitors.size() );
+        for ( ServerMonitor monitor : monitors )
+        {
+            checkpoints.add( monitor.checkpoint() );
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream( 1024 * checkpoints.size() + 16 );
+        DataOutputStream out = new DataOutputStream( payload );
+        out.writeInt( checkpoints.size() );
+        for ( MonitorCheckpoint checkpoint : checkpoints )
+        {
+            checkpoint.write( out );
+        }
+        out.flush();
+        CRC32 crc = new CRC32();
+        byte[] bytes = payload.toByteArray();
+        crc.update( bytes );
+
+        File tmp = new File( file.getPath() + ".tmp" );
+        FileOutputStream fos = new FileOutputStream( tmp );
+        try
+        {
+            DataOutputStream dos = new DataOutputStream( fos );
+            dos.writeInt( MAGIC );
+            dos.writeInt( VERSION );
+            dos.writeInt( bytes.length );
+            dos.write( bytes );
+            dos.writeLong( crc.getValue() );
+            dos.flush();
+            // Make sure the new file is on disk before it replaces the old one
+            fos.getFD().sync();
+        }
+        finally
+        {
+            fos.close();
+        }
+        Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+    /**
+     * Reads the checkpoints in the file.
+     *
+     * @return the checkpoints, or an empty list if there is no file
+     * @throws IOException if reading fails or the file is damaged
+     */
+    public synchronized List<MonitorCheckpoint> read() throws IOException
+    {
+        List<MonitorCheckpoint> checkpoints = new ArrayList<MonitorCheckpoint>();
+        if ( !file.exists() )
+        {
+            return checkpoints;
+        }
+        // Read it all at once and decode from memory
+        DataInputStream in = new DataInputStream( new ByteArrayInputStream( Files.readAllBytes( file.toPath() ) ) );
+        if ( in.available() < 12 || in.readInt() != MAGIC || in.readInt() != VERSION )
+        {
+            throw new IOException( String.format( "'%s' is not a checkpoint file.", file ) );
+        }
+        byte[] bytes = new byte[ in.readInt() ];
+        if ( bytes.length + 8 != in.available() )
+        {
+            throw new IOException( String.format( "'%s' has been cut short.", file ) );
+        }
+        in.readFully( bytes );
+        CRC32 crc = new CRC32();
+        crc.update( bytes );
+        if ( crc.getValue() != in.readLong() )
+        {
+            throw new IOException( String.format( "'%s' is damaged.", file ) );
+        }
+        DataInputStream payload = new DataInputStream( new ByteArrayInputStream( bytes ) );
+        int count = payload.readInt();
+        for ( int i = 0; i < count; i++ )
+        {
+            checkpoints.add( MonitorCheckpoint.read( payload ) );
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Restores the monitors that have a checkpoint in the file. This must be
+     * done before the monitors are started.
+     *
+     * @param monitors the monitors
+     * @return the number of restored monitors
+     * @throws IOException if reading fails or the file is damaged
+     */
+    public int restore( Collection<ServerMonitor> monitors ) throws IOException
+    {
+        Map<String, MonitorCheckpoint> byServer = new HashMap<String, MonitorCheckpoint>();
+        for ( MonitorCheckpoint checkpoint : read() )
+        {
+            byServer.put( checkpoint.getIpAddress() + ":" + checkpoint.getPort(), checkpoint );
+        }
+        int restored = 0;
+        for ( ServerMonitor monitor : monitors )
+        {
+            MonitorCheckpoint checkpoint = byServer.get( monitor.getState().getServer().getIpAddress() + ":" + monitor.getState().getServer().getPort() );
+            if ( checkpoint != null )
+            {
+                monitor.restore( checkpoint );
+                restored++;
+            }
+        }
+        LOG.debug( "Restored {} of {} monitors from '{}'.", restored, monitors.size(), file );
+        return restored;
+    }
+
+    /**
+     * Writes the checkpoints of the monitors regularly until the scheduler is
+     * shut down or {@link #cancel()} is called. The collection is read on
+     * every write, so a concurrent collection may be changed meanwhile.
+     *
+     * @param scheduler the scheduler to write on
+     * @param monitors the monitors
+     * @param periodMillis the time between writes
+     */
+    public void schedule( final MonitorScheduler scheduler, final Collection<ServerMonitor> monitors, final long periodMillis )
+    {
+        scheduled = true;
+        scheduler.schedule( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if ( !scheduled )
+                {
+                    return;
+                }
+                try
+                {
+                    write( monitors );
+                }
+                catch ( IOException ex )
+                {
+                    LOG.warn( String.format( "Could not write checkpoints to '%s'.", file ), ex );
+                }
+                if ( scheduler.isRunning() )
+                {
+                    scheduler.schedule( this, periodMillis );
+                }
+            }
+        }, periodMillis );
+    }
+
+    /**
+     * Stops the regular writes started by {@link #schedule}.
+     */
+    public void cancel()
+    {
+        scheduled = false;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+}
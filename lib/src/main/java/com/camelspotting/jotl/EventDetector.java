@@ -0,0 +1,266 @@
+package com.camelspotting.jotl;
+
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.GameDelta;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import com.camelspotting.jotl.event.OpenTTDEventType;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The rules for detecting events by comparing two updates of a server, shared
+ * by {@link ServerMonitor} and {@link FleetMonitor}. A detector holds what the
+ * rules remember from one update to the next: whether the game is paused and
+ * which types of rail have been announced. A {@link ServerMonitor} keeps one
+ * detector, while a {@link FleetMonitor} keeps this state in its slots and
+ * loads it into its detector with {@link #restore} before every update.
+ * <p>
+ * A detector is not thread safe.
+ */
+class EventDetector
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( EventDetector.class );
+    /**
+     * Has electric rail been made available?
+     */
+    private boolean electricRail;
+    /**
+     * Has monorail been made available?
+     */
+    private boolean monoRail;
+    /**
+     * Has maglev been made available?
+     */
+    private boolean maglev;
+    /**
+     * This counter is for checking whether a game is paused
+     */
+    private int pauseCounter;
+    /**
+     * This counter is for checking whether a game is unpaused
+     */
+    private int unpauseCounter;
+    /**
+     * The game is paused
+     */
+    private boolean paused;
+
+    /**
+     * Replaces the state of this detector, e.g. with that of another server.
+     *
+     * @param paused whether the game is paused
+     * @param pauseCounter the pause counter
+     * @param unpauseCounter the unpause counter
+     * @param electricRail whether electric rail has been announced
+     * @param monoRail whether monorail has been announced
+     * @param maglev whether maglev has been announced
+     */
+    void restore( boolean paused, int pauseCounter, int unpauseCounter, boolean electricRail, boolean monoRail, boolean maglev )
+    {
+        this.paused = paused;
+        this.pauseCounter = pauseCounter;
+        this.unpauseCounter = unpauseCounter;
+        this.electricRail = electricRail;
+        this.monoRail = monoRail;
+        this.maglev = maglev;
+    }
+
+    /**
+     * Called for every event detected, before it is constructed. This
+     * implementation wants them all.
+     *
+     * @param type the type of the detected event
+     * @return whether to construct the event
+     */
+    boolean detected( OpenTTDEventType type )
+    {
+        return true;
+    }
+
+    /**
+     * Compares the current update of a server with the last one and adds the
+     * events detected, in the order they are to be fired.
+     *
+     * @param server the server the events come from
+     * @param last the last update, or null if this is the first one
+     * @param game the current update
+     * @param evts where to add the events
+     * @return the difference between the updates, or null if the current update
+     * is a new game
+     */
+    GameDelta detect( Server server, Game last, Game game, List<OpenTTDEvent> evts )
+    {
+        List<Company> companies = game.getClientDetails().getCompanies();
+        if ( !ServerMonitor.representsSameGame( last, game ) )
+        {
+            // If there was a game before, it has ended
+            if ( last != null && detected( OpenTTDEventType.GAME_END ) )
+            {
+                evts.add( new OpenTTDEvent( server, OpenTTDEventType.GAME_END, Integer.valueOf( last.getServerDetails().getGameDate().getYear() ) ) );
+            }
+            checkForNewGame( server, game.getServerDetails(), evts );
+            // Did any companies start before we discovered the new game?
+            if ( !companies.isEmpty() && detected( OpenTTDEventType.COMPANY_NEW ) )
+            {
+                evts.add( new OpenTTDEvent( server, OpenTTDEventType.COMPANY_NEW, (Object[]) companies.toArray( new Company[ companies.size() ] ) ) );
+            }
+            // If more than 1 has started someone is in the lead.
+            if ( companies.size() > 1 && detected( OpenTTDEventType.NEW_LEADER ) )
+            {
+                evts.add( new OpenTTDEvent( server, OpenTTDEventType.NEW_LEADER, companies.get( 0 ) ) );
+            }
+            // Let's reset some useful variables
+            restore( false, 0, 0, false, false, false );
+            return null;
+        }
+
+        checkForNewRail( server, game.getServerDetails().getGameDate().getYear(), evts );
+        // Has a new leader climbed to the top?
+        List<Company> lastCompanies = last.getClientDetails().getCompanies();
+        if ( !lastCompanies.isEmpty() && !companies.isEmpty() && !lastCompanies.get( 0 ).equals( companies.get( 0 ) ) && detected( OpenTTDEventType.NEW_LEADER ) )
+        {
+            evts.add( new OpenTTDEvent( server, OpenTTDEventType.NEW_LEADER, companies.get( 0 ) ) );
+        }
+        // Which companies have come, gone or changed?
+        GameDelta delta = GameDelta.compute( last, game );
+        List<Company> added = delta.getAdded();
+        if ( !added.isEmpty() && detected( OpenTTDEventType.COMPANY_NEW ) )
+        {
+            evts.add( new OpenTTDEvent( server, OpenTTDEventType.COMPANY_NEW, (Object[]) added.toArray( new Company[ added.size() ] ) ) );
+        }
+        // Normally only a server administrator removes companies by force
+        for ( Company c : delta.getRemoved() )
+        {
+            if ( detected( OpenTTDEventType.COMPANY_REMOVED ) )
+            {
+                evts.add( new OpenTTDEvent( server, OpenTTDEventType.COMPANY_REMOVED, c ) );
+            }
+        }
+        checkForPauseUnpaused( server, last, game, evts );
+        return delta;
+    }
+
+    private void checkForNewGame( Server server, ServerDetails details, List<OpenTTDEvent> evts )
+    {
+        if ( details.getGameDate().compareTo( details.getStartDate() ) < 0 )
+        {
+            // This is not a "new" game, but a game in progress
+            LOG.debug( "I found out a 'new game' was acually a game in progress." );
+            if ( detected( OpenTTDEventType.GAME_IN_PROGRESS ) )
+            {
+                evts.add( new OpenTTDEvent( server, OpenTTDEventType.GAME_IN_PROGRESS, Integer.valueOf( details.getGameDate().getYear() ) ) );
+            }
+        }
+        else if ( detected( OpenTTDEventType.GAME_START ) )
+        {
+            evts.add( new OpenTTDEvent( server, OpenTTDEventType.GAME_START, Integer.valueOf( details.getStartDate().getYear() ) ) );
+        }
+    }
+
+    /**
+     * Announces a new type of rail once, when the year it becomes available
+     * is seen.
+     */
+    private void checkForNewRail( Server server, int year, List<OpenTTDEvent> evts )
+    {
+        if ( year == 2022 && !maglev )
+        {
+            maglev = true;
+            if ( detected( OpenTTDEventType.MAGLEV_AVAILABLE ) )
+            {
+                evts.add( new OpenTTDEvent( server, OpenTTDEventType.MAGLEV_AVAILABLE ) );
+            }
+        }
+        else if ( year == 1999 && !monoRail )
+        {
+            monoRail = true;
+            if ( detected( OpenTTDEventType.MONORAIL_AVAILABLE ) )
+            {
+                evts.add( new OpenTTDEvent( server, OpenTTDEventType.MONORAIL_AVAILABLE ) );
+            }
+        }
+        else if ( year == 1965 && !electricRail )
+        {
+            electricRail = true;
+            if ( detected( OpenTTDEventType.ELECTRIC_AVAILABLE ) )
+            {
+                evts.add( new OpenTTDEvent( server, OpenTTDEventType.ELECTRIC_AVAILABLE ) );
+            }
+        }
+    }
+
+    /**
+     * A game is paused once its date has stood still for three updates, and
+     * unpaused as soon as the date moves on.
+     */
+    private void checkForPauseUnpaused( Server server, Game last, Game game, List<OpenTTDEvent> evts )
+    {
+        int dates = last.getServerDetails().getGameDate().compareTo( game.getServerDetails().getGameDate() );
+        Integer year = Integer.valueOf( game.getServerDetails().getGameDate().getYear() );
+        if ( paused )
+        {
+            if ( dates < 0 && --pauseCounter == 0 )
+            {
+                LOG.debug( "The game has started again." );
+                paused = false;
+                unpauseCounter = 0;
+                if ( detected( OpenTTDEventType.UNPAUSED ) )
+                {
+                    evts.add( new OpenTTDEvent( server, OpenTTDEventType.UNPAUSED, year ) );
+                }
+            }
+        }
+        else if ( dates == 0 )
+        {
+            if ( ++unpauseCounter == 3 )
+            {
+                LOG.debug( "The game has paused." );
+                paused = true;
+                pauseCounter = 1;
+                if ( detected( OpenTTDEventType.PAUSED ) )
+                {
+                    evts.add( new OpenTTDEvent( server, OpenTTDEventType.PAUSED, year ) );
+                }
+            }
+        }
+        else
+        {
+            unpauseCounter = 0;
+        }
+    }
+
+    boolean isPaused()
+    {
+        return paused;
+    }
+
+    int getPauseCounter()
+    {
+        return pauseCounter;
+    }
+
+    int getUnpauseCounter()
+    {
+        return unpauseCounter;
+    }
+
+    boolean isElectricRail()
+    {
+        return electricRail;
+    }
+
+    boolean isMonoRail()
+    {
+        return monoRail;
+    }
+
+    boolean isMaglev()
+    {
+        return maglev;
+    }
+}
@@ -0,0 +1,491 @@
+package com.camelspotting.jotl;
+
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import com.camelspotting.jotl.event.OpenTTDEventType;
+import com.camelspotting.jotl.event.OpenTTDListener;
+import com.camelspotting.jotl.jfr.DispatchEvent;
+import com.camelspotting.jotl.jfr.MonitorUpdateEvent;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import com.camelspotting.jotl.exceptions.UnreachableHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Detects events on many servers at once. Where every {@link ServerMonitor}
+ * carries its own fields, listeners and update task, a fleet monitor keeps
+ * the detection state of all its servers in a few arrays indexed by slot,
+ * shares one set of listeners and polls every server on one
+ * {@link MonitorScheduler}. Servers can be added and removed while the fleet
+ * is running, and the events tell which server they came from through
+ * {@link OpenTTDEvent#getServer()}.
+ * <p>
+ * The events are detected by the same {@link EventDetector} rules as
+ * {@link ServerMonitor} uses, but a fleet keeps no game history.
+ */
+public class FleetMonitor
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( FleetMonitor.class );
+    private static final int MAX_TIMEOUTS = 12;
+    private static final int SLOW_INTERVAL = 5000;
+    /**
+     * Bits of the flags array
+     */
+    private static final byte PAUSED = 1;
+    private static final byte ELECTRIC_RAIL = 2;
+    private static final byte MONORAIL = 4;
+    private static final byte MAGLEV = 8;
+    private final List<OpenTTDListener> listeners = new CopyOnWriteArrayList<OpenTTDListener>();
+    private final Map<Server, Integer> slots = new HashMap<Server, Integer>();
+    private final int updateInterval;
+    /**
+     * Detects the events of whichever slot is being updated, guarded by this
+     */
+    private final EventDetector detector = new EventDetector();
+    private MonitorScheduler scheduler;
+    /**
+     * Bumped whenever the fleet is stopped, so that updates running meanwhile
+     * are not rescheduled
+     */
+    private int runs;
+    /*
+     * The state of each slot. A slot is free when its querier is null.
+     */
+    private GameQuerier[] queriers = new GameQuerier[ 16 ];
+    private Game[] lastGames = new Game[ 16 ];
+    private byte[] flags = new byte[ 16 ];
+    private byte[] pauseCounters = new byte[ 16 ];
+    private byte[] unpauseCounters = new byte[ 16 ];
+    private short[] timeouts = new short[ 16 ];
+    /**
+     * Bumped whenever a slot is freed, so that updates of a removed server are
+     * dropped
+     */
+    private int[] generations = new int[ 16 ];
+    private MonitorScheduler.Timeout[] pending = new MonitorScheduler.Timeout[ 16 ];
+    /**
+     * The free slots below {@link #highWater}, used as a stack
+     */
+    private int[] freeSlots = new int[ 16 ];
+    private int freeCount;
+    private int highWater;
+
+    /**
+     * Main constructor.
+     *
+     * @param updateInterval the time between the updates of each server, in
+     * milliseconds
+     */
+    public FleetMonitor( int updateInterval )
+    {
+        if ( updateInterval <= 0 )
+        {
+            throw new IllegalArgumentException( String.format( "Illegal update interval: %d", updateInterval ) );
+        }
+        this.updateInterval = updateInterval;
+    }
+
+    /**
+     * Adds a server to the fleet. If the fleet is running the server is polled
+     * within one update interval.
+     *
+     * @param querier the querier of the server
+     * @return the server, for removing it again
+     * @throws IllegalArgumentException if the server is already in the fleet
+     */
+    public synchronized Server add( GameQuerier querier )
+    {
+        Server server = querier.getServer();
+        if ( slots.containsKey( server ) )
+        {
+            throw new IllegalArgumentException( String.format( "%s is already monitored.", server ) );
+        }
+        int slot;
+        if ( freeCount > 0 )
+        {
+            slot = freeSlots[--freeCount];
+        }
+        else
+        {
+            if ( highWater == queriers.length )
+            {
+                grow();
+            }
+            slot = highWater++;
+        }
+        queriers[slot] = querier;
+        slots.put( server, slot );
+        if ( scheduler != null )
+        {
+            pending[slot] = scheduler.scheduleJittered( new UpdateTask( slot, generations[slot], runs ), updateInterval );
+        }
+        return server;
+    }
+
+    /**
+     * Removes a server from the fleet. An update in progress is discarded.
+     *
+     * @param server the server
+     * @return false if the server was not in the fleet
+     */
+    public synchronized boolean remove( Server server )
+    {
+        Integer slot = slots.remove( server );
+        if ( slot == null )
+        {
+            return false;
+        }
+        free( slot );
+        return true;
+    }
+
+    private void free( int slot )
+    {
+        if ( pending[slot] != null )
+        {
+            pending[slot].cancel();
+            pending[slot] = null;
+        }
+        queriers[slot] = null;
+        lastGames[slot] = null;
+        flags[slot] = 0;
+        pauseCounters[slot] = 0;
+        unpauseCounters[slot] = 0;
+        timeouts[slot] = 0;
+        generations[slot]++;
+        if ( freeCount == freeSlots.length )
+        {
+            freeSlots = Arrays.copyOf( freeSlots, freeCount * 2 );
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void grow()
+    {
+        int capacity = queriers.length * 2;
+        queriers = Arrays.copyOf( queriers, capacity );
+        lastGames = Arrays.copyOf( lastGames, capacity );
+        flags = Arrays.copyOf( flags, capacity );
+        pauseCounters = Arrays.copyOf( pauseCounters, capacity );
+        unpauseCounters = Arrays.copyOf( unpauseCounters, capacity );
+        timeouts = Arrays.copyOf( timeouts, capacity );
+        generations = Arrays.copyOf( generations, capacity );
+        pending = Arrays.copyOf( pending, capacity );
+    }
+
+    /**
+     * Starts polling all servers on the shared default scheduler.
+     */
+    public void start()
+    {
+        start( MonitorScheduler.getDefault() );
+    }
+
+    /**
+     * Starts polling all servers on the given scheduler. The first updates are
+     * spread over one update interval.
+     *
+     * @param scheduler the scheduler to run the updates on
+     */
+    public synchronized void start( MonitorScheduler scheduler )
+    {
+        if ( this.scheduler != null )
+        {
+            LOG.debug( "The fleet has already been started." );
+            return;
+        }
+        this.scheduler = scheduler;
+        for ( int slot = 0; slot < highWater; slot++ )
+        {
+            if ( queriers[slot] != null )
+            {
+                pending[slot] = scheduler.scheduleJittered( new UpdateTask( slot, generations[slot], runs ), updateInterval );
+            }
+        }
+    }
+
+    /**
+     * Stops polling. Updates in progress are finished but not rescheduled.
+     */
+    public synchronized void stop()
+    {
+        scheduler = null;
+        runs++;
+        for ( int slot = 0; slot < highWater; slot++ )
+        {
+            if ( pending[slot] != null )
+            {
+                pending[slot].cancel();
+                pending[slot] = null;
+            }
+        }
+    }
+
+    /**
+     * Updates one server at once. This is meant for fleets that are not
+     * started, as it may otherwise overlap a scheduled update of the server.
+     *
+     * @param server the server
+     * @throws JOTLException if the server could not be queried
+     * @throws IllegalArgumentException if the server is not in the fleet
+     */
+    public void update( Server server ) throws JOTLException
+    {
+        int slot;
+        int generation;
+        synchronized ( this )
+        {
+            Integer s = slots.get( server );
+            if ( s == null )
+            {
+                throw new IllegalArgumentException( String.format( "%s is not monitored.", server ) );
+            }
+            slot = s;
+            generation = generations[slot];
+        }
+        update( slot, generation );
+    }
+
+    /**
+     * Queries the server in a slot and fires the detected events.
+     *
+     * @return false if the slot was freed meanwhile
+     */
+    private boolean update( int slot, int generation ) throws JOTLException
+    {
+        GameQuerier querier;
+        synchronized ( this )
+        {
+            if ( generations[slot] != generation )
+            {
+                return false;
+            }
+            querier = queriers[slot];
+        }
+        MonitorUpdateEvent updating = new MonitorUpdateEvent();
+        updating.begin();
+        boolean succeeded = false;
+        try
+        {
+            Game game;
+            try
+            {
+                game = querier.getAllInformation();
+            }
+            catch ( UnreachableHostException ex )
+            {
+                synchronized ( this )
+                {
+                    if ( generations[slot] == generation )
+                    {
+                        timeouts[slot]++;
+                    }
+                }
+                throw ex;
+            }
+            List<OpenTTDEvent> evts = new ArrayList<OpenTTDEvent>();
+            synchronized ( this )
+            {
+                if ( generations[slot] != generation )
+                {
+                    return false;
+                }
+                detect( slot, querier.getServer(), game, evts );
+                lastGames[slot] = game;
+                timeouts[slot] = 0;
+            }
+            for ( OpenTTDEvent evt : evts )
+            {
+                fireEvent( evt );
+            }
+            succeeded = true;
+            return true;
+        }
+        finally
+        {
+            updating.finish( querier.getServer(), succeeded );
+        }
+    }
+
+    /**
+     * Compares a new game with the last one of a slot, loading the detection
+     * state of the slot into the detector and storing it back afterwards.
+     */
+    private void detect( int slot, Server server, Game game, List<OpenTTDEvent> evts )
+    {
+        byte f = flags[slot];
+        detector.restore( ( f & PAUSED ) != 0, pauseCounters[slot], unpauseCounters[slot], ( f & ELECTRIC_RAIL ) != 0, ( f & MONORAIL ) != 0, ( f & MAGLEV ) != 0 );
+        detector.detect( server, lastGames[slot], game, evts );
+        f = 0;
+        if ( detector.isPaused() )
+        {
+            f |= PAUSED;
+        }
+        if ( detector.isElectricRail() )
+        {
+            f |= ELECTRIC_RAIL;
+        }
+        if ( detector.isMonoRail() )
+        {
+            f |= MONORAIL;
+        }
+        if ( detector.isMaglev() )
+        {
+            f |= MAGLEV;
+        }
+        flags[slot] = f;
+        pauseCounters[slot] = (byte) detector.getPauseCounter();
+        unpauseCounters[slot] = (byte) detector.getUnpauseCounter();
+    }
+
+    private void fireEvent( OpenTTDEvent evt )
+    {
+        for ( OpenTTDListener otl : listeners )
+        {
+            DispatchEvent dispatch = new DispatchEvent();
+            dispatch.begin();
+            try
+            {
+                otl.eventOccured( evt );
+            }
+            catch ( RuntimeException ex )
+            {
+                LOG.error( String.format( "Listener '%s' failed on event '%s'.", otl, evt ), ex );
+            }
+            dispatch.finish( otl, evt.getType() );
+        }
+    }
+
+    /**
+     * Getter for the latest game of a server.
+     *
+     * @param server the server
+     * @return the game, or null if the server is not in the fleet or has not
+     * been updated
+     */
+    public synchronized Game getGame( Server server )
+    {
+        Integer slot = slots.get( server );
+        return slot != null ? lastGames[slot] : null;
+    }
+
+    /**
+     * Finds out whether a server's game is paused.
+     *
+     * @param server the server
+     * @return whether it is paused
+     */
+    public synchronized boolean isPaused( Server server )
+    {
+        Integer slot = slots.get( server );
+        return slot != null && ( flags[slot] & PAUSED ) != 0;
+    }
+
+    /**
+     * Getter for the number of servers in the fleet.
+     *
+     * @return the number of servers
+     */
+    public synchronized int size()
+    {
+        return slots.size();
+    }
+
+    public void addListener( OpenTTDListener otl )
+    {
+        listeners.add( otl );
+    }
+
+    public void removeListener( OpenTTDListener otl )
+    {
+        listeners.remove( otl );
+    }
+
+    /**
+     * The scheduled update of one slot
+     */
+    private final class UpdateTask implements Runnable
+    {
+
+        private final int slot;
+        private final int generation;
+        /**
+         * The run of the fleet this task belongs to
+         */
+        private final int run;
+
+        UpdateTask( int slot, int generation, int run )
+        {
+            this.slot = slot;
+            this.generation = generation;
+            this.run = run;
+        }
+
+        @Override
+        public void run()
+        {
+            int delay = updateInterval;
+            try
+            {
+                if ( !update( slot, generation ) )
+                {
+                    return;
+                }
+            }
+            catch ( UnreachableHostException ex )
+            {
+                delay = SLOW_INTERVAL;
+                if ( onTimeout() )
+                {
+                    return;
+                }
+            }
+            catch ( JOTLException ex )
+            {
+                LOG.debug( "Update failed.", ex );
+            }
+            catch ( RuntimeException ex )
+            {
+                LOG.error( "Unexpected error during update.", ex );
+            }
+            synchronized ( FleetMonitor.this )
+            {
+                if ( scheduler != null && scheduler.isRunning() && generations[slot] == generation && runs == run )
+                {
+                    pending[slot] = scheduler.schedule( this, delay );
+                }
+            }
+        }
+
+        /**
+         * Drops the server after too many timeouts in a row.
+         *
+         * @return true if the server was dropped
+         */
+        private boolean onTimeout()
+        {
+            Server server;
+            synchronized ( FleetMonitor.this )
+            {
+                if ( generations[slot] != generation || timeouts[slot] < MAX_TIMEOUTS )
+                {
+                    return false;
+                }
+                server = queriers[slot].getServer();
+                slots.remove( server );
+                free( slot );
+            }
+            LOG.debug( "The maximum number of timeouts in a row({}) has been reached for {}.", MAX_TIMEOUTS, server );
+            fireEvent( new OpenTTDEvent( server, OpenTTDEventType.LOST_CONNECTION ) );
+            return true;
+        }
+    }
+}
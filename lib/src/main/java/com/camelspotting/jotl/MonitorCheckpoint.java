@@ -0,0 +1,183 @@
+package com.camelspotting.jotl;
+
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.history.GameCodec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Everything a {@link ServerMonitor} needs to carry on where it left off
+ * after a restart: the latest game and the state of the event detection.
+ * Restoring it keeps a restarted monitor from reporting the running game and
+ * its companies as new.
+ *
+ * @see ServerMonitor#checkpoint()
+ * @see ServerMonitor#restore(MonitorCheckpoint)
+ * @see CheckpointFile
+ */
+public final class MonitorCheckpoint
+{
+
+    /**
+     * The IP address of the monitored server
+     */
+    private final String ipAddress;
+    private final int port;
+    /**
+     * The latest game, or null if the monitor had not been updated
+     */
+    private final Game game;
+    private final boolean paused;
+    private final int pauseCounter;
+    private final int unpauseCounter;
+    private final boolean electricRail;
+    private final boolean monoRail;
+    private final boolean maglev;
+    private final long lastSuccess;
+    private final int consecutiveTimeouts;
+
+    public MonitorCheckpoint( String ipAddress, int port, Game game, boolean paused, int pauseCounter, int unpauseCounter, boolean electricRail, boolean monoRail, boolean maglev, long lastSuccess, int consecutiveTimeouts )
+    {
+        this.ipAddress = ipAddress;
+        this.port = port;
+        this.game = game;
+        this.paused = paused;
+        this.pauseCounter = pauseCounter;
+        this.unpauseCounter = unpauseCounter;
+        this.electricRail = electricRail;
+        this.monoRail = monoRail;
+        this.maglev = maglev;
+        this.lastSuccess = lastSuccess;
+        this.consecutiveTimeouts = consecutiveTimeouts;
+    }
+
+    /**
+     * Returns this checkpoint with another number of timeouts.
+     *
+     * @param timeouts the number of timeouts since the latest game
+     * @return the new checkpoint
+     */
+    MonitorCheckpoint withTimeouts( int timeouts )
+    {
+        if ( timeouts == consecutiveTimeouts )
+        {
+            return this;
+        }
+        return new MonitorCheckpoint( ipAddress, port, game, paused, pauseCounter, unpauseCounter, electricRail, monoRail, maglev, lastSuccess, timeouts );
+    }
+
+    /**
+     * Checks whether this checkpoint was taken of a monitor of the given
+     * server.
+     *
+     * @param server the server
+     * @return true if the address and port match
+     */
+    public boolean isOf( Server server )
+    {
+        return port == server.getPort() && ipAddress.equals( server.getIpAddress() );
+    }
+
+    /**
+     * Encodes the checkpoint.
+     *
+     * @param out where to write it
+     * @throws IOException if writing fails
+     */
+    public void write( DataOutput out ) throws IOException
+    {
+        out.writeUTF( ipAddress );
+        out.writeShort( port );
+        out.writeBoolean( game != null );
+        if ( game != null )
+        {
+            GameCodec.write( game, out );
+        }
+        out.writeBoolean( paused );
+        out.writeInt( pauseCounter );
+        out.writeInt( unpauseCounter );
+        out.writeBoolean( electricRail );
+        out.writeBoolean( monoRail );
+        out.writeBoolean( maglev );
+        out.writeLong( lastSuccess );
+        out.writeInt( consecutiveTimeouts );
+    }
+
+    /**
+     * Decodes a checkpoint written by {@link #write(DataOutput)}.
+     *
+     * @param in where to read it from
+     * @return the checkpoint
+     * @throws IOException if reading fails
+     */
+    public static MonitorCheckpoint read( DataInput in ) throws IOException
+    {
+        String ipAddress = in.readUTF();
+        int port = in.readUnsignedShort();
+        Game game = in.readBoolean() ? GameCodec.read( in ) : null;
+        return new MonitorCheckpoint( ipAddress, port, game, in.readBoolean(), in.readInt(), in.readInt(), in.readBoolean(), in.readBoolean(), in.readBoolean(), in.readLong(), in.readInt() );
+    }
+
+    public String getIpAddress()
+    {
+        return ipAddress;
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    public Game getGame()
+    {
+        return game;
+    }
+
+    public boolean isPaused()
+    {
+        return paused;
+    }
+
+    public int getPauseCounter()
+    {
+        return pauseCounter;
+    }
+
+    public int getUnpauseCounter()
+    {
+        return unpauseCounter;
+    }
+
+    public boolean isElectricRail()
+    {
+        return electricRail;
+    }
+
+    public boolean isMonoRail()
+    {
+        return monoRail;
+    }
+
+    public boolean isMaglev()
+    {
+        return maglev;
+    }
+
+    public long getLastSuccess()
+    {
+        return lastSuccess;
+    }
+
+    public int getConsecutiveTimeouts()
+    {
+        return consecutiveTimeouts;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "MonitorCheckpoint: %s:%d, paused=%b, lastSuccess=%d, timeouts=%d", ipAddress, port, paused, lastSuccess, consecutiveTimeouts );
+    }
+}
@@ -0,0 +1,388 @@
+package com.camelspotting.jotl;
+
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A scheduler for driving a large number of {@link ServerMonitor}s from a small
+ * shared thread pool. Timeouts are kept in a hashed timing wheel which is
+ * advanced by a single ticker thread, and expired tasks are handed over to the
+ * worker pool. Adding and cancelling a timeout are both O(1), so thousands of
+ * monitors cost no more than a few threads.
+ *
+ * @see ServerMonitor#start(MonitorScheduler)
+ */
+public class MonitorScheduler
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( MonitorScheduler.class );
+    /**
+     * The scheduler used by {@link ServerMonitor#start()}
+     */
+    private static MonitorScheduler defaultScheduler;
+    /**
+     * The duration of one tick in nanoseconds
+     */
+    private final long tickNanos;
+    /**
+     * The wheel buckets. The length is always a power of two.
+     */
+    private final Bucket[] wheel;
+    /**
+     * Mask for finding a bucket from a tick
+     */
+    private final int mask;
+    /**
+     * Timeouts that have been scheduled, but not yet put in the wheel
+     */
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+    /**
+     * The pool running the expired tasks
+     */
+    private final ExecutorService workers;
+    /**
+     * The thread advancing the wheel
+     */
+    private final Thread ticker;
+    /**
+     * The point in time all deadlines are relative to
+     */
+    private final long startTime;
+    /**
+     * Used for spreading the first run of periodic tasks
+     */
+    private final Random random = new Random();
+    private volatile boolean running = true;
+
+    /**
+     * Creates a scheduler with one worker per available processor, a tick of
+     * 100 milliseconds and 512 buckets.
+     */
+    public MonitorScheduler()
+    {
+        this( Runtime.getRuntime().availableProcessors(), 100, 512 );
+    }
+
+    /**
+     * Main constructor.
+     *
+     * @param threads the number of worker threads running the tasks
+     * @param tickMillis the resolution of the wheel in milliseconds
+     * @param wheelSize the number of buckets, rounded up to a power of two
+     */
+    public MonitorScheduler( int threads, long tickMillis, int wheelSize )
+    {
+        if ( threads < 1 || tickMillis < 1 || wheelSize < 1 )
+        {
+            throw new IllegalArgumentException( String.format( "Illegal scheduler settings: threads=%d, tick=%d, wheel=%d", threads, tickMillis, wheelSize ) );
+        }
+        int size = Integer.highestOneBit( wheelSize );
+        if ( size < wheelSize )
+        {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[ size ];
+        for ( int i = 0; i < size; i++ )
+        {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos( tickMillis );
+        this.workers = Executors.newFixedThreadPool( threads, new NamedThreadFactory( "jotl-monitor-worker" ) );
+        this.startTime = System.nanoTime();
+        this.ticker = new NamedThreadFactory( "jotl-monitor-ticker" ).newThread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                tickLoop();
+            }
+        } );
+        ticker.start();
+    }
+
+    /**
+     * Returns the scheduler shared by all monitors started without an explicit
+     * scheduler. It is created on first use and runs on daemon threads.
+     *
+     * @return the shared scheduler
+     */
+    public static synchronized MonitorScheduler getDefault()
+    {
+        if ( defaultScheduler == null || !defaultScheduler.running )
+        {
+            defaultScheduler = new MonitorScheduler();
+        }
+        return defaultScheduler;
+    }
+
+    /**
+     * Schedules a task to run once after the given delay.
+     *
+     * @param task the task to run
+     * @param delayMillis the delay in milliseconds
+     * @return a handle that can be used for cancelling the task
+     */
+    public Timeout schedule( Runnable task, long delayMillis )
+    {
+        if ( !running )
+        {
+            throw new IllegalStateException( "The scheduler has been shut down." );
+        }
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos( Math.max( 0, delayMillis ) );
+        Timeout timeout = new Timeout( task, deadline );
+        pending.add( timeout );
+        return timeout;
+    }
+
+    /**
+     * Schedules a task to run once after a random delay between 0 and the
+     * given period. This is used for the first run of periodic tasks so that
+     * many monitors started at once spread their queries evenly.
+     *
+     * @param task the task to run
+     * @param periodMillis the upper bound of the delay in milliseconds
+     * @return a handle that can be used for cancelling the task
+     */
+    public Timeout scheduleJittered( Runnable task, long periodMillis )
+    {
+        long delay;
+        synchronized ( random )
+        {
+            delay = periodMillis > 0 ? (long) ( random.nextDouble() * periodMillis ) : 0;
+        }
+        return schedule( task, delay );
+    }
+
+    /**
+     * Stops the scheduler. Tasks that have not yet expired are discarded while
+     * tasks already running are allowed to finish.
+     */
+    public void shutdown()
+    {
+        running = false;
+        ticker.interrupt();
+        workers.shutdown();
+    }
+
+    /**
+     * Whether or not this scheduler accepts new tasks.
+     *
+     * @return true until {@link #shutdown()} has been called
+     */
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    private void tickLoop()
+    {
+        long tick = 0;
+        while ( running )
+        {
+            long deadline = tickNanos * ( tick + 1 );
+            long sleepNanos = deadline - ( System.nanoTime() - startTime );
+            if ( sleepNanos > 0 )
+            {
+                try
+                {
+                    TimeUnit.NANOSECONDS.sleep( sleepNanos );
+                }
+                catch ( InterruptedException ex )
+                {
+                    continue;
+                }
+            }
+            transferPending( tick );
+            wheel[(int) ( tick & mask )].expire();
+            tick++;
+        }
+        LOG.debug( "Ticker thread death." );
+    }
+
+    /**
+     * Moves newly scheduled timeouts into their buckets.
+     *
+     * @param tick the current tick
+     */
+    private void transferPending( long tick )
+    {
+        Timeout timeout;
+        while ( ( timeout = pending.poll() ) != null )
+        {
+            if ( timeout.isCancelled() )
+            {
+                continue;
+            }
+            long ticks = timeout.deadline / tickNanos;
+            timeout.remainingRounds = ( ticks - tick ) / wheel.length;
+            wheel[(int) ( Math.max( ticks, tick ) & mask )].add( timeout );
+        }
+    }
+
+    private void execute( Timeout timeout )
+    {
+        try
+        {
+            workers.execute( timeout.task );
+        }
+        catch ( RejectedExecutionException ex )
+        {
+            LOG.debug( "Task {} was rejected since the scheduler is shutting down.", timeout.task );
+        }
+    }
+
+    /**
+     * A handle for a scheduled task.
+     */
+    public static final class Timeout
+    {
+
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private final Runnable task;
+        /**
+         * Nanoseconds since the scheduler's start time
+         */
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger( PENDING );
+        /**
+         * The number of full wheel rotations left before expiry. Only touched
+         * by the ticker thread.
+         */
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout( Runnable task, long deadline )
+        {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task unless it has already been started.
+         *
+         * @return whether the task was cancelled by this call
+         */
+        public boolean cancel()
+        {
+            return state.compareAndSet( PENDING, CANCELLED );
+        }
+
+        public boolean isCancelled()
+        {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired()
+        {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    /**
+     * A doubly linked list of timeouts. Only accessed by the ticker thread.
+     */
+    private final class Bucket
+    {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add( Timeout timeout )
+        {
+            if ( head == null )
+            {
+                head = tail = timeout;
+            }
+            else
+            {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire()
+        {
+            Timeout timeout = head;
+            while ( timeout != null )
+            {
+                Timeout next = timeout.next;
+                if ( timeout.isCancelled() )
+                {
+                    remove( timeout );
+                }
+                else if ( timeout.remainingRounds <= 0 )
+                {
+                    remove( timeout );
+                    if ( timeout.state.compareAndSet( Timeout.PENDING, Timeout.EXPIRED ) )
+                    {
+                        execute( timeout );
+                    }
+                }
+                else
+                {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove( Timeout timeout )
+        {
+            if ( timeout.prev != null )
+            {
+                timeout.prev.next = timeout.next;
+            }
+            if ( timeout.next != null )
+            {
+                timeout.next.prev = timeout.prev;
+            }
+            if ( timeout == head )
+            {
+                head = timeout.next;
+            }
+            if ( timeout == tail )
+            {
+                tail = timeout.prev;
+            }
+            timeout.next = null;
+            timeout.prev = null;
+        }
+    }
+
+    /**
+     * Creates named daemon threads.
+     */
+    private static final class NamedThreadFactory implements ThreadFactory
+    {
+
+        private final AtomicInteger counter = new AtomicInteger();
+        private final String prefix;
+
+        NamedThreadFactory( String prefix )
+        {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread( Runnable r )
+        {
+            Thread t = new Thread( r, prefix + "-" + counter.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        }
+    }
+}
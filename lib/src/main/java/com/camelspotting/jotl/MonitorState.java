@@ -0,0 +1,153 @@
+package com.camelspotting.jotl;
+
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.GameDelta;
+import com.camelspotting.jotl.domain.Server;
+
+/**
+ * An immutable snapshot of what a {@link ServerMonitor} currently knows about
+ * its server. A new snapshot is published after every update, so reading it
+ * never waits for the monitor and always gives a consistent view.
+ *
+ * @see ServerMonitor#getState()
+ */
+public final class MonitorState
+{
+
+    /**
+     * The monitored server
+     */
+    private final Server server;
+    /**
+     * The latest successfully queried game, or null before the first update
+     */
+    private final Game game;
+    /**
+     * The difference from the game before, or null if the latest update found
+     * a new game
+     */
+    private final GameDelta delta;
+    /**
+     * Whether or not the game was paused at the latest update
+     */
+    private final boolean paused;
+    /**
+     * When the latest successful update finished, in milliseconds since the
+     * epoch, or 0 before the first update
+     */
+    private final long lastSuccess;
+    /**
+     * The number of timeouts since the latest successful update
+     */
+    private final int consecutiveTimeouts;
+
+    public MonitorState( Server server, Game game, GameDelta delta, boolean paused, long lastSuccess, int consecutiveTimeouts )
+    {
+        this.server = server;
+        this.game = game;
+        this.delta = delta;
+        this.paused = paused;
+        this.lastSuccess = lastSuccess;
+        this.consecutiveTimeouts = consecutiveTimeouts;
+    }
+
+    /**
+     * Creates the state of a monitor that has not been updated yet.
+     *
+     * @param server the monitored server
+     * @return the initial state
+     */
+    public static MonitorState initial( Server server )
+    {
+        return new MonitorState( server, null, null, false, 0, 0 );
+    }
+
+    /**
+     * Returns the state after a successful update.
+     *
+     * @param game the new game
+     * @param delta the difference from the game before, or null
+     * @param paused whether or not the game is paused
+     * @param timestamp when the update finished
+     * @return the new state
+     */
+    public MonitorState withUpdate( Game game, GameDelta delta, boolean paused, long timestamp )
+    {
+        return new MonitorState( server, game, delta, paused, timestamp, 0 );
+    }
+
+    /**
+     * Returns the state after one more timeout.
+     *
+     * @return the new state
+     */
+    public MonitorState withTimeout()
+    {
+        return new MonitorState( server, game, delta, paused, lastSuccess, consecutiveTimeouts + 1 );
+    }
+
+    public Server getServer()
+    {
+        return server;
+    }
+
+    /**
+     * Getter for the latest successfully queried game.
+     *
+     * @return the game or null if the monitor has not been updated yet
+     */
+    public Game getGame()
+    {
+        return game;
+    }
+
+    /**
+     * Getter for the difference between the latest game and the one queried
+     * before it.
+     *
+     * @return the difference, or null if the latest update found a new game
+     */
+    public GameDelta getDelta()
+    {
+        return delta;
+    }
+
+    public boolean isPaused()
+    {
+        return paused;
+    }
+
+    /**
+     * Getter for when the latest successful update finished.
+     *
+     * @return milliseconds since the epoch or 0 if never
+     */
+    public long getLastSuccess()
+    {
+        return lastSuccess;
+    }
+
+    public int getConsecutiveTimeouts()
+    {
+        return consecutiveTimeouts;
+    }
+
+    /**
+     * Whether or not the latest update queried a game. A state published
+     * after timeouts, e.g. with {@link com.camelspotting.jotl.event.OpenTTDEventType#LOST_CONNECTION},
+     * still holds the game of the last successful update, which should not be
+     * recorded again.
+     *
+     * @return true if the game is new
+     */
+    public boolean hasNewGame()
+    {
+        return game != null && consecutiveTimeouts == 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "MonitorState: %s, paused=%b, lastSuccess=%d, timeouts=%d", server, paused, lastSuccess, consecutiveTimeouts );
+    }
+}
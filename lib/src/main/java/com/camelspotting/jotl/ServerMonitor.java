@@ -17,15 +17,31 @@
 package com.camelspotting.jotl;
 
 import com.camelspotting.jotl.domain.ServerDetails;
-import com.camelspotting.jotl.domain.Company;
 import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.GameDelta;
+import com.camelspotting.jotl.domain.Server;
 import com.camelspotting.jotl.exceptions.JOTLException;
+import com.camelspotting.jotl.history.GameHistory;
+import com.camelspotting.jotl.exceptions.UnreachableHostException;
 import com.camelspotting.jotl.domain.ClientsDetails;
+import com.camelspotting.jotl.event.BatchOpenTTDListener;
 import com.camelspotting.jotl.event.OpenTTDEvent;
 import com.camelspotting.jotl.event.OpenTTDEventType;
 import com.camelspotting.jotl.event.OpenTTDListener;
+import com.camelspotting.jotl.jfr.DispatchEvent;
+import com.camelspotting.jotl.jfr.MonitorUpdateEvent;
+import java.time.Clock;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,17 +58,34 @@ public class ServerMonitor
 
     private static final Logger LOG = LoggerFactory.getLogger( ServerMonitor.class );
     /**
-     * The listeners that are to be notified of events
+     * The registered listeners and the event types they subscribe to
      */
-    private List<OpenTTDListener> listeners;
+    private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+    /**
+     * The listeners receiving all events of an update at once
+     */
+    private final List<BatchOpenTTDListener> batchListeners = new CopyOnWriteArrayList<BatchOpenTTDListener>();
+    /**
+     * The listeners to notify for each event type, indexed by ordinal. This is
+     * rebuilt whenever a listener is added or removed.
+     */
+    private volatile OpenTTDListener[][] listenerTable = buildListenerTable( Collections.<Subscription>emptyList() );
     /**
      * The update interval in milliseconds
      */
-    private int updateInterval;
+    private volatile int updateInterval;
+    /**
+     * The activity driven update interval, or null for a fixed interval
+     */
+    private volatile AdaptiveInterval adaptiveInterval;
     /**
-     * The previous game for remembering statistics
+     * How active the server was during the last update
      */
-    private List<Game> earlierGames;
+    private volatile AdaptiveInterval.Activity activity = AdaptiveInterval.Activity.STEADY;
+    /**
+     * The previous games for remembering statistics
+     */
+    private volatile GameHistory history = new GameHistory();
     /**
      * The previous update
      */
@@ -62,34 +95,66 @@ public class ServerMonitor
      */
     private Game currentUpdate;
     /**
-     * Has electric rail been made available?
+     * Detects the events, remembering whether the game is paused and which
+     * types of rail have been announced
      */
-    private boolean electricRail;
+    private final EventDetector detector = new EventDetector()
+    {
+        @Override
+        boolean detected( OpenTTDEventType type )
+        {
+            return ServerMonitor.this.detected( type );
+        }
+    };
     /**
-     * Has monorail been made available?
+     * Whether anything was detected during the current check, regardless of
+     * whether anyone subscribes to it. Only touched while draining the
+     * mailbox.
      */
-    private boolean monoRail;
+    private boolean eventsDetected;
+    private final GameQuerier gameQuerier;
     /**
-     * Has maglev been made available?
+     * The clock timestamping the updates
      */
-    private boolean maglev;
+    private volatile Clock clock = Clock.systemUTC();
     /**
-     * The newest companies
+     * The detection state after the latest update, or null before it
      */
-    private Company[] newbies;
+    private volatile MonitorCheckpoint lastCheckpoint;
     /**
-     * This counter is for checking whether a game is paused
+     * The latest published state
      */
-    private int pauseCounter;
+    private final AtomicReference<MonitorState> state;
     /**
-     * This counter is for checking whether a game is unpaused
+     * Query results waiting to be checked for events
      */
-    private int unpauseCounter;
+    private final Queue<FetchedGame> mailbox = new ConcurrentLinkedQueue<FetchedGame>();
     /**
-     * The game is paused
+     * The number of unprocessed mailbox signals. The thread taking it from 0
+     * becomes the one processing the mailbox.
      */
-    private boolean paused = false;
-    private final GameQuerier gameQuerier;
+    private final AtomicInteger mailboxWork = new AtomicInteger();
+    /**
+     * Numbers queries in the order they were started
+     */
+    private final AtomicLong fetchSequence = new AtomicLong();
+    /**
+     * The sequence number of the newest processed query result. Only touched
+     * while draining the mailbox.
+     */
+    private long lastProcessedSequence;
+    /**
+     * The scheduler running the continous updates
+     */
+    private MonitorScheduler scheduler;
+    /**
+     * The task doing the continous updates, or null if stopped
+     */
+    private UpdateTask updateTask;
+    /**
+     * The next scheduled run of the update task
+     */
+    private MonitorScheduler.Timeout pendingUpdate;
 
     /**
      * Main constructor for creating the server handler. Be aware that if you
@@ -112,12 +177,13 @@ public class ServerMonitor
     public ServerMonitor( GameQuerier gameQuerier, int updateInterval, boolean updateNow, OpenTTDListener... otls ) throws JOTLException
     {
         this.updateInterval = updateInterval;
+        this.gameQuerier = gameQuerier;
+        this.state = new AtomicReference<MonitorState>( MonitorState.initial( gameQuerier.getServer() ) );
         addListeners( otls ); // This will do nothing if otl is null
         if ( updateNow )
         {
             update();
         }
-        this.gameQuerier = gameQuerier;
     }
 
     /**
@@ -129,7 +195,31 @@ public class ServerMonitor
      */
     public boolean isPaused()
     {
-        return paused;
+        return state.get().isPaused();
+    }
+
+    /**
+     * Sets the clock timestamping the updates, e.g. to replay recorded games
+     * at full speed with the times they were recorded at.
+     *
+     * @param clock the clock
+     * @see MonitorState#getLastSuccess()
+     */
+    public void setClock( Clock clock )
+    {
+        this.clock = clock;
+    }
+
+    /**
+     * Getter for the latest published state of this monitor. This never
+     * blocks, not even while an update is in progress, and the returned
+     * snapshot is immutable.
+     *
+     * @return the current state
+     */
+    public MonitorState getState()
+    {
+        return state.get();
     }
 
     /**
@@ -149,7 +239,8 @@ public class ServerMonitor
      * the updating it will never start it. A separate call to start() must be
      * done to achieve this. NOTE: According to the OpenTTD-code a day is about
      * 2 seconds if the machine running it is able to do run it normally so 2000
-     * is the lower boundary for this setting.
+     * is the lower boundary for this setting. Setting a fixed interval turns
+     * off any adaptive interval.
      *
      * @param ms the number of milliseconds to set
      * @see #start()
@@ -157,6 +248,7 @@ public class ServerMonitor
      */
     public void setUpdateInterval( int ms )
     {
+        adaptiveInterval = null;
         if ( ms < 2000 )
         {
             this.updateInterval = 2000;
@@ -168,100 +260,206 @@ public class ServerMonitor
     }
 
     /**
-     * This method is for starting the continous updating. This will either
-     * start it with an initial update interval set to the lower boundary of
-     * 2000 if the interval is still set to -1.
+     * This method makes the update interval follow the activity on the server.
+     * While the game is paused or nobody is connected the interval slowly
+     * grows towards the maximum, and when events occur or the game date
+     * advances it quickly shrinks towards the minimum. The same lower boundary
+     * of 2000 as for {@link #setUpdateInterval(int)} applies.
+     *
+     * @param minMs the fastest update interval in milliseconds
+     * @param maxMs the slowest update interval in milliseconds
+     * @see AdaptiveInterval
      */
-    public void start()
+    public void setAdaptiveUpdateInterval( int minMs, int maxMs )
     {
-        if ( updateInterval <= 0 )
+        int min = Math.max( 2000, minMs );
+        AdaptiveInterval adaptive = new AdaptiveInterval( min, Math.max( min, maxMs ) );
+        this.updateInterval = min;
+        this.adaptiveInterval = adaptive;
+    }
+
+    /**
+     * Takes a checkpoint of this monitor. This never blocks and may be called
+     * while the monitor is running.
+     *
+     * @return the checkpoint
+     * @see CheckpointFile
+     */
+    public MonitorCheckpoint checkpoint()
+    {
+        MonitorState current = state.get();
+        MonitorCheckpoint checkpoint = lastCheckpoint;
+        if ( checkpoint == null )
+        {
+            Server server = gameQuerier.getServer();
+            return new MonitorCheckpoint( server.getIpAddress(), server.getPort(), null, false, 0, 0, false, false, false, 0, current.getConsecutiveTimeouts() );
+        }
+        return checkpoint.withTimeouts( current.getConsecutiveTimeouts() );
+    }
+
+    /**
+     * Restores this monitor from a checkpoint, so that it carries on where the
+     * checkpointed monitor left off instead of reporting the running game as
+     * new. This must be done before the monitor is started or updated.
+     *
+     * @param checkpoint the checkpoint
+     * @throws IllegalArgumentException if the checkpoint is of another server
+     * @throws IllegalStateException if the monitor has been started
+     */
+    public synchronized void restore( MonitorCheckpoint checkpoint )
+    {
+        Server server = gameQuerier.getServer();
+        if ( !checkpoint.isOf( server ) )
         {
-            setUpdateInterval( 2000 );
+            throw new IllegalArgumentException( String.format( "Cannot restore %s from a checkpoint of %s:%d.", server, checkpoint.getIpAddress(), checkpoint.getPort() ) );
         }
-        new Thread()
+        if ( updateTask != null )
         {
-            private int timeouts = 0;
-            private int maxTimouts = 12;
-            private boolean running = true;
-            private boolean lastUpdateFailed = false;
-            private int slowInterval = 5000;
+            throw new IllegalStateException( "Cannot restore a running monitor." );
+        }
+        lastUpdate = checkpoint.getGame();
+        detector.restore( checkpoint.isPaused(), checkpoint.getPauseCounter(), checkpoint.getUnpauseCounter(), checkpoint.isElectricRail(), checkpoint.isMonoRail(), checkpoint.isMaglev() );
+        lastCheckpoint = checkpoint;
+        state.set( new MonitorState( server, lastUpdate, null, checkpoint.isPaused(), checkpoint.getLastSuccess(), checkpoint.getConsecutiveTimeouts() ) );
+    }
 
-            @Override
-            public void run()
-            {
-                while ( running )
-                {
-                    try
-                    {
-                        if ( updateInterval > 0 )
-                        {
-                            if ( lastUpdateFailed )
-                            {
-                                updateSlow();
-                                LOG.debug( "5000 millisecond update rate fallback succeeded. Returning to " + updateInterval + "." );
-                                lastUpdateFailed = false;
-                                timeouts = 0;
-                            }
-                            else
-                            {
-                                updateNormal();
-                            }
-                        }
-                        else
-                        {
-                            running = false;
-                        }
-                    }
-                    catch ( InterruptedException ex )
-                    {
-                    }
-                    catch ( JOTLException otx )
-                    {
-                        if ( otx.getMessage().contains( "timeout" ) )
-                        {
-                            if ( ++timeouts < maxTimouts )
-                            {
-                                LOG.debug( "Timeout {} occured. A new game may be loading.", timeouts );
-                                lastUpdateFailed = true;
-                            }
-                            else
-                            {
-                                LOG.debug( "The maximum number of timeouts in a row({}) has been reached. Server may have gone down.", maxTimouts );
-                                setUpdateInterval( -1 );
-                                fireEvent( new OpenTTDEvent( OpenTTDEventType.LOST_CONNECTION ) );
-                                LOG.debug( "Manual update mode has been set and any and all listeners have been notified." );
-                            }
-                        }
-                    }
-                }
-                LOG.debug( "Update thread death." );
-            }
+    /**
+     * Replaces the history of finished games, e.g. to change its limits or to
+     * spill evicted games to disk. Games already in the old history are not
+     * moved over.
+     *
+     * @param history the new history
+     */
+    public void setHistory( GameHistory history )
+    {
+        if ( history == null )
+        {
+            throw new IllegalArgumentException( "The history cannot be null." );
+        }
+        this.history = history;
+    }
 
-            private void updateNormal() throws InterruptedException, JOTLException
-            {
-                Thread.sleep( updateInterval );
-                update();
-            }
+    /**
+     * Getter for the finished games seen by this monitor.
+     *
+     * @return the history
+     */
+    public GameHistory getHistory()
+    {
+        return history;
+    }
 
-            private void updateSlow() throws InterruptedException, JOTLException
-            {
-                Thread.sleep( slowInterval );
-                update();
-            }
-        }.start();
+    /**
+     * Getter for the interval until the next automatic update. With an
+     * adaptive interval this changes with the activity on the server.
+     *
+     * @return the interval in milliseconds, or -1 if updating manually
+     */
+    public int getUpdateInterval()
+    {
+        AdaptiveInterval adaptive = adaptiveInterval;
+        if ( updateInterval > 0 && adaptive != null )
+        {
+            return adaptive.getCurrent();
+        }
+        return updateInterval;
+    }
+
+    /**
+     * This method is for starting the continous updating on the shared default
+     * {@link MonitorScheduler}. This will either start it with an initial
+     * update interval set to the lower boundary of 2000 if the interval is
+     * still set to -1.
+     *
+     * @see MonitorScheduler#getDefault()
+     */
+    public void start()
+    {
+        start( MonitorScheduler.getDefault() );
+    }
+
+    /**
+     * This method is for starting the continous updating on the given
+     * {@link MonitorScheduler}. The first update is scheduled at a random
+     * point within the first update interval so that many monitors started at
+     * once do not query their servers in bursts.
+     *
+     * @param scheduler the scheduler to run the updates on
+     * @throws IllegalStateException if the scheduler has been shut down
+     */
+    public synchronized void start( MonitorScheduler scheduler )
+    {
+        if ( updateTask != null )
+        {
+            LOG.debug( "The monitor has already been started." );
+            return;
+        }
+        int interval = updateInterval;
+        if ( interval <= 0 )
+        {
+            AdaptiveInterval adaptive = adaptiveInterval;
+            interval = adaptive != null ? adaptive.getMinInterval() : 2000;
+        }
+        UpdateTask task = new UpdateTask();
+        // Scheduled first, so that a shut down scheduler leaves the monitor stopped
+        MonitorScheduler.Timeout pending = scheduler.scheduleJittered( task, interval );
+        this.updateInterval = interval;
+        this.scheduler = scheduler;
+        this.updateTask = task;
+        this.pendingUpdate = pending;
     }
 
     /**
      * This method overrides the setUpdateInterval-method that refuses to lower
-     * the interval to lower than 2000 and sets it to -1. This will cause the
-     * update thread to terminate.
+     * the interval to lower than 2000 and sets it to -1. Any scheduled update
+     * is cancelled at once and an update in progress will not be rescheduled.
      *
      * @see #setUpdateInterval(int ms)
      * @see #start()
      */
-    public void stop()
+    public synchronized void stop()
     {
         updateInterval = -1;
+        if ( pendingUpdate != null )
+        {
+            pendingUpdate.cancel();
+            pendingUpdate = null;
+        }
+        updateTask = null;
+    }
+
+    /**
+     * Finds the interval until the next regular update.
+     *
+     * @return the interval in milliseconds
+     */
+    private int nextInterval()
+    {
+        AdaptiveInterval adaptive = adaptiveInterval;
+        if ( adaptive != null )
+        {
+            return adaptive.next( activity );
+        }
+        return updateInterval;
+    }
+
+    /**
+     * Schedules the next run of the given task unless the monitor has been
+     * stopped or restarted in the meantime.
+     *
+     * @param task the task to reschedule
+     * @param delay the delay in milliseconds
+     */
+    private synchronized void reschedule( UpdateTask task, long delay )
+    {
+        if ( task == updateTask && updateInterval > 0 && scheduler.isRunning() )
+        {
+            pendingUpdate = scheduler.schedule( task, delay );
+        }
+        else
+        {
+            LOG.debug( "Update task death." );
+        }
     }
 
     /**
@@ -271,107 +469,132 @@ public class ServerMonitor
      * the data is checked to so if anything notable has happened since the last
      * update.
      *
+     * The server is queried without holding any lock, so concurrent callers
+     * never wait for each other's network round trips. Checking for events is
+     * serialised through a mailbox: whichever thread finds the mailbox idle
+     * processes all queued results, including those fetched by other threads.
+     * A result that was fetched before an already processed one is discarded.
+     *
      * @see OpenTTDEvent
      */
-    public final synchronized void update() throws JOTLException
+    public final void update() throws JOTLException
     {
-        currentUpdate = gameQuerier.getAllInformation();
-        checkForEvents();
+        MonitorUpdateEvent updating = new MonitorUpdateEvent();
+        updating.begin();
+        boolean succeeded = false;
+        try
+        {
+            long sequence = fetchSequence.incrementAndGet();
+            Game game;
+            try
+            {
+                game = gameQuerier.getAllInformation();
+            }
+            catch ( UnreachableHostException ex )
+            {
+                recordTimeout();
+                throw ex;
+            }
+            mailbox.add( new FetchedGame( sequence, game ) );
+            drainMailbox();
+            succeeded = true;
+        }
+        finally
+        {
+            updating.finish( gameQuerier.getServer(), succeeded );
+        }
     }
 
     /**
-     * This method is for checking if anything interesting has happened since
-     * last time this method was called.
+     * Publishes a state with one more timeout.
+     *
+     * @return the number of timeouts in a row
      */
-    private void checkForEvents()
+    private int recordTimeout()
     {
-        List<OpenTTDEvent> evts = new ArrayList<OpenTTDEvent>();
-        // Let's see if anything interesting has happened since last time
-        LOG.debug( "Let's check this new update for changes." );
-        boolean isSameGame = representsSameGame( lastUpdate, currentUpdate );
-        List<Company> lastList = ( lastUpdate != null ? lastUpdate.getClientDetails().getCompanies() : null );
-        List<Company> curList = currentUpdate.getClientDetails().getCompanies();
-
-        // Has a new game started?
-        OpenTTDEvent newgame = checkForNewGame( isSameGame, currentUpdate );
-        if ( newgame != null )
+        while ( true )
         {
-            int diff = currentUpdate.getServerDetails().getGameDate().compareTo( currentUpdate.getServerDetails().getStartDate() );
-            if ( diff < 0 )
+            MonitorState current = state.get();
+            MonitorState next = current.withTimeout();
+            if ( state.compareAndSet( current, next ) )
             {
-                // This is not a "new" game, but a game in progress
-                LOG.debug( "I found out a 'new game' was acually a game in progress." );
-                newgame = new OpenTTDEvent( OpenTTDEventType.GAME_IN_PROGRESS, Integer.valueOf( currentUpdate.getServerDetails().getGameDate().getYear() ) );
+                return next.getConsecutiveTimeouts();
             }
         }
-        OpenTTDEvent endgame = checkForEndGame( isSameGame );
+    }
 
-        // If a game ended we have to archive it
-        if ( endgame != null )
+    /**
+     * Publishes the state after a successful update.
+     *
+     * @param game the new game
+     * @param delta the difference from the previous game, or null
+     */
+    private void publishUpdate( Game game, GameDelta delta )
+    {
+        long now = clock.millis();
+        while ( true )
         {
-            archiveGame();
+            MonitorState current = state.get();
+            if ( state.compareAndSet( current, current.withUpdate( game, delta, detector.isPaused(), now ) ) )
+            {
+                return;
+            }
         }
+    }
 
-        if ( newgame != null )
+    /**
+     * Processes queued query results until the mailbox is empty. Only one
+     * thread at a time gets past the work counter, which makes it the single
+     * writer of the detection state.
+     */
+    private void drainMailbox()
+    {
+        if ( mailboxWork.getAndIncrement() != 0 )
         {
-            // This is a new game
-            if ( endgame != null )
-            {
-                evts.add( endgame );
-            }
-            evts.add( newgame );
-            // Did any companies start before we discovered the new game?
-            // Did any clients connect before we discovered the new game?
-            OpenTTDEvent newcomers = checkForNewcomers( curList );
-            if ( newcomers != null )
+            // Another thread is draining and will pick up our result
+            return;
+        }
+        int missed = 1;
+        do
+        {
+            FetchedGame fetched;
+            while ( ( fetched = mailbox.poll() ) != null )
             {
-                evts.add( newcomers );
-                // If more than 1 has started someone is in the lead.
-                if ( newbies.length > 1 )
+                if ( fetched.sequence < lastProcessedSequence )
                 {
-                    evts.add( new OpenTTDEvent( OpenTTDEventType.NEW_LEADER, curList.get( 0 ) ) );
+                    LOG.debug( "Discarding a query result that was overtaken by a newer one." );
+                    continue;
                 }
+                lastProcessedSequence = fetched.sequence;
+                currentUpdate = fetched.game;
+                checkForEvents();
             }
+            missed = mailboxWork.addAndGet( -missed );
         }
-        else
+        while ( missed != 0 );
+    }
+
+    /**
+     * This method is for checking if anything interesting has happened since
+     * last time this method was called.
+     */
+    private void checkForEvents()
+    {
+        List<OpenTTDEvent> evts = new ArrayList<OpenTTDEvent>();
+        // Let's see if anything interesting has happened since last time
+        LOG.debug( "Let's check this new update for changes." );
+        eventsDetected = false;
+        GameDelta delta = detector.detect( gameQuerier.getServer(), lastUpdate, currentUpdate, evts );
+        boolean isSameGame = delta != null;
+
+        // If a game ended we have to archive it
+        if ( !isSameGame && lastUpdate != null )
         {
-            // A new game didn't start but we still have to see what
-            // happens.
-            // Has any type of new rail been made available?
-            OpenTTDEvent railEvent = checkForNewRail( currentUpdate.getServerDetails().getGameDate().getYear() );
-
-            // Do we have a new leader?
-            OpenTTDEvent newLeader = checkForNewLeader( lastList, curList );
-            // Do we have any new companies?
-            OpenTTDEvent newcomers = checkForNewcomers( lastList, curList );
-            // Has the game been paused/unpaused?
-            OpenTTDEvent pause = checkForPauseUnpaused( isSameGame );
-            // Has any company been removed
-            List<OpenTTDEvent> removedEvents = checkForRemovedCompanies( isSameGame, lastUpdate.getClientDetails().getCompanies(), currentUpdate.getClientDetails().getCompanies() );
-
-            // Add the events to the queue
-            if ( railEvent != null )
-            {
-                evts.add( railEvent );
-            }
-            if ( newLeader != null )
-            {
-                evts.add( newLeader );
-            }
-            if ( newcomers != null )
-            {
-                evts.add( newcomers );
-            }
-            if ( removedEvents != null )
-            {
-                evts.addAll( removedEvents );
-            }
-            if ( pause != null )
-            {
-                evts.add( pause );
-            }
+            archiveGame();
         }
 
+        publishUpdate( currentUpdate, delta );
+        activity = classifyActivity( isSameGame );
         if ( evts.size() > 0 )
         {
             fireEvents( evts );
@@ -380,98 +603,33 @@ public class ServerMonitor
         {
             LOG.debug( "No new events were found." );
         }
+        fireBatch( Collections.unmodifiableList( evts ) );
         doFinalBookkeeping();
     }
 
-    private int compareDates( Game lastUpdate, Game currentUpdate )
-    {
-        return lastUpdate.getServerDetails().getGameDate().compareTo( currentUpdate.getServerDetails().getGameDate() );
-    }
-
     /**
-     * This method will determine whether any {@link Company}'s have been
-     * removed. Normally these {@link OpenTTDEvent}s will only be generated if a
-     * server administrator removes {@link Company} by force.
+     * This method determines how active the server was during this update.
+     * Must be called before the final bookkeeping.
      *
      * @param isSameGame whether this is the same game as the last query or not
-     * @param oldList the {@link List} of {@link Company}'s from last query
-     * @param newList the {@link List} of {@link Company}'s from the current
-     * query
-     * @return a {@link List} of {@link OpenTTDEvent}s of type COMPANY_REMOVED
+     * @return the activity
      */
-    private List<OpenTTDEvent> checkForRemovedCompanies( boolean isSameGame, List<Company> oldList, List<Company> newList )
+    private AdaptiveInterval.Activity classifyActivity( boolean isSameGame )
     {
-        List<OpenTTDEvent> evts = new ArrayList<OpenTTDEvent>();
-        if ( isSameGame && ( oldList.size() > newList.size() ) )
+        if ( eventsDetected || ( isSameGame && compareDates( lastUpdate, currentUpdate ) < 0 ) )
         {
-            for ( Company com : oldList )
-            {
-                if ( !newList.contains( com ) )
-                {
-                    evts.add( new OpenTTDEvent( OpenTTDEventType.COMPANY_REMOVED, com ) );
-                }
-            }
+            return AdaptiveInterval.Activity.BUSY;
         }
-        return evts;
+        if ( detector.isPaused() || currentUpdate.getServerDetails().getNumberOfActiveClients() == 0 )
+        {
+            return AdaptiveInterval.Activity.IDLE;
+        }
+        return AdaptiveInterval.Activity.STEADY;
     }
 
-    /**
-     * This method will determine whether the game is running or if it has been
-     * put on hold due to no clients being connected.
-     *
-     * @param sameGame whether this is the same game as the last query or not
-     * @return an {@link OpenTTDEvent} of type pause or unpause
-     */
-    private OpenTTDEvent checkForPauseUnpaused( boolean sameGame )
+    private int compareDates( Game lastUpdate, Game currentUpdate )
     {
-        OpenTTDEvent evt = null;
-        // If it isn't the same game this is pointless.
-        if ( sameGame )
-        {
-            if ( paused )
-            {
-                LOG.debug( "Has the game started again?" );
-                if ( compareDates( lastUpdate, currentUpdate ) > 0 )
-                {
-                    if ( --pauseCounter == 0 )
-                    {
-                        LOG.debug( "Decremented the pause test counter to {}.", pauseCounter );
-                        LOG.debug( "Yes it has!" );
-                        paused = false;
-                        unpauseCounter = 0;
-                        evt = new OpenTTDEvent( OpenTTDEventType.UNPAUSED, Integer.valueOf( currentUpdate.getServerDetails().getGameDate().getYear() ) );
-                    }
-                }
-                LOG.debug( "No it hasn't." );
-            }
-            else
-            {
-                LOG.debug( "Has the game paused?" );
-                if ( compareDates( lastUpdate, currentUpdate ) == 0 )
-                {
-                    if ( ++unpauseCounter == 3 )
-                    {
-                        LOG.debug( "Incremented the pause test counter to {}.", unpauseCounter );
-                        LOG.debug( "Yes it has!" );
-                        paused = true;
-                        pauseCounter = 1;
-                        evt = new OpenTTDEvent( OpenTTDEventType.PAUSED, Integer.valueOf( currentUpdate.getServerDetails().getGameDate().getYear() ) );
-                    }
-                }
-                else
-                {
-                    LOG.debug( "No it hasn't. Resetting the pauseCounter." );
-                    unpauseCounter = 0;
-                }
-            }
-        }
-        else
-        {
-            // if a new game has started
-            pauseCounter = 0;
-            paused = false;
-        }
-        return evt;
+        return lastUpdate.getServerDetails().getGameDate().compareTo( currentUpdate.getServerDetails().getGameDate() );
     }
 
     /**
@@ -483,7 +641,7 @@ public class ServerMonitor
      * @param curUpdate the new update
      * @return whether they are equal
      */
-    private boolean representsSameGame( Game lastUpdate, Game curUpdate )
+    static boolean representsSameGame( Game lastUpdate, Game curUpdate )
     {
         // Is the first game?
         if ( lastUpdate == null )
@@ -538,7 +696,7 @@ public class ServerMonitor
             return false;
         }
         // The current date must be is at least equal
-        if ( sriOld.getGameDate().compareTo( sriNew.getGameDate() ) < 0 )
+        if ( sriOld.getGameDate().compareTo( sriNew.getGameDate() ) > 0 )
         {
             LOG.debug( "Comparing games: new game has lower game date than the old game." );
             return false;
@@ -571,13 +729,7 @@ public class ServerMonitor
 
     private void archiveGame()
     {
-        // Make sure the earlierGames-list exists.
-        if ( earlierGames == null )
-        {
-            earlierGames = new ArrayList<Game>();
-        }
-        // Remember it and insert it into the bottom of the list. :)
-        earlierGames.add( 0, lastUpdate );
+        history.add( lastUpdate );
     }
 
     /**
@@ -590,233 +742,323 @@ public class ServerMonitor
         // Make sure that when the next update occurs
         // lastUpdate isn't used.
         currentUpdate = null;
+        Server server = gameQuerier.getServer();
+        lastCheckpoint = new MonitorCheckpoint( server.getIpAddress(), server.getPort(), lastUpdate, detector.isPaused(), detector.getPauseCounter(), detector.getUnpauseCounter(), detector.isElectricRail(), detector.isMonoRail(), detector.isMaglev(), state.get().getLastSuccess(), 0 );
     }
 
     /**
-     * This method will check if a game has ended and create an
-     * {@link OpenTTDEvent} if it has.
+     * Records that an event was detected and tells whether anyone wants it.
+     * Events nobody subscribes to are never constructed.
      *
-     * @param sameGame The games are not equal
-     * @return the {@link OpenTTDEvent} of type GAME_END or null
-     * @see OpenTTDEventType
+     * @param type the type of the detected event
+     * @return whether any listener subscribes to the type
      */
-    private OpenTTDEvent checkForEndGame( boolean sameGame )
+    private boolean detected( OpenTTDEventType type )
     {
-        OpenTTDEvent evt = null;
-        // If sameGame == false there are two reasons:
-        // The games are not equal or lastUpdate == null
-        // So if lastUpdate IS NOT null that means a game ended.
-        if ( !sameGame && lastUpdate != null )
-        {
-            evt = new OpenTTDEvent( OpenTTDEventType.GAME_END, Integer.valueOf( lastUpdate.getServerDetails().getGameDate().getYear() ) );
-        }
-        return evt;
+        eventsDetected = true;
+        return isSubscribed( type );
     }
 
     /**
-     * This method will check if a new game has started.
+     * Finds out whether any listener subscribes to the given type of events.
      *
-     * @param samegame whether or not this {@link JOTLQuerier} has data from the
-     * same game as the previous one
-     * @param currentUpdate the current {@link JOTLQuerier}
-     * @return an {@link OpenTTDEvent} of type GAME_START or null
-     * @see OpenTTDEventType
+     * @param type the type of event
+     * @return whether at least one listener subscribes to the type
      */
-    private OpenTTDEvent checkForNewGame( boolean samegame, Game currentUpdate )
+    public boolean isSubscribed( OpenTTDEventType type )
     {
-        // Check to find out whether a new game has started.
-        OpenTTDEvent evt = null;
-        if ( !samegame )
+        return listenerTable[type.ordinal()].length > 0 || !batchListeners.isEmpty();
+    }
+
+    /**
+     * This is a convenience method for firing {@link OpenTTDEvent}s to any and
+     * all listeners.
+     *
+     * @param evt the event to fire
+     */
+    private void fireEvents( List<OpenTTDEvent> evts )
+    {
+        LOG.debug( "Firing events: {}.", evts );
+        for ( OpenTTDEvent evt : evts )
         {
-            // This means a new game has started! :)
-            evt = new OpenTTDEvent( OpenTTDEventType.GAME_START, Integer.valueOf( currentUpdate.getServerDetails().getStartDate().getYear() ) );
-            // Let's reset some useful variables
-            electricRail = false;
-            monoRail = false;
-            maglev = false;
+            fireEvent( evt );
         }
-        return evt;
     }
 
     /**
-     * This method will return an {@link OpenTTDEvent} with information on what
-     * new {@link Company}s have come into play. Note: this method should only
-     * be used when a new game has started.
-     *
-     * @param curList the {@link List} of current {@link Company}'s
-     * @return an {@link OpenTTDEvent} of type COMPANY_NEW or null
+     * This method is for firing a {@link OpenTTDEvent} to all listeners
+     * subscribing to its type.
      */
-    private OpenTTDEvent checkForNewcomers( List<Company> curList )
+    private void fireEvent( OpenTTDEvent evt )
     {
-        // A new game has been started. Has anyone started playing?
-        OpenTTDEvent evt = null;
-        if ( curList.size() > 0 )
+        for ( OpenTTDListener otl : listenerTable[evt.getType().ordinal()] )
         {
-            evt = new OpenTTDEvent( OpenTTDEventType.COMPANY_NEW, (Object[]) curList.toArray( new Company[ curList.size() ] ) );
-            this.newbies = curList.toArray( new Company[ curList.size() ] );
+            LOG.debug( "'{}' has been notified of event: '{}'.", otl, evt );
+            DispatchEvent dispatch = new DispatchEvent();
+            dispatch.begin();
+            try
+            {
+                otl.eventOccured( evt );
+            }
+            catch ( RuntimeException ex )
+            {
+                LOG.error( String.format( "Listener '%s' failed on event '%s'.", otl, evt ), ex );
+            }
+            dispatch.finish( otl, evt.getType() );
         }
-        return evt;
     }
 
     /**
-     * This method will return an {@link OpenTTDEvent} with information on what
-     * new {@link Company}s have come into play. Note: this method should only
-     * be used when a new game has started.
+     * This method hands all events of an update to the batch listeners.
      *
-     * @param lastList the {@link List} of {@link Company}'s from the last
-     * {@link JOTLQuerier}
-     * @param curList the {@link List} of current {@link Company}'s
-     * @return an {@link OpenTTDEvent} of type COMPANY_NEW or null
+     * @param evts the immutable list of events
      */
-    private OpenTTDEvent checkForNewcomers( List<Company> lastList, List<Company> curList )
+    private void fireBatch( List<OpenTTDEvent> evts )
     {
-        // Do we have any newcomers?
-        OpenTTDEvent evt = null;
-        if ( curList.size() > lastList.size() )
+        if ( batchListeners.isEmpty() )
         {
-            boolean newcomers = false;
-            List<Company> n00bs = new ArrayList<Company>();
-            for ( Company c : curList )
+            return;
+        }
+        MonitorState current = state.get();
+        for ( BatchOpenTTDListener listener : batchListeners )
+        {
+            DispatchEvent dispatch = new DispatchEvent();
+            dispatch.begin();
+            try
             {
-                if ( !lastList.contains( c ) )
-                {
-                    newcomers = true;
-                    n00bs.add( c );
-                }
+                listener.eventsOccured( current, evts );
             }
-            if ( newcomers )
+            catch ( RuntimeException ex )
             {
-                evt = new OpenTTDEvent( OpenTTDEventType.COMPANY_NEW, (Object[]) n00bs.toArray( new Company[ n00bs.size() ] ) );
+                LOG.error( String.format( "Batch listener '%s' failed on events '%s'.", listener, evts ), ex );
             }
+            dispatch.finish( listener, "BATCH" );
         }
-        return evt;
     }
 
     /**
-     * This method will determine whether a new company has climbed to the top
-     * and return a {@link OpenTTD}-new-leader-event.
+     * Method for registering a listener receiving all events of an update at
+     * once. Batch listeners subscribe to all types of events.
      *
-     * @param lastList the {@link List} of {@link Company}'s from the last
-     * {@link JOTLQuerier}
-     * @param curList the {@link List} of current {@link Company}'s
-     * @return an {@link OpenTTD} of type NEW_LEADER or null
+     * @param listener the listener to add
      */
-    private OpenTTDEvent checkForNewLeader( List<Company> lastList, List<Company> curList )
+    public final void addBatchListener( BatchOpenTTDListener listener )
     {
-        // Has a new leader climbed to the top?
-        if ( lastList.size() > 0 && curList.size() > 0 && ( !lastList.get( 0 ).equals( curList.get( 0 ) ) ) )
+        if ( listener != null )
         {
-            return new OpenTTDEvent( OpenTTDEventType.NEW_LEADER, curList.get( 0 ) );
+            LOG.debug( "Adding batch listener {}.", listener );
+            batchListeners.add( listener );
         }
-        return null;
     }
 
     /**
-     * This method will determine whether or not a new type of rail has been
-     * made available and create an {@link OpenTTD}-new-railtype-event if it
-     * has.
+     * Method for deregistering a batch listener.
+     *
+     * @param listener the listener to remove
+     */
+    public final void removeBatchListener( BatchOpenTTDListener listener )
+    {
+        batchListeners.remove( listener );
+    }
+
+    /**
+     * Method for registering listeners for any events.
      *
-     * @param currentYear the current year will determine what is available
-     * @return an {@link OpenTTD}-new-railtype-event or null
+     * @param otls the listener to add
      */
-    private OpenTTDEvent checkForNewRail( int currentYear )
+    public final void addListeners( OpenTTDListener... otls )
     {
-        // Has any new types of rail been made available?
-        // Also make sure it isn't made available again.
-        OpenTTDEvent evt = null;
-        if ( currentYear <= 2022 )
+        if ( otls == null )
         {
-            if ( currentYear == 2022 && !maglev )
-            {
-                evt = new OpenTTDEvent( OpenTTDEventType.MAGLEV_AVAILABLE );
-                maglev = true;
-            }
-            else if ( currentYear == 1999 && !monoRail )
+            return;
+        }
+        for ( OpenTTDListener otl : otls )
+        {
+            addListener( otl, EnumSet.allOf( OpenTTDEventType.class ) );
+        }
+    }
+
+    /**
+     * Method for registering a listener for some types of events only. The
+     * listener will not be called for any other events, and events nobody
+     * subscribes to are not even created. Adding a listener that is already
+     * registered replaces its subscription.
+     *
+     * @param otl the listener to add
+     * @param types the types of events to notify the listener of
+     */
+    public final void addListener( OpenTTDListener otl, EnumSet<OpenTTDEventType> types )
+    {
+        if ( otl == null )
+        {
+            LOG.debug( "A 'null' listener was attempted added." );
+            return;
+        }
+        LOG.debug( "Adding listener {} for {}.", otl, types );
+        synchronized ( subscriptions )
+        {
+            removeSubscription( otl );
+            subscriptions.add( new Subscription( otl, EnumSet.copyOf( types ) ) );
+            listenerTable = buildListenerTable( subscriptions );
+        }
+    }
+
+    /**
+     * Method for deregistering listeners.
+     *
+     * @param otls the listeners to remove
+     */
+    public final void removeListeners( OpenTTDListener... otls )
+    {
+        synchronized ( subscriptions )
+        {
+            for ( OpenTTDListener otl : otls )
             {
-                evt = new OpenTTDEvent( OpenTTDEventType.MONORAIL_AVAILABLE );
-                monoRail = true;
+                removeSubscription( otl );
             }
-            else if ( currentYear == 1965 && !electricRail )
+            listenerTable = buildListenerTable( subscriptions );
+        }
+    }
+
+    private void removeSubscription( OpenTTDListener otl )
+    {
+        for ( Iterator<Subscription> it = subscriptions.iterator(); it.hasNext(); )
+        {
+            if ( it.next().listener == otl )
             {
-                evt = new OpenTTDEvent( OpenTTDEventType.ELECTRIC_AVAILABLE );
-                electricRail = true;
+                it.remove();
             }
         }
-        return evt;
     }
 
     /**
-     * This is a convenience method for firing {@link OpenTTDEvent}s to any and
-     * all listeners.
+     * Builds the table of listeners per event type.
      *
-     * @param evt the event to fire
+     * @param subscriptions the current subscriptions
+     * @return the listeners for each event type, indexed by ordinal
      */
-    private void fireEvents( List<OpenTTDEvent> evts )
+    private static OpenTTDListener[][] buildListenerTable( List<Subscription> subscriptions )
     {
-        LOG.debug( "Firing events: {}.", evts );
-        if ( listeners != null )
+        OpenTTDEventType[] types = OpenTTDEventType.values();
+        OpenTTDListener[][] table = new OpenTTDListener[ types.length ][];
+        List<OpenTTDListener> forType = new ArrayList<OpenTTDListener>();
+        for ( OpenTTDEventType type : types )
         {
-            for ( OpenTTDEvent evt : evts )
+            forType.clear();
+            for ( Subscription sub : subscriptions )
             {
-                fireEvent( evt );
+                if ( sub.types.contains( type ) )
+                {
+                    forType.add( sub.listener );
+                }
             }
+            table[type.ordinal()] = forType.toArray( new OpenTTDListener[ forType.size() ] );
         }
+        return table;
     }
 
     /**
-     * This method is for firing a {@link OpenTTDEvent} to any and all
-     * listeners.
+     * A listener and the event types it subscribes to.
      */
-    private void fireEvent( OpenTTDEvent evt )
+    private static final class Subscription
     {
-        for ( OpenTTDListener otl : listeners )
+
+        private final OpenTTDListener listener;
+        private final EnumSet<OpenTTDEventType> types;
+
+        Subscription( OpenTTDListener listener, EnumSet<OpenTTDEventType> types )
         {
-            LOG.debug( "'{}' has been notified of event: '{}'.", otl, evt );
-            otl.eventOccured( evt );
+            this.listener = listener;
+            this.types = types;
         }
     }
 
     /**
-     * Method for registering listeners for any events.
-     *
-     * @param otls the listener to add
+     * The task doing one scheduled update and rescheduling itself. If an update
+     * times out the next one is done at a slower rate, and after too many
+     * timeouts in a row the monitor gives up and notifies its listeners.
      */
-    public final void addListeners( OpenTTDListener... otls )
+    private final class UpdateTask implements Runnable
     {
-        if ( listeners == null )
+
+        private static final int maxTimeouts = 12;
+        private static final int slowInterval = 5000;
+        private boolean lastUpdateFailed = false;
+
+        @Override
+        public void run()
         {
-            listeners = new ArrayList<OpenTTDListener>();
+            if ( updateInterval <= 0 )
+            {
+                LOG.debug( "Update task death." );
+                return;
+            }
+            try
+            {
+                update();
+                if ( lastUpdateFailed )
+                {
+                    LOG.debug( "5000 millisecond update rate fallback succeeded. Returning to " + updateInterval + "." );
+                    lastUpdateFailed = false;
+                }
+            }
+            catch ( UnreachableHostException ex )
+            {
+                onTimeout( state.get().getConsecutiveTimeouts() );
+            }
+            catch ( JOTLException otx )
+            {
+                if ( otx.getMessage() != null && otx.getMessage().contains( "timeout" ) )
+                {
+                    onTimeout( recordTimeout() );
+                }
+                else
+                {
+                    LOG.debug( "Update failed.", otx );
+                }
+            }
+            catch ( RuntimeException ex )
+            {
+                LOG.error( "Unexpected error during update.", ex );
+            }
+            reschedule( this, lastUpdateFailed ? slowInterval : nextInterval() );
         }
-        for ( OpenTTDListener otl : otls )
+
+        private void onTimeout( int timeouts )
         {
-            if ( otl != null )
+            if ( timeouts < maxTimeouts )
             {
-                LOG.debug( "Adding listener {}.", otl );
-                listeners.add( otl );
+                LOG.debug( "Timeout {} occured. A new game may be loading.", timeouts );
+                lastUpdateFailed = true;
             }
             else
             {
-                LOG.debug( "A 'null' listener was attempted added." );
+                LOG.debug( "The maximum number of timeouts in a row({}) has been reached. Server may have gone down.", maxTimeouts );
+                stop();
+                if ( isSubscribed( OpenTTDEventType.LOST_CONNECTION ) )
+                {
+                    OpenTTDEvent lost = new OpenTTDEvent( gameQuerier.getServer(), OpenTTDEventType.LOST_CONNECTION );
+                    fireEvent( lost );
+                    fireBatch( Collections.singletonList( lost ) );
+                }
+                LOG.debug( "Manual update mode has been set and any and all listeners have been notified." );
             }
         }
     }
 
     /**
-     * Method for deregistering listeners.
-     *
-     * @param otls the listeners to remove
+     * A query result together with the order in which its query was started.
      */
-    public final void removeListeners( OpenTTDListener... otls )
+    private static final class FetchedGame
     {
-        if ( listeners != null )
+
+        private final long sequence;
+        private final Game game;
+
+        FetchedGame( long sequence, Game game )
         {
-            for ( OpenTTDListener otl : otls )
-            {
-                if ( listeners.contains( otl ) )
-                {
-                    listeners.remove( otl );
-                }
-            }
+            this.sequence = sequence;
+            this.game = game;
         }
     }
 }
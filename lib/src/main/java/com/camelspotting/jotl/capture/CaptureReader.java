@@ -0,0 +1,266 @@
+package com.camelspotting.jotl.capture;
+
+import com.camelspotting.jotl.domain.Server;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a capture written by {@link PacketCapture}. The index is loaded when
+ * the reader is opened, after which the datagrams of one server in a span of
+ * time are found by binary search and read from the capture file directly.
+ * Entries cut short by a crash are ignored.
+ */
+public class CaptureReader implements Closeable
+{
+
+    private final FileChannel data;
+    private final long dataSize;
+    /**
+     * The servers, by id
+     */
+    private final List<Server> servers = new ArrayList<Server>();
+    /**
+     * The receive times of the datagrams of each server, by id, in the order
+     * they were recorded
+     */
+    private final List<long[]> timestamps = new ArrayList<long[]>();
+    /**
+     * The offsets of the datagrams of each server, by id
+     */
+    private final List<long[]> offsets = new ArrayList<long[]>();
+    private final List<Integer> counts = new ArrayList<Integer>();
+    /**
+     * The offsets of all datagrams, in the order they were recorded
+     */
+    private long[] all = new long[ 256 ];
+    private int size;
+
+    /**
+     * Opens a capture.
+     *
+     * @param file the capture file, with its index beside it
+     * @throws IOException if the files could not be read or are not a capture
+     */
+    public CaptureReader( File file ) throws IOException
+    {
+        this.data = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate( 8 );
+            data.read( header, 0 );
+            header.flip();
+            if ( header.remaining() < 8 || header.getInt() != PacketCapture.DATA_MAGIC || header.getInt() != PacketCapture.VERSION )
+            {
+                throw new IOException( String.format( "'%s' is not a capture.", file ) );
+            }
+            this.dataSize = data.size();
+            loadIndex( PacketCapture.indexFile( file ) );
+        }
+        catch ( IOException ex )
+        {
+            data.close();
+            throw ex;
+        }
+    }
+
+    private void loadIndex( File file ) throws IOException
+    {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try
+        {
+            if ( in.readInt() != PacketCapture.INDEX_MAGIC || in.readInt() != PacketCapture.VERSION )
+            {
+                throw new IOException( String.format( "'%s' is not a capture index.", file ) );
+            }
+            while ( true )
+            {
+                int tag = in.read();
+                if ( tag == PacketCapture.SERVER_TAG )
+                {
+                    int id = in.readInt();
+                    byte[] ip = new byte[ in.readUnsignedShort() ];
+                    in.readFully( ip );
+                    int port = in.readUnsignedShort();
+                    if ( id != servers.size() )
+                    {
+                        throw new IOException( String.format( "Server %d out of order in '%s'.", id, file ) );
+                    }
+                    servers.add( new Server( new String( ip, StandardCharsets.UTF_8 ), port, null ) );
+                    timestamps.add( new long[ 16 ] );
+                    offsets.add( new long[ 16 ] );
+                    counts.add( 0 );
+                }
+                else if ( tag == PacketCapture.PACKET_TAG )
+                {
+                    int id = in.readInt();
+                    long timestamp = in.readLong();
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    if ( offset + length > dataSize )
+                    {
+                        // The capture file was cut short
+                        break;
+                    }
+                    add( id, timestamp, offset );
+                }
+                else
+                {
+                    break;
+                }
+            }
+        }
+        catch ( EOFException ex )
+        {
+            // The last entry was cut short
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private void add( int id, long timestamp, long offset )
+    {
+        int count = counts.get( id );
+        long[] ts = timestamps.get( id );
+        long[] os = offsets.get( id );
+        if ( count == ts.length )
+        {
+            ts = Arrays.copyOf( ts, count * 2 );
+            os = Arrays.copyOf( os, count * 2 );
+            timestamps.set( id, ts );
+            offsets.set( id, os );
+        }
+        ts[count] = timestamp;
+        os[count] = offset;
+        counts.set( id, count + 1 );
+        if ( size == all.length )
+        {
+            all = Arrays.copyOf( all, size * 2 );
+        }
+        all[size++] = offset;
+    }
+
+    /**
+     * Getter for all servers in the capture.
+     *
+     * @return the servers, in the order they were first recorded
+     */
+    public List<Server> getServers()
+    {
+        return new ArrayList<Server>( servers );
+    }
+
+    /**
+     * Getter for the number of datagrams in the capture.
+     *
+     * @return the number of datagrams
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Reads a datagram by its position in the capture.
+     *
+     * @param i the position, 0 for the first recorded datagram
+     * @return the datagram
+     * @throws IOException if reading fails
+     */
+    public CapturedPacket get( int i ) throws IOException
+    {
+        if ( i < 0 || i >= size )
+        {
+            throw new IndexOutOfBoundsException( String.format( "Index: %d, size: %d", i, size ) );
+        }
+        return readAt( all[i] );
+    }
+
+    /**
+     * Reads the datagrams of one server received in a span of time. Datagrams
+     * are assumed to be recorded in the order they were received.
+     *
+     * @param server the server
+     * @param from the earliest receive time, inclusive
+     * @param to the latest receive time, inclusive
+     * @return the datagrams, oldest first
+     * @throws IOException if reading fails
+     */
+    public List<CapturedPacket> read( Server server, long from, long to ) throws IOException
+    {
+        List<CapturedPacket> packets = new ArrayList<CapturedPacket>();
+        int id = servers.indexOf( server );
+        if ( id < 0 )
+        {
+            return packets;
+        }
+        int count = counts.get( id );
+        long[] ts = timestamps.get( id );
+        long[] os = offsets.get( id );
+        int i = Arrays.binarySearch( ts, 0, count, from );
+        if ( i < 0 )
+        {
+            i = -i - 1;
+        }
+        // Step back to the first of equal receive times
+        while ( i > 0 && ts[i - 1] >= from )
+        {
+            i--;
+        }
+        for ( ; i < count && ts[i] <= to; i++ )
+        {
+            packets.add( readAt( os[i] ) );
+        }
+        return packets;
+    }
+
+    private CapturedPacket readAt( long offset ) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate( PacketCapture.PACKET_HEADER );
+        readFully( header, offset );
+        header.flip();
+        if ( header.get() != PacketCapture.PACKET_TAG )
+        {
+            throw new IOException( String.format( "No datagram at offset %d.", offset ) );
+        }
+        Server server = servers.get( header.getInt() );
+        long timestamp = header.getLong();
+        int type = header.get() & 0xFF;
+        int version = header.get() & 0xFF;
+        ByteBuffer datagram = ByteBuffer.allocate( header.getInt() );
+        readFully( datagram, offset + header.capacity() );
+        return new CapturedPacket( server, timestamp, type, version, datagram.array() );
+    }
+
+    private void readFully( ByteBuffer buffer, long position ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            int n = data.read( buffer, position );
+            if ( n < 0 )
+            {
+                throw new EOFException( String.format( "Capture ends at %d.", position ) );
+            }
+            position += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        data.close();
+    }
+}
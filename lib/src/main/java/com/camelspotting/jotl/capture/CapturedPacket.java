@@ -0,0 +1,84 @@
+package com.camelspotting.jotl.capture;
+
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.udp.PacketType;
+
+/**
+ * One datagram read back from a capture.
+ */
+public final class CapturedPacket
+{
+
+    private final Server server;
+    private final long timestamp;
+    private final int type;
+    private final int version;
+    private final byte[] data;
+
+    CapturedPacket( Server server, long timestamp, int type, int version, byte[] data )
+    {
+        this.server = server;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.version = version;
+        this.data = data;
+    }
+
+    /**
+     * Getter for the server that sent the datagram.
+     *
+     * @return the server, without a resolved address
+     */
+    public Server getServer()
+    {
+        return server;
+    }
+
+    /**
+     * Getter for when the datagram was received.
+     *
+     * @return milliseconds since the epoch
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /**
+     * Getter for the type of the datagram.
+     *
+     * @return the type
+     * @throws IllegalArgumentException if the type is unknown
+     */
+    public PacketType getType()
+    {
+        return PacketType.fromInt( type );
+    }
+
+    /**
+     * Getter for the OpenTTD UDP protocol version of the datagram.
+     *
+     * @return the version
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Getter for the datagram as it was received, e.g. for the
+     * {@link com.camelspotting.jotl.udp.UDPPacketParser}.
+     *
+     * @return the bytes, not copied
+     */
+    public byte[] getData()
+    {
+        return data;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "CapturedPacket: %s, timestamp=%d, type=%d, version=%d, %d bytes", server, timestamp, type, version, data.length );
+    }
+}
@@ -0,0 +1,253 @@
+package com.camelspotting.jotl.capture;
+
+import com.camelspotting.jotl.domain.Server;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records every datagram received by the queriers it is given to, for reading
+ * back with a {@link CaptureReader}:
+ *
+ * <pre>
+ * PacketCapture capture = new PacketCapture( new File( "servers.cap" ) );
+ * querier.setCapture( capture );
+ * ...
+ * capture.close();
+ * </pre>
+ *
+ * The datagrams are appended to the capture file, and an index of the
+ * servers and of when and where each datagram was written goes to a file
+ * beside it with the suffix {@value #INDEX_SUFFIX}. Both are written
+ * through buffers, so recording a datagram is normally a copy into memory.
+ * <p>
+ * Capture file: the magic "JOTP" and a version, then records starting with a
+ * tag. A server record holds the server id, its IP address and port. A
+ * packet record holds the server id, the receive time in milliseconds since
+ * the epoch, the packet type, the protocol version, the length and the
+ * datagram.
+ * <p>
+ * Index file: the magic "JOTI" and a version, then the same server records
+ * and, for every packet, the server id, the receive time, and the offset and
+ * length of the packet record in the capture file.
+ */
+public class PacketCapture implements Closeable
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( PacketCapture.class );
+    static final int DATA_MAGIC = 0x4A4F5450;
+    static final int INDEX_MAGIC = 0x4A4F5449;
+    static final int VERSION = 1;
+    static final byte SERVER_TAG = 'S';
+    static final byte PACKET_TAG = 'P';
+    /**
+     * The size of a packet record without the datagram
+     */
+    static final int PACKET_HEADER = 1 + 4 + 8 + 1 + 1 + 4;
+    /**
+     * The suffix of the index file
+     */
+    public static final String INDEX_SUFFIX = ".idx";
+    private final File file;
+    private final FileChannel data;
+    private final FileChannel index;
+    private final ByteBuffer dataBuffer = ByteBuffer.allocateDirect( 64 * 1024 );
+    private final ByteBuffer indexBuffer = ByteBuffer.allocateDirect( 16 * 1024 );
+    /**
+     * The id of every server recorded so far
+     */
+    private final Map<Server, Integer> servers = new HashMap<Server, Integer>();
+    /**
+     * The number of bytes flushed to the capture file
+     */
+    private long flushed;
+    private long packets;
+    private boolean failed;
+    private boolean closed;
+
+    /**
+     * Creates a capture, replacing any existing capture in the file.
+     *
+     * @param file the capture file
+     * @throws IOException if the files could not be created
+     */
+    public PacketCapture( File file ) throws IOException
+    {
+        this.file = file;
+        this.data = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+        this.index = FileChannel.open( indexFile( file ).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+        dataBuffer.putInt( DATA_MAGIC ).putInt( VERSION );
+        indexBuffer.putInt( INDEX_MAGIC ).putInt( VERSION );
+    }
+
+    static File indexFile( File file )
+    {
+        return new File( file.getPath() + INDEX_SUFFIX );
+    }
+
+    /**
+     * Records a datagram received now. Failures are logged once, after which
+     * nothing more is recorded, so a full disk never breaks the querying.
+     *
+     * @param server the server that sent the datagram
+     * @param datagram the datagram
+     */
+    public void record( Server server, byte[] datagram )
+    {
+        record( server, System.currentTimeMillis(), datagram );
+    }
+
+    /**
+     * Records a datagram.
+     *
+     * @param server the server that sent the datagram
+     * @param timestamp when it was received, in milliseconds since the epoch
+     * @param datagram the datagram
+     */
+    public synchronized void record( Server server, long timestamp, byte[] datagram )
+    {
+        if ( closed || failed )
+        {
+            return;
+        }
+        try
+        {
+            Integer id = servers.get( server );
+            if ( id == null )
+            {
+                id = servers.size();
+                servers.put( server, id );
+                byte[] ip = String.valueOf( server.getIpAddress() ).getBytes( StandardCharsets.UTF_8 );
+                writeServer( dataBuffer, data, id, ip, server.getPort() );
+                writeServer( indexBuffer, index, id, ip, server.getPort() );
+            }
+            ensure( dataBuffer, data, PACKET_HEADER + datagram.length );
+            long offset = flushed + dataBuffer.position();
+            dataBuffer.put( PACKET_TAG ).putInt( id ).putLong( timestamp );
+            dataBuffer.put( datagram.length > 2 ? datagram[2] : -1 ).put( datagram.length > 3 ? datagram[3] : -1 );
+            dataBuffer.putInt( datagram.length );
+            if ( datagram.length > dataBuffer.remaining() )
+            {
+                // Larger than the buffer, write it directly
+                flushData();
+                writeFully( data, ByteBuffer.wrap( datagram ) );
+                flushed += datagram.length;
+            }
+            else
+            {
+                dataBuffer.put( datagram );
+            }
+            ensure( indexBuffer, index, 1 + 4 + 8 + 8 + 4 );
+            indexBuffer.put( PACKET_TAG ).putInt( id ).putLong( timestamp ).putLong( offset ).putInt( PACKET_HEADER + datagram.length );
+            packets++;
+        }
+        catch ( IOException ex )
+        {
+            failed = true;
+            LOG.error( String.format( "Could not write to capture '%s', capturing stopped.", file ), ex );
+        }
+    }
+
+    private void writeServer( ByteBuffer buffer, FileChannel channel, int id, byte[] ip, int port ) throws IOException
+    {
+        ensure( buffer, channel, 1 + 4 + 2 + ip.length + 2 );
+        buffer.put( SERVER_TAG ).putInt( id ).putShort( (short) ip.length ).put( ip ).putShort( (short) port );
+    }
+
+    private void ensure( ByteBuffer buffer, FileChannel channel, int bytes ) throws IOException
+    {
+        if ( buffer.remaining() < bytes )
+        {
+            if ( buffer == dataBuffer )
+            {
+                flushData();
+            }
+            else
+            {
+                drain( buffer, channel );
+            }
+        }
+    }
+
+    private void flushData() throws IOException
+    {
+        flushed += dataBuffer.position();
+        drain( dataBuffer, data );
+    }
+
+    private static void drain( ByteBuffer buffer, FileChannel channel ) throws IOException
+    {
+        buffer.flip();
+        writeFully( channel, buffer );
+        buffer.clear();
+    }
+
+    private static void writeFully( FileChannel channel, ByteBuffer buffer ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            channel.write( buffer );
+        }
+    }
+
+    /**
+     * Writes the buffered datagrams to the files. The capture file is always
+     * written first, so the index never points past its end.
+     *
+     * @throws IOException if writing fails
+     */
+    public synchronized void flush() throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        flushData();
+        drain( indexBuffer, index );
+    }
+
+    /**
+     * Getter for the number of datagrams recorded.
+     *
+     * @return the number of datagrams
+     */
+    public synchronized long getPacketCount()
+    {
+        return packets;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        try
+        {
+            if ( !failed )
+            {
+                flush();
+            }
+        }
+        finally
+        {
+            closed = true;
+            data.close();
+            index.close();
+        }
+    }
+}
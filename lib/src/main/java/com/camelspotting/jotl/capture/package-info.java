@@ -0,0 +1,6 @@
+/**
+ * The capture package contains classes for recording the raw replies
+ * received from servers, and for reading them back, e.g. as a corpus for
+ * testing and benchmarking the parsers.
+ */
+package com.camelspotting.jotl.capture;
@@ -123,6 +123,32 @@ public class Company implements Comparable<Company>
         return new EnumMap<Station, Integer>( stationCountMap );
     }
 
+    /**
+     * Method for accessing how many vehicles of one kind a company has,
+     * without copying the counts.
+     *
+     * @param vehicle the kind of vehicle
+     * @return the number of vehicles
+     */
+    public int getVehicleCount( Vehicle vehicle )
+    {
+        Integer count = vehicleCountMap.get( vehicle );
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Method for accessing how many stations of one kind a company has,
+     * without copying the counts.
+     *
+     * @param station the kind of station
+     * @return the number of stations
+     */
+    public int getStationCount( Station station )
+    {
+        Integer count = stationCountMap.get( station );
+        return count != null ? count : 0;
+    }
+
     /**
      * Method for getting the current ID of a company
      *
@@ -0,0 +1,116 @@
+package com.camelspotting.jotl.domain;
+
+import com.camelspotting.jotl.parsing.Vehicle;
+
+/**
+ * The numbers describing a {@link Company} that are worth following over time.
+ */
+public enum CompanyMetric
+{
+
+    VALUE( "Value" )
+    {
+        @Override
+        public long valueOf( Company c )
+        {
+            return c.getCompanyValue();
+        }
+    },
+    BALANCE( "Balance" )
+    {
+        @Override
+        public long valueOf( Company c )
+        {
+            return c.getBalance();
+        }
+    },
+    INCOME( "Income" )
+    {
+        @Override
+        public long valueOf( Company c )
+        {
+            return c.getIncome();
+        }
+    },
+    RATING( "Rating" )
+    {
+        @Override
+        public long valueOf( Company c )
+        {
+            return c.getRating();
+        }
+    },
+    TRAINS( "Trains" )
+    {
+        @Override
+        public long valueOf( Company c )
+        {
+            return c.getVehicleCount( Vehicle.TRAIN );
+        }
+    },
+    TRUCKS( "Trucks" )
+    {
+        @Override
+        public long valueOf( Company c )
+        {
+            return c.getVehicleCount( Vehicle.TRUCK );
+        }
+    },
+    BUSES( "Buses" )
+    {
+        @Override
+        public long valueOf( Company c )
+        {
+            return c.getVehicleCount( Vehicle.BUS );
+        }
+    },
+    AIRCRAFT( "Aircraft" )
+    {
+        @Override
+        public long valueOf( Company c )
+        {
+            return c.getVehicleCount( Vehicle.AIRCRAFT );
+        }
+    },
+    SHIPS( "Ships" )
+    {
+        @Override
+        public long valueOf( Company c )
+        {
+            return c.getVehicleCount( Vehicle.SHIP );
+        }
+    },
+    VEHICLES( "Vehicles" )
+    {
+        @Override
+        public long valueOf( Company c )
+        {
+            long total = 0;
+            for ( Vehicle v : VEHICLE_TYPES )
+            {
+                total += c.getVehicleCount( v );
+            }
+            return total;
+        }
+    };
+    private static final Vehicle[] VEHICLE_TYPES = Vehicle.values();
+    private final String description;
+
+    private CompanyMetric( String description )
+    {
+        this.description = description;
+    }
+
+    /**
+     * Reads this metric from a company.
+     *
+     * @param c the company
+     * @return the value of the metric
+     */
+    public abstract long valueOf( Company c );
+
+    public String getDescription()
+    {
+        return description;
+    }
+}
@@ -0,0 +1,316 @@
+package com.camelspotting.jotl.domain;
+
+import com.camelspotting.jotl.parsing.Station;
+import com.camelspotting.jotl.parsing.Vehicle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The difference between two queries of the same game. Companies are matched
+ * by their in-game id in one pass over each list, and for every company
+ * present in both queries the changed fields are recorded as a bitmask.
+ * Companies whose id has been taken over by a new company are reported as
+ * removed and added.
+ *
+ * @see CompanyChange
+ */
+public final class GameDelta
+{
+
+    /**
+     * The company name has changed
+     */
+    public static final int NAME = 1;
+    /**
+     * The company value has changed
+     */
+    public static final int VALUE = 1 << 1;
+    /**
+     * The balance has changed
+     */
+    public static final int BALANCE = 1 << 2;
+    /**
+     * The income has changed
+     */
+    public static final int INCOME = 1 << 3;
+    /**
+     * The rating has changed
+     */
+    public static final int RATING = 1 << 4;
+    /**
+     * The password protection has been turned on or off
+     */
+    public static final int PASSWORD = 1 << 5;
+    /**
+     * The number of vehicles of any kind has changed
+     */
+    public static final int VEHICLES = 1 << 6;
+    /**
+     * The number of stations of any kind has changed
+     */
+    public static final int STATIONS = 1 << 7;
+    private static final Vehicle[] VEHICLE_TYPES = Vehicle.values();
+    private static final Station[] STATION_TYPES = Station.values();
+    private final List<Company> added;
+    private final List<Company> removed;
+    private final List<CompanyChange> changed;
+
+    private GameDelta( List<Company> added, List<Company> removed, List<CompanyChange> changed )
+    {
+        this.added = added;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    /**
+     * Computes the difference between two queries.
+     *
+     * @param previous the earlier query
+     * @param current the later query
+     * @return the difference
+     */
+    public static GameDelta compute( Game previous, Game current )
+    {
+        List<Company> oldList = previous.getClientDetails().getCompanies();
+        List<Company> newList = current.getClientDetails().getCompanies();
+
+        int maxId = -1;
+        for ( Company c : oldList )
+        {
+            maxId = Math.max( maxId, c.getCurrentId() );
+        }
+        Company[] byId = new Company[ maxId + 1 ];
+        for ( Company c : oldList )
+        {
+            if ( c.getCurrentId() >= 0 )
+            {
+                byId[c.getCurrentId()] = c;
+            }
+        }
+
+        List<Company> added = null;
+        List<CompanyChange> changed = null;
+        boolean[] matched = new boolean[ maxId + 1 ];
+        for ( Company c : newList )
+        {
+            int id = c.getCurrentId();
+            Company old = id >= 0 && id <= maxId ? byId[id] : null;
+            if ( old != null && old.equals( c ) )
+            {
+                matched[id] = true;
+                int fields = diff( old, c );
+                if ( fields != 0 )
+                {
+                    if ( changed == null )
+                    {
+                        changed = new ArrayList<CompanyChange>();
+                    }
+                    changed.add( new CompanyChange( old, c, fields ) );
+                }
+            }
+            else
+            {
+                if ( added == null )
+                {
+                    added = new ArrayList<Company>();
+                }
+                added.add( c );
+            }
+        }
+
+        List<Company> removed = null;
+        for ( Company c : oldList )
+        {
+            int id = c.getCurrentId();
+            if ( id < 0 || !matched[id] )
+            {
+                if ( removed == null )
+                {
+                    removed = new ArrayList<Company>();
+                }
+                removed.add( c );
+            }
+        }
+        return new GameDelta( unmodifiable( added ), unmodifiable( removed ), GameDelta.<CompanyChange>unmodifiable( changed ) );
+    }
+
+    private static <T> List<T> unmodifiable( List<T> list )
+    {
+        return list == null ? Collections.<T>emptyList() : Collections.unmodifiableList( list );
+    }
+
+    /**
+     * Finds the fields that differ between two versions of a company.
+     *
+     * @param a one version
+     * @param b another version
+     * @return the bitmask of changed fields
+     */
+    static int diff( Company a, Company b )
+    {
+        int fields = 0;
+        if ( a.getCompanyValue() != b.getCompanyValue() )
+        {
+            fields |= VALUE;
+        }
+        if ( a.getBalance() != b.getBalance() )
+        {
+            fields |= BALANCE;
+        }
+        if ( a.getIncome() != b.getIncome() )
+        {
+            fields |= INCOME;
+        }
+        if ( a.getRating() != b.getRating() )
+        {
+            fields |= RATING;
+        }
+        if ( a.isPasswordProtected() != b.isPasswordProtected() )
+        {
+            fields |= PASSWORD;
+        }
+        for ( Vehicle v : VEHICLE_TYPES )
+        {
+            if ( a.getVehicleCount( v ) != b.getVehicleCount( v ) )
+            {
+                fields |= VEHICLES;
+                break;
+            }
+        }
+        for ( Station s : STATION_TYPES )
+        {
+            if ( a.getStationCount( s ) != b.getStationCount( s ) )
+            {
+                fields |= STATIONS;
+                break;
+            }
+        }
+        if ( a.getCompanyName() == null ? b.getCompanyName() != null : !a.getCompanyName().equals( b.getCompanyName() ) )
+        {
+            fields |= NAME;
+        }
+        return fields;
+    }
+
+    /**
+     * Getter for the companies that were not in the earlier query.
+     *
+     * @return the new companies in the order of the later query
+     */
+    public List<Company> getAdded()
+    {
+        return added;
+    }
+
+    /**
+     * Getter for the companies that are not in the later query.
+     *
+     * @return the removed companies in the order of the earlier query
+     */
+    public List<Company> getRemoved()
+    {
+        return removed;
+    }
+
+    /**
+     * Getter for the companies present in both queries with at least one
+     * changed field.
+     *
+     * @return the changes in the order of the later query
+     */
+    public List<CompanyChange> getChanged()
+    {
+        return changed;
+    }
+
+    /**
+     * Getter for the companies where any of the given fields changed.
+     *
+     * @param fields a bitmask of fields, e.g. <code>BALANCE | INCOME</code>
+     * @return the matching changes in the order of the later query
+     */
+    public List<CompanyChange> getChanged( int fields )
+    {
+        List<CompanyChange> out = new ArrayList<CompanyChange>();
+        for ( CompanyChange change : changed )
+        {
+            if ( change.hasChanged( fields ) )
+            {
+                out.add( change );
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Whether or not anything differs between the two queries.
+     *
+     * @return true if nothing was added, removed or changed
+     */
+    public boolean isEmpty()
+    {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "GameDelta: added=%s, removed=%s, changed=%s", added, removed, changed );
+    }
+
+    /**
+     * One company present in both queries and the fields that changed.
+     */
+    public static final class CompanyChange
+    {
+
+        private final Company previous;
+        private final Company current;
+        private final int changedFields;
+
+        CompanyChange( Company previous, Company current, int changedFields )
+        {
+            this.previous = previous;
+            this.current = current;
+            this.changedFields = changedFields;
+        }
+
+        public Company getPrevious()
+        {
+            return previous;
+        }
+
+        public Company getCurrent()
+        {
+            return current;
+        }
+
+        /**
+         * Getter for the changed fields.
+         *
+         * @return a bitmask of the field constants in {@link GameDelta}
+         */
+        public int getChangedFields()
+        {
+            return changedFields;
+        }
+
+        /**
+         * Whether or not any of the given fields changed.
+         *
+         * @param fields a bitmask of field constants
+         * @return true if at least one of them changed
+         */
+        public boolean hasChanged( int fields )
+        {
+            return ( changedFields & fields ) != 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format( "CompanyChange: #%d fields=%s", current.getCurrentId(), Integer.toBinaryString( changedFields ) );
+        }
+    }
+}
@@ -47,6 +47,35 @@ public class Server
         return name;
     }
 
+    /**
+     * Two servers are equal if they have the same IP address and port, so
+     * that servers can be looked up no matter how they were created.
+     *
+     * @return whether they are equal or not
+     */
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( o instanceof Server )
+        {
+            Server s = (Server) o;
+            return port == s.getPort() && ( ipAddress == null ? s.getIpAddress() == null : ipAddress.equals( s.getIpAddress() ) );
+        }
+        else
+        {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = 7;
+        hash = 59 * hash + ( ipAddress != null ? ipAddress.hashCode() : 0 );
+        hash = 59 * hash + this.port;
+        return hash;
+    }
+
     @Override
     public String toString()
     {
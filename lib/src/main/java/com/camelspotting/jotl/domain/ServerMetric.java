@@ -0,0 +1,87 @@
+package com.camelspotting.jotl.domain;
+
+/**
+ * The numbers describing a whole {@link Game} that are worth following over
+ * time.
+ */
+public enum ServerMetric
+{
+
+    CLIENTS( "Clients online" )
+    {
+        @Override
+        public long valueOf( Game g )
+        {
+            return g.getServerDetails().getNumberOfActiveClients();
+        }
+    },
+    SPECTATORS( "Spectators online" )
+    {
+        @Override
+        public long valueOf( Game g )
+        {
+            return g.getServerDetails().getNumberOfActiveSpectators();
+        }
+    },
+    COMPANIES( "Companies" )
+    {
+        @Override
+        public long valueOf( Game g )
+        {
+            return g.getClientDetails().getCompanies().size();
+        }
+    },
+    VALUE( "Total company value" )
+    {
+        @Override
+        public long valueOf( Game g )
+        {
+            return total( g, CompanyMetric.VALUE );
+        }
+    },
+    BALANCE( "Total balance" )
+    {
+        @Override
+        public long valueOf( Game g )
+        {
+            return total( g, CompanyMetric.BALANCE );
+        }
+    },
+    VEHICLES( "Total vehicles" )
+    {
+        @Override
+        public long valueOf( Game g )
+        {
+            return total( g, CompanyMetric.VEHICLES );
+        }
+    };
+    private final String description;
+
+    private ServerMetric( String description )
+    {
+        this.description = description;
+    }
+
+    /**
+     * Reads this metric from a game.
+     *
+     * @param g the game
+     * @return the value of the metric
+     */
+    public abstract long valueOf( Game g );
+
+    public String getDescription()
+    {
+        return description;
+    }
+
+    private static long total( Game g, CompanyMetric metric )
+    {
+        long total = 0;
+        for ( Company c : g.getClientDetails().getCompanies() )
+        {
+            total += metric.valueOf( c );
+        }
+        return total;
+    }
+}
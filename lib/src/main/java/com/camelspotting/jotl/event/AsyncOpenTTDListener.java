@@ -0,0 +1,438 @@
+package com.camelspotting.jotl.event;
+
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.jfr.DispatchEvent;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A listener that hands events over to another listener on a separate thread.
+ * Events are kept in a bounded ring buffer and delivered one at a time in the
+ * order they were published, so events from one server always arrive in
+ * order. A slow or failing listener therefore never delays the monitor that
+ * publishes the events. Instances are created by an {@link EventDispatcher}.
+ *
+ * @see OverflowPolicy
+ */
+public final class AsyncOpenTTDListener implements OpenTTDListener
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( AsyncOpenTTDListener.class );
+    /**
+     * The number of events delivered before yielding the thread to other
+     * listeners
+     */
+    private static final int BATCH_SIZE = 64;
+    private final OpenTTDListener delegate;
+    private final Executor executor;
+    private final OverflowPolicy policy;
+    private final OpenTTDEvent[] events;
+    private final long[] enqueueTimes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    /**
+     * Index of the oldest buffered event
+     */
+    private int head;
+    /**
+     * The number of buffered events
+     */
+    private int size;
+    /**
+     * 0 when no consumer is scheduled
+     */
+    private final AtomicInteger consumerState = new AtomicInteger();
+    private final Runnable consumer = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            consume();
+        }
+    };
+    private volatile boolean closed;
+    // Metrics, guarded by the lock
+    private long published;
+    private long delivered;
+    private long dropped;
+    private long coalesced;
+    private long lastLagNanos;
+    private long maxLagNanos;
+
+    AsyncOpenTTDListener( OpenTTDListener delegate, Executor executor, int capacity, OverflowPolicy policy )
+    {
+        if ( capacity < 1 )
+        {
+            throw new IllegalArgumentException( String.format( "Illegal capacity: %d", capacity ) );
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+        this.policy = policy;
+        this.events = new OpenTTDEvent[ capacity ];
+        this.enqueueTimes = new long[ capacity ];
+    }
+
+    @Override
+    public void eventOccured( OpenTTDEvent evt )
+    {
+        if ( closed )
+        {
+            LOG.debug( "Ignoring event {} since the dispatcher is closed.", evt );
+            return;
+        }
+        long now = System.nanoTime();
+        lock.lock();
+        try
+        {
+            published++;
+            if ( size == events.length )
+            {
+                if ( !makeRoom( evt, now ) )
+                {
+                    return;
+                }
+            }
+            int tail = ( head + size ) % events.length;
+            events[tail] = evt;
+            enqueueTimes[tail] = now;
+            size++;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        scheduleConsumer();
+    }
+
+    /**
+     * Applies the overflow policy on a full buffer. Must hold the lock.
+     *
+     * @param evt the event being published
+     * @param now the time it was published
+     * @return true if the event should still be added to the buffer
+     */
+    private boolean makeRoom( OpenTTDEvent evt, long now )
+    {
+        switch ( policy )
+        {
+            case BLOCK:
+                while ( size == events.length && !closed )
+                {
+                    notFull.awaitUninterruptibly();
+                }
+                return !closed;
+            case COALESCE:
+                for ( int i = size - 1; i >= 0; i-- )
+                {
+                    int index = ( head + i ) % events.length;
+                    if ( events[index].getType() == evt.getType() && sameServer( events[index].getServer(), evt.getServer() ) )
+                    {
+                        remove( i );
+                        coalesced++;
+                        return true;
+                    }
+                }
+                dropOldest();
+                return true;
+            default:
+                dropOldest();
+                return true;
+        }
+    }
+
+    private static boolean sameServer( Server a, Server b )
+    {
+        return a == b || ( a != null && b != null && a.getPort() == b.getPort() && a.getIpAddress().equals( b.getIpAddress() ) );
+    }
+
+    /**
+     * Removes a buffered event, moving the newer ones up so that the new
+     * event still goes last. Must hold the lock.
+     *
+     * @param i the position of the event counted from the oldest
+     */
+    private void remove( int i )
+    {
+        for ( ; i < size - 1; i++ )
+        {
+            int index = ( head + i ) % events.length;
+            int next = ( index + 1 ) % events.length;
+            events[index] = events[next];
+            enqueueTimes[index] = enqueueTimes[next];
+        }
+        events[( head + size - 1 ) % events.length] = null;
+        size--;
+    }
+
+    private void dropOldest()
+    {
+        LOG.debug( "Buffer full, dropping {}.", events[head] );
+        events[head] = null;
+        head = ( head + 1 ) % events.length;
+        size--;
+        dropped++;
+    }
+
+    private void scheduleConsumer()
+    {
+        if ( consumerState.getAndIncrement() == 0 )
+        {
+            try
+            {
+                executor.execute( consumer );
+            }
+            catch ( RejectedExecutionException ex )
+            {
+                LOG.debug( "Could not deliver events since the dispatcher is shut down." );
+                consumerState.set( 0 );
+            }
+        }
+    }
+
+    private void consume()
+    {
+        int missed = consumerState.get();
+        int deliveredInBatch = 0;
+        while ( true )
+        {
+            OpenTTDEvent evt;
+            lock.lock();
+            try
+            {
+                if ( size == 0 )
+                {
+                    evt = null;
+                }
+                else
+                {
+                    evt = events[head];
+                    long lag = System.nanoTime() - enqueueTimes[head];
+                    events[head] = null;
+                    head = ( head + 1 ) % events.length;
+                    size--;
+                    delivered++;
+                    lastLagNanos = lag;
+                    maxLagNanos = Math.max( maxLagNanos, lag );
+                    notFull.signal();
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            if ( evt == null )
+            {
+                missed = consumerState.addAndGet( -missed );
+                if ( missed == 0 )
+                {
+                    return;
+                }
+                continue;
+            }
+            deliver( evt );
+            if ( ++deliveredInBatch == BATCH_SIZE )
+            {
+                // Let other listeners sharing the threads have a go
+                try
+                {
+                    executor.execute( consumer );
+                }
+                catch ( RejectedExecutionException ex )
+                {
+                    LOG.debug( "Could not deliver events since the dispatcher is shut down." );
+                    consumerState.set( 0 );
+                }
+                return;
+            }
+        }
+    }
+
+    private void deliver( OpenTTDEvent evt )
+    {
+        DispatchEvent dispatch = new DispatchEvent();
+        dispatch.begin();
+        try
+        {
+            delegate.eventOccured( evt );
+        }
+        catch ( RuntimeException ex )
+        {
+            LOG.error( String.format( "Listener '%s' failed on event '%s'.", delegate, evt ), ex );
+        }
+        dispatch.finish( delegate, evt.getType() );
+    }
+
+    /**
+     * Stops accepting events and releases any blocked publishers. Events
+     * already buffered are still delivered.
+     */
+    void close()
+    {
+        closed = true;
+        lock.lock();
+        try
+        {
+            notFull.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Getter for the listener receiving the events.
+     *
+     * @return the listener
+     */
+    public OpenTTDListener getDelegate()
+    {
+        return delegate;
+    }
+
+    public OverflowPolicy getPolicy()
+    {
+        return policy;
+    }
+
+    public int getCapacity()
+    {
+        return events.length;
+    }
+
+    /**
+     * The number of events waiting to be delivered.
+     *
+     * @return the number of buffered events
+     */
+    public int getBacklog()
+    {
+        lock.lock();
+        try
+        {
+            return size;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the delivery metrics.
+     *
+     * @return the metrics
+     */
+    public Metrics getMetrics()
+    {
+        lock.lock();
+        try
+        {
+            return new Metrics( published, delivered, dropped, coalesced, size, TimeUnit.NANOSECONDS.toMillis( lastLagNanos ), TimeUnit.NANOSECONDS.toMillis( maxLagNanos ) );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "AsyncOpenTTDListener(%s, %s)", delegate, policy );
+    }
+
+    /**
+     * Delivery metrics for one asynchronous listener.
+     */
+    public static final class Metrics
+    {
+
+        private final long published;
+        private final long delivered;
+        private final long dropped;
+        private final long coalesced;
+        private final int backlog;
+        private final long lastLagMillis;
+        private final long maxLagMillis;
+
+        Metrics( long published, long delivered, long dropped, long coalesced, int backlog, long lastLagMillis, long maxLagMillis )
+        {
+            this.published = published;
+            this.delivered = delivered;
+            this.dropped = dropped;
+            this.coalesced = coalesced;
+            this.backlog = backlog;
+            this.lastLagMillis = lastLagMillis;
+            this.maxLagMillis = maxLagMillis;
+        }
+
+        /**
+         * @return the number of events handed to this listener
+         */
+        public long getPublished()
+        {
+            return published;
+        }
+
+        /**
+         * @return the number of events delivered to the delegate
+         */
+        public long getDelivered()
+        {
+            return delivered;
+        }
+
+        /**
+         * @return the number of events dropped because the buffer was full
+         */
+        public long getDropped()
+        {
+            return dropped;
+        }
+
+        /**
+         * @return the number of events replaced by a newer one
+         */
+        public long getCoalesced()
+        {
+            return coalesced;
+        }
+
+        /**
+         * @return the number of events waiting to be delivered
+         */
+        public int getBacklog()
+        {
+            return backlog;
+        }
+
+        /**
+         * @return the time the latest delivered event spent in the buffer
+         */
+        public long getLastLagMillis()
+        {
+            return lastLagMillis;
+        }
+
+        /**
+         * @return the longest time any event spent in the buffer
+         */
+        public long getMaxLagMillis()
+        {
+            return maxLagMillis;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format( "Metrics: published=%d, delivered=%d, dropped=%d, coalesced=%d, backlog=%d, lag=%dms, maxLag=%dms", published, delivered, dropped, coalesced, backlog, lastLagMillis, maxLagMillis );
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.camelspotting.jotl.event;
+
+import com.camelspotting.jotl.MonitorState;
+import java.util.List;
+
+/**
+ * A listener receiving all events from one update at once, e.g. for writing
+ * them to a database in a single transaction. Register it with
+ * {@link com.camelspotting.jotl.ServerMonitor#addBatchListener(BatchOpenTTDListener)}.
+ *
+ * @see OpenTTDListener
+ */
+public interface BatchOpenTTDListener
+{
+
+    /**
+     * Method is invoked after every successful update, and when the
+     * connection to the server is lost. The list of events may be empty, in
+     * which case the state still holds the newly queried game.
+     *
+     * @param state the state of the monitor after the update, holding the
+     * server and the queried game
+     * @param evts an immutable list of the events from the update, in the
+     * order they occured
+     */
+    public void eventsOccured( MonitorState state, List<OpenTTDEvent> evts );
+}
@@ -0,0 +1,108 @@
+package com.camelspotting.jotl.event;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The dispatch stage between monitors and listeners. Each listener wrapped by
+ * a dispatcher gets its own bounded buffer and is fed by the dispatcher's
+ * thread pool, so polling continues at full speed no matter how slow the
+ * listeners are. Register the wrapped listener with the monitors instead of
+ * the original one:
+ *
+ * <pre>
+ * EventDispatcher dispatcher = new EventDispatcher( 2 );
+ * monitor.addListeners( dispatcher.wrap( ircBot, 1024, OverflowPolicy.COALESCE ) );
+ * </pre>
+ *
+ * @see AsyncOpenTTDListener
+ */
+public class EventDispatcher
+{
+
+    private final ExecutorService executor;
+    private final List<AsyncOpenTTDListener> listeners = new CopyOnWriteArrayList<AsyncOpenTTDListener>();
+
+    /**
+     * Creates a dispatcher delivering events on the given number of threads.
+     *
+     * @param threads the number of delivery threads
+     */
+    public EventDispatcher( int threads )
+    {
+        this.executor = Executors.newFixedThreadPool( threads, new ThreadFactory()
+        {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread( Runnable r )
+            {
+                Thread t = new Thread( r, "jotl-event-dispatch-" + counter.incrementAndGet() );
+                t.setDaemon( true );
+                return t;
+            }
+        } );
+    }
+
+    /**
+     * Wraps a listener so that it receives its events asynchronously.
+     *
+     * @param listener the listener to wrap
+     * @param capacity the number of events that may be buffered
+     * @param policy what to do when the buffer is full
+     * @return the asynchronous listener to register with the monitors
+     */
+    public AsyncOpenTTDListener wrap( OpenTTDListener listener, int capacity, OverflowPolicy policy )
+    {
+        AsyncOpenTTDListener async = new AsyncOpenTTDListener( listener, executor, capacity, policy );
+        listeners.add( async );
+        return async;
+    }
+
+    /**
+     * Getter for all listeners wrapped by this dispatcher, e.g. for reporting
+     * their metrics.
+     *
+     * @return the wrapped listeners
+     */
+    public List<AsyncOpenTTDListener> getListeners()
+    {
+        return listeners;
+    }
+
+    /**
+     * Stops accepting events and waits for buffered events to be delivered.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return whether all events were delivered in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean shutdown( long timeout, TimeUnit unit ) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos( timeout );
+        for ( AsyncOpenTTDListener listener : listeners )
+        {
+            listener.close();
+        }
+        for ( AsyncOpenTTDListener listener : listeners )
+        {
+            while ( listener.getBacklog() > 0 )
+            {
+                if ( System.nanoTime() > deadline )
+                {
+                    executor.shutdownNow();
+                    return false;
+                }
+                Thread.sleep( 10 );
+            }
+        }
+        executor.shutdown();
+        return executor.awaitTermination( Math.max( 0, deadline - System.nanoTime() ), TimeUnit.NANOSECONDS );
+    }
+}
@@ -0,0 +1,313 @@
+package com.camelspotting.jotl.event;
+
+import com.camelspotting.jotl.MonitorState;
+import com.camelspotting.jotl.domain.Server;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the state of the monitors to reactive subscribers. Each
+ * subscriber only gets as many states as it has requested. While it is not
+ * asking for more, newer states replace the older undelivered state of the
+ * same server, so a stalled subscriber costs at most one state per server
+ * and always resumes with the latest state of each.
+ * <p>
+ * Register the publisher as a batch listener with the monitors:
+ *
+ * <pre>
+ * MonitorStatePublisher publisher = new MonitorStatePublisher( executor );
+ * monitor.addBatchListener( publisher );
+ * publisher.subscribe( subscriber );
+ * </pre>
+ *
+ * States are delivered on the given executor, one at a time per subscriber
+ * and in the order the servers were updated.
+ */
+public class MonitorStatePublisher implements Flow.Publisher<MonitorState>, BatchOpenTTDListener
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( MonitorStatePublisher.class );
+    private final Executor executor;
+    private final List<StateSubscription> subscriptions = new CopyOnWriteArrayList<StateSubscription>();
+    private volatile boolean closed;
+
+    /**
+     * Main constructor.
+     *
+     * @param executor the executor delivering the states
+     */
+    public MonitorStatePublisher( Executor executor )
+    {
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe( Flow.Subscriber<? super MonitorState> subscriber )
+    {
+        if ( subscriber == null )
+        {
+            throw new NullPointerException( "Subscriber is null." );
+        }
+        StateSubscription subscription = new StateSubscription( subscriber );
+        if ( !closed )
+        {
+            subscriptions.add( subscription );
+        }
+        subscription.start( closed );
+    }
+
+    @Override
+    public void eventsOccured( MonitorState state, List<OpenTTDEvent> evts )
+    {
+        if ( closed )
+        {
+            LOG.debug( "Ignoring state {} since the publisher is closed.", state );
+            return;
+        }
+        for ( StateSubscription subscription : subscriptions )
+        {
+            subscription.offer( state );
+        }
+    }
+
+    /**
+     * Completes all subscriptions once their pending states are delivered.
+     * States published afterwards are ignored.
+     */
+    public void close()
+    {
+        closed = true;
+        for ( StateSubscription subscription : subscriptions )
+        {
+            subscription.complete();
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * Getter for the number of active subscriptions.
+     *
+     * @return the number of subscriptions
+     */
+    public int getSubscriberCount()
+    {
+        return subscriptions.size();
+    }
+
+    /**
+     * Getter for the number of states replaced by a newer one before they
+     * were delivered, over all current subscriptions.
+     *
+     * @return the number of coalesced states
+     */
+    public long getCoalesced()
+    {
+        long sum = 0;
+        for ( StateSubscription subscription : subscriptions )
+        {
+            sum += subscription.coalesced.get();
+        }
+        return sum;
+    }
+
+    /**
+     * The link between the publisher and one subscriber.
+     */
+    private final class StateSubscription implements Flow.Subscription, Runnable
+    {
+
+        private final Flow.Subscriber<? super MonitorState> subscriber;
+        /**
+         * The undelivered state of each server, oldest first. Guarded by
+         * itself.
+         */
+        private final Map<Server, MonitorState> pending = new LinkedHashMap<Server, MonitorState>();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+        /**
+         * 0 when no delivery is scheduled
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean subscribed;
+        private volatile boolean completed;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        StateSubscription( Flow.Subscriber<? super MonitorState> subscriber )
+        {
+            this.subscriber = subscriber;
+        }
+
+        void start( boolean alreadyClosed )
+        {
+            completed = alreadyClosed;
+            schedule();
+        }
+
+        void offer( MonitorState state )
+        {
+            if ( cancelled )
+            {
+                return;
+            }
+            synchronized ( pending )
+            {
+                // Re-inserting moves the server to the back of the line
+                if ( pending.remove( state.getServer() ) != null )
+                {
+                    coalesced.incrementAndGet();
+                }
+                pending.put( state.getServer(), state );
+            }
+            schedule();
+        }
+
+        void complete()
+        {
+            completed = true;
+            schedule();
+        }
+
+        @Override
+        public void request( long n )
+        {
+            if ( n <= 0 )
+            {
+                error = new IllegalArgumentException( String.format( "Non-positive request: %d", n ) );
+            }
+            else
+            {
+                long current;
+                long next;
+                do
+                {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                }
+                while ( !demand.compareAndSet( current, next ) );
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            subscriptions.remove( this );
+            synchronized ( pending )
+            {
+                pending.clear();
+            }
+            schedule();
+        }
+
+        private void schedule()
+        {
+            if ( wip.getAndIncrement() == 0 )
+            {
+                try
+                {
+                    executor.execute( this );
+                }
+                catch ( RejectedExecutionException ex )
+                {
+                    LOG.debug( "Could not deliver states since the executor is shut down." );
+                    cancelled = true;
+                    subscriptions.remove( this );
+                }
+            }
+        }
+
+        /**
+         * Delivers what the subscriber has asked for. Only ever run by one
+         * thread at a time.
+         */
+        @Override
+        public void run()
+        {
+            int missed = wip.get();
+            while ( true )
+            {
+                if ( !subscribed )
+                {
+                    subscribed = true;
+                    try
+                    {
+                        subscriber.onSubscribe( this );
+                    }
+                    catch ( RuntimeException ex )
+                    {
+                        LOG.error( String.format( "Subscriber '%s' failed on subscribe.", subscriber ), ex );
+                        cancel();
+                    }
+                }
+                while ( !cancelled && error == null && demand.get() > 0 )
+                {
+                    MonitorState state = poll();
+                    if ( state == null )
+                    {
+                        break;
+                    }
+                    demand.decrementAndGet();
+                    try
+                    {
+                        subscriber.onNext( state );
+                    }
+                    catch ( RuntimeException ex )
+                    {
+                        LOG.error( String.format( "Subscriber '%s' failed on state '%s'.", subscriber, state ), ex );
+                        cancel();
+                    }
+                }
+                if ( !cancelled && error != null )
+                {
+                    cancel();
+                    subscriber.onError( error );
+                }
+                else if ( !cancelled && completed && isEmpty() )
+                {
+                    cancel();
+                    subscriber.onComplete();
+                }
+                missed = wip.addAndGet( -missed );
+                if ( missed == 0 )
+                {
+                    return;
+                }
+            }
+        }
+
+        private MonitorState poll()
+        {
+            synchronized ( pending )
+            {
+                Iterator<MonitorState> it = pending.values().iterator();
+                if ( !it.hasNext() )
+                {
+                    return null;
+                }
+                MonitorState state = it.next();
+                it.remove();
+                return state;
+            }
+        }
+
+        private boolean isEmpty()
+        {
+            synchronized ( pending )
+            {
+                return pending.isEmpty();
+            }
+        }
+    }
+}
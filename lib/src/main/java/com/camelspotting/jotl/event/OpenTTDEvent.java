@@ -16,6 +16,7 @@
  */
 package com.camelspotting.jotl.event;
 
+import com.camelspotting.jotl.domain.Server;
 import java.util.Arrays;
 
 /**
@@ -30,6 +31,10 @@ import java.util.Arrays;
 public class OpenTTDEvent
 {
 
+    /**
+     * The server the event occured on
+     */
+    private final Server server;
     /**
      * The type of event
      */
@@ -46,10 +51,32 @@ public class OpenTTDEvent
      */
     public OpenTTDEvent( OpenTTDEventType t, Object... objects )
     {
+        this( null, t, objects );
+    }
+
+    /**
+     * Constructor for making events tied to a server.
+     *
+     * @param server the server the event occured on
+     * @param t the type of event
+     */
+    public OpenTTDEvent( Server server, OpenTTDEventType t, Object... objects )
+    {
+        this.server = server;
         this.type = t;
         this.objects = objects;
     }
 
+    /**
+     * This method returns the server the event occured on.
+     *
+     * @return the server or null if unknown
+     */
+    public Server getServer()
+    {
+        return server;
+    }
+
     /**
      * Depending on what type of event this is this array contains different
      * objects. GAME_END -> [0] is an {@link Integer} containing the year of
@@ -0,0 +1,26 @@
+package com.camelspotting.jotl.event;
+
+/**
+ * What an {@link AsyncOpenTTDListener} does when its buffer is full.
+ *
+ * @see EventDispatcher
+ */
+public enum OverflowPolicy
+{
+
+    /**
+     * The publishing thread waits until there is room in the buffer
+     */
+    BLOCK,
+    /**
+     * The oldest buffered event is dropped to make room
+     */
+    DROP_OLDEST,
+    /**
+     * The newest buffered event of the same type from the same server is
+     * dropped and the new event is added last, so the events of a server
+     * still arrive in the order they were published. If there is none the
+     * oldest buffered event is dropped.
+     */
+    COALESCE;
+}
@@ -0,0 +1,417 @@
+package com.camelspotting.jotl.history;
+
+import com.camelspotting.jotl.MonitorState;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.CompanyMetric;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.event.BatchOpenTTDListener;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A live ranking of the companies on all servers by one metric, highest
+ * first. Each poll only moves the companies of the polled server, and both
+ * the top N and the rank of a company are found in logarithmic time. The
+ * ranking is an order-statistic treap: a binary search tree kept balanced by
+ * random priorities, where every node knows the size of its subtree.
+ * <p>
+ * Register the leaderboard as a batch listener with the monitors:
+ *
+ * <pre>
+ * CompanyLeaderboard richest = new CompanyLeaderboard( CompanyMetric.BALANCE );
+ * monitor.addBatchListener( richest );
+ * ...
+ * List&lt;Standing&gt; top = richest.getTop( 10 );
+ * </pre>
+ */
+public class CompanyLeaderboard implements BatchOpenTTDListener
+{
+
+    private final CompanyMetric metric;
+    private final Random random = new Random();
+    private final Map<Key, Node> nodes = new HashMap<Key, Node>();
+    /**
+     * The companies of each server at its latest poll
+     */
+    private final Map<Server, List<Key>> servers = new HashMap<Server, List<Key>>();
+    private Node root;
+
+    /**
+     * Main constructor.
+     *
+     * @param metric the metric to rank by
+     */
+    public CompanyLeaderboard( CompanyMetric metric )
+    {
+        this.metric = metric;
+    }
+
+    @Override
+    public void eventsOccured( MonitorState state, List<OpenTTDEvent> evts )
+    {
+        if ( !state.hasNewGame() )
+        {
+            return;
+        }
+        update( state.getServer(), state.getGame(), state.getLastSuccess() );
+    }
+
+    /**
+     * Replaces the companies of a server with those of its latest game.
+     *
+     * @param server the server
+     * @param game the latest game
+     * @param timestamp when the game was queried
+     */
+    public synchronized void update( Server server, Game game, long timestamp )
+    {
+        List<Company> companies = game.getClientDetails().getCompanies();
+        List<Key> keys = new ArrayList<Key>( companies.size() );
+        for ( Company c : companies )
+        {
+            Key key = new Key( server, c );
+            keys.add( key );
+            Standing standing = new Standing( server, c, timestamp, metric.valueOf( c ) );
+            Node node = nodes.get( key );
+            if ( node != null && node.standing.getValue() == standing.getValue() )
+            {
+                // Same place, newer snapshot
+                node.standing = standing;
+                continue;
+            }
+            if ( node != null )
+            {
+                root = delete( root, node );
+            }
+            node = new Node( key, standing, random.nextInt() );
+            nodes.put( key, node );
+            root = insert( root, node );
+        }
+        List<Key> previous = servers.put( server, keys );
+        if ( previous != null )
+        {
+            for ( Key key : previous )
+            {
+                if ( !keys.contains( key ) )
+                {
+                    root = delete( root, nodes.remove( key ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all companies of a server.
+     *
+     * @param server the server
+     */
+    public synchronized void remove( Server server )
+    {
+        List<Key> keys = servers.remove( server );
+        if ( keys != null )
+        {
+            for ( Key key : keys )
+            {
+                root = delete( root, nodes.remove( key ) );
+            }
+        }
+    }
+
+    /**
+     * Getter for the companies at the top.
+     *
+     * @param n the number of companies
+     * @return at most n standings, best first
+     */
+    public synchronized List<Standing> getTop( int n )
+    {
+        List<Standing> top = new ArrayList<Standing>( Math.min( n, size( root ) ) );
+        collect( root, top, n );
+        return top;
+    }
+
+    private static void collect( Node node, List<Standing> out, int n )
+    {
+        if ( node == null || out.size() >= n )
+        {
+            return;
+        }
+        collect( node.left, out, n );
+        if ( out.size() < n )
+        {
+            out.add( node.standing );
+            collect( node.right, out, n );
+        }
+    }
+
+    /**
+     * Getter for the company at a rank.
+     *
+     * @param rank 0 for the best company
+     * @return the standing of the company
+     * @throws IndexOutOfBoundsException if there is no such rank
+     */
+    public synchronized Standing get( int rank )
+    {
+        if ( rank < 0 || rank >= size( root ) )
+        {
+            throw new IndexOutOfBoundsException( String.format( "Rank: %d, size: %d", rank, size( root ) ) );
+        }
+        Node node = root;
+        while ( true )
+        {
+            int left = size( node.left );
+            if ( rank < left )
+            {
+                node = node.left;
+            }
+            else if ( rank == left )
+            {
+                return node.standing;
+            }
+            else
+            {
+                rank -= left + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Finds the rank of a company.
+     *
+     * @param server the server of the company
+     * @param company the company
+     * @return 0 for the best company, or -1 if the company is not ranked
+     */
+    public synchronized int getRank( Server server, Company company )
+    {
+        Node target = nodes.get( new Key( server, company ) );
+        if ( target == null )
+        {
+            return -1;
+        }
+        int rank = 0;
+        Node node = root;
+        while ( node != target )
+        {
+            if ( compare( target, node ) < 0 )
+            {
+                node = node.left;
+            }
+            else
+            {
+                rank += size( node.left ) + 1;
+                node = node.right;
+            }
+        }
+        return rank + size( node.left );
+    }
+
+    public synchronized int size()
+    {
+        return size( root );
+    }
+
+    public CompanyMetric getMetric()
+    {
+        return metric;
+    }
+
+    private static int size( Node node )
+    {
+        return node != null ? node.size : 0;
+    }
+
+    /**
+     * Orders by value, highest first, and then by server and company so that
+     * no two companies are equal.
+     */
+    private static int compare( Node a, Node b )
+    {
+        long va = a.standing.getValue();
+        long vb = b.standing.getValue();
+        if ( va != vb )
+        {
+            return va > vb ? -1 : 1;
+        }
+        return a.key.compareTo( b.key );
+    }
+
+    private Node insert( Node node, Node n )
+    {
+        if ( node == null )
+        {
+            return n;
+        }
+        if ( compare( n, node ) < 0 )
+        {
+            node.left = insert( node.left, n );
+            if ( node.left.priority > node.priority )
+            {
+                node = rotateRight( node );
+            }
+        }
+        else
+        {
+            node.right = insert( node.right, n );
+            if ( node.right.priority > node.priority )
+            {
+                node = rotateLeft( node );
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private Node delete( Node node, Node n )
+    {
+        if ( node == null )
+        {
+            return null;
+        }
+        if ( node == n )
+        {
+            return merge( node.left, node.right );
+        }
+        if ( compare( n, node ) < 0 )
+        {
+            node.left = delete( node.left, n );
+        }
+        else
+        {
+            node.right = delete( node.right, n );
+        }
+        node.update();
+        return node;
+    }
+
+    /**
+     * Joins two subtrees where everything in the left one comes first.
+     */
+    private Node merge( Node left, Node right )
+    {
+        if ( left == null )
+        {
+            return right;
+        }
+        if ( right == null )
+        {
+            return left;
+        }
+        if ( left.priority > right.priority )
+        {
+            left.right = merge( left.right, right );
+            left.update();
+            return left;
+        }
+        right.left = merge( left, right.left );
+        right.update();
+        return right;
+    }
+
+    private static Node rotateRight( Node node )
+    {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        left.update();
+        return left;
+    }
+
+    private static Node rotateLeft( Node node )
+    {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        right.update();
+        return right;
+    }
+
+    /**
+     * Identifies a company across servers
+     */
+    private static final class Key implements Comparable<Key>
+    {
+
+        private final Server server;
+        private final int id;
+        private final int inaugerated;
+
+        Key( Server server, Company c )
+        {
+            this.server = server;
+            this.id = c.getCurrentId();
+            this.inaugerated = c.getInaugerationYear();
+        }
+
+        @Override
+        public int compareTo( Key o )
+        {
+            int c = String.valueOf( server.getIpAddress() ).compareTo( String.valueOf( o.server.getIpAddress() ) );
+            if ( c == 0 )
+            {
+                c = server.getPort() - o.server.getPort();
+            }
+            if ( c == 0 )
+            {
+                c = id - o.id;
+            }
+            if ( c == 0 )
+            {
+                c = inaugerated - o.inaugerated;
+            }
+            return c;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( o instanceof Key )
+            {
+                Key k = (Key) o;
+                return id == k.id && inaugerated == k.inaugerated && server.equals( k.server );
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = server.hashCode();
+            hash = 71 * hash + id;
+            hash = 71 * hash + inaugerated;
+            return hash;
+        }
+    }
+
+    private static final class Node
+    {
+
+        private final Key key;
+        private Standing standing;
+        private final int priority;
+        private Node left;
+        private Node right;
+        private int size = 1;
+
+        Node( Key key, Standing standing, int priority )
+        {
+            this.key = key;
+            this.standing = standing;
+            this.priority = priority;
+        }
+
+        void update()
+        {
+            size = 1 + CompanyLeaderboard.size( left ) + CompanyLeaderboard.size( right );
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.camelspotting.jotl.history;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A compressed, append-only series of timestamped samples, each holding a
+ * fixed number of long fields. Timestamps are stored as zig-zag varints of
+ * their delta-of-delta, which is 0 (one byte) for a steady poll interval.
+ * Fields are stored as zig-zag varints of their delta, so money and values
+ * that change slowly take one or two bytes instead of eight.
+ * <p>
+ * Samples are grouped in blocks of {@link #BLOCK_SIZE}. Each block starts
+ * from scratch, so decoding can start at any block and a time range is found
+ * by a binary search over the block start times.
+ * <p>
+ * A series is not thread-safe.
+ */
+public final class CompressedSeries
+{
+
+    /**
+     * The number of samples in a block
+     */
+    public static final int BLOCK_SIZE = 128;
+    private final int fields;
+    private byte[] data = new byte[ 256 ];
+    private int length;
+    private int count;
+    private int[] blockOffsets = new int[ 8 ];
+    private long[] blockStarts = new long[ 8 ];
+    private long previousTimestamp;
+    private long previousDelta;
+    private final long[] previousValues;
+
+    /**
+     * Creates an empty series.
+     *
+     * @param fields the number of fields in every sample
+     */
+    public CompressedSeries( int fields )
+    {
+        if ( fields < 0 )
+        {
+            throw new IllegalArgumentException( String.format( "Illegal number of fields: %d", fields ) );
+        }
+        this.fields = fields;
+        this.previousValues = new long[ fields ];
+    }
+
+    /**
+     * Appends a sample.
+     *
+     * @param timestamp the time of the sample, not before the previous one
+     * @param values the fields of the sample
+     */
+    public void append( long timestamp, long[] values )
+    {
+        if ( values.length != fields )
+        {
+            throw new IllegalArgumentException( String.format( "Expected %d fields, got %d", fields, values.length ) );
+        }
+        if ( count > 0 && timestamp < previousTimestamp )
+        {
+            throw new IllegalArgumentException( String.format( "Timestamp %d is before %d", timestamp, previousTimestamp ) );
+        }
+        if ( count % BLOCK_SIZE == 0 )
+        {
+            int block = count / BLOCK_SIZE;
+            if ( block == blockOffsets.length )
+            {
+                blockOffsets = Arrays.copyOf( blockOffsets, block * 2 );
+                blockStarts = Arrays.copyOf( blockStarts, block * 2 );
+            }
+            blockOffsets[block] = length;
+            blockStarts[block] = timestamp;
+            writeVarLong( timestamp );
+            for ( int i = 0; i < fields; i++ )
+            {
+                writeVarLong( values[i] );
+            }
+            previousDelta = 0;
+        }
+        else
+        {
+            long delta = timestamp - previousTimestamp;
+            writeVarLong( delta - previousDelta );
+            for ( int i = 0; i < fields; i++ )
+            {
+                writeVarLong( values[i] - previousValues[i] );
+            }
+            previousDelta = delta;
+        }
+        previousTimestamp = timestamp;
+        System.arraycopy( values, 0, previousValues, 0, fields );
+        count++;
+    }
+
+    private void writeVarLong( long v )
+    {
+        // Zig-zag, so that small negative numbers stay small
+        long zz = ( v << 1 ) ^ ( v >> 63 );
+        if ( length + 10 > data.length )
+        {
+            // A series read back has no room left, possibly not even a byte
+            data = Arrays.copyOf( data, Math.max( length + 10, data.length * 2 ) );
+        }
+        while ( ( zz & ~0x7FL ) != 0 )
+        {
+            data[length++] = (byte) ( ( zz & 0x7F ) | 0x80 );
+            zz >>>= 7;
+        }
+        data[length++] = (byte) zz;
+    }
+
+    /**
+     * Creates a decoder positioned before the first sample.
+     *
+     * @return the decoder
+     */
+    public Decoder decoder()
+    {
+        return new Decoder( 0 );
+    }
+
+    /**
+     * Creates a decoder positioned before the first sample at or after a
+     * point in time.
+     *
+     * @param from the point in time
+     * @return the decoder
+     */
+    public Decoder decoder( long from )
+    {
+        int blocks = ( count + BLOCK_SIZE - 1 ) / BLOCK_SIZE;
+        int i = Arrays.binarySearch( blockStarts, 0, blocks, from );
+        // Start in the last block starting before the point in time
+        int block = i >= 0 ? i : Math.max( 0, -i - 2 );
+        // Equal start times may span several blocks
+        while ( block > 0 && blockStarts[block] >= from )
+        {
+            block--;
+        }
+        Decoder decoder = new Decoder( block );
+        decoder.skipUntil( from );
+        return decoder;
+    }
+
+    /**
+     * Writes the series in a form readable by {@link #readFrom(DataInput)}.
+     *
+     * @param out where to write it
+     * @throws IOException if writing fails
+     */
+    public void writeTo( DataOutput out ) throws IOException
+    {
+        out.writeInt( fields );
+        out.writeInt( count );
+        out.writeInt( length );
+        out.write( data, 0, length );
+    }
+
+    /**
+     * Reads a series written by {@link #writeTo(DataOutput)}. More samples
+     * may be appended to it.
+     *
+     * @param in where to read it from
+     * @return the series
+     * @throws IOException if reading fails
+     */
+    public static CompressedSeries readFrom( DataInput in ) throws IOException
+    {
+        CompressedSeries series = new CompressedSeries( in.readInt() );
+        int samples = in.readInt();
+        byte[] bytes = new byte[ in.readInt() ];
+        in.readFully( bytes );
+        // Decode once to restore the block table and the appending state
+        series.data = bytes;
+        series.length = bytes.length;
+        series.count = samples;
+        int blocks = ( samples + BLOCK_SIZE - 1 ) / BLOCK_SIZE;
+        series.blockOffsets = new int[ Math.max( 8, blocks ) ];
+        series.blockStarts = new long[ Math.max( 8, blocks ) ];
+        Decoder decoder = series.new Decoder( 0 );
+        for ( int i = 0; i < samples; i++ )
+        {
+            if ( i % BLOCK_SIZE == 0 )
+            {
+                series.blockOffsets[i / BLOCK_SIZE] = decoder.offset;
+            }
+            decoder.advance();
+            if ( i % BLOCK_SIZE == 0 )
+            {
+                series.blockStarts[i / BLOCK_SIZE] = decoder.timestamp;
+            }
+        }
+        series.previousTimestamp = decoder.timestamp;
+        series.previousDelta = decoder.delta;
+        System.arraycopy( decoder.values, 0, series.previousValues, 0, series.fields );
+        return series;
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public int getFieldCount()
+    {
+        return fields;
+    }
+
+    /**
+     * Getter for the size of the encoded samples.
+     *
+     * @return the number of bytes
+     */
+    public int getEncodedBytes()
+    {
+        return length;
+    }
+
+    /**
+     * Streams the samples of a series, one block at a time. A decoder sees
+     * the samples appended before it was created.
+     */
+    public final class Decoder
+    {
+
+        private final int end;
+        private int offset;
+        private int index;
+        private long timestamp;
+        private long delta;
+        private final long[] values = new long[ fields ];
+        /**
+         * Whether the current sample has been decoded but not handed out yet
+         */
+        private boolean pending;
+
+        private Decoder( int block )
+        {
+            this.end = count;
+            this.index = block * BLOCK_SIZE;
+            this.offset = index < count ? blockOffsets[block] : length;
+        }
+
+        /**
+         * Moves to the next sample.
+         *
+         * @return false if there are no more samples
+         */
+        public boolean next()
+        {
+            if ( pending )
+            {
+                pending = false;
+                return true;
+            }
+            return advance();
+        }
+
+        private boolean advance()
+        {
+            if ( index >= end )
+            {
+                return false;
+            }
+            if ( index % BLOCK_SIZE == 0 )
+            {
+                timestamp = readVarLong();
+                for ( int i = 0; i < fields; i++ )
+                {
+                    values[i] = readVarLong();
+                }
+                delta = 0;
+            }
+            else
+            {
+                delta += readVarLong();
+                timestamp += delta;
+                for ( int i = 0; i < fields; i++ )
+                {
+                    values[i] += readVarLong();
+                }
+            }
+            index++;
+            return true;
+        }
+
+        private void skipUntil( long from )
+        {
+            while ( advance() )
+            {
+                if ( timestamp >= from )
+                {
+                    // Hand out this sample on the next call to next()
+                    pending = true;
+                    return;
+                }
+            }
+        }
+
+        private long readVarLong()
+        {
+            long zz = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = data[offset++];
+                zz |= (long) ( b & 0x7F ) << shift;
+                shift += 7;
+            }
+            while ( b < 0 );
+            return ( zz >>> 1 ) ^ -( zz & 1 );
+        }
+
+        public long getTimestamp()
+        {
+            return timestamp;
+        }
+
+        /**
+         * Getter for a field of the current sample.
+         *
+         * @param field the number of the field
+         * @return its value
+         */
+        public long get( int field )
+        {
+            return values[field];
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.camelspotting.jotl.history;
+
+import com.camelspotting.jotl.domain.Game;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only file of games encoded by {@link GameCodec}. Each game is
+ * prefixed by its length so that a game cut short by a crash is detected. It
+ * is ignored when reading, and cut off before the next game is appended.
+ */
+public class GameArchive
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( GameArchive.class );
+
+    private final File file;
+    /**
+     * The open stream, or null until the first game is appended
+     */
+    private DataOutputStream out;
+
+    /**
+     * Creates an archive appending to the given file. The file is created
+     * when the first game is appended.
+     *
+     * @param file the archive file
+     */
+    public GameArchive( File file )
+    {
+        this.file = file;
+    }
+
+    /**
+     * Appends a game to the archive.
+     *
+     * @param game the game to append
+     * @throws IOException if writing fails
+     */
+    public synchronized void append( Game game ) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( 512 );
+        GameCodec.write( game, new DataOutputStream( bytes ) );
+        if ( out == null )
+        {
+            truncateIncomplete();
+            out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file, true ) ) );
+        }
+        out.writeInt( bytes.size() );
+        bytes.writeTo( out );
+        out.flush();
+    }
+
+    /**
+     * Cuts off a game left incomplete by a crash, so that the games appended
+     * after it can be read.
+     */
+    private void truncateIncomplete() throws IOException
+    {
+        if ( !file.exists() )
+        {
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try
+        {
+            long length = raf.length();
+            long end = 0;
+            while ( length - end >= 4 )
+            {
+                raf.seek( end );
+                int size = raf.readInt();
+                if ( size < 0 || size > length - end - 4 )
+                {
+                    break;
+                }
+                end += 4 + size;
+            }
+            if ( end < length )
+            {
+                LOG.warn( "Cutting off {} bytes of an incomplete game at the end of '{}'.", length - end, file );
+                raf.setLength( end );
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads all complete games in the archive, oldest first.
+     *
+     * @return the archived games
+     * @throws IOException if reading fails
+     */
+    public synchronized List<Game> readAll() throws IOException
+    {
+        List<Game> games = new ArrayList<Game>();
+        if ( !file.exists() )
+        {
+            return games;
+        }
+        long remaining = file.length();
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try
+        {
+            while ( remaining >= 4 )
+            {
+                int size = in.readInt();
+                remaining -= 4;
+                // A length beyond the end of the file is a game cut short
+                if ( size < 0 || size > remaining )
+                {
+                    break;
+                }
+                byte[] record = new byte[ size ];
+                try
+                {
+                    in.readFully( record );
+                }
+                catch ( EOFException ex )
+                {
+                    break;
+                }
+                remaining -= size;
+                games.add( GameCodec.read( new DataInputStream( new ByteArrayInputStream( record ) ) ) );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return games;
+    }
+
+    /**
+     * Closes the archive. Appending again reopens it.
+     *
+     * @throws IOException if closing fails
+     */
+    public synchronized void close() throws IOException
+    {
+        if ( out != null )
+        {
+            out.close();
+            out = null;
+        }
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+}
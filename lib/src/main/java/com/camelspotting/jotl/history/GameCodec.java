@@ -0,0 +1,194 @@
+package com.camelspotting.jotl.history;
+
+import com.camelspotting.jotl.NewGRF;
+import com.camelspotting.jotl.domain.ClientsDetailsV5;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.parsing.Station;
+import com.camelspotting.jotl.parsing.Vehicle;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import org.joda.time.LocalDate;
+
+/**
+ * A compact binary encoding of {@link Game}s. Only the gathered information
+ * is stored, so a decoded game gets a new game id.
+ */
+public final class GameCodec
+{
+
+    /**
+     * The version of the encoding, written in front of every game
+     */
+    private static final int VERSION = 1;
+    private static final Vehicle[] VEHICLES = Vehicle.values();
+    private static final Station[] STATIONS = Station.values();
+
+    private GameCodec()
+    {
+    }
+
+    /**
+     * Encodes a game.
+     *
+     * @param game the game to encode
+     * @param out where to write it
+     * @throws IOException if writing fails
+     */
+    public static void write( Game game, DataOutput out ) throws IOException
+    {
+        out.writeByte( VERSION );
+        ServerDetails sd = game.getServerDetails();
+        writeString( sd.getServerName(), out );
+        writeDate( sd.getGameDate(), out );
+        writeDate( sd.getStartDate(), out );
+        out.writeByte( sd.getMaxNumberOfCompanies() );
+        out.writeByte( sd.getNumberOfActiveCompanies() );
+        out.writeByte( sd.getMaxNumberOfSpectators() );
+        out.writeByte( sd.getNumberOfActiveSpectators() );
+        out.writeByte( sd.getMaxNumberOfClients() );
+        out.writeByte( sd.getNumberOfActiveClients() );
+        writeString( sd.getVersion(), out );
+        out.writeByte( sd.getServerLanguage() );
+        out.writeBoolean( sd.isPasswordProtected() );
+        out.writeBoolean( sd.isDedicated() );
+        out.writeByte( sd.getTileset() );
+        out.writeShort( sd.getMapHeight() );
+        out.writeShort( sd.getMapWidth() );
+        writeString( sd.getMapName(), out );
+        List<NewGRF> grfs = sd.getNewGRFs();
+        out.writeShort( grfs != null ? grfs.size() : -1 );
+        if ( grfs != null )
+        {
+            for ( NewGRF grf : grfs )
+            {
+                writeString( grf.getId(), out );
+                writeString( grf.getMD5Checksum(), out );
+                writeString( grf.getName(), out );
+            }
+        }
+
+        List<Company> companies = game.getClientDetails().getCompanies();
+        out.writeByte( companies.size() );
+        for ( Company c : companies )
+        {
+            out.writeByte( c.getCurrentId() );
+            writeString( c.getCompanyName(), out );
+            out.writeInt( c.getInaugerationYear() );
+            out.writeLong( c.getCompanyValue() );
+            out.writeLong( c.getBalance() );
+            out.writeLong( c.getIncome() );
+            out.writeShort( c.getRating() );
+            out.writeBoolean( c.isPasswordProtected() );
+            for ( Vehicle v : VEHICLES )
+            {
+                out.writeShort( c.getVehicleCount( v ) );
+            }
+            for ( Station s : STATIONS )
+            {
+                out.writeShort( c.getStationCount( s ) );
+            }
+        }
+    }
+
+    /**
+     * Decodes a game written by {@link #write(Game, DataOutput)}.
+     *
+     * @param in where to read it from
+     * @return the decoded game
+     * @throws IOException if reading fails or the data is not an encoded game
+     */
+    public static Game read( DataInput in ) throws IOException
+    {
+        int version = in.readUnsignedByte();
+        if ( version != VERSION )
+        {
+            throw new IOException( String.format( "Unsupported game encoding: %d.", version ) );
+        }
+        String serverName = readString( in );
+        LocalDate gameDate = readDate( in );
+        LocalDate startDate = readDate( in );
+        int maxCompanies = in.readUnsignedByte();
+        int onCompanies = in.readUnsignedByte();
+        int maxSpectators = in.readUnsignedByte();
+        int onSpectators = in.readUnsignedByte();
+        int maxClients = in.readUnsignedByte();
+        int onClients = in.readUnsignedByte();
+        String gameVersion = readString( in );
+        int serverLang = in.readUnsignedByte();
+        boolean passwordProtected = in.readBoolean();
+        boolean dedicated = in.readBoolean();
+        int tileset = in.readUnsignedByte();
+        int mapHeight = in.readUnsignedShort();
+        int mapWidth = in.readUnsignedShort();
+        String mapName = readString( in );
+        List<NewGRF> grfs = null;
+        int grfCount = in.readShort();
+        if ( grfCount >= 0 )
+        {
+            grfs = new ArrayList<NewGRF>( grfCount );
+            for ( int i = 0; i < grfCount; i++ )
+            {
+                grfs.add( new NewGRF( readString( in ), readString( in ), readString( in ) ) );
+            }
+        }
+        ServerDetails sd = new ServerDetails( grfs, serverName, gameDate, startDate, maxCompanies, onCompanies, maxSpectators, onSpectators, maxClients, onClients, gameVersion, serverLang, passwordProtected, dedicated, tileset, mapHeight, mapWidth, mapName );
+
+        int companyCount = in.readUnsignedByte();
+        List<Company> companies = new ArrayList<Company>( companyCount );
+        for ( int i = 0; i < companyCount; i++ )
+        {
+            int id = in.readUnsignedByte();
+            String name = readString( in );
+            int inaugerated = in.readInt();
+            long value = in.readLong();
+            long balance = in.readLong();
+            long income = in.readLong();
+            int rating = in.readShort();
+            boolean pwProtected = in.readBoolean();
+            EnumMap<Vehicle, Integer> vehicles = new EnumMap<Vehicle, Integer>( Vehicle.class );
+            for ( Vehicle v : VEHICLES )
+            {
+                vehicles.put( v, in.readUnsignedShort() );
+            }
+            EnumMap<Station, Integer> stations = new EnumMap<Station, Integer>( Station.class );
+            for ( Station s : STATIONS )
+            {
+                stations.put( s, in.readUnsignedShort() );
+            }
+            companies.add( new Company( id, name, inaugerated, value, balance, income, rating, pwProtected, vehicles, stations ) );
+        }
+        return new Game( sd, new ClientsDetailsV5( companies ) );
+    }
+
+    private static void writeString( String s, DataOutput out ) throws IOException
+    {
+        out.writeBoolean( s != null );
+        if ( s != null )
+        {
+            out.writeUTF( s );
+        }
+    }
+
+    private static String readString( DataInput in ) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDate( LocalDate date, DataOutput out ) throws IOException
+    {
+        // Days are packed as yyyymmdd, with 0 meaning no date
+        out.writeInt( date != null ? date.getYear() * 10000 + date.getMonthOfYear() * 100 + date.getDayOfMonth() : 0 );
+    }
+
+    private static LocalDate readDate( DataInput in ) throws IOException
+    {
+        int packed = in.readInt();
+        return packed != 0 ? new LocalDate( packed / 10000, packed / 100 % 100, packed % 100 ) : null;
+    }
+}
@@ -0,0 +1,198 @@
+package com.camelspotting.jotl.history;
+
+import com.camelspotting.jotl.NewGRF;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.ServerDetails;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded history of finished games, newest first. Games are kept in a ring
+ * buffer and the oldest ones are evicted when either the number of games or
+ * their approximate size in memory exceeds its limit. Evicted games may be
+ * spilled to a {@link GameArchive}.
+ */
+public class GameHistory
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( GameHistory.class );
+    /**
+     * The default number of games to keep
+     */
+    public static final int DEFAULT_MAX_GAMES = 16;
+    /**
+     * The default approximate number of bytes to keep
+     */
+    public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+    private final Game[] games;
+    private final long[] sizes;
+    private final long maxBytes;
+    /**
+     * Where to put evicted games, or null to forget them
+     */
+    private final GameArchive archive;
+    /**
+     * The slot of the oldest game
+     */
+    private int head;
+    private int size;
+    private long bytes;
+
+    /**
+     * Creates a history with the default limits.
+     */
+    public GameHistory()
+    {
+        this( DEFAULT_MAX_GAMES, DEFAULT_MAX_BYTES, null );
+    }
+
+    /**
+     * Main constructor.
+     *
+     * @param maxGames the maximum number of games to keep
+     * @param maxBytes the maximum approximate size of the kept games. The
+     * newest game is always kept, even if it is larger than this.
+     * @param archive where to put evicted games, or null to forget them
+     */
+    public GameHistory( int maxGames, long maxBytes, GameArchive archive )
+    {
+        if ( maxGames <= 0 || maxBytes <= 0 )
+        {
+            throw new IllegalArgumentException( String.format( "Illegal history limits: %d games, %d bytes", maxGames, maxBytes ) );
+        }
+        this.games = new Game[ maxGames ];
+        this.sizes = new long[ maxGames ];
+        this.maxBytes = maxBytes;
+        this.archive = archive;
+    }
+
+    /**
+     * Adds a finished game, evicting the oldest ones as needed.
+     *
+     * @param game the game to add
+     */
+    public synchronized void add( Game game )
+    {
+        if ( size == games.length )
+        {
+            evictOldest();
+        }
+        int slot = ( head + size ) % games.length;
+        games[slot] = game;
+        sizes[slot] = estimateSize( game );
+        bytes += sizes[slot];
+        size++;
+        while ( bytes > maxBytes && size > 1 )
+        {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest()
+    {
+        Game evicted = games[head];
+        bytes -= sizes[head];
+        games[head] = null;
+        head = ( head + 1 ) % games.length;
+        size--;
+        if ( archive != null )
+        {
+            try
+            {
+                archive.append( evicted );
+            }
+            catch ( IOException ex )
+            {
+                LOG.warn( String.format( "Could not archive game to '%s'.", archive.getFile() ), ex );
+            }
+        }
+    }
+
+    /**
+     * Getter for a kept game.
+     *
+     * @param index 0 for the newest game
+     * @return the game
+     * @throws IndexOutOfBoundsException if there is no such game
+     */
+    public synchronized Game get( int index )
+    {
+        if ( index < 0 || index >= size )
+        {
+            throw new IndexOutOfBoundsException( String.format( "Index: %d, size: %d", index, size ) );
+        }
+        return games[( head + size - 1 - index ) % games.length];
+    }
+
+    /**
+     * Getter for all kept games.
+     *
+     * @return a copy of the games, newest first
+     */
+    public synchronized List<Game> getGames()
+    {
+        List<Game> list = new ArrayList<Game>( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            list.add( get( i ) );
+        }
+        return list;
+    }
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Getter for the approximate size of the kept games.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getApproximateBytes()
+    {
+        return bytes;
+    }
+
+    public GameArchive getArchive()
+    {
+        return archive;
+    }
+
+    /**
+     * Estimates how much memory a game takes up. This only needs to be good
+     * enough for bounding the history.
+     *
+     * @param game the game
+     * @return the approximate size in bytes
+     */
+    static long estimateSize( Game game )
+    {
+        // Object headers, fields and the collections around them
+        long estimate = 256;
+        ServerDetails sd = game.getServerDetails();
+        estimate += stringSize( sd.getServerName() ) + stringSize( sd.getVersion() ) + stringSize( sd.getMapName() );
+        if ( sd.getNewGRFs() != null )
+        {
+            for ( NewGRF grf : sd.getNewGRFs() )
+            {
+                estimate += 64 + stringSize( grf.getId() ) + stringSize( grf.getMD5Checksum() ) + stringSize( grf.getName() );
+            }
+        }
+        for ( Company c : game.getClientDetails().getCompanies() )
+        {
+            // The company and its two count maps
+            estimate += 320 + stringSize( c.getCompanyName() );
+        }
+        return estimate;
+    }
+
+    private static long stringSize( String s )
+    {
+        return s != null ? 40 + 2 * s.length() : 0;
+    }
+}
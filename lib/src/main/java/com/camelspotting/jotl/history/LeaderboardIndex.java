@@ -0,0 +1,376 @@
+package com.camelspotting.jotl.history;
+
+import com.camelspotting.jotl.MonitorState;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.CompanyMetric;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.event.BatchOpenTTDListener;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Answers leaderboard questions over recorded companies, such as "the top 10
+ * companies by value last month" or "the longest-running leader by balance".
+ * <p>
+ * Time is cut into buckets of one {@link Resolution}. For every bucket and
+ * metric the index keeps the best value of each company, sorted and limited
+ * to the given depth, both across all servers and per server. A query only
+ * merges the sorted lists of the buckets in its range, which is widened to
+ * whole buckets. As each company is listed at most once per bucket, the
+ * merged top k is exact for any k up to the depth.
+ */
+public class LeaderboardIndex implements BatchOpenTTDListener
+{
+
+    private static final CompanyMetric[] METRICS = CompanyMetric.values();
+    private static final Comparator<Standing> BY_VALUE = new Comparator<Standing>()
+    {
+        @Override
+        public int compare( Standing o1, Standing o2 )
+        {
+            return o1.getValue() > o2.getValue() ? -1 : ( o1.getValue() == o2.getValue() ? 0 : 1 );
+        }
+    };
+    private final Resolution resolution;
+    private final int retention;
+    private final int depth;
+    private final NavigableMap<Long, Bucket> buckets = new TreeMap<Long, Bucket>();
+
+    /**
+     * Creates an index of a month of hours, 32 deep.
+     */
+    public LeaderboardIndex()
+    {
+        this( Resolution.HOUR, 31 * 24, 32 );
+    }
+
+    /**
+     * Main constructor.
+     *
+     * @param resolution the size of the buckets
+     * @param retention the number of buckets to keep
+     * @param depth the number of companies to keep per bucket and metric,
+     * which is the largest k a query can answer exactly
+     */
+    public LeaderboardIndex( Resolution resolution, int retention, int depth )
+    {
+        if ( retention <= 0 || depth <= 0 )
+        {
+            throw new IllegalArgumentException( String.format( "Illegal index size: %d buckets, depth %d", retention, depth ) );
+        }
+        this.resolution = resolution;
+        this.retention = retention;
+        this.depth = depth;
+    }
+
+    @Override
+    public void eventsOccured( MonitorState state, List<OpenTTDEvent> evts )
+    {
+        if ( !state.hasNewGame() )
+        {
+            return;
+        }
+        add( state.getServer(), state.getGame(), state.getLastSuccess() );
+    }
+
+    /**
+     * Records the companies of a game.
+     *
+     * @param server the server the game is played on
+     * @param game the game
+     * @param timestamp when the game was queried, in milliseconds since the
+     * epoch
+     */
+    public synchronized void add( Server server, Game game, long timestamp )
+    {
+        long start = resolution.bucketStart( timestamp );
+        Bucket bucket = buckets.get( start );
+        if ( bucket == null )
+        {
+            if ( buckets.size() == retention )
+            {
+                if ( start < buckets.firstKey() )
+                {
+                    // Older than anything kept
+                    return;
+                }
+                buckets.pollFirstEntry();
+            }
+            bucket = new Bucket();
+            buckets.put( start, bucket );
+        }
+        Ranking[] perServer = bucket.servers.get( server );
+        if ( perServer == null )
+        {
+            perServer = newRankings();
+            bucket.servers.put( server, perServer );
+        }
+        for ( Company c : game.getClientDetails().getCompanies() )
+        {
+            for ( int m = 0; m < METRICS.length; m++ )
+            {
+                long value = METRICS[m].valueOf( c );
+                if ( bucket.all[m].qualifies( value ) || perServer[m].qualifies( value ) )
+                {
+                    Standing standing = new Standing( server, c, timestamp, value );
+                    bucket.all[m].offer( standing );
+                    perServer[m].offer( standing );
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the companies with the highest values of a metric within a time
+     * range, across all servers.
+     *
+     * @param metric the metric
+     * @param k the number of companies, at most the depth of the index
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, inclusive
+     * @return each company's best standing, best first
+     */
+    public synchronized List<Standing> getTop( CompanyMetric metric, int k, long from, long to )
+    {
+        return getTop( null, metric, k, from, to );
+    }
+
+    /**
+     * Finds the companies with the highest values of a metric within a time
+     * range on one server.
+     *
+     * @param server the server, or null for all servers
+     * @param metric the metric
+     * @param k the number of companies, at most the depth of the index
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, inclusive
+     * @return each company's best standing, best first
+     */
+    public synchronized List<Standing> getTop( Server server, CompanyMetric metric, int k, long from, long to )
+    {
+        if ( k > depth )
+        {
+            throw new IllegalArgumentException( String.format( "Cannot find the top %d in an index %d deep", k, depth ) );
+        }
+        // The best standing of each company, by server
+        Map<Server, Map<Company, Standing>> best = new HashMap<Server, Map<Company, Standing>>();
+        for ( Bucket bucket : buckets.subMap( resolution.bucketStart( from ), true, to, true ).values() )
+        {
+            Ranking ranking = bucket.get( server, metric );
+            for ( int i = 0; ranking != null && i < ranking.size; i++ )
+            {
+                Standing s = ranking.standings[i];
+                Map<Company, Standing> companies = best.get( s.getServer() );
+                if ( companies == null )
+                {
+                    companies = new HashMap<Company, Standing>();
+                    best.put( s.getServer(), companies );
+                }
+                Standing previous = companies.get( s.getCompany() );
+                if ( previous == null || s.getValue() > previous.getValue() )
+                {
+                    companies.put( s.getCompany(), s );
+                }
+            }
+        }
+        List<Standing> top = new ArrayList<Standing>();
+        for ( Map<Company, Standing> companies : best.values() )
+        {
+            top.addAll( companies.values() );
+        }
+        Collections.sort( top, BY_VALUE );
+        return top.size() > k ? new ArrayList<Standing>( top.subList( 0, k ) ) : top;
+    }
+
+    /**
+     * Finds the company that led a metric for the most consecutive buckets
+     * within a time range.
+     *
+     * @param server the server, or null for all servers
+     * @param metric the metric
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, inclusive
+     * @return the reign, or null if nothing was recorded in the range
+     */
+    public synchronized Reign getLongestLeader( Server server, CompanyMetric metric, long from, long to )
+    {
+        Reign longest = null;
+        Standing leader = null;
+        long reignStart = 0;
+        int reignBuckets = 0;
+        long previous = Long.MIN_VALUE;
+        for ( Map.Entry<Long, Bucket> e : buckets.subMap( resolution.bucketStart( from ), true, to, true ).entrySet() )
+        {
+            Ranking ranking = e.getValue().get( server, metric );
+            Standing top = ranking != null && ranking.size > 0 ? ranking.standings[0] : null;
+            boolean continues = top != null && leader != null && leader.isSameCompany( top ) && e.getKey() - previous == resolution.getMillis();
+            if ( !continues )
+            {
+                leader = top;
+                reignStart = e.getKey();
+                reignBuckets = 0;
+            }
+            if ( top != null )
+            {
+                reignBuckets++;
+                previous = e.getKey();
+                if ( longest == null || reignBuckets > longest.getBuckets() )
+                {
+                    longest = new Reign( leader, reignStart, e.getKey() + resolution.getMillis(), reignBuckets );
+                }
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Getter for the number of buckets in the index.
+     *
+     * @return the number of buckets
+     */
+    public synchronized int getBucketCount()
+    {
+        return buckets.size();
+    }
+
+    private Ranking[] newRankings()
+    {
+        Ranking[] rankings = new Ranking[ METRICS.length ];
+        for ( int m = 0; m < rankings.length; m++ )
+        {
+            rankings[m] = new Ranking( depth );
+        }
+        return rankings;
+    }
+
+    /**
+     * A company's uninterrupted lead.
+     */
+    public static final class Reign
+    {
+
+        /**
+         * The leader's standing at the start of the reign
+         */
+        private final Standing leader;
+        private final long start;
+        private final long end;
+        private final int buckets;
+
+        Reign( Standing leader, long start, long end, int buckets )
+        {
+            this.leader = leader;
+            this.start = start;
+            this.end = end;
+            this.buckets = buckets;
+        }
+
+        public Standing getLeader()
+        {
+            return leader;
+        }
+
+        public long getStart()
+        {
+            return start;
+        }
+
+        /**
+         * Getter for the end of the reign.
+         *
+         * @return milliseconds since the epoch, exclusive
+         */
+        public long getEnd()
+        {
+            return end;
+        }
+
+        public int getBuckets()
+        {
+            return buckets;
+        }
+    }
+
+    /**
+     * The rankings of one bucket, indexed by metric
+     */
+    private final class Bucket
+    {
+
+        private final Ranking[] all = newRankings();
+        private final Map<Server, Ranking[]> servers = new HashMap<Server, Ranking[]>();
+
+        Ranking get( Server server, CompanyMetric metric )
+        {
+            Ranking[] rankings = server != null ? servers.get( server ) : all;
+            return rankings != null ? rankings[metric.ordinal()] : null;
+        }
+    }
+
+    /**
+     * The best value of each company, highest first and limited in length
+     */
+    private static final class Ranking
+    {
+
+        private final Standing[] standings;
+        private int size;
+
+        Ranking( int depth )
+        {
+            this.standings = new Standing[ depth ];
+        }
+
+        boolean qualifies( long value )
+        {
+            return size < standings.length || value > standings[size - 1].getValue();
+        }
+
+        void offer( Standing s )
+        {
+            int at = -1;
+            for ( int i = 0; i < size; i++ )
+            {
+                if ( standings[i].isSameCompany( s ) )
+                {
+                    at = i;
+                    break;
+                }
+            }
+            if ( at >= 0 )
+            {
+                if ( s.getValue() <= standings[at].getValue() )
+                {
+                    return;
+                }
+            }
+            else if ( size < standings.length )
+            {
+                at = size++;
+            }
+            else if ( s.getValue() > standings[size - 1].getValue() )
+            {
+                at = size - 1;
+            }
+            else
+            {
+                return;
+            }
+            // Move it up to its place
+            while ( at > 0 && standings[at - 1].getValue() < s.getValue() )
+            {
+                standings[at] = standings[at - 1];
+                at--;
+            }
+            standings[at] = s;
+        }
+    }
+}
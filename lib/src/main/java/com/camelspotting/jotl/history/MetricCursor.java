@@ -0,0 +1,119 @@
+package com.camelspotting.jotl.history;
+
+import com.camelspotting.jotl.domain.CompanyMetric;
+import com.camelspotting.jotl.udp.DateUtil;
+import org.joda.time.LocalDate;
+
+/**
+ * Walks the company records of one game within a time range, oldest first.
+ * The getters read straight from the mapped segments, so nothing is copied.
+ * <pre>
+ * MetricCursor cursor = store.scan( server, fingerprint, from, to );
+ * while ( cursor.next() )
+ * {
+ *     chart.add( cursor.getTimestamp(), cursor.getCompanyId(), cursor.get( CompanyMetric.VALUE ) );
+ * }
+ * </pre>
+ *
+ * @see MetricStore#scan(com.camelspotting.jotl.domain.Server, long, long, long)
+ */
+public final class MetricCursor
+{
+
+    private final MetricSegment[] segments;
+    private final long to;
+    private int segment;
+    private int record;
+    private boolean started;
+
+    MetricCursor( MetricSegment[] segments, long from, long to )
+    {
+        this.segments = segments;
+        this.to = to;
+        this.record = -1;
+        // Skip the segments ending before the range
+        while ( segment < segments.length )
+        {
+            int first = segments[segment].seek( from );
+            if ( first < segments[segment].getCount() )
+            {
+                record = first - 1;
+                break;
+            }
+            segment++;
+        }
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return false if there are no more records in the range
+     */
+    public boolean next()
+    {
+        started = true;
+        while ( segment < segments.length )
+        {
+            MetricSegment current = segments[segment];
+            if ( ++record < current.getCount() )
+            {
+                if ( current.getTimestamp( record ) > to )
+                {
+                    // Stay past the end
+                    segment = segments.length;
+                    return false;
+                }
+                return true;
+            }
+            segment++;
+            record = -1;
+        }
+        return false;
+    }
+
+    public long getTimestamp()
+    {
+        return current().getTimestamp( record );
+    }
+
+    public int getCompanyId()
+    {
+        return current().getCompanyId( record );
+    }
+
+    /**
+     * Getter for the game date of the current record.
+     *
+     * @return the date as counted by OpenTTD
+     * @see #getGameDate()
+     */
+    public int getRawGameDate()
+    {
+        return current().getGameDate( record );
+    }
+
+    public LocalDate getGameDate()
+    {
+        return DateUtil.convertDateToYMD( getRawGameDate() );
+    }
+
+    /**
+     * Getter for a metric of the current record.
+     *
+     * @param metric the metric
+     * @return its value
+     */
+    public long get( CompanyMetric metric )
+    {
+        return current().get( record, metric );
+    }
+
+    private MetricSegment current()
+    {
+        if ( !started || segment >= segments.length )
+        {
+            throw new IllegalStateException( "The cursor is not on a record." );
+        }
+        return segments[segment];
+    }
+}
@@ -0,0 +1,222 @@
+package com.camelspotting.jotl.history;
+
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.CompanyMetric;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * One memory-mapped file of fixed-width company records, in the order they
+ * were appended. Every {@link #INDEX_INTERVAL}th timestamp is also kept in a
+ * sparse index so that time ranges can be found without scanning the whole
+ * segment.
+ * <p>
+ * A record is the timestamp, the OpenTTD game date and the company id
+ * followed by every {@link CompanyMetric} as a long.
+ */
+final class MetricSegment
+{
+
+    /**
+     * 'JOTS' in ASCII
+     */
+    private static final int MAGIC = 0x4A4F5453;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    /**
+     * Where the record count lives in the header
+     */
+    private static final int COUNT_OFFSET = 12;
+    private static final CompanyMetric[] METRICS = CompanyMetric.values();
+    static final int RECORD_SIZE = 16 + 8 * METRICS.length;
+    static final int INDEX_INTERVAL = 128;
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    /**
+     * Timestamps of every {@link #INDEX_INTERVAL}th record
+     */
+    private final long[] index;
+    /**
+     * The number of records. Written after the record itself, so readers
+     * never see a half-written record.
+     */
+    private volatile int count;
+
+    private MetricSegment( File file, MappedByteBuffer buffer, int capacity )
+    {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.index = new long[ ( capacity + INDEX_INTERVAL - 1 ) / INDEX_INTERVAL ];
+    }
+
+    /**
+     * Creates a new, empty segment.
+     *
+     * @param file the segment file
+     * @param bytes the size of the segment file
+     * @return the segment
+     * @throws IOException if the file cannot be created
+     */
+    static MetricSegment create( File file, long bytes ) throws IOException
+    {
+        int capacity = (int) Math.min( Integer.MAX_VALUE / RECORD_SIZE, ( bytes - HEADER_SIZE ) / RECORD_SIZE );
+        if ( capacity <= 0 )
+        {
+            throw new IllegalArgumentException( String.format( "Segments of %d bytes cannot hold any records.", bytes ) );
+        }
+        MetricSegment segment = new MetricSegment( file, map( file, HEADER_SIZE + (long) capacity * RECORD_SIZE ), capacity );
+        segment.buffer.putInt( 0, MAGIC );
+        segment.buffer.putInt( 4, VERSION );
+        segment.buffer.putInt( 8, RECORD_SIZE );
+        segment.buffer.putInt( COUNT_OFFSET, 0 );
+        return segment;
+    }
+
+    /**
+     * Opens an existing segment and rebuilds its index.
+     *
+     * @param file the segment file
+     * @return the segment
+     * @throws IOException if the file cannot be read or is not a segment
+     */
+    static MetricSegment open( File file ) throws IOException
+    {
+        MappedByteBuffer buffer = map( file, file.length() );
+        if ( buffer.capacity() < HEADER_SIZE || buffer.getInt( 0 ) != MAGIC || buffer.getInt( 4 ) != VERSION || buffer.getInt( 8 ) != RECORD_SIZE )
+        {
+            throw new IOException( String.format( "'%s' is not a metric segment.", file ) );
+        }
+        MetricSegment segment = new MetricSegment( file, buffer, ( buffer.capacity() - HEADER_SIZE ) / RECORD_SIZE );
+        int count = Math.min( buffer.getInt( COUNT_OFFSET ), segment.capacity );
+        for ( int i = 0; i < count; i += INDEX_INTERVAL )
+        {
+            segment.index[i / INDEX_INTERVAL] = segment.getTimestamp( i );
+        }
+        segment.count = count;
+        return segment;
+    }
+
+    private static MappedByteBuffer map( File file, long bytes ) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try
+        {
+            // The mapping stays valid after the channel is closed
+            return raf.getChannel().map( FileChannel.MapMode.READ_WRITE, 0, bytes );
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Appends the record of one company. Only one thread may append at a
+     * time.
+     *
+     * @param timestamp when the company was seen
+     * @param gameDate the OpenTTD game date
+     * @param c the company
+     */
+    void append( long timestamp, int gameDate, Company c )
+    {
+        int i = count;
+        int base = HEADER_SIZE + i * RECORD_SIZE;
+        buffer.putLong( base, timestamp );
+        buffer.putInt( base + 8, gameDate );
+        buffer.putInt( base + 12, c.getCurrentId() );
+        for ( int m = 0; m < METRICS.length; m++ )
+        {
+            buffer.putLong( base + 16 + 8 * m, METRICS[m].valueOf( c ) );
+        }
+        if ( i % INDEX_INTERVAL == 0 )
+        {
+            index[i / INDEX_INTERVAL] = timestamp;
+        }
+        buffer.putInt( COUNT_OFFSET, i + 1 );
+        count = i + 1;
+    }
+
+    /**
+     * Finds the first record at or after a point in time.
+     *
+     * @param timestamp the point in time
+     * @return the record number, or {@link #getCount()} if there is none
+     */
+    int seek( long timestamp )
+    {
+        int n = count;
+        int blocks = ( n + INDEX_INTERVAL - 1 ) / INDEX_INTERVAL;
+        // Find the last indexed block starting before the timestamp
+        int lo = 0;
+        int hi = blocks - 1;
+        int block = 0;
+        while ( lo <= hi )
+        {
+            int mid = ( lo + hi ) >>> 1;
+            if ( index[mid] < timestamp )
+            {
+                block = mid;
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid - 1;
+            }
+        }
+        int i = block * INDEX_INTERVAL;
+        while ( i < n && getTimestamp( i ) < timestamp )
+        {
+            i++;
+        }
+        return i;
+    }
+
+    long getTimestamp( int record )
+    {
+        return buffer.getLong( HEADER_SIZE + record * RECORD_SIZE );
+    }
+
+    int getGameDate( int record )
+    {
+        return buffer.getInt( HEADER_SIZE + record * RECORD_SIZE + 8 );
+    }
+
+    int getCompanyId( int record )
+    {
+        return buffer.getInt( HEADER_SIZE + record * RECORD_SIZE + 12 );
+    }
+
+    long get( int record, CompanyMetric metric )
+    {
+        return buffer.getLong( HEADER_SIZE + record * RECORD_SIZE + 16 + 8 * metric.ordinal() );
+    }
+
+    int getCount()
+    {
+        return count;
+    }
+
+    boolean isFull()
+    {
+        return count == capacity;
+    }
+
+    /**
+     * Writes the appended records to disk.
+     */
+    void force()
+    {
+        buffer.force();
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+}
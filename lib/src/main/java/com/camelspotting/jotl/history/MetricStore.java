@@ -0,0 +1,358 @@
+package com.camelspotting.jotl.history;
+
+import com.camelspotting.jotl.MonitorState;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.event.BatchOpenTTDListener;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import com.camelspotting.jotl.udp.DateUtil;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only store of per-poll company metrics. Records are kept per
+ * server and game in memory-mapped segment files, which are rolled over when
+ * they are full:
+ *
+ * <pre>
+ * directory/
+ *     10.0.0.1_3979/              the server
+ *         5f3a9c0d1e2b4a68/       the game fingerprint
+ *             0000000000.seg
+ * </pre>
+ *
+ * Register the store as a batch listener to record every update of a
+ * monitor:
+ *
+ * <pre>
+ * monitor.addBatchListener( new MetricStore( new File( "metrics" ) ) );
+ * </pre>
+ *
+ * Every game gets a series of its own, even if it is played with the same
+ * settings as the last one. Only the series being appended to are kept open;
+ * the segments of a scanned or finished series are unmapped once they are no
+ * longer used. After the store is reopened, the first game appended for a
+ * server starts a new series.
+ *
+ * @see MetricCursor
+ */
+public class MetricStore implements BatchOpenTTDListener, Closeable
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( MetricStore.class );
+    /**
+     * The default size of a segment file
+     */
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final String SUFFIX = ".seg";
+    private final File directory;
+    private final long segmentBytes;
+    /**
+     * The series of the current game of each server
+     */
+    private final Map<Server, Series> appending = new HashMap<Server, Series>();
+    private boolean closed;
+
+    /**
+     * Creates a store with the default segment size.
+     *
+     * @param directory where to keep the segments
+     */
+    public MetricStore( File directory )
+    {
+        this( directory, DEFAULT_SEGMENT_BYTES );
+    }
+
+    /**
+     * Main constructor.
+     *
+     * @param directory where to keep the segments
+     * @param segmentBytes the size of each segment file
+     */
+    public MetricStore( File directory, long segmentBytes )
+    {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Computes a fingerprint telling games on the same server apart. It is
+     * made from the details that stay the same throughout a game and from
+     * when the game was first seen, since two games played in a row may have
+     * the same details.
+     *
+     * @param sd the details of the game
+     * @param firstSeen when the game was first seen, in milliseconds since
+     * the epoch
+     * @return the fingerprint
+     */
+    public static long fingerprint( ServerDetails sd, long firstSeen )
+    {
+        return spread( 31 * configuration( sd ) + firstSeen );
+    }
+
+    /**
+     * Hashes the details that stay the same throughout a game.
+     */
+    private static long configuration( ServerDetails sd )
+    {
+        long fp = 17;
+        LocalDate start = sd.getStartDate();
+        if ( start != null )
+        {
+            fp = 31 * fp + DateUtil.convertYMDToDate( start );
+        }
+        fp = 31 * fp + sd.getMapWidth();
+        fp = 31 * fp + sd.getMapHeight();
+        fp = 31 * fp + sd.getTileset();
+        fp = 31 * fp + ( sd.getMapName() != null ? sd.getMapName().hashCode() : 0 );
+        fp = 31 * fp + ( sd.getVersion() != null ? sd.getVersion().hashCode() : 0 );
+        return fp;
+    }
+
+    /**
+     * Spreads the bits so that the directory names differ visibly.
+     */
+    private static long spread( long fp )
+    {
+        fp ^= fp >>> 33;
+        fp *= 0xff51afd7ed558ccdL;
+        fp ^= fp >>> 33;
+        return fp;
+    }
+
+    @Override
+    public void eventsOccured( MonitorState state, List<OpenTTDEvent> evts )
+    {
+        if ( !state.hasNewGame() )
+        {
+            return;
+        }
+        if ( state.getDelta() == null )
+        {
+            newGame( state.getServer() );
+        }
+        try
+        {
+            append( state.getServer(), state.getGame(), state.getLastSuccess() );
+        }
+        catch ( IOException ex )
+        {
+            LOG.warn( String.format( "Could not store metrics of '%s'.", state.getServer() ), ex );
+        }
+    }
+
+    /**
+     * Tells the store that a new game has started on a server. The next
+     * records of the server start a new series, and the series of the last
+     * game is closed.
+     *
+     * @param server the server
+     */
+    public synchronized void newGame( Server server )
+    {
+        Series s = appending.remove( server );
+        if ( s != null )
+        {
+            s.force();
+        }
+    }
+
+    /**
+     * Appends one record per company in the game. The records go to the
+     * series of the current game of the server, unless the game has other
+     * settings, which starts a new series.
+     *
+     * @param server the server the game is played on
+     * @param game the game
+     * @param timestamp when the game was queried, in milliseconds since the
+     * epoch. Must not go backwards for the same game.
+     * @throws IOException if a segment cannot be created
+     * @throws IllegalStateException if the store is closed
+     */
+    public synchronized void append( Server server, Game game, long timestamp ) throws IOException
+    {
+        if ( closed )
+        {
+            throw new IllegalStateException( "The metric store is closed." );
+        }
+        ServerDetails sd = game.getServerDetails();
+        long configuration = configuration( sd );
+        Series s = appending.get( server );
+        if ( s == null || s.configuration != configuration )
+        {
+            newGame( server );
+            s = new Series( seriesDirectory( server, fingerprint( sd, timestamp ) ), configuration );
+            appending.put( server, s );
+        }
+        int gameDate = sd.getGameDate() != null ? DateUtil.convertYMDToDate( sd.getGameDate() ) : 0;
+        List<Company> companies = game.getClientDetails().getCompanies();
+        for ( int i = 0; i < companies.size(); i++ )
+        {
+            s.writable().append( timestamp, gameDate, companies.get( i ) );
+        }
+    }
+
+    /**
+     * Scans the records of one game within a time range.
+     *
+     * @param server the server the game was played on
+     * @param fingerprint the fingerprint of the game
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, inclusive
+     * @return a cursor over the records
+     * @throws IOException if a segment cannot be read
+     * @see #getFingerprints(Server)
+     */
+    public synchronized MetricCursor scan( Server server, long fingerprint, long from, long to ) throws IOException
+    {
+        File dir = seriesDirectory( server, fingerprint );
+        Series s = appending.get( server );
+        if ( s == null || !s.dir.equals( dir ) )
+        {
+            // Not kept, so the segments are unmapped along with the cursor
+            s = new Series( dir, 0 );
+        }
+        List<MetricSegment> segments = s.segments;
+        return new MetricCursor( segments.toArray( new MetricSegment[ segments.size() ] ), from, to );
+    }
+
+    /**
+     * Lists the games stored for a server.
+     *
+     * @param server the server
+     * @return the fingerprints of the games
+     */
+    public synchronized List<Long> getFingerprints( Server server )
+    {
+        List<Long> fingerprints = new ArrayList<Long>();
+        File[] dirs = serverDirectory( server ).listFiles();
+        if ( dirs != null )
+        {
+            for ( File dir : dirs )
+            {
+                try
+                {
+                    fingerprints.add( new BigInteger( dir.getName(), 16 ).longValue() );
+                }
+                catch ( NumberFormatException ex )
+                {
+                    LOG.debug( "Ignoring '{}' in the metric store.", dir );
+                }
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Writes all appended records to disk.
+     */
+    public synchronized void flush()
+    {
+        for ( Series s : appending.values() )
+        {
+            s.force();
+        }
+    }
+
+    /**
+     * Writes all appended records to disk and lets go of the segments.
+     * Cursors already handed out stay valid.
+     */
+    @Override
+    public synchronized void close()
+    {
+        flush();
+        appending.clear();
+        closed = true;
+    }
+
+    private File serverDirectory( Server server )
+    {
+        return new File( directory, server.getIpAddress() + "_" + server.getPort() );
+    }
+
+    private File seriesDirectory( Server server, long fingerprint )
+    {
+        return new File( serverDirectory( server ), String.format( "%016x", fingerprint ) );
+    }
+
+    /**
+     * The segments of one game
+     */
+    private final class Series
+    {
+
+        private final File dir;
+        /**
+         * The hash of the settings of the game, telling when it changes
+         */
+        private final long configuration;
+        private final List<MetricSegment> segments = new ArrayList<MetricSegment>();
+
+        Series( File dir, long configuration ) throws IOException
+        {
+            this.dir = dir;
+            this.configuration = configuration;
+            File[] files = dir.listFiles();
+            if ( files != null )
+            {
+                // The names are zero-padded sequence numbers
+                Arrays.sort( files );
+                for ( File file : files )
+                {
+                    if ( file.getName().endsWith( SUFFIX ) )
+                    {
+                        segments.add( MetricSegment.open( file ) );
+                    }
+                }
+            }
+        }
+
+        /**
+         * Getter for the segment to append to, rolling over if needed.
+         *
+         * @return the segment
+         * @throws IOException if a new segment cannot be created
+         */
+        MetricSegment writable() throws IOException
+        {
+            MetricSegment last = segments.isEmpty() ? null : segments.get( segments.size() - 1 );
+            if ( last == null || last.isFull() )
+            {
+                if ( last != null )
+                {
+                    last.force();
+                }
+                if ( !dir.isDirectory() && !dir.mkdirs() )
+                {
+                    throw new IOException( String.format( "Could not create '%s'.", dir ) );
+                }
+                File file = new File( dir, String.format( "%010d%s", segments.size(), SUFFIX ) );
+                last = MetricSegment.create( file, segmentBytes );
+                segments.add( last );
+            }
+            return last;
+        }
+
+        void force()
+        {
+            for ( MetricSegment segment : segments )
+            {
+                segment.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.camelspotting.jotl.history;
+
+/**
+ * The bucket sizes of the rollups.
+ *
+ * @see RollupEngine
+ */
+public enum Resolution
+{
+
+    MINUTE( 60L * 1000 ),
+    HOUR( 60L * 60 * 1000 ),
+    DAY( 24L * 60 * 60 * 1000 );
+    private final long millis;
+
+    private Resolution( long millis )
+    {
+        this.millis = millis;
+    }
+
+    /**
+     * Finds the bucket a point in time belongs to. Days start at midnight
+     * UTC.
+     *
+     * @param timestamp milliseconds since the epoch
+     * @return the start of the bucket
+     */
+    public long bucketStart( long timestamp )
+    {
+        return timestamp - ( ( timestamp % millis ) + millis ) % millis;
+    }
+
+    public long getMillis()
+    {
+        return millis;
+    }
+}
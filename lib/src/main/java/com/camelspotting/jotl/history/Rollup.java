@@ -0,0 +1,96 @@
+package com.camelspotting.jotl.history;
+
+/**
+ * The aggregate of one metric over one bucket of time.
+ *
+ * @see RollupEngine
+ */
+public final class Rollup
+{
+
+    private final long start;
+    private final Resolution resolution;
+    /**
+     * The number of samples in the bucket
+     */
+    private final int count;
+    private final long min;
+    private final long max;
+    private final long sum;
+    /**
+     * The latest sample in the bucket
+     */
+    private final long last;
+
+    public Rollup( long start, Resolution resolution, int count, long min, long max, long sum, long last )
+    {
+        this.start = start;
+        this.resolution = resolution;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.last = last;
+    }
+
+    /**
+     * Getter for the start of the bucket.
+     *
+     * @return milliseconds since the epoch
+     */
+    public long getStart()
+    {
+        return start;
+    }
+
+    /**
+     * Getter for the end of the bucket.
+     *
+     * @return milliseconds since the epoch, exclusive
+     */
+    public long getEnd()
+    {
+        return start + resolution.getMillis();
+    }
+
+    public Resolution getResolution()
+    {
+        return resolution;
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public long getMin()
+    {
+        return min;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    public long getSum()
+    {
+        return sum;
+    }
+
+    public double getAverage()
+    {
+        return (double) sum / count;
+    }
+
+    public long getLast()
+    {
+        return last;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "Rollup %d (%s): n=%d, min=%d, max=%d, avg=%.1f, last=%d", start, resolution, count, min, max, getAverage(), last );
+    }
+}
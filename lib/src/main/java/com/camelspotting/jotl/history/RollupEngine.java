@@ -0,0 +1,316 @@
+package com.camelspotting.jotl.history;
+
+import com.camelspotting.jotl.MonitorState;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.CompanyMetric;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.domain.ServerMetric;
+import com.camelspotting.jotl.event.BatchOpenTTDListener;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps minute, hour and day aggregates (min, max, average and last) of every
+ * {@link ServerMetric} per server and every {@link CompanyMetric} per
+ * company. The aggregates are updated as each game comes in, so charting a
+ * long range only touches a few hundred buckets. Register the engine as a
+ * batch listener with the monitors to feed it:
+ *
+ * <pre>
+ * RollupEngine rollups = new RollupEngine();
+ * monitor.addBatchListener( rollups );
+ * ...
+ * List&lt;Rollup&gt; week = rollups.getServerRollups( server, ServerMetric.CLIENTS, Resolution.HOUR, from, to );
+ * </pre>
+ *
+ * The companies of finished games are kept until their day buckets would
+ * have been evicted, but their minute and hour buckets are dropped as soon as
+ * those have all expired.
+ */
+public class RollupEngine implements BatchOpenTTDListener
+{
+
+    private static final ServerMetric[] SERVER_METRICS = ServerMetric.values();
+    private static final CompanyMetric[] COMPANY_METRICS = CompanyMetric.values();
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+    /**
+     * The number of buckets to keep for each resolution
+     */
+    private final Map<Resolution, Integer> retention = new EnumMap<Resolution, Integer>( Resolution.class );
+    private final Map<Server, Entry> servers = new HashMap<Server, Entry>();
+    /**
+     * Scratch space for the metrics of one sample
+     */
+    private final long[] serverValues = new long[ SERVER_METRICS.length ];
+    private final long[] companyValues = new long[ COMPANY_METRICS.length ];
+
+    /**
+     * Creates an engine keeping a day of minutes, a month of hours and ten
+     * years of days.
+     */
+    public RollupEngine()
+    {
+        this( 24 * 60, 31 * 24, 10 * 366 );
+    }
+
+    /**
+     * Main constructor.
+     *
+     * @param minutes the number of minute buckets to keep
+     * @param hours the number of hour buckets to keep
+     * @param days the number of day buckets to keep
+     */
+    public RollupEngine( int minutes, int hours, int days )
+    {
+        if ( minutes <= 0 || hours <= 0 || days <= 0 )
+        {
+            throw new IllegalArgumentException( String.format( "Illegal retention: %d minutes, %d hours, %d days", minutes, hours, days ) );
+        }
+        retention.put( Resolution.MINUTE, minutes );
+        retention.put( Resolution.HOUR, hours );
+        retention.put( Resolution.DAY, days );
+    }
+
+    @Override
+    public void eventsOccured( MonitorState state, List<OpenTTDEvent> evts )
+    {
+        if ( !state.hasNewGame() )
+        {
+            return;
+        }
+        if ( state.getDelta() == null )
+        {
+            newGame( state.getServer() );
+        }
+        add( state.getServer(), state.getGame(), state.getLastSuccess() );
+    }
+
+    /**
+     * Tells the engine that a new game has started on a server. Companies
+     * added afterwards start over, even if a company of an earlier game had
+     * the same id and inauguration year.
+     *
+     * @param server the server
+     */
+    public synchronized void newGame( Server server )
+    {
+        Entry entry = servers.get( server );
+        if ( entry != null )
+        {
+            entry.game++;
+        }
+    }
+
+    /**
+     * Adds a game to the aggregates.
+     *
+     * @param server the server the game is played on
+     * @param game the game
+     * @param timestamp when the game was queried, in milliseconds since the
+     * epoch
+     */
+    public synchronized void add( Server server, Game game, long timestamp )
+    {
+        Entry entry = servers.get( server );
+        if ( entry == null )
+        {
+            entry = new Entry();
+            servers.put( server, entry );
+        }
+        for ( int m = 0; m < SERVER_METRICS.length; m++ )
+        {
+            serverValues[m] = SERVER_METRICS[m].valueOf( game );
+        }
+        add( entry.server, timestamp, serverValues );
+        for ( Company c : game.getClientDetails().getCompanies() )
+        {
+            Long key = companyKey( c );
+            CompanySeries company = entry.companies.get( key );
+            if ( company == null || company.game != entry.game )
+            {
+                company = new CompanySeries( entry.game );
+                entry.companies.put( key, company );
+            }
+            for ( int m = 0; m < COMPANY_METRICS.length; m++ )
+            {
+                companyValues[m] = COMPANY_METRICS[m].valueOf( c );
+            }
+            company.reopen();
+            add( company.series, timestamp, companyValues );
+            company.lastSeen = timestamp;
+        }
+        if ( timestamp - entry.lastSweep > Resolution.DAY.getMillis() )
+        {
+            sweep( entry, timestamp );
+        }
+    }
+
+    /**
+     * Drops the buckets of companies no longer seen once all of them would
+     * have been evicted, and forgets the companies when their day buckets
+     * are gone.
+     */
+    private void sweep( Entry entry, long timestamp )
+    {
+        Iterator<CompanySeries> it = entry.companies.values().iterator();
+        while ( it.hasNext() )
+        {
+            CompanySeries company = it.next();
+            for ( Resolution r : RESOLUTIONS )
+            {
+                if ( company.lastSeen < timestamp - retention.get( r ) * r.getMillis() )
+                {
+                    company.series[r.ordinal()] = null;
+                }
+            }
+            if ( company.series[Resolution.DAY.ordinal()] == null )
+            {
+                it.remove();
+            }
+        }
+        entry.lastSweep = timestamp;
+    }
+
+    private static void add( RollupSeries[] series, long timestamp, long[] values )
+    {
+        for ( RollupSeries s : series )
+        {
+            s.add( timestamp, values );
+        }
+    }
+
+    /**
+     * Lists the aggregates of a server metric overlapping a time range.
+     *
+     * @param server the server
+     * @param metric the metric
+     * @param resolution the bucket size
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, inclusive
+     * @return the aggregates, oldest first
+     */
+    public synchronized List<Rollup> getServerRollups( Server server, ServerMetric metric, Resolution resolution, long from, long to )
+    {
+        Entry entry = servers.get( server );
+        if ( entry == null )
+        {
+            return Collections.emptyList();
+        }
+        return entry.server[resolution.ordinal()].get( metric.ordinal(), from, to );
+    }
+
+    /**
+     * Lists the aggregates of a company metric overlapping a time range.
+     * Companies are told apart by id and inauguration year, like
+     * {@link Company#equals(Object)} does, and only the latest game with such
+     * a company is found.
+     *
+     * @param server the server
+     * @param company the company
+     * @param metric the metric
+     * @param resolution the bucket size
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, inclusive
+     * @return the aggregates, oldest first
+     */
+    public synchronized List<Rollup> getCompanyRollups( Server server, Company company, CompanyMetric metric, Resolution resolution, long from, long to )
+    {
+        Entry entry = servers.get( server );
+        CompanySeries series = entry != null ? entry.companies.get( companyKey( company ) ) : null;
+        if ( series == null || series.series[resolution.ordinal()] == null )
+        {
+            return Collections.emptyList();
+        }
+        return series.series[resolution.ordinal()].get( metric.ordinal(), from, to );
+    }
+
+    /**
+     * Forgets everything about a server.
+     *
+     * @param server the server
+     */
+    public synchronized void remove( Server server )
+    {
+        servers.remove( server );
+    }
+
+    private static Long companyKey( Company c )
+    {
+        return ( (long) c.getCurrentId() << 32 ) | ( c.getInaugerationYear() & 0xFFFFFFFFL );
+    }
+
+    private RollupSeries[] newSeries( int metrics )
+    {
+        RollupSeries[] series = new RollupSeries[ RESOLUTIONS.length ];
+        for ( Resolution r : RESOLUTIONS )
+        {
+            series[r.ordinal()] = newSeries( r, metrics );
+        }
+        return series;
+    }
+
+    private RollupSeries newSeries( Resolution resolution, int metrics )
+    {
+        return new RollupSeries( resolution, metrics, retention.get( resolution ) );
+    }
+
+    /**
+     * The aggregates of one server, indexed by resolution
+     */
+    private final class Entry
+    {
+
+        private final RollupSeries[] server = newSeries( SERVER_METRICS.length );
+        private final Map<Long, CompanySeries> companies = new HashMap<Long, CompanySeries>();
+        /**
+         * When companies were last swept
+         */
+        private long lastSweep;
+        /**
+         * Counts the games started on the server
+         */
+        private int game;
+    }
+
+    /**
+     * The aggregates of one company, indexed by resolution
+     */
+    private final class CompanySeries
+    {
+
+        private final RollupSeries[] series = newSeries( COMPANY_METRICS.length );
+        /**
+         * The game of the server the company belongs to
+         */
+        private final int game;
+        /**
+         * When the company was last seen
+         */
+        private long lastSeen;
+
+        CompanySeries( int game )
+        {
+            this.game = game;
+        }
+
+        /**
+         * Recreates the buckets dropped while the company was not seen.
+         */
+        void reopen()
+        {
+            for ( Resolution r : RESOLUTIONS )
+            {
+                if ( series[r.ordinal()] == null )
+                {
+                    series[r.ordinal()] = newSeries( r, COMPANY_METRICS.length );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.camelspotting.jotl.history;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The newest buckets of one resolution for a fixed number of metrics, kept in
+ * a ring. The arrays grow on demand up to the retention, so series that are
+ * only fed for a short while stay small.
+ */
+final class RollupSeries
+{
+
+    private final Resolution resolution;
+    private final int metrics;
+    private final int retention;
+    private long[] starts = new long[ 4 ];
+    private int[] counts = new int[ 4 ];
+    /**
+     * Aggregates of bucket b and metric m are found at b * metrics + m
+     */
+    private long[] mins;
+    private long[] maxs;
+    private long[] sums;
+    private long[] lasts;
+    /**
+     * The slot of the oldest bucket
+     */
+    private int head;
+    private int size;
+
+    RollupSeries( Resolution resolution, int metrics, int retention )
+    {
+        this.resolution = resolution;
+        this.metrics = metrics;
+        this.retention = retention;
+        this.mins = new long[ 4 * metrics ];
+        this.maxs = new long[ 4 * metrics ];
+        this.sums = new long[ 4 * metrics ];
+        this.lasts = new long[ 4 * metrics ];
+    }
+
+    /**
+     * Adds a sample of every metric. Samples older than the newest bucket are
+     * ignored.
+     *
+     * @param timestamp when the sample was taken
+     * @param values the value of each metric
+     */
+    void add( long timestamp, long[] values )
+    {
+        long start = resolution.bucketStart( timestamp );
+        int slot;
+        if ( size > 0 && starts[newest()] == start )
+        {
+            slot = newest();
+        }
+        else if ( size > 0 && starts[newest()] > start )
+        {
+            return;
+        }
+        else
+        {
+            slot = open( start );
+        }
+        int base = slot * metrics;
+        for ( int m = 0; m < metrics; m++ )
+        {
+            long v = values[m];
+            if ( counts[slot] == 0 )
+            {
+                mins[base + m] = v;
+                maxs[base + m] = v;
+                sums[base + m] = v;
+            }
+            else
+            {
+                mins[base + m] = Math.min( mins[base + m], v );
+                maxs[base + m] = Math.max( maxs[base + m], v );
+                sums[base + m] += v;
+            }
+            lasts[base + m] = v;
+        }
+        counts[slot]++;
+    }
+
+    private int newest()
+    {
+        return ( head + size - 1 ) % starts.length;
+    }
+
+    /**
+     * Opens a new, empty bucket after the newest one, evicting the oldest if
+     * the retention is reached.
+     */
+    private int open( long start )
+    {
+        if ( size == starts.length && size < retention )
+        {
+            grow();
+        }
+        int slot;
+        if ( size == starts.length )
+        {
+            slot = head;
+            head = ( head + 1 ) % starts.length;
+        }
+        else
+        {
+            slot = ( head + size ) % starts.length;
+            size++;
+        }
+        starts[slot] = start;
+        counts[slot] = 0;
+        return slot;
+    }
+
+    private void grow()
+    {
+        int old = starts.length;
+        int capacity = Math.min( retention, old * 2 );
+        // Unroll the ring so that the oldest bucket is first again
+        starts = unroll( starts, 1, old, capacity );
+        mins = unroll( mins, metrics, old, capacity );
+        maxs = unroll( maxs, metrics, old, capacity );
+        sums = unroll( sums, metrics, old, capacity );
+        lasts = unroll( lasts, metrics, old, capacity );
+        int[] copy = new int[ capacity ];
+        System.arraycopy( counts, head, copy, 0, old - head );
+        System.arraycopy( counts, 0, copy, old - head, head );
+        counts = copy;
+        head = 0;
+    }
+
+    private long[] unroll( long[] ring, int width, int old, int capacity )
+    {
+        long[] copy = new long[ capacity * width ];
+        System.arraycopy( ring, head * width, copy, 0, ( old - head ) * width );
+        System.arraycopy( ring, 0, copy, ( old - head ) * width, head * width );
+        return copy;
+    }
+
+    /**
+     * Lists the buckets of one metric overlapping a time range.
+     *
+     * @param metric the number of the metric
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, inclusive
+     * @return the buckets, oldest first
+     */
+    List<Rollup> get( int metric, long from, long to )
+    {
+        List<Rollup> rollups = new ArrayList<Rollup>();
+        for ( int i = 0; i < size; i++ )
+        {
+            int slot = ( head + i ) % starts.length;
+            long start = starts[slot];
+            if ( start + resolution.getMillis() > from && start <= to )
+            {
+                int at = slot * metrics + metric;
+                rollups.add( new Rollup( start, resolution, counts[slot], mins[at], maxs[at], sums[at], lasts[at] ) );
+            }
+        }
+        return rollups;
+    }
+}
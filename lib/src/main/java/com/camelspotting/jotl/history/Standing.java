@@ -0,0 +1,70 @@
+package com.camelspotting.jotl.history;
+
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.Server;
+
+/**
+ * A company's best recorded value of a metric, as found by a
+ * {@link LeaderboardIndex} query.
+ */
+public final class Standing
+{
+
+    private final Server server;
+    /**
+     * The snapshot of the company holding the value
+     */
+    private final Company company;
+    private final long timestamp;
+    private final long value;
+
+    public Standing( Server server, Company company, long timestamp, long value )
+    {
+        this.server = server;
+        this.company = company;
+        this.timestamp = timestamp;
+        this.value = value;
+    }
+
+    /**
+     * Checks whether two standings belong to the same company.
+     *
+     * @param other the other standing
+     * @return true if the server and company are the same
+     */
+    public boolean isSameCompany( Standing other )
+    {
+        return server.equals( other.server ) && company.equals( other.company );
+    }
+
+    public Server getServer()
+    {
+        return server;
+    }
+
+    public Company getCompany()
+    {
+        return company;
+    }
+
+    /**
+     * Getter for when the value was recorded.
+     *
+     * @return milliseconds since the epoch
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public long getValue()
+    {
+        return value;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "Standing: %s on %s: %d at %d", company.getCompanyName(), server, value, timestamp );
+    }
+}
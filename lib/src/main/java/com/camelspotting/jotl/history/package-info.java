@@ -0,0 +1,5 @@
+/**
+ * The history package contains classes for retaining and archiving the games
+ * and statistics gathered by the monitors.
+ */
+package com.camelspotting.jotl.history;
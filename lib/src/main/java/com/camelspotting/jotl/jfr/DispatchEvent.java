@@ -0,0 +1,46 @@
+package com.camelspotting.jotl.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A listener was notified. The duration of the event is the time the listener
+ * took.
+ */
+@Name( "com.camelspotting.jotl.Dispatch" )
+@Label( "Event Dispatch" )
+@Category(
+{
+    "jOpenTTDLib", "Monitor"
+} )
+@Enabled( false )
+@StackTrace( false )
+public final class DispatchEvent extends Event
+{
+
+    @Label( "Listener" )
+    String listener;
+    @Label( "Event" )
+    String event;
+
+    /**
+     * Commits the event if it is enabled.
+     *
+     * @param listener the notified listener
+     * @param event what it was notified of, e.g. the event type
+     */
+    public void finish( Object listener, Object event )
+    {
+        end();
+        if ( shouldCommit() )
+        {
+            this.listener = listener.getClass().getName();
+            this.event = event instanceof Enum ? ( (Enum<?>) event ).name() : String.valueOf( event );
+            commit();
+        }
+    }
+}
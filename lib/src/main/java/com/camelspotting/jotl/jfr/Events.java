@@ -0,0 +1,19 @@
+package com.camelspotting.jotl.jfr;
+
+import com.camelspotting.jotl.domain.Server;
+
+/**
+ * Helpers shared by the events.
+ */
+final class Events
+{
+
+    private Events()
+    {
+    }
+
+    static String describe( Server server )
+    {
+        return server != null ? server.getIpAddress() + ":" + server.getPort() : null;
+    }
+}
@@ -0,0 +1,46 @@
+package com.camelspotting.jotl.jfr;
+
+import com.camelspotting.jotl.domain.Server;
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A monitor updated its server, from querying it to notifying the listeners.
+ */
+@Name( "com.camelspotting.jotl.MonitorUpdate" )
+@Label( "Monitor Update" )
+@Category(
+{
+    "jOpenTTDLib", "Monitor"
+} )
+@Enabled( false )
+@StackTrace( false )
+public final class MonitorUpdateEvent extends Event
+{
+
+    @Label( "Server" )
+    String server;
+    @Label( "Succeeded" )
+    boolean succeeded;
+
+    /**
+     * Commits the event if it is enabled.
+     *
+     * @param server the updated server
+     * @param succeeded whether or not the server could be queried
+     */
+    public void finish( Server server, boolean succeeded )
+    {
+        end();
+        if ( shouldCommit() )
+        {
+            this.server = Events.describe( server );
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
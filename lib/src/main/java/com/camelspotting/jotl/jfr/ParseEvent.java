@@ -0,0 +1,52 @@
+package com.camelspotting.jotl.jfr;
+
+import com.camelspotting.jotl.udp.PacketType;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A reply was parsed. The duration of the event is the time spent parsing.
+ */
+@Name( "com.camelspotting.jotl.Parse" )
+@Label( "Reply Parsed" )
+@Category(
+{
+    "jOpenTTDLib", "Query"
+} )
+@Enabled( false )
+@StackTrace( false )
+public final class ParseEvent extends Event
+{
+
+    @Label( "Packet Type" )
+    String packetType;
+    @Label( "Reply Size" )
+    @DataAmount
+    int bytes;
+    @Label( "Succeeded" )
+    boolean succeeded;
+
+    /**
+     * Commits the event if it is enabled.
+     *
+     * @param type the type of the reply packet, or null if unknown
+     * @param bytes the size of the reply
+     * @param succeeded whether or not the reply could be parsed
+     */
+    public void finish( PacketType type, int bytes, boolean succeeded )
+    {
+        end();
+        if ( shouldCommit() )
+        {
+            this.packetType = type != null ? type.name() : null;
+            this.bytes = bytes;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.camelspotting.jotl.jfr;
+
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.udp.PacketType;
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A query packet was sent to a server.
+ */
+@Name( "com.camelspotting.jotl.QuerySent" )
+@Label( "Query Sent" )
+@Category(
+{
+    "jOpenTTDLib", "Query"
+} )
+@Enabled( false )
+@StackTrace( false )
+public final class QuerySentEvent extends Event
+{
+
+    @Label( "Server" )
+    String server;
+    @Label( "Packet Type" )
+    String packetType;
+
+    /**
+     * Commits the event if it is enabled.
+     *
+     * @param server the queried server
+     * @param type the type of the query packet
+     */
+    public void finish( Server server, PacketType type )
+    {
+        if ( shouldCommit() )
+        {
+            this.server = Events.describe( server );
+            this.packetType = type.name();
+            commit();
+        }
+    }
+}
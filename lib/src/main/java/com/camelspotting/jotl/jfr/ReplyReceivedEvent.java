@@ -0,0 +1,60 @@
+package com.camelspotting.jotl.jfr;
+
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.udp.PacketType;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A reply was received from a server. The duration of the event is the time
+ * spent waiting for the reply.
+ */
+@Name( "com.camelspotting.jotl.ReplyReceived" )
+@Label( "Reply Received" )
+@Category(
+{
+    "jOpenTTDLib", "Query"
+} )
+@Enabled( false )
+@StackTrace( false )
+public final class ReplyReceivedEvent extends Event
+{
+
+    @Label( "Server" )
+    String server;
+    @Label( "Packet Type" )
+    String packetType;
+    @Label( "Reply Size" )
+    @DataAmount
+    int bytes;
+    @Label( "Round Trip Time" )
+    @Timespan
+    long rtt;
+
+    /**
+     * Commits the event if it is enabled.
+     *
+     * @param server the queried server
+     * @param type the type of the reply packet, or null if unknown
+     * @param bytes the size of the reply
+     * @param rttNanos the time from sending the query to receiving the reply
+     */
+    public void finish( Server server, PacketType type, int bytes, long rttNanos )
+    {
+        end();
+        if ( shouldCommit() )
+        {
+            this.server = Events.describe( server );
+            this.packetType = type != null ? type.name() : null;
+            this.bytes = bytes;
+            this.rtt = rttNanos;
+            commit();
+        }
+    }
+}
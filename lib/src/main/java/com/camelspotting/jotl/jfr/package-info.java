@@ -0,0 +1,8 @@
+/**
+ * The jfr package contains JDK Flight Recorder events for queries, monitor
+ * updates and event dispatch. All events are disabled by default; enable them
+ * in a recording settings file or with e.g.
+ * <code>-XX:StartFlightRecording:settings=profile,+com.camelspotting.jotl.MonitorUpdate#enabled=true</code>.
+ * While disabled they cost a check of a flag.
+ */
+package com.camelspotting.jotl.jfr;
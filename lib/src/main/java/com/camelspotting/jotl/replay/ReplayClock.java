@@ -0,0 +1,78 @@
+package com.camelspotting.jotl.replay;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock showing whatever time it is set to. A {@link ReplayGameQuerier}
+ * sets it to the time each game was recorded at.
+ */
+public final class ReplayClock extends Clock
+{
+
+    /**
+     * The time in milliseconds since the epoch, shared with the clocks of
+     * other zones made from this one
+     */
+    private final AtomicLong millis;
+    private final ZoneId zone;
+
+    /**
+     * Creates a clock in UTC.
+     *
+     * @param millis the initial time in milliseconds since the epoch
+     */
+    public ReplayClock( long millis )
+    {
+        this( new AtomicLong( millis ), ZoneOffset.UTC );
+    }
+
+    private ReplayClock( AtomicLong millis, ZoneId zone )
+    {
+        this.millis = millis;
+        this.zone = zone;
+    }
+
+    /**
+     * Sets the time.
+     *
+     * @param millis the time in milliseconds since the epoch
+     */
+    public void set( long millis )
+    {
+        this.millis.set( millis );
+    }
+
+    @Override
+    public long millis()
+    {
+        return millis.get();
+    }
+
+    @Override
+    public Instant instant()
+    {
+        return Instant.ofEpochMilli( millis.get() );
+    }
+
+    @Override
+    public ZoneId getZone()
+    {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone( ZoneId zone )
+    {
+        return zone.equals( this.zone ) ? this : new ReplayClock( millis, zone );
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "ReplayClock: %s, %s", instant(), zone );
+    }
+}
@@ -0,0 +1,262 @@
+package com.camelspotting.jotl.replay;
+
+import com.camelspotting.jotl.GameQuerier;
+import com.camelspotting.jotl.ServerMonitor;
+import com.camelspotting.jotl.capture.CaptureReader;
+import com.camelspotting.jotl.capture.CapturedPacket;
+import com.camelspotting.jotl.domain.ClientsDetails;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import com.camelspotting.jotl.history.GameArchive;
+import com.camelspotting.jotl.udp.PacketType;
+import com.camelspotting.jotl.udp.UDPPacketParser;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A querier answering with recorded games, one per query, instead of asking
+ * a server. Its clock is set to the time each game was recorded at, so a
+ * monitor using the clock sees the same times as when it was recorded, while
+ * the games are fed to it as fast as it can process them:
+ *
+ * <pre>
+ * ReplayGameQuerier replay = ReplayGameQuerier.fromCapture( reader, server );
+ * ServerMonitor monitor = new ServerMonitor( replay, 0, false, listener );
+ * int updates = replay.replayInto( monitor );
+ * </pre>
+ */
+public class ReplayGameQuerier implements GameQuerier
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( ReplayGameQuerier.class );
+    private final Server server;
+    private final List<Game> games;
+    private final long[] timestamps;
+    private final ReplayClock clock;
+    /**
+     * The index of the next game to answer with
+     */
+    private int next;
+
+    /**
+     * Main constructor.
+     *
+     * @param server the server the games were recorded from
+     * @param games the games, oldest first
+     * @param timestamps when each game was recorded, in milliseconds since the
+     * epoch
+     * @throws IllegalArgumentException if there are not as many timestamps as
+     * games
+     */
+    public ReplayGameQuerier( Server server, List<Game> games, long[] timestamps )
+    {
+        if ( games.size() != timestamps.length )
+        {
+            throw new IllegalArgumentException( String.format( "%d games but %d timestamps.", games.size(), timestamps.length ) );
+        }
+        this.server = server;
+        this.games = new ArrayList<Game>( games );
+        this.timestamps = timestamps.clone();
+        this.clock = new ReplayClock( timestamps.length > 0 ? timestamps[0] : 0 );
+    }
+
+    /**
+     * Creates a replay of the games in an archive, which does not keep when
+     * they were recorded.
+     *
+     * @param archive the archive
+     * @param server the server the games were recorded from
+     * @param start the time of the first game in milliseconds since the epoch
+     * @param interval the time between the games in milliseconds
+     * @return the replay
+     * @throws IOException if the archive could not be read
+     */
+    public static ReplayGameQuerier fromArchive( GameArchive archive, Server server, long start, long interval ) throws IOException
+    {
+        List<Game> games = archive.readAll();
+        long[] timestamps = new long[ games.size() ];
+        for ( int i = 0; i < timestamps.length; i++ )
+        {
+            timestamps[i] = start + i * interval;
+        }
+        return new ReplayGameQuerier( server, games, timestamps );
+    }
+
+    /**
+     * Creates a replay of the replies of one server in a capture. Each reply
+     * with server details is paired with the next reply with client details
+     * into a game, timestamped by the latter. Replies that can not be parsed
+     * are skipped.
+     *
+     * @param reader the capture
+     * @param server the server
+     * @return the replay
+     * @throws IOException if the capture could not be read
+     */
+    public static ReplayGameQuerier fromCapture( CaptureReader reader, Server server ) throws IOException
+    {
+        List<Game> games = new ArrayList<Game>();
+        List<Long> times = new ArrayList<Long>();
+        ServerDetails details = null;
+        for ( CapturedPacket packet : reader.read( server, Long.MIN_VALUE, Long.MAX_VALUE ) )
+        {
+            try
+            {
+                PacketType type = packet.getType();
+                if ( type == PacketType.SERVER_RESPONSE )
+                {
+                    details = UDPPacketParser.parseServerDetails( packet.getData() );
+                }
+                else if ( type == PacketType.SERVER_DETAIL_INFO && details != null )
+                {
+                    ClientsDetails clients = UDPPacketParser.parseClientsDetails( packet.getData() );
+                    games.add( new Game( details, clients ) );
+                    times.add( packet.getTimestamp() );
+                    details = null;
+                }
+            }
+            catch ( JOTLException ex )
+            {
+                LOG.debug( "Skipping {}: {}", packet, ex.getMessage() );
+            }
+            catch ( RuntimeException ex )
+            {
+                LOG.debug( "Skipping {}: {}", packet, ex.getMessage() );
+            }
+        }
+        long[] timestamps = new long[ times.size() ];
+        for ( int i = 0; i < timestamps.length; i++ )
+        {
+            timestamps[i] = times.get( i );
+        }
+        return new ReplayGameQuerier( server, games, timestamps );
+    }
+
+    /**
+     * Answers with the next recorded game and sets the clock to when it was
+     * recorded.
+     *
+     * @return the game
+     * @throws JOTLException if all games have been replayed
+     */
+    @Override
+    public synchronized Game getAllInformation() throws JOTLException
+    {
+        if ( next >= games.size() )
+        {
+            throw new JOTLException( String.format( "All %d games of %s have been replayed.", games.size(), server ) );
+        }
+        clock.set( timestamps[next] );
+        return games.get( next++ );
+    }
+
+    /**
+     * Getter for the server details of the next game, without moving on.
+     *
+     * @return the details
+     * @throws JOTLException if all games have been replayed
+     */
+    @Override
+    public synchronized ServerDetails getServerDetails() throws JOTLException
+    {
+        return peek().getServerDetails();
+    }
+
+    /**
+     * Getter for the client details of the next game, without moving on.
+     *
+     * @return the details
+     * @throws JOTLException if all games have been replayed
+     */
+    @Override
+    public synchronized ClientsDetails getClientsDetails() throws JOTLException
+    {
+        return peek().getClientDetails();
+    }
+
+    private Game peek() throws JOTLException
+    {
+        if ( next >= games.size() )
+        {
+            throw new JOTLException( String.format( "All %d games of %s have been replayed.", games.size(), server ) );
+        }
+        return games.get( next );
+    }
+
+    @Override
+    public Server getServer()
+    {
+        return server;
+    }
+
+    /**
+     * Getter for the clock showing when the latest game was recorded.
+     *
+     * @return the clock
+     */
+    public ReplayClock getClock()
+    {
+        return clock;
+    }
+
+    public synchronized boolean hasNext()
+    {
+        return next < games.size();
+    }
+
+    /**
+     * Getter for the number of games in the replay.
+     *
+     * @return the number of games
+     */
+    public int size()
+    {
+        return games.size();
+    }
+
+    /**
+     * Starts the replay over from the first game.
+     */
+    public synchronized void rewind()
+    {
+        next = 0;
+    }
+
+    /**
+     * Feeds all remaining games to a monitor, one update each, as fast as it
+     * can process them. The monitor is set to use the clock of this replay,
+     * and must be querying this replay and not be started.
+     *
+     * @param monitor the monitor
+     * @return the number of updates
+     * @throws JOTLException if an update fails
+     * @throws IllegalArgumentException if an update of the monitor did not
+     * query this replay
+     */
+    public int replayInto( ServerMonitor monitor ) throws JOTLException
+    {
+        monitor.setClock( clock );
+        int updates = 0;
+        while ( hasNext() )
+        {
+            int before = position();
+            monitor.update();
+            if ( position() == before )
+            {
+                throw new IllegalArgumentException( String.format( "%s does not query the replay of %s.", monitor, server ) );
+            }
+            updates++;
+        }
+        return updates;
+    }
+
+    private synchronized int position()
+    {
+        return next;
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * The replay package contains classes for feeding recorded games into the
+ * monitors as fast as they can process them, e.g. for testing changes to the
+ * event detection against a long history.
+ */
+package com.camelspotting.jotl.replay;
@@ -0,0 +1,155 @@
+package com.camelspotting.jotl.udp;
+
+import com.camelspotting.jotl.domain.Server;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps counters and round trip time histograms for every queried server,
+ * without locking. Share one instance between all queriers:
+ *
+ * <pre>
+ * DefaultQuerierMetrics metrics = new DefaultQuerierMetrics();
+ * querier.setMetrics( metrics );
+ * ...
+ * LatencyHistogram rtt = metrics.get( server ).getRtt( PacketType.CLIENT_DETAIL_INFO );
+ * </pre>
+ */
+public class DefaultQuerierMetrics implements QuerierMetrics
+{
+
+    private final Map<Server, ServerQueryMetrics> servers = new ConcurrentHashMap<Server, ServerQueryMetrics>();
+
+    @Override
+    public void querySent( Server server, PacketType type, long sentNanos )
+    {
+        metricsOf( server ).sent.incrementAndGet();
+    }
+
+    @Override
+    public void queryCompleted( Server server, PacketType type, QueryOutcome outcome, long sentNanos, long receivedNanos, int bytes )
+    {
+        ServerQueryMetrics metrics = metricsOf( server );
+        metrics.outcomes.incrementAndGet( outcome.ordinal() );
+        if ( receivedNanos != 0 )
+        {
+            metrics.bytesReceived.addAndGet( bytes );
+            metrics.rttOf( type ).record( receivedNanos - sentNanos );
+        }
+    }
+
+    private ServerQueryMetrics metricsOf( Server server )
+    {
+        ServerQueryMetrics metrics = servers.get( server );
+        if ( metrics == null )
+        {
+            ServerQueryMetrics created = new ServerQueryMetrics();
+            metrics = servers.putIfAbsent( server, created );
+            if ( metrics == null )
+            {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Getter for the metrics of one server.
+     *
+     * @param server the server
+     * @return the metrics, or null if the server has not been queried
+     */
+    public ServerQueryMetrics get( Server server )
+    {
+        return servers.get( server );
+    }
+
+    /**
+     * Getter for the metrics of all queried servers.
+     *
+     * @return an unmodifiable live view
+     */
+    public Map<Server, ServerQueryMetrics> getAll()
+    {
+        return Collections.unmodifiableMap( servers );
+    }
+
+    /**
+     * Forgets a server, e.g. when it is no longer monitored.
+     *
+     * @param server the server
+     */
+    public void remove( Server server )
+    {
+        servers.remove( server );
+    }
+
+    /**
+     * The metrics of one server.
+     */
+    public static final class ServerQueryMetrics
+    {
+
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLongArray outcomes = new AtomicLongArray( QueryOutcome.values().length );
+        private final AtomicLong bytesReceived = new AtomicLong();
+        /**
+         * The round trip times for each query type, created when first needed
+         */
+        private final AtomicReferenceArray<LatencyHistogram> rtts = new AtomicReferenceArray<LatencyHistogram>( PacketType.values().length );
+
+        private LatencyHistogram rttOf( PacketType type )
+        {
+            LatencyHistogram rtt = rtts.get( type.ordinal() );
+            if ( rtt == null )
+            {
+                rtts.compareAndSet( type.ordinal(), null, new LatencyHistogram() );
+                rtt = rtts.get( type.ordinal() );
+            }
+            return rtt;
+        }
+
+        public long getSent()
+        {
+            return sent.get();
+        }
+
+        /**
+         * Getter for the number of queries that ended in a certain way.
+         *
+         * @param outcome how they ended
+         * @return the number of queries
+         */
+        public long getCount( QueryOutcome outcome )
+        {
+            return outcomes.get( outcome.ordinal() );
+        }
+
+        public long getBytesReceived()
+        {
+            return bytesReceived.get();
+        }
+
+        /**
+         * Getter for the round trip times of one type of query.
+         *
+         * @param type the type of the query packet
+         * @return the round trip times in nanoseconds, or null if no reply to
+         * such a query has been received
+         */
+        public LatencyHistogram getRtt( PacketType type )
+        {
+            return rtts.get( type.ordinal() );
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format( "ServerQueryMetrics: sent=%d, succeeded=%d, timeouts=%d, parseErrors=%d, ioErrors=%d, bytes=%d", getSent(), getCount( QueryOutcome.SUCCESS ), getCount( QueryOutcome.TIMEOUT ), getCount( QueryOutcome.PARSE_ERROR ), getCount( QueryOutcome.IO_ERROR ), getBytesReceived() );
+        }
+    }
+}
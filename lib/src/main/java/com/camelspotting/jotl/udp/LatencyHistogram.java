@@ -0,0 +1,149 @@
+package com.camelspotting.jotl.udp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values with log-linear buckets. Every
+ * power of two is split into {@value #SUB_BUCKETS} equally wide buckets, so a
+ * value is always reported within 12.5% of what was recorded, no matter its
+ * magnitude, using a fixed and small amount of memory.
+ */
+public final class LatencyHistogram
+{
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /**
+     * Enough buckets for every positive long
+     */
+    private static final int BUCKETS = ( 63 - SUB_BITS + 1 ) * SUB_BUCKETS;
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value the value
+     */
+    public void record( long value )
+    {
+        if ( value < 0 )
+        {
+            value = 0;
+        }
+        counts.incrementAndGet( indexOf( value ) );
+        count.incrementAndGet();
+        sum.addAndGet( value );
+        long current = max.get();
+        while ( value > current && !max.compareAndSet( current, value ) )
+        {
+            current = max.get();
+        }
+    }
+
+    static int indexOf( long value )
+    {
+        if ( value < SUB_BUCKETS )
+        {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int sub = (int) ( value >>> ( exponent - SUB_BITS ) ) - SUB_BUCKETS;
+        return ( exponent - SUB_BITS + 1 ) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Getter for the smallest value counted in a bucket.
+     *
+     * @param bucket the bucket
+     * @return the smallest value
+     */
+    public static long getLowerBound( int bucket )
+    {
+        if ( bucket < SUB_BUCKETS )
+        {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) ( SUB_BUCKETS + bucket % SUB_BUCKETS ) << ( exponent - SUB_BITS );
+    }
+
+    /**
+     * Getter for the largest value counted in a bucket.
+     *
+     * @param bucket the bucket
+     * @return the largest value
+     */
+    public static long getUpperBound( int bucket )
+    {
+        return bucket + 1 < BUCKETS ? getLowerBound( bucket + 1 ) - 1 : Long.MAX_VALUE;
+    }
+
+    public static int getBucketCount()
+    {
+        return BUCKETS;
+    }
+
+    /**
+     * Getter for the number of values recorded in a bucket.
+     *
+     * @param bucket the bucket
+     * @return the number of values
+     */
+    public long getCount( int bucket )
+    {
+        return counts.get( bucket );
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getSum()
+    {
+        return sum.get();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Estimates a percentile by the largest value of the bucket it falls in,
+     * so it is never lower than the recorded value. As values are recorded
+     * while this runs the result is approximate.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the value, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile( double percentile )
+    {
+        long total = count.get();
+        if ( total == 0 )
+        {
+            return 0;
+        }
+        long rank = Math.max( 1, (long) Math.ceil( total * percentile / 100.0 ) );
+        long seen = 0;
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            seen += counts.get( i );
+            if ( seen >= rank )
+            {
+                return Math.min( getUpperBound( i ), max.get() );
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "LatencyHistogram: count=%d, p50=%d, p99=%d, max=%d", getCount(), getValueAtPercentile( 50 ), getValueAtPercentile( 99 ), getMax() );
+    }
+}
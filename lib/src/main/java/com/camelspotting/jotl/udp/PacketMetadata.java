@@ -56,7 +56,8 @@ public class PacketMetadata
 
     public static PacketMetadata parseMetadata( byte[] input )
     {
-        int length = BitUtil.parse8BitNumber( input, 0 );
+        // The length is a little-endian 16 bit number
+        int length = BitUtil.parse16BitNumber( input, 0 );
         if ( length != input.length )
         {
             throw new IllegalArgumentException( String.format( "The specified length %d is different from the actual length %d.", length, input.length ) );
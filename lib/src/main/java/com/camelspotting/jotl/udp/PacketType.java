@@ -108,6 +108,17 @@ public enum PacketType
         return packetOrigin;
     }
 
+    /**
+     * The number identifying this packet type on the wire.
+     *
+     * @return the number
+     * @see #fromInt(int)
+     */
+    public int getValue()
+    {
+        return value;
+    }
+
     /**
      * This method constructs a {@link DatagramPacket} ready for send-off to the
      * OpenTTD-server. NOTE: This method is not utilized in the case of the
@@ -0,0 +1,55 @@
+package com.camelspotting.jotl.udp;
+
+import com.camelspotting.jotl.domain.Server;
+
+/**
+ * Receives measurements of every query made by a {@link UDPGameQuerier}. One
+ * instance is usually shared by all queriers, so implementations must be
+ * thread safe, and they are called on the querying thread so they must be
+ * cheap. {@link DefaultQuerierMetrics} keeps latency histograms and counters
+ * for each server.
+ * <p>
+ * Timestamps are from {@link System#nanoTime()}.
+ *
+ * @see UDPGameQuerier#setMetrics(QuerierMetrics)
+ */
+public interface QuerierMetrics
+{
+
+    /**
+     * Metrics discarding every measurement, used when none are set
+     */
+    QuerierMetrics NONE = new QuerierMetrics()
+    {
+        @Override
+        public void querySent( Server server, PacketType type, long sentNanos )
+        {
+        }
+
+        @Override
+        public void queryCompleted( Server server, PacketType type, QueryOutcome outcome, long sentNanos, long receivedNanos, int bytes )
+        {
+        }
+    };
+
+    /**
+     * Invoked when a query packet has been sent.
+     *
+     * @param server the queried server
+     * @param type the type of the query packet
+     * @param sentNanos when the packet was sent
+     */
+    void querySent( Server server, PacketType type, long sentNanos );
+
+    /**
+     * Invoked when a query has ended, whether or not it succeeded.
+     *
+     * @param server the queried server
+     * @param type the type of the query packet
+     * @param outcome how the query ended
+     * @param sentNanos when the query packet was sent, or 0 if it was not
+     * @param receivedNanos when the reply was received, or 0 if none was
+     * @param bytes the size of the reply, or 0 if none was received
+     */
+    void queryCompleted( Server server, PacketType type, QueryOutcome outcome, long sentNanos, long receivedNanos, int bytes );
+}
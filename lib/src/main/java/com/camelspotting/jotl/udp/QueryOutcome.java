@@ -0,0 +1,27 @@
+package com.camelspotting.jotl.udp;
+
+/**
+ * How a query ended.
+ *
+ * @see QuerierMetrics
+ */
+public enum QueryOutcome
+{
+
+    /**
+     * A reply was received and parsed
+     */
+    SUCCESS,
+    /**
+     * No reply was received in time
+     */
+    TIMEOUT,
+    /**
+     * A reply was received but could not be parsed
+     */
+    PARSE_ERROR,
+    /**
+     * The query could not be sent or the reply could not be read
+     */
+    IO_ERROR;
+}
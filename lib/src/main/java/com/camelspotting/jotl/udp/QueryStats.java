@@ -0,0 +1,149 @@
+package com.camelspotting.jotl.udp;
+
+import com.camelspotting.jotl.domain.Server;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters kept by one {@link UDPGameQuerier}. All counters only grow and may
+ * be read at any time from any thread without locking. For latency
+ * percentiles or metrics shared between queriers, see
+ * {@link DefaultQuerierMetrics}.
+ *
+ * @see UDPGameQuerier#getStats()
+ */
+public final class QueryStats implements QuerierMetrics
+{
+
+    /**
+     * The upper bounds of the round trip time buckets, in milliseconds
+     */
+    private static final long[] RTT_BOUNDS =
+    {
+        1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000
+    };
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong packetsReceived = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong parseErrors = new AtomicLong();
+    /**
+     * The number of replies in each round trip time bucket, the last one
+     * holding those slower than every bound
+     */
+    private final AtomicLongArray rttBuckets = new AtomicLongArray( RTT_BOUNDS.length + 1 );
+    private final AtomicLong rttSumNanos = new AtomicLong();
+
+    @Override
+    public void querySent( Server server, PacketType type, long sentNanos )
+    {
+        packetsSent.incrementAndGet();
+    }
+
+    @Override
+    public void queryCompleted( Server server, PacketType type, QueryOutcome outcome, long sentNanos, long receivedNanos, int bytes )
+    {
+        if ( receivedNanos != 0 )
+        {
+            received( bytes, receivedNanos - sentNanos );
+        }
+        if ( outcome == QueryOutcome.TIMEOUT )
+        {
+            timeouts.incrementAndGet();
+        }
+        else if ( outcome == QueryOutcome.PARSE_ERROR )
+        {
+            parseErrors.incrementAndGet();
+        }
+    }
+
+    private void received( int bytes, long rttNanos )
+    {
+        packetsReceived.incrementAndGet();
+        bytesReceived.addAndGet( bytes );
+        rttSumNanos.addAndGet( rttNanos );
+        long millis = rttNanos / 1000000;
+        int bucket = 0;
+        while ( bucket < RTT_BOUNDS.length && millis >= RTT_BOUNDS[bucket] )
+        {
+            bucket++;
+        }
+        rttBuckets.incrementAndGet( bucket );
+    }
+
+    public long getPacketsSent()
+    {
+        return packetsSent.get();
+    }
+
+    public long getPacketsReceived()
+    {
+        return packetsReceived.get();
+    }
+
+    public long getBytesReceived()
+    {
+        return bytesReceived.get();
+    }
+
+    public long getTimeouts()
+    {
+        return timeouts.get();
+    }
+
+    public long getParseErrors()
+    {
+        return parseErrors.get();
+    }
+
+    /**
+     * Getter for the number of round trip time buckets, including the last
+     * one without an upper bound.
+     *
+     * @return the number of buckets
+     */
+    public static int getRttBucketCount()
+    {
+        return RTT_BOUNDS.length + 1;
+    }
+
+    /**
+     * Getter for the upper bound of a round trip time bucket.
+     *
+     * @param bucket the bucket
+     * @return the bound in milliseconds, or {@link Long#MAX_VALUE} for the
+     * last bucket
+     */
+    public static long getRttBound( int bucket )
+    {
+        return bucket < RTT_BOUNDS.length ? RTT_BOUNDS[bucket] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Getter for the number of replies in one round trip time bucket. Replies
+     * are only counted in the bucket they fall in, not in the ones above.
+     *
+     * @param bucket the bucket
+     * @return the number of replies
+     */
+    public long getRttCount( int bucket )
+    {
+        return rttBuckets.get( bucket );
+    }
+
+    /**
+     * Getter for the sum of all round trip times.
+     *
+     * @return the sum in nanoseconds
+     */
+    public long getRttSumNanos()
+    {
+        return rttSumNanos.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "QueryStats: sent=%d, received=%d, bytes=%d, timeouts=%d, parseErrors=%d", getPacketsSent(), getPacketsReceived(), getBytesReceived(), getTimeouts(), getParseErrors() );
+    }
+}
@@ -18,6 +18,7 @@ package com.camelspotting.jotl.udp;
 
 import com.camelspotting.jotl.domain.ServerDetails;
 import com.camelspotting.jotl.GameQuerier;
+import com.camelspotting.jotl.capture.PacketCapture;
 import com.camelspotting.jotl.domain.ClientsDetails;
 import com.camelspotting.jotl.domain.Game;
 import com.camelspotting.jotl.exceptions.JOTLException;
@@ -25,6 +26,9 @@ import com.camelspotting.jotl.parsing.ParseUtil;
 import com.camelspotting.jotl.domain.Server;
 import com.camelspotting.jotl.exceptions.IllegalHostException;
 import com.camelspotting.jotl.exceptions.UnreachableHostException;
+import com.camelspotting.jotl.jfr.ParseEvent;
+import com.camelspotting.jotl.jfr.QuerySentEvent;
+import com.camelspotting.jotl.jfr.ReplyReceivedEvent;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
@@ -56,9 +60,10 @@ public final class UDPGameQuerier implements GameQuerier
      */
     private static final Logger LOG = LoggerFactory.getLogger( UDPGameQuerier.class );
     /**
-     * Maximum packet size for receiving
+     * Maximum packet size for receiving, the MTU OpenTTD sends UDP packets
+     * with
      */
-    private static final int maxPacketSize = 1000;
+    private static final int maxPacketSize = 1460;
     /**
      * This is the server
      */
@@ -67,6 +72,38 @@ public final class UDPGameQuerier implements GameQuerier
      * The local port
      */
     private int fromPort;
+    /**
+     * The counters of this querier
+     */
+    private final QueryStats stats = new QueryStats();
+    /**
+     * Where every query is reported
+     */
+    private volatile QuerierMetrics metrics = QuerierMetrics.NONE;
+    /**
+     * Where every received datagram is recorded, or null
+     */
+    private volatile PacketCapture capture;
+    /**
+     * How long to wait for a reply, in milliseconds
+     */
+    private volatile int timeout = 5000;
+    private static final ReplyParser<ServerDetails> SERVER_DETAILS = new ReplyParser<ServerDetails>()
+    {
+        @Override
+        public ServerDetails parse( byte[] reply ) throws JOTLException
+        {
+            return UDPPacketParser.parseServerDetails( reply );
+        }
+    };
+    private static final ReplyParser<ClientsDetails> CLIENTS_DETAILS = new ReplyParser<ClientsDetails>()
+    {
+        @Override
+        public ClientsDetails parse( byte[] reply ) throws JOTLException
+        {
+            return UDPPacketParser.parseClientsDetails( reply );
+        }
+    };
 
     /**
      * Main constructor for class.
@@ -85,17 +122,59 @@ public final class UDPGameQuerier implements GameQuerier
 
     @Override
     public ServerDetails getServerDetails() throws JOTLException
+    {
+        return query( PacketType.CLIENT_FIND_SERVER, SERVER_DETAILS );
+    }
+
+    @Override
+    public ClientsDetails getClientsDetails() throws JOTLException
+    {
+        return query( PacketType.CLIENT_DETAIL_INFO, CLIENTS_DETAILS );
+    }
+
+    /**
+     * Sends one query and parses the reply, reporting how it went.
+     *
+     * @param type the type of the query packet
+     * @param parser the parser for the reply
+     * @return the parsed reply
+     * @throws JOTLException if there was no valid reply
+     */
+    private <T> T query( PacketType type, ReplyParser<T> parser ) throws JOTLException
     {
         DatagramSocket socket = null;
+        QueryOutcome outcome = QueryOutcome.IO_ERROR;
+        long sent = 0;
+        long received = 0;
+        int bytes = 0;
         try
         {
             socket = bind();
-            sendPacket( socket, PacketType.CLIENT_FIND_SERVER );
+            sent = sendPacket( socket, type );
+            ReplyReceivedEvent waiting = new ReplyReceivedEvent();
+            waiting.begin();
             byte[] reply = recieve( socket );
-            return UDPPacketParser.parseServerDetails(reply );
+            received = System.nanoTime();
+            bytes = reply.length;
+            PacketType replyType = replyType( reply );
+            waiting.finish( server, replyType, bytes, received - sent );
+            outcome = QueryOutcome.PARSE_ERROR;
+            ParseEvent parsing = new ParseEvent();
+            parsing.begin();
+            try
+            {
+                T result = parser.parse( reply );
+                outcome = QueryOutcome.SUCCESS;
+                return result;
+            }
+            finally
+            {
+                parsing.finish( replyType, bytes, outcome == QueryOutcome.SUCCESS );
+            }
         }
         catch ( SocketTimeoutException ex )
         {
+            outcome = QueryOutcome.TIMEOUT;
             throw new UnreachableHostException( server, ex );
         }
         catch ( IOException ex )
@@ -105,32 +184,31 @@ public final class UDPGameQuerier implements GameQuerier
         finally
         {
             unbind( socket );
+            stats.queryCompleted( server, type, outcome, sent, received, bytes );
+            metrics.queryCompleted( server, type, outcome, sent, received, bytes );
         }
     }
 
-    @Override
-    public ClientsDetails getClientsDetails() throws JOTLException
+    /**
+     * Finds the type of a reply packet.
+     *
+     * @param reply the packet
+     * @return the type, or null if the packet is too short or of an unknown
+     * type
+     */
+    private static PacketType replyType( byte[] reply )
     {
-        DatagramSocket socket = null;
-        try
+        if ( reply.length < 3 )
         {
-            socket = bind();
-            sendPacket( socket, PacketType.CLIENT_DETAIL_INFO );
-            byte[] reply = recieve( socket );
-            PacketType type = PacketType.fromInt( reply[2] );
-            return UDPPacketParser.parseClientsDetails( reply );
-        }
-        catch ( SocketTimeoutException ex )
-        {
-            throw new UnreachableHostException( server, ex );
+            return null;
         }
-        catch ( IOException ex )
+        try
         {
-            throw new JOTLException( ex );
+            return PacketType.fromInt( reply[2] );
         }
-        finally
+        catch ( IllegalArgumentException ex )
         {
-            unbind( socket );
+            return null;
         }
     }
 
@@ -146,7 +224,62 @@ public final class UDPGameQuerier implements GameQuerier
         return server;
     }
 
-    private void sendPacket( DatagramSocket socket, PacketType pt ) throws IOException, JOTLException
+    /**
+     * Getter for the counters of this querier, e.g. for exporting them to a
+     * monitoring system.
+     *
+     * @return the counters
+     */
+    public QueryStats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * Sets where every query made by this querier is reported, in addition
+     * to its own {@link #getStats() counters}.
+     *
+     * @param metrics the metrics, or null for none
+     */
+    public void setMetrics( QuerierMetrics metrics )
+    {
+        this.metrics = metrics != null ? metrics : QuerierMetrics.NONE;
+    }
+
+    /**
+     * Sets how long to wait for a reply before the server is considered
+     * unreachable. The default is five seconds.
+     *
+     * @param ms the timeout in milliseconds
+     */
+    public void setTimeout( int ms )
+    {
+        if ( ms <= 0 )
+        {
+            throw new IllegalArgumentException( String.format( "The timeout must be positive, not %d ms", ms ) );
+        }
+        this.timeout = ms;
+    }
+
+    public int getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * Sets where every datagram received by this querier is recorded.
+     *
+     * @param capture the capture, or null to stop recording
+     */
+    public void setCapture( PacketCapture capture )
+    {
+        this.capture = capture;
+    }
+
+    /**
+     * @return when the packet was sent, from {@link System#nanoTime()}
+     */
+    private long sendPacket( DatagramSocket socket, PacketType pt ) throws IOException, JOTLException
     {
         if ( pt.getPacketOrigin() != PacketType.PacketOrigin.CLIENT )
         {
@@ -154,13 +287,18 @@ public final class UDPGameQuerier implements GameQuerier
         }
         DatagramPacket querypacket = pt.createPacket( server.getAddress(), server.getPort() );
         socket.send( querypacket );
+        long sent = System.nanoTime();
+        stats.querySent( server, pt, sent );
+        metrics.querySent( server, pt, sent );
+        new QuerySentEvent().finish( server, pt );
         LOG.debug( "Packet of type {} sent.", pt );
+        return sent;
     }
 
     private DatagramSocket bind() throws SocketException
     {
         DatagramSocket socket = new DatagramSocket( fromPort );
-        socket.setSoTimeout( 5000 );
+        socket.setSoTimeout( timeout );
         return socket;
     }
 
@@ -193,7 +331,16 @@ public final class UDPGameQuerier implements GameQuerier
         DatagramPacket recieved = new DatagramPacket( reply, maxPacketSize );
         socket.receive( recieved ); // This call blocks
         byte[] data = trimPacket( recieved.getData(), recieved.getLength() );
+        PacketCapture c = capture;
+        if ( c != null )
+        {
+            c.record( server, data );
+        }
 
+        if ( !LOG.isDebugEnabled() )
+        {
+            return data;
+        }
         PacketType type = PacketType.fromInt( data[2] );
 
         StringBuilder sb = new StringBuilder( "Recieved packet!" );
@@ -204,4 +351,13 @@ public final class UDPGameQuerier implements GameQuerier
         LOG.debug( sb.toString() );
         return data;
     }
+
+    /**
+     * Parses one type of reply
+     */
+    private interface ReplyParser<T>
+    {
+
+        T parse( byte[] reply ) throws JOTLException;
+    }
 }
@@ -0,0 +1,59 @@
+package com.camelspotting.jotl;
+
+import com.camelspotting.jotl.AdaptiveInterval.Activity;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class AdaptiveIntervalTest
+{
+
+    @Test
+    public void testIdleRampsTowardsMax()
+    {
+        AdaptiveInterval instance = new AdaptiveInterval( 2000, 30000 );
+        int previous = instance.getCurrent();
+        for ( int i = 0; i < 5; i++ )
+        {
+            int next = instance.next( Activity.IDLE );
+            assertTrue( next > previous );
+            assertTrue( next < 30000 );
+            previous = next;
+        }
+        for ( int i = 0; i < 100; i++ )
+        {
+            instance.next( Activity.IDLE );
+        }
+        assertEquals( 30000, instance.getCurrent() );
+    }
+
+    @Test
+    public void testBusyRampsTowardsMin()
+    {
+        AdaptiveInterval instance = new AdaptiveInterval( 2000, 30000 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            instance.next( Activity.IDLE );
+        }
+        int afterOne = instance.next( Activity.BUSY );
+        assertEquals( 16000, afterOne );
+        for ( int i = 0; i < 100; i++ )
+        {
+            instance.next( Activity.BUSY );
+        }
+        assertEquals( 2000, instance.getCurrent() );
+    }
+
+    @Test
+    public void testSteadyKeepsInterval()
+    {
+        AdaptiveInterval instance = new AdaptiveInterval( 2000, 30000 );
+        int idle = instance.next( Activity.IDLE );
+        assertEquals( idle, instance.next( Activity.STEADY ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testIllegalBounds()
+    {
+        new AdaptiveInterval( 5000, 2000 );
+    }
+}
@@ -0,0 +1,89 @@
+package com.camelspotting.jotl;
+
+import static com.camelspotting.jotl.GameFixtures.*;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import com.camelspotting.jotl.event.OpenTTDListener;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CheckpointFileTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private CheckpointFile checkpoints;
+
+    @Before
+    public void setUp()
+    {
+        checkpoints = new CheckpointFile( new File( folder.getRoot(), "monitors.ckpt" ) );
+    }
+
+    @Test
+    public void testRestoredMonitorResumesSilently() throws JOTLException, IOException
+    {
+        Game still = game( 10, company( 0, 100, 100, 10 ) );
+        ServerMonitor monitor = new ServerMonitor( new StubGameQuerier( game( 9, company( 0, 100, 100, 10 ) ), still, still, still, still ), 0, false );
+        for ( int i = 0; i < 5; i++ )
+        {
+            monitor.update();
+        }
+        assertTrue( monitor.isPaused() );
+        ServerMonitor other = new ServerMonitor( new StubGameQuerier( new Server( "127.0.0.2", 3979, null ), game( 1 ) ), 0, false );
+        checkpoints.write( Arrays.asList( monitor, other ) );
+
+        final List<OpenTTDEvent> received = new ArrayList<OpenTTDEvent>();
+        ServerMonitor restarted = new ServerMonitor( new StubGameQuerier( still, game( 11, company( 0, 100, 100, 10 ) ) ), 0, false, new OpenTTDListener()
+        {
+            @Override
+            public void eventOccured( OpenTTDEvent evt )
+            {
+                received.add( evt );
+            }
+        } );
+        assertEquals( 1, checkpoints.restore( Collections.singletonList( restarted ) ) );
+        assertTrue( restarted.isPaused() );
+        assertEquals( still.getServerDetails().getGameDate(), restarted.getState().getGame().getServerDetails().getGameDate() );
+
+        restarted.update();
+        assertTrue( received.isEmpty() );
+        restarted.update();
+        assertEquals( 1, received.size() );
+        assertFalse( restarted.isPaused() );
+    }
+
+    @Test
+    public void testDamagedFileIsRejected() throws JOTLException, IOException
+    {
+        ServerMonitor monitor = new ServerMonitor( new StubGameQuerier( game( 1 ) ), 0, true );
+        checkpoints.write( Collections.singletonList( monitor ) );
+        assertEquals( 1, checkpoints.read().size() );
+
+        RandomAccessFile raf = new RandomAccessFile( checkpoints.getFile(), "rw" );
+        raf.seek( 20 );
+        raf.write( raf.read() ^ 0xFF );
+        raf.close();
+        try
+        {
+            checkpoints.read();
+            fail( "Expected a damaged file" );
+        }
+        catch ( IOException ex )
+        {
+            assertTrue( ex.getMessage().contains( "damaged" ) );
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.camelspotting.jotl;
+
+import static com.camelspotting.jotl.GameFixtures.*;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import com.camelspotting.jotl.event.OpenTTDEventType;
+import com.camelspotting.jotl.event.OpenTTDListener;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FleetMonitorTest
+{
+
+    private List<OpenTTDEvent> received;
+    private FleetMonitor fleet;
+
+    @Before
+    public void setUp()
+    {
+        received = Collections.synchronizedList( new ArrayList<OpenTTDEvent>() );
+        fleet = new FleetMonitor( 1000 );
+        fleet.addListener( new OpenTTDListener()
+        {
+            @Override
+            public void eventOccured( OpenTTDEvent evt )
+            {
+                received.add( evt );
+            }
+        } );
+    }
+
+    private static Server server( int i )
+    {
+        return new Server( "10.0.0." + i, 3979, null );
+    }
+
+    @Test
+    public void testEventsAreTaggedWithServer() throws JOTLException
+    {
+        Server first = fleet.add( new StubGameQuerier( server( 1 ), game( 10 ), game( 11, company( 0, 100, 100, 10 ) ) ) );
+        Server second = fleet.add( new StubGameQuerier( server( 2 ), game( 10 ) ) );
+        fleet.update( first );
+        fleet.update( second );
+        fleet.update( first );
+        assertEquals( 3, received.size() );
+        assertEquals( OpenTTDEventType.GAME_START, received.get( 1 ).getType() );
+        assertSame( second, received.get( 1 ).getServer() );
+        assertEquals( OpenTTDEventType.COMPANY_NEW, received.get( 2 ).getType() );
+        assertSame( first, received.get( 2 ).getServer() );
+    }
+
+    @Test
+    public void testDetectsPause() throws JOTLException
+    {
+        Game still = game( 10 );
+        Server server = fleet.add( new StubGameQuerier( server( 1 ), still, still, still, still, game( 11 ) ) );
+        for ( int i = 0; i < 4; i++ )
+        {
+            fleet.update( server );
+        }
+        assertTrue( fleet.isPaused( server ) );
+        fleet.update( server );
+        assertFalse( fleet.isPaused( server ) );
+        assertEquals( OpenTTDEventType.PAUSED, received.get( 1 ).getType() );
+        assertEquals( OpenTTDEventType.UNPAUSED, received.get( 2 ).getType() );
+    }
+
+    @Test
+    public void testRemoveAndReuseSlots() throws JOTLException
+    {
+        for ( int i = 0; i < 100; i++ )
+        {
+            fleet.add( new StubGameQuerier( server( i ), game( i ) ) );
+        }
+        for ( int i = 0; i < 100; i += 2 )
+        {
+            assertTrue( fleet.remove( server( i ) ) );
+        }
+        assertFalse( fleet.remove( server( 0 ) ) );
+        assertEquals( 50, fleet.size() );
+        Server again = fleet.add( new StubGameQuerier( server( 0 ), game( 5 ) ) );
+        fleet.update( again );
+        assertEquals( 5, fleet.getGame( again ).getServerDetails().getGameDate().getDayOfYear() - 1 );
+        assertNull( fleet.getGame( server( 2 ) ) );
+    }
+
+    @Test
+    public void testScheduledUpdates() throws InterruptedException
+    {
+        final CountDownLatch started = new CountDownLatch( 20 );
+        fleet.addListener( new OpenTTDListener()
+        {
+            @Override
+            public void eventOccured( OpenTTDEvent evt )
+            {
+                started.countDown();
+            }
+        } );
+        MonitorScheduler scheduler = new MonitorScheduler( 2, 10, 64 );
+        try
+        {
+            for ( int i = 0; i < 20; i++ )
+            {
+                fleet.add( new StubGameQuerier( server( i ), game( i ) ) );
+            }
+            fleet.start( scheduler );
+            assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+            fleet.stop();
+        }
+        finally
+        {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testRestartDoesNotDoubleUpdates() throws InterruptedException
+    {
+        final CountDownLatch querying = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger queries = new AtomicInteger();
+        fleet = new FleetMonitor( 100 );
+        fleet.add( new StubGameQuerier( server( 1 ), game( 10 ) )
+        {
+            @Override
+            public Game getAllInformation() throws JOTLException
+            {
+                if ( queries.getAndIncrement() == 0 )
+                {
+                    querying.countDown();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch ( InterruptedException ex )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.getAllInformation();
+            }
+        } );
+        MonitorScheduler scheduler = new MonitorScheduler( 2, 10, 64 );
+        try
+        {
+            fleet.start( scheduler );
+            assertTrue( querying.await( 5, TimeUnit.SECONDS ) );
+            // Restarted while the first update is still running
+            fleet.stop();
+            fleet.start( scheduler );
+            release.countDown();
+            Thread.sleep( 1000 );
+            fleet.stop();
+            // One update every 100 ms, or twice that if both runs go on
+            assertTrue( "Updated " + queries.get() + " times.", queries.get() <= 14 );
+        }
+        finally
+        {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.camelspotting.jotl;
+
+import com.camelspotting.jotl.domain.ClientsDetailsV5;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.parsing.Station;
+import com.camelspotting.jotl.parsing.Vehicle;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import org.joda.time.LocalDate;
+
+/**
+ * Builders for games and companies used by the tests.
+ */
+public final class GameFixtures
+{
+
+    public static final LocalDate START = new LocalDate( 1950, 1, 1 );
+
+    private GameFixtures()
+    {
+    }
+
+    public static Company company( int id, long value, long balance, int rating )
+    {
+        EnumMap<Vehicle, Integer> vehicles = new EnumMap<Vehicle, Integer>( Vehicle.class );
+        for ( Vehicle v : Vehicle.values() )
+        {
+            vehicles.put( v, v.getId() );
+        }
+        EnumMap<Station, Integer> stations = new EnumMap<Station, Integer>( Station.class );
+        for ( Station s : Station.values() )
+        {
+            stations.put( s, 1 );
+        }
+        return new Company( id, "Company " + id, 1950, value, balance, balance / 10, rating, false, vehicles, stations );
+    }
+
+    public static ServerDetails serverDetails( LocalDate gameDate, int clients )
+    {
+        return new ServerDetails( null, "Test server", gameDate, START, 15, 1, 10, 0, 25, clients, "1.2.3", 1, false, true, 0, 256, 512, "Random map" );
+    }
+
+    public static Game game( LocalDate gameDate, int clients, Company... companies )
+    {
+        List<Company> list = new ArrayList<Company>();
+        for ( Company c : companies )
+        {
+            list.add( c );
+        }
+        return new Game( serverDetails( gameDate, clients ), new ClientsDetailsV5( list ) );
+    }
+
+    public static Game game( int day, Company... companies )
+    {
+        return game( START.plusDays( day ), 1, companies );
+    }
+}
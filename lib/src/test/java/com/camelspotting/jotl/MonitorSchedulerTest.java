@@ -0,0 +1,82 @@
+package com.camelspotting.jotl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class MonitorSchedulerTest
+{
+
+    private MonitorScheduler scheduler;
+
+    @Before
+    public void setUp()
+    {
+        scheduler = new MonitorScheduler( 2, 10, 8 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testScheduledTasksRun() throws InterruptedException
+    {
+        final CountDownLatch latch = new CountDownLatch( 100 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            // Some of these wrap around the wheel several times
+            scheduler.schedule( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    latch.countDown();
+                }
+            }, i * 3 );
+        }
+        assertTrue( latch.await( 5, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void testTaskDoesNotRunEarly() throws InterruptedException
+    {
+        final CountDownLatch latch = new CountDownLatch( 1 );
+        long start = System.nanoTime();
+        scheduler.schedule( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 200 );
+        assertTrue( latch.await( 5, TimeUnit.SECONDS ) );
+        assertTrue( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) >= 200 );
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotRun() throws InterruptedException
+    {
+        final AtomicInteger runs = new AtomicInteger();
+        MonitorScheduler.Timeout timeout = scheduler.schedule( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runs.incrementAndGet();
+            }
+        }, 50 );
+        assertTrue( timeout.cancel() );
+        Thread.sleep( 200 );
+        assertEquals( 0, runs.get() );
+        assertTrue( timeout.isCancelled() );
+        assertFalse( timeout.cancel() );
+    }
+}
@@ -0,0 +1,264 @@
+package com.camelspotting.jotl;
+
+import static com.camelspotting.jotl.GameFixtures.*;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.event.BatchOpenTTDListener;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import com.camelspotting.jotl.event.OpenTTDEventType;
+import com.camelspotting.jotl.event.OpenTTDListener;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import com.camelspotting.jotl.exceptions.UnreachableHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ServerMonitorTest
+{
+
+    private List<OpenTTDEventType> received;
+    private OpenTTDListener listener;
+
+    @Before
+    public void setUp()
+    {
+        received = Collections.synchronizedList( new ArrayList<OpenTTDEventType>() );
+        listener = new OpenTTDListener()
+        {
+            @Override
+            public void eventOccured( OpenTTDEvent evt )
+            {
+                received.add( evt.getType() );
+            }
+        };
+    }
+
+    @Test
+    public void testDetectsNewGameAndCompanies() throws JOTLException
+    {
+        GameQuerier querier = new StubGameQuerier( game( 10 ), game( 11, company( 0, 100, 100, 10 ) ) );
+        ServerMonitor monitor = new ServerMonitor( querier, 0, false, listener );
+        monitor.update();
+        assertEquals( Collections.singletonList( OpenTTDEventType.GAME_START ), received );
+        monitor.update();
+        assertEquals( OpenTTDEventType.COMPANY_NEW, received.get( 1 ) );
+        assertEquals( 2, received.size() );
+    }
+
+    @Test
+    public void testFilteredSubscription() throws JOTLException
+    {
+        GameQuerier querier = new StubGameQuerier( game( 10 ), game( 11, company( 0, 100, 100, 10 ) ) );
+        ServerMonitor monitor = new ServerMonitor( querier, 0, false );
+        monitor.addListener( listener, EnumSet.of( OpenTTDEventType.COMPANY_NEW ) );
+        assertTrue( monitor.isSubscribed( OpenTTDEventType.COMPANY_NEW ) );
+        assertFalse( monitor.isSubscribed( OpenTTDEventType.GAME_START ) );
+        monitor.update();
+        assertTrue( received.isEmpty() );
+        monitor.update();
+        assertEquals( Collections.singletonList( OpenTTDEventType.COMPANY_NEW ), received );
+        monitor.removeListeners( listener );
+        assertFalse( monitor.isSubscribed( OpenTTDEventType.COMPANY_NEW ) );
+    }
+
+    @Test
+    public void testBatchListenerReceivesWholeUpdate() throws JOTLException
+    {
+        final List<List<OpenTTDEvent>> batches = new ArrayList<List<OpenTTDEvent>>();
+        final List<MonitorState> states = new ArrayList<MonitorState>();
+        Game second = game( 11, company( 0, 100, 100, 10 ), company( 1, 200, 200, 20 ) );
+        GameQuerier querier = new StubGameQuerier( game( 10 ), second, game( 12, company( 0, 100, 100, 10 ), company( 1, 200, 200, 20 ) ) );
+        ServerMonitor monitor = new ServerMonitor( querier, 0, false );
+        monitor.addBatchListener( new BatchOpenTTDListener()
+        {
+            @Override
+            public void eventsOccured( MonitorState state, List<OpenTTDEvent> evts )
+            {
+                states.add( state );
+                batches.add( evts );
+            }
+        } );
+        assertTrue( monitor.isSubscribed( OpenTTDEventType.PAUSED ) );
+        monitor.update();
+        monitor.update();
+        monitor.update();
+        assertEquals( 3, batches.size() );
+        assertEquals( OpenTTDEventType.GAME_START, batches.get( 0 ).get( 0 ).getType() );
+        assertEquals( OpenTTDEventType.COMPANY_NEW, batches.get( 1 ).get( 0 ).getType() );
+        assertEquals( 2, batches.get( 1 ).get( 0 ).getObjects().length );
+        assertSame( second, states.get( 1 ).getGame() );
+        assertSame( querier.getServer(), batches.get( 1 ).get( 0 ).getServer() );
+        assertTrue( batches.get( 2 ).isEmpty() );
+    }
+
+    @Test
+    public void testDetectsPause() throws JOTLException
+    {
+        Game first = game( 10 );
+        Game still = game( 10 );
+        GameQuerier querier = new StubGameQuerier( first, still, still, still, game( 11 ) );
+        ServerMonitor monitor = new ServerMonitor( querier, 0, false, listener );
+        for ( int i = 0; i < 4; i++ )
+        {
+            monitor.update();
+        }
+        assertTrue( monitor.isPaused() );
+        monitor.update();
+        assertFalse( monitor.isPaused() );
+        assertEquals( OpenTTDEventType.PAUSED, received.get( 1 ) );
+        assertEquals( OpenTTDEventType.UNPAUSED, received.get( 2 ) );
+    }
+
+    @Test
+    public void testPublishesState() throws JOTLException
+    {
+        final Game game = game( 10 );
+        final boolean[] reachable = new boolean[]
+        {
+            true
+        };
+        GameQuerier querier = new StubGameQuerier( game )
+        {
+            @Override
+            public Game getAllInformation() throws JOTLException
+            {
+                if ( !reachable[0] )
+                {
+                    throw new UnreachableHostException( getServer(), null );
+                }
+                return super.getAllInformation();
+            }
+        };
+        ServerMonitor monitor = new ServerMonitor( querier, 0, false );
+        assertNull( monitor.getState().getGame() );
+        assertSame( querier.getServer(), monitor.getState().getServer() );
+
+        monitor.update();
+        MonitorState state = monitor.getState();
+        assertSame( game, state.getGame() );
+        assertTrue( state.getLastSuccess() > 0 );
+
+        reachable[0] = false;
+        for ( int i = 1; i <= 2; i++ )
+        {
+            try
+            {
+                monitor.update();
+                fail( "Expected a timeout" );
+            }
+            catch ( UnreachableHostException ex )
+            {
+                assertEquals( i, monitor.getState().getConsecutiveTimeouts() );
+            }
+        }
+        assertSame( game, monitor.getState().getGame() );
+
+        reachable[0] = true;
+        monitor.update();
+        assertEquals( 0, monitor.getState().getConsecutiveTimeouts() );
+    }
+
+    @Test
+    public void testUpdateDoesNotWaitForSlowQuery() throws Exception
+    {
+        final CountDownLatch inSlowQuery = new CountDownLatch( 1 );
+        final CountDownLatch releaseSlowQuery = new CountDownLatch( 1 );
+        final Game stale = game( 5 );
+        GameQuerier querier = new StubGameQuerier( game( 10 ) )
+        {
+            private boolean first = true;
+
+            @Override
+            public Game getAllInformation() throws JOTLException
+            {
+                synchronized ( this )
+                {
+                    if ( !first )
+                    {
+                        return super.getAllInformation();
+                    }
+                    first = false;
+                }
+                inSlowQuery.countDown();
+                try
+                {
+                    releaseSlowQuery.await();
+                }
+                catch ( InterruptedException ex )
+                {
+                    throw new JOTLException( ex );
+                }
+                return stale;
+            }
+        };
+        final ServerMonitor monitor = new ServerMonitor( querier, 0, false, listener );
+        Thread slow = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    monitor.update();
+                }
+                catch ( JOTLException ex )
+                {
+                    fail( ex.getMessage() );
+                }
+            }
+        };
+        slow.start();
+        assertTrue( inSlowQuery.await( 5, TimeUnit.SECONDS ) );
+
+        monitor.update();
+        assertFalse( monitor.isPaused() );
+        assertEquals( Collections.singletonList( OpenTTDEventType.GAME_START ), received );
+
+        releaseSlowQuery.countDown();
+        slow.join( 5000 );
+        // The slow result was started first and must not be seen as a new game
+        assertEquals( 1, received.size() );
+    }
+
+    @Test
+    public void testStartOnShutDownScheduler() throws Exception
+    {
+        final CountDownLatch updated = new CountDownLatch( 1 );
+        ServerMonitor monitor = new ServerMonitor( new StubGameQuerier( game( 10 ) ), 0, false, new OpenTTDListener()
+        {
+            @Override
+            public void eventOccured( OpenTTDEvent evt )
+            {
+                updated.countDown();
+            }
+        } );
+        MonitorScheduler stopped = new MonitorScheduler( 1, 10, 8 );
+        stopped.shutdown();
+        try
+        {
+            monitor.start( stopped );
+            fail( "Started on a scheduler that was shut down." );
+        }
+        catch ( IllegalStateException ex )
+        {
+            // Expected
+        }
+        // The failed start must not keep the monitor from starting
+        MonitorScheduler scheduler = new MonitorScheduler( 1, 10, 8 );
+        try
+        {
+            monitor.start( scheduler );
+            assertTrue( updated.await( 5, TimeUnit.SECONDS ) );
+            monitor.stop();
+        }
+        finally
+        {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.camelspotting.jotl;
+
+import com.camelspotting.jotl.domain.ClientsDetails;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * A querier returning prepared games in order. The last game is repeated once
+ * the others have been returned.
+ */
+public class StubGameQuerier implements GameQuerier
+{
+
+    private final Server server;
+    private final Queue<Game> games = new LinkedList<Game>();
+    private Game last;
+
+    public StubGameQuerier( Game... games )
+    {
+        this( new Server( "127.0.0.1", 3979, null ), games );
+    }
+
+    public StubGameQuerier( Server server, Game... games )
+    {
+        this.server = server;
+        this.games.addAll( Arrays.asList( games ) );
+    }
+
+    public synchronized void add( Game... more )
+    {
+        games.addAll( Arrays.asList( more ) );
+    }
+
+    @Override
+    public ServerDetails getServerDetails() throws JOTLException
+    {
+        return getAllInformation().getServerDetails();
+    }
+
+    @Override
+    public ClientsDetails getClientsDetails() throws JOTLException
+    {
+        return getAllInformation().getClientDetails();
+    }
+
+    @Override
+    public synchronized Game getAllInformation() throws JOTLException
+    {
+        if ( !games.isEmpty() )
+        {
+            last = games.poll();
+        }
+        return last;
+    }
+
+    @Override
+    public Server getServer()
+    {
+        return server;
+    }
+}
@@ -0,0 +1,97 @@
+package com.camelspotting.jotl.capture;
+
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.udp.PacketType;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PacketCaptureTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private final Server first = new Server( "127.0.0.1", 3979, null );
+    private final Server second = new Server( "127.0.0.2", 3980, null );
+
+    private static byte[] datagram( int type, int size )
+    {
+        byte[] data = new byte[ size ];
+        data[0] = (byte) size;
+        data[2] = (byte) type;
+        data[3] = 4;
+        for ( int i = 4; i < size; i++ )
+        {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    @Test
+    public void testSeeksByServerAndTime() throws IOException
+    {
+        File file = folder.newFile( "servers.cap" );
+        PacketCapture capture = new PacketCapture( file );
+        for ( int t = 0; t < 1000; t++ )
+        {
+            capture.record( t % 2 == 0 ? first : second, t, datagram( t % 2 == 0 ? 1 : 3, 10 + t % 50 ) );
+        }
+        // Larger than the write buffer
+        capture.record( first, 1000, datagram( 1, 100000 ) );
+        capture.close();
+        assertEquals( 1001, capture.getPacketCount() );
+
+        CaptureReader reader = new CaptureReader( file );
+        try
+        {
+            assertEquals( 1001, reader.size() );
+            assertEquals( 2, reader.getServers().size() );
+            List<CapturedPacket> packets = reader.read( second, 100, 110 );
+            assertEquals( 5, packets.size() );
+            CapturedPacket packet = packets.get( 0 );
+            assertEquals( 101, packet.getTimestamp() );
+            assertEquals( second, packet.getServer() );
+            assertEquals( PacketType.SERVER_DETAIL_INFO, packet.getType() );
+            assertEquals( 4, packet.getVersion() );
+            assertArrayEquals( datagram( 3, 10 + 101 % 50 ), packet.getData() );
+
+            CapturedPacket last = reader.get( 1000 );
+            assertEquals( 100000, last.getData().length );
+            assertEquals( PacketType.SERVER_RESPONSE, last.getType() );
+            assertEquals( 0, reader.read( first, 2000, 3000 ).size() );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testIgnoresTruncatedEnd() throws IOException
+    {
+        File file = folder.newFile( "cut.cap" );
+        PacketCapture capture = new PacketCapture( file );
+        capture.record( first, 1, datagram( 1, 20 ) );
+        capture.record( first, 2, datagram( 1, 20 ) );
+        capture.close();
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        raf.setLength( raf.length() - 30 );
+        raf.close();
+
+        CaptureReader reader = new CaptureReader( file );
+        try
+        {
+            assertEquals( 1, reader.size() );
+            assertEquals( 1, reader.read( first, 0, 10 ).size() );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.camelspotting.jotl.domain;
+
+import static com.camelspotting.jotl.GameFixtures.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class GameDeltaTest
+{
+
+    @Test
+    public void testUnchanged()
+    {
+        GameDelta delta = GameDelta.compute( game( 1, company( 0, 10, 10, 1 ) ), game( 2, company( 0, 10, 10, 1 ) ) );
+        assertTrue( delta.isEmpty() );
+    }
+
+    @Test
+    public void testAddedRemovedAndChanged()
+    {
+        Game previous = game( 1, company( 0, 10, 10, 1 ), company( 1, 20, 20, 2 ), company( 2, 30, 30, 3 ) );
+        Game current = game( 2, company( 0, 10, 20, 1 ), company( 2, 40, 30, 5 ), company( 3, 0, 0, 0 ) );
+        GameDelta delta = GameDelta.compute( previous, current );
+
+        assertEquals( 1, delta.getAdded().size() );
+        assertEquals( 3, delta.getAdded().get( 0 ).getCurrentId() );
+        assertEquals( 1, delta.getRemoved().size() );
+        assertEquals( 1, delta.getRemoved().get( 0 ).getCurrentId() );
+        assertEquals( 2, delta.getChanged().size() );
+
+        // The fixtures derive income from balance, so #0 changed both
+        assertEquals( 1, delta.getChanged( GameDelta.VALUE ).size() );
+        assertEquals( 2, delta.getChanged( GameDelta.VALUE ).get( 0 ).getCurrent().getCurrentId() );
+        GameDelta.CompanyChange first = delta.getChanged( GameDelta.BALANCE ).get( 0 );
+        assertEquals( 0, first.getCurrent().getCurrentId() );
+        assertEquals( GameDelta.BALANCE | GameDelta.INCOME, first.getChangedFields() );
+        assertFalse( first.hasChanged( GameDelta.VEHICLES | GameDelta.STATIONS ) );
+    }
+}
@@ -0,0 +1,209 @@
+package com.camelspotting.jotl.event;
+
+import com.camelspotting.jotl.domain.Server;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventDispatcherTest
+{
+
+    private static final Server SERVER = new Server( "127.0.0.1", 3979, null );
+    private EventDispatcher dispatcher;
+    private CountDownLatch release;
+    private List<OpenTTDEvent> received;
+    private OpenTTDListener slowListener;
+
+    @Before
+    public void setUp()
+    {
+        dispatcher = new EventDispatcher( 2 );
+        release = new CountDownLatch( 1 );
+        received = Collections.synchronizedList( new ArrayList<OpenTTDEvent>() );
+        slowListener = new OpenTTDListener()
+        {
+            @Override
+            public void eventOccured( OpenTTDEvent evt )
+            {
+                try
+                {
+                    release.await();
+                }
+                catch ( InterruptedException ex )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                if ( evt.getType() == OpenTTDEventType.LOST_CONNECTION )
+                {
+                    throw new IllegalStateException( "Listener failure" );
+                }
+                received.add( evt );
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws InterruptedException
+    {
+        release.countDown();
+        dispatcher.shutdown( 5, TimeUnit.SECONDS );
+    }
+
+    private static OpenTTDEvent event( OpenTTDEventType type, int year )
+    {
+        return new OpenTTDEvent( SERVER, type, Integer.valueOf( year ) );
+    }
+
+    @Test
+    public void testDeliversInOrderDespiteFailures() throws InterruptedException
+    {
+        AsyncOpenTTDListener async = dispatcher.wrap( slowListener, 16, OverflowPolicy.BLOCK );
+        for ( int i = 0; i < 10; i++ )
+        {
+            async.eventOccured( event( i == 5 ? OpenTTDEventType.LOST_CONNECTION : OpenTTDEventType.PAUSED, i ) );
+        }
+        release.countDown();
+        assertTrue( dispatcher.shutdown( 5, TimeUnit.SECONDS ) );
+        assertEquals( 9, received.size() );
+        int previous = -1;
+        for ( OpenTTDEvent evt : received )
+        {
+            int year = (Integer) evt.getObjects()[0];
+            assertTrue( year > previous );
+            previous = year;
+        }
+        assertEquals( 10, async.getMetrics().getDelivered() );
+    }
+
+    @Test
+    public void testDropOldestNeverBlocksPublisher() throws InterruptedException
+    {
+        AsyncOpenTTDListener async = dispatcher.wrap( slowListener, 4, OverflowPolicy.DROP_OLDEST );
+        for ( int i = 0; i < 100; i++ )
+        {
+            async.eventOccured( event( OpenTTDEventType.PAUSED, i ) );
+        }
+        AsyncOpenTTDListener.Metrics metrics = async.getMetrics();
+        assertEquals( 100, metrics.getPublished() );
+        // One event may already be in the hands of the listener
+        assertTrue( metrics.getDropped() >= 95 );
+        release.countDown();
+        assertTrue( dispatcher.shutdown( 5, TimeUnit.SECONDS ) );
+        assertEquals( 99, ( (Integer) received.get( received.size() - 1 ).getObjects()[0] ).intValue() );
+    }
+
+    @Test
+    public void testCoalesceKeepsLatestOfSameType() throws InterruptedException
+    {
+        AsyncOpenTTDListener async = dispatcher.wrap( slowListener, 2, OverflowPolicy.COALESCE );
+        async.eventOccured( event( OpenTTDEventType.GAME_START, 0 ) );
+        // Wait until the first event is held by the listener
+        while ( async.getBacklog() > 0 )
+        {
+            Thread.sleep( 1 );
+        }
+        async.eventOccured( event( OpenTTDEventType.NEW_LEADER, 1 ) );
+        async.eventOccured( event( OpenTTDEventType.PAUSED, 2 ) );
+        async.eventOccured( event( OpenTTDEventType.NEW_LEADER, 3 ) );
+        assertEquals( 1, async.getMetrics().getCoalesced() );
+        release.countDown();
+        assertTrue( dispatcher.shutdown( 5, TimeUnit.SECONDS ) );
+        assertEquals( 3, received.size() );
+        assertEquals( OpenTTDEventType.PAUSED, received.get( 1 ).getType() );
+        assertEquals( 3, ( (Integer) received.get( 2 ).getObjects()[0] ).intValue() );
+    }
+
+    @Test
+    public void testCoalesceKeepsOrderOfServer()
+    {
+        final Queue<Runnable> tasks = new LinkedList<Runnable>();
+        Executor executor = new Executor()
+        {
+            @Override
+            public void execute( Runnable command )
+            {
+                tasks.add( command );
+            }
+        };
+        final List<OpenTTDEvent> delivered = new ArrayList<OpenTTDEvent>();
+        AsyncOpenTTDListener listener = new AsyncOpenTTDListener( new OpenTTDListener()
+        {
+            @Override
+            public void eventOccured( OpenTTDEvent evt )
+            {
+                delivered.add( evt );
+            }
+        }, executor, 4, OverflowPolicy.COALESCE );
+        for ( int i = 0; i < 10; i++ )
+        {
+            listener.eventOccured( event( i % 2 == 0 ? OpenTTDEventType.PAUSED : OpenTTDEventType.UNPAUSED, i ) );
+        }
+        assertEquals( 6, listener.getMetrics().getCoalesced() );
+        tasks.poll().run();
+        assertEquals( 4, delivered.size() );
+        int previous = -1;
+        for ( OpenTTDEvent evt : delivered )
+        {
+            int year = (Integer) evt.getObjects()[0];
+            assertTrue( year > previous );
+            previous = year;
+        }
+        // The listener ends up knowing the game was unpaused last
+        assertEquals( OpenTTDEventType.UNPAUSED, delivered.get( 3 ).getType() );
+        assertEquals( 9, previous );
+    }
+
+    @Test
+    public void testRecoversFromRejectedReschedule()
+    {
+        final Queue<Runnable> tasks = new LinkedList<Runnable>();
+        final boolean[] rejecting = new boolean[ 1 ];
+        Executor executor = new Executor()
+        {
+            @Override
+            public void execute( Runnable command )
+            {
+                if ( rejecting[0] )
+                {
+                    throw new RejectedExecutionException( "Shut down" );
+                }
+                tasks.add( command );
+            }
+        };
+        final List<OpenTTDEvent> delivered = new ArrayList<OpenTTDEvent>();
+        AsyncOpenTTDListener listener = new AsyncOpenTTDListener( new OpenTTDListener()
+        {
+            @Override
+            public void eventOccured( OpenTTDEvent evt )
+            {
+                delivered.add( evt );
+            }
+        }, executor, 128, OverflowPolicy.BLOCK );
+        // More than one batch, so the consumer reschedules itself
+        for ( int i = 0; i < 100; i++ )
+        {
+            listener.eventOccured( event( OpenTTDEventType.PAUSED, i ) );
+        }
+        assertEquals( 1, tasks.size() );
+        rejecting[0] = true;
+        tasks.poll().run();
+        assertTrue( delivered.size() < 100 );
+
+        // Once the executor accepts again the rest is delivered
+        rejecting[0] = false;
+        listener.eventOccured( event( OpenTTDEventType.PAUSED, 100 ) );
+        assertEquals( 1, tasks.size() );
+        tasks.poll().run();
+        assertEquals( 101, delivered.size() );
+    }
+}
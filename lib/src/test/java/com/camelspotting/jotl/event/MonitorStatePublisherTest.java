@@ -0,0 +1,122 @@
+package com.camelspotting.jotl.event;
+
+import static com.camelspotting.jotl.GameFixtures.*;
+import com.camelspotting.jotl.MonitorState;
+import com.camelspotting.jotl.domain.Server;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class MonitorStatePublisherTest
+{
+
+    private static final Executor DIRECT = new Executor()
+    {
+        @Override
+        public void execute( Runnable command )
+        {
+            command.run();
+        }
+    };
+    private final Server first = new Server( "127.0.0.1", 3979, null );
+    private final Server second = new Server( "127.0.0.2", 3979, null );
+
+    @Test
+    public void testCoalescesWhileSubscriberStalls()
+    {
+        MonitorStatePublisher publisher = new MonitorStatePublisher( DIRECT );
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe( subscriber );
+        assertNotNull( subscriber.subscription );
+
+        for ( int day = 1; day <= 10; day++ )
+        {
+            publish( publisher, first, day );
+            publish( publisher, second, day );
+        }
+        assertTrue( subscriber.received.isEmpty() );
+        assertEquals( 18, publisher.getCoalesced() );
+
+        subscriber.subscription.request( 3 );
+        assertEquals( 2, subscriber.received.size() );
+        assertSame( first, subscriber.received.get( 0 ).getServer() );
+        assertEquals( START.plusDays( 10 ), subscriber.received.get( 0 ).getGame().getServerDetails().getGameDate() );
+        assertSame( second, subscriber.received.get( 1 ).getServer() );
+
+        // One request left over
+        publish( publisher, first, 11 );
+        assertEquals( 3, subscriber.received.size() );
+        publish( publisher, first, 12 );
+        assertEquals( 3, subscriber.received.size() );
+
+        publisher.close();
+        assertFalse( subscriber.completed );
+        subscriber.subscription.request( 1 );
+        assertEquals( 4, subscriber.received.size() );
+        assertTrue( subscriber.completed );
+        assertEquals( 0, publisher.getSubscriberCount() );
+    }
+
+    @Test
+    public void testCancelAndIllegalRequest()
+    {
+        MonitorStatePublisher publisher = new MonitorStatePublisher( DIRECT );
+        RecordingSubscriber cancelled = new RecordingSubscriber();
+        RecordingSubscriber illegal = new RecordingSubscriber();
+        publisher.subscribe( cancelled );
+        publisher.subscribe( illegal );
+        assertEquals( 2, publisher.getSubscriberCount() );
+
+        cancelled.subscription.cancel();
+        illegal.subscription.request( 0 );
+        assertTrue( illegal.error instanceof IllegalArgumentException );
+        assertEquals( 0, publisher.getSubscriberCount() );
+
+        publish( publisher, first, 1 );
+        cancelled.subscription.request( 1 );
+        assertTrue( cancelled.received.isEmpty() );
+    }
+
+    private static void publish( MonitorStatePublisher publisher, Server server, int day )
+    {
+        MonitorState state = MonitorState.initial( server ).withUpdate( game( day ), null, false, day );
+        publisher.eventsOccured( state, Collections.<OpenTTDEvent>emptyList() );
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<MonitorState>
+    {
+
+        private Flow.Subscription subscription;
+        private final List<MonitorState> received = new ArrayList<MonitorState>();
+        private boolean completed;
+        private Throwable error;
+
+        @Override
+        public void onSubscribe( Flow.Subscription subscription )
+        {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext( MonitorState item )
+        {
+            received.add( item );
+        }
+
+        @Override
+        public void onError( Throwable throwable )
+        {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete()
+        {
+            completed = true;
+        }
+    }
+}
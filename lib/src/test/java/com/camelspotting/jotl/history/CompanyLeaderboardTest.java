@@ -0,0 +1,153 @@
+package com.camelspotting.jotl.history;
+
+import static com.camelspotting.jotl.GameFixtures.*;
+import com.camelspotting.jotl.GameQuerier;
+import com.camelspotting.jotl.MonitorCheckpoint;
+import com.camelspotting.jotl.MonitorScheduler;
+import com.camelspotting.jotl.MonitorState;
+import com.camelspotting.jotl.ServerMonitor;
+import com.camelspotting.jotl.StubGameQuerier;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.CompanyMetric;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.event.BatchOpenTTDListener;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import com.camelspotting.jotl.event.OpenTTDEventType;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import com.camelspotting.jotl.exceptions.UnreachableHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class CompanyLeaderboardTest
+{
+
+    private final Server first = new Server( "127.0.0.1", 3979, null );
+    private final Server second = new Server( "127.0.0.2", 3979, null );
+
+    @Test
+    public void testRanksAcrossServers()
+    {
+        CompanyLeaderboard board = new CompanyLeaderboard( CompanyMetric.BALANCE );
+        Company poor = company( 1, 0, 10, 1 );
+        board.update( first, game( 1, company( 0, 0, 300, 1 ), poor ), 1 );
+        board.update( second, game( 1, company( 0, 0, 200, 1 ), company( 1, 0, 400, 1 ) ), 2 );
+
+        assertEquals( 4, board.size() );
+        List<Standing> top = board.getTop( 2 );
+        assertEquals( 400, top.get( 0 ).getValue() );
+        assertSame( second, top.get( 0 ).getServer() );
+        assertEquals( 300, top.get( 1 ).getValue() );
+        assertEquals( 3, board.getRank( first, poor ) );
+        assertEquals( 200, board.get( 2 ).getValue() );
+
+        // The poor company gets rich, the other one is gone
+        Company rich = company( 1, 0, 500, 1 );
+        board.update( first, game( 2, rich ), 3 );
+        assertEquals( 3, board.size() );
+        assertEquals( 0, board.getRank( first, rich ) );
+        assertEquals( 3, board.get( 0 ).getTimestamp() );
+
+        board.remove( second );
+        assertEquals( 1, board.size() );
+        assertEquals( 1, board.getTop( 10 ).size() );
+    }
+
+    @Test
+    public void testMatchesSortedOrder()
+    {
+        CompanyLeaderboard board = new CompanyLeaderboard( CompanyMetric.VALUE );
+        Random random = new Random( 41 );
+        Server[] servers = new Server[10];
+        Company[][] companies = new Company[servers.length][];
+        for ( int poll = 0; poll < 20; poll++ )
+        {
+            for ( int s = 0; s < servers.length; s++ )
+            {
+                servers[s] = new Server( "10.0.0." + s, 3979, null );
+                companies[s] = new Company[1 + random.nextInt( 8 )];
+                for ( int c = 0; c < companies[s].length; c++ )
+                {
+                    companies[s][c] = company( c, random.nextInt( 50 ), 0, 1 );
+                }
+                board.update( servers[s], game( poll, companies[s] ), poll );
+            }
+        }
+        List<Long> expected = new ArrayList<Long>();
+        for ( Company[] cs : companies )
+        {
+            for ( Company c : cs )
+            {
+                expected.add( c.getCompanyValue() );
+            }
+        }
+        Collections.sort( expected, Collections.reverseOrder() );
+        assertEquals( expected.size(), board.size() );
+        List<Standing> all = board.getTop( Integer.MAX_VALUE );
+        for ( int i = 0; i < expected.size(); i++ )
+        {
+            assertEquals( expected.get( i ).longValue(), all.get( i ).getValue() );
+            Standing s = board.get( i );
+            assertEquals( i, board.getRank( s.getServer(), s.getCompany() ) );
+        }
+    }
+
+    @Test
+    public void testIgnoresLostConnection() throws Exception
+    {
+        MonitorScheduler scheduler = new MonitorScheduler( 1, 10, 8 );
+        try
+        {
+            // With and without a game from before the server went down
+            Game stale = game( 10, company( 0, 0, 100, 1 ), company( 1, 0, 200, 1 ) );
+            for ( Game game : new Game[]
+            {
+                stale, null
+            } )
+            {
+                CompanyLeaderboard board = new CompanyLeaderboard( CompanyMetric.BALANCE );
+                final CountDownLatch lost = new CountDownLatch( 1 );
+                final List<MonitorState> states = Collections.synchronizedList( new ArrayList<MonitorState>() );
+                GameQuerier querier = new StubGameQuerier( first )
+                {
+                    @Override
+                    public Game getAllInformation() throws JOTLException
+                    {
+                        throw new UnreachableHostException( getServer(), null );
+                    }
+                };
+                ServerMonitor monitor = new ServerMonitor( querier, 0, false );
+                // One more timeout and the monitor gives up
+                monitor.restore( new MonitorCheckpoint( "127.0.0.1", 3979, game, false, 0, 0, false, false, false, 1000, 11 ) );
+                monitor.addBatchListener( board );
+                monitor.addBatchListener( new BatchOpenTTDListener()
+                {
+                    @Override
+                    public void eventsOccured( MonitorState state, List<OpenTTDEvent> evts )
+                    {
+                        if ( evts.get( 0 ).getType() == OpenTTDEventType.LOST_CONNECTION )
+                        {
+                            states.add( state );
+                            lost.countDown();
+                        }
+                    }
+                } );
+                monitor.start( scheduler );
+                assertTrue( lost.await( 10, TimeUnit.SECONDS ) );
+                assertSame( game, states.get( 0 ).getGame() );
+                assertFalse( states.get( 0 ).hasNewGame() );
+                assertEquals( 0, board.size() );
+            }
+        }
+        finally
+        {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.camelspotting.jotl.history;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class CompressedSeriesTest
+{
+
+    /**
+     * Polls every 5 seconds with some jitter, with a slowly growing balance
+     * and value and an income that changes every quarter.
+     */
+    private static long[][] samples( int n )
+    {
+        Random random = new Random( 42 );
+        long[][] samples = new long[ n ][];
+        long time = 1300000000000L;
+        long balance = 100000;
+        long value = 500000;
+        long income = 0;
+        for ( int i = 0; i < n; i++ )
+        {
+            time += 5000 + ( random.nextInt( 10 ) == 0 ? random.nextInt( 200 ) : 0 );
+            if ( i % 50 == 0 )
+            {
+                income = random.nextInt( 20000 ) - 5000;
+            }
+            balance += random.nextInt( 2000 ) - 500;
+            value += random.nextInt( 100 );
+            samples[i] = new long[]
+            {
+                time, balance, value, income
+            };
+        }
+        return samples;
+    }
+
+    private static CompressedSeries encode( long[][] samples )
+    {
+        CompressedSeries series = new CompressedSeries( 3 );
+        for ( long[] sample : samples )
+        {
+            series.append( sample[0], new long[]
+            {
+                sample[1], sample[2], sample[3]
+            } );
+        }
+        return series;
+    }
+
+    private static void assertDecodes( long[][] samples, int from, CompressedSeries.Decoder decoder )
+    {
+        for ( int i = from; i < samples.length; i++ )
+        {
+            assertTrue( decoder.next() );
+            assertEquals( samples[i][0], decoder.getTimestamp() );
+            for ( int f = 0; f < 3; f++ )
+            {
+                assertEquals( samples[i][f + 1], decoder.get( f ) );
+            }
+        }
+        assertFalse( decoder.next() );
+    }
+
+    @Test
+    public void testRoundTripAndRatio()
+    {
+        long[][] samples = samples( 10000 );
+        CompressedSeries series = encode( samples );
+        assertEquals( 10000, series.size() );
+        assertDecodes( samples, 0, series.decoder() );
+        // Raw longs take 32 bytes per sample
+        assertTrue( series.getEncodedBytes() * 5 < samples.length * 32 );
+    }
+
+    @Test
+    public void testDecodeFrom()
+    {
+        long[][] samples = samples( 1000 );
+        CompressedSeries series = encode( samples );
+        assertDecodes( samples, 0, series.decoder( Long.MIN_VALUE ) );
+        assertDecodes( samples, 300, series.decoder( samples[300][0] ) );
+        assertDecodes( samples, 301, series.decoder( samples[300][0] + 1 ) );
+        assertDecodes( samples, samples.length, series.decoder( Long.MAX_VALUE ) );
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException
+    {
+        long[][] samples = samples( 300 );
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        encode( samples ).writeTo( new DataOutputStream( bytes ) );
+        CompressedSeries read = CompressedSeries.readFrom( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+        assertDecodes( samples, 0, read.decoder() );
+
+        // Appending continues where the written series ended
+        long[][] more = samples( 301 );
+        more[300][0] = samples[299][0] + 1000;
+        read.append( more[300][0], new long[]
+        {
+            more[300][1], more[300][2], more[300][3]
+        } );
+        CompressedSeries.Decoder decoder = read.decoder( more[300][0] );
+        assertTrue( decoder.next() );
+        assertEquals( more[300][1], decoder.get( 0 ) );
+    }
+
+    @Test
+    public void testAppendAfterReadingSmallSeries() throws IOException
+    {
+        long[][] samples = samples( 20 );
+        for ( int written = 0; written <= 2; written++ )
+        {
+            long[][] head = new long[ written ][];
+            System.arraycopy( samples, 0, head, 0, written );
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            encode( head ).writeTo( new DataOutputStream( bytes ) );
+            // The series read back is exactly as large as its samples
+            CompressedSeries read = CompressedSeries.readFrom( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+            for ( int i = written; i < samples.length; i++ )
+            {
+                read.append( samples[i][0], new long[]
+                {
+                    samples[i][1], samples[i][2], samples[i][3]
+                } );
+            }
+            assertEquals( samples.length, read.size() );
+            assertDecodes( samples, 0, read.decoder() );
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.camelspotting.jotl.history;
+
+import static com.camelspotting.jotl.GameFixtures.*;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.Game;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GameHistoryTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEvictsByCount()
+    {
+        GameHistory history = new GameHistory( 3, Long.MAX_VALUE, null );
+        Game[] games = new Game[ 5 ];
+        for ( int i = 0; i < games.length; i++ )
+        {
+            games[i] = game( i );
+            history.add( games[i] );
+        }
+        assertEquals( 3, history.size() );
+        assertSame( games[4], history.get( 0 ) );
+        assertSame( games[2], history.get( 2 ) );
+        assertEquals( 3, history.getGames().size() );
+    }
+
+    @Test
+    public void testEvictsBySize()
+    {
+        Game small = game( 1 );
+        Game big = game( 2, company( 0, 1, 1, 1 ), company( 1, 1, 1, 1 ), company( 2, 1, 1, 1 ) );
+        GameHistory history = new GameHistory( 10, GameHistory.estimateSize( big ) + GameHistory.estimateSize( small ), null );
+        history.add( small );
+        history.add( small );
+        history.add( big );
+        assertEquals( 2, history.size() );
+        assertSame( big, history.get( 0 ) );
+        assertTrue( history.getApproximateBytes() <= GameHistory.estimateSize( big ) + GameHistory.estimateSize( small ) );
+
+        // The newest game is kept even when it is too big on its own
+        GameHistory tiny = new GameHistory( 10, 1, null );
+        tiny.add( big );
+        assertSame( big, tiny.get( 0 ) );
+    }
+
+    @Test
+    public void testSpillsToArchive() throws IOException
+    {
+        GameArchive archive = new GameArchive( new File( folder.getRoot(), "games.bin" ) );
+        GameHistory history = new GameHistory( 1, Long.MAX_VALUE, archive );
+        Game first = game( 1, company( 0, 1000, -50, 42 ), company( 3, 7, 8, 9 ) );
+        history.add( first );
+        history.add( game( 2 ) );
+        archive.close();
+
+        List<Game> archived = archive.readAll();
+        assertEquals( 1, archived.size() );
+        Game read = archived.get( 0 );
+        assertEquals( first.getServerDetails().getGameDate(), read.getServerDetails().getGameDate() );
+        assertEquals( first.getServerDetails().getServerName(), read.getServerDetails().getServerName() );
+        assertEquals( first.getClientDetails().getCompanies(), read.getClientDetails().getCompanies() );
+        for ( Company company : read.getClientDetails().getCompanies() )
+        {
+            if ( company.getCurrentId() == 0 )
+            {
+                assertEquals( -50, company.getBalance() );
+                assertEquals( company( 0, 1000, -50, 42 ).getNumberOfVehicles(), company.getNumberOfVehicles() );
+            }
+        }
+    }
+
+    @Test
+    public void testArchiveRecoversFromTruncatedGame() throws IOException
+    {
+        File file = new File( folder.getRoot(), "games.bin" );
+        GameArchive archive = new GameArchive( file );
+        archive.append( game( 1, company( 0, 1000, -50, 42 ) ) );
+        archive.append( game( 2, company( 1, 2000, 50, 43 ) ) );
+        archive.close();
+        // A crash in the middle of writing the second game
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        long first;
+        try
+        {
+            first = 4 + raf.readInt();
+            raf.setLength( first + 10 );
+        }
+        finally
+        {
+            raf.close();
+        }
+        assertEquals( 1, archive.readAll().size() );
+
+        GameArchive reopened = new GameArchive( file );
+        reopened.append( game( 3, company( 2, 3000, 0, 44 ) ) );
+        reopened.close();
+        List<Game> archived = reopened.readAll();
+        assertEquals( 2, archived.size() );
+        assertEquals( game( 1 ).getServerDetails().getGameDate(), archived.get( 0 ).getServerDetails().getGameDate() );
+        assertEquals( game( 3 ).getServerDetails().getGameDate(), archived.get( 1 ).getServerDetails().getGameDate() );
+        assertEquals( 2, archived.get( 1 ).getClientDetails().getCompanies().get( 0 ).getCurrentId() );
+    }
+
+    @Test
+    public void testArchiveIgnoresCorruptLength() throws IOException
+    {
+        File file = new File( folder.getRoot(), "games.bin" );
+        GameArchive archive = new GameArchive( file );
+        archive.append( game( 1 ) );
+        archive.close();
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try
+        {
+            raf.seek( raf.length() );
+            raf.writeInt( Integer.MAX_VALUE );
+            raf.writeInt( 0 );
+        }
+        finally
+        {
+            raf.close();
+        }
+        assertEquals( 1, archive.readAll().size() );
+        archive.append( game( 2 ) );
+        archive.close();
+        assertEquals( 2, archive.readAll().size() );
+    }
+}
@@ -0,0 +1,76 @@
+package com.camelspotting.jotl.history;
+
+import static com.camelspotting.jotl.GameFixtures.*;
+import com.camelspotting.jotl.domain.CompanyMetric;
+import com.camelspotting.jotl.domain.Server;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class LeaderboardIndexTest
+{
+
+    private static final long HOUR = Resolution.HOUR.getMillis();
+    private final Server first = new Server( "127.0.0.1", 3979, null );
+    private final Server second = new Server( "127.0.0.2", 3979, null );
+
+    @Test
+    public void testTopAcrossServersAndBuckets()
+    {
+        LeaderboardIndex index = new LeaderboardIndex( Resolution.HOUR, 100, 2 );
+        // Company #0 on the first server peaks in the second hour
+        index.add( first, game( 1, company( 0, 100, 0, 1 ), company( 1, 50, 0, 1 ), company( 2, 10, 0, 1 ) ), 0 );
+        index.add( first, game( 2, company( 0, 300, 0, 1 ), company( 1, 60, 0, 1 ), company( 2, 20, 0, 1 ) ), HOUR );
+        index.add( second, game( 1, company( 0, 200, 0, 1 ), company( 1, 250, 0, 1 ) ), HOUR + 1 );
+        index.add( first, game( 3, company( 0, 5, 0, 1 ), company( 1, 5, 0, 1 ), company( 2, 400, 0, 1 ) ), 2 * HOUR );
+
+        List<Standing> top = index.getTop( CompanyMetric.VALUE, 2, 0, Long.MAX_VALUE );
+        assertEquals( 2, top.size() );
+        assertEquals( 400, top.get( 0 ).getValue() );
+        assertEquals( 300, top.get( 1 ).getValue() );
+        assertSame( first, top.get( 1 ).getServer() );
+        assertEquals( HOUR, top.get( 1 ).getTimestamp() );
+
+        // Only the first two hours
+        top = index.getTop( CompanyMetric.VALUE, 2, 0, HOUR );
+        assertEquals( 300, top.get( 0 ).getValue() );
+        assertEquals( 250, top.get( 1 ).getValue() );
+
+        top = index.getTop( second, CompanyMetric.VALUE, 2, 0, Long.MAX_VALUE );
+        assertEquals( 250, top.get( 0 ).getValue() );
+        assertEquals( 1, top.get( 0 ).getCompany().getCurrentId() );
+    }
+
+    @Test
+    public void testLongestLeader()
+    {
+        LeaderboardIndex index = new LeaderboardIndex();
+        int[] leaders =
+        {
+            0, 1, 1, 1, 0, 0
+        };
+        for ( int h = 0; h < leaders.length; h++ )
+        {
+            index.add( first, game( h, company( leaders[h], 100, 0, 1 ), company( 1 - leaders[h], 10, 0, 1 ) ), h * HOUR );
+        }
+        LeaderboardIndex.Reign reign = index.getLongestLeader( first, CompanyMetric.VALUE, 0, Long.MAX_VALUE );
+        assertEquals( 3, reign.getBuckets() );
+        assertEquals( 1, reign.getLeader().getCompany().getCurrentId() );
+        assertEquals( HOUR, reign.getStart() );
+        assertEquals( 4 * HOUR, reign.getEnd() );
+        assertNull( index.getLongestLeader( second, CompanyMetric.VALUE, 0, Long.MAX_VALUE ) );
+    }
+
+    @Test
+    public void testRetention()
+    {
+        LeaderboardIndex index = new LeaderboardIndex( Resolution.HOUR, 3, 4 );
+        for ( int h = 0; h < 10; h++ )
+        {
+            index.add( first, game( h, company( 0, h, 0, 1 ) ), h * HOUR );
+        }
+        assertEquals( 3, index.getBucketCount() );
+        index.add( first, game( 0, company( 0, 1000, 0, 1 ) ), 0 );
+        assertEquals( 9, index.getTop( CompanyMetric.VALUE, 1, 0, Long.MAX_VALUE ).get( 0 ).getValue() );
+    }
+}
@@ -0,0 +1,138 @@
+package com.camelspotting.jotl.history;
+
+import static com.camelspotting.jotl.GameFixtures.*;
+import com.camelspotting.jotl.MonitorState;
+import com.camelspotting.jotl.domain.CompanyMetric;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MetricStoreTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private Server server;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = new Server( "127.0.0.1", 3979, null );
+        directory = folder.newFolder( "metrics" );
+    }
+
+    /**
+     * Appends 1000 polls of two companies to segments of 100 records each.
+     */
+    private long fill( MetricStore store ) throws IOException
+    {
+        Game game = null;
+        for ( int i = 0; i < 1000; i++ )
+        {
+            game = game( i, company( 0, i, -i, 10 ), company( 1, 2 * i, i, 20 ) );
+            store.append( server, game, 1000L * i );
+        }
+        return MetricStore.fingerprint( game.getServerDetails(), 0 );
+    }
+
+    @Test
+    public void testScanRangeAcrossSegments() throws IOException
+    {
+        MetricStore store = new MetricStore( directory, 16 + 100 * MetricSegment.RECORD_SIZE );
+        long fp = fill( store );
+
+        MetricCursor cursor = store.scan( server, fp, 250500, 700000 );
+        int records = 0;
+        long expected = 251;
+        while ( cursor.next() )
+        {
+            assertEquals( 1000 * expected, cursor.getTimestamp() );
+            if ( cursor.getCompanyId() == 1 )
+            {
+                assertEquals( 2 * expected, cursor.get( CompanyMetric.VALUE ) );
+                assertEquals( 20, cursor.get( CompanyMetric.RATING ) );
+                assertEquals( START.plusDays( (int) expected ), cursor.getGameDate() );
+            }
+            else
+            {
+                // Company #0 has the lower rating and comes last
+                expected++;
+            }
+            records++;
+        }
+        assertEquals( 2 * 450, records );
+        assertFalse( cursor.next() );
+        assertEquals( 20, new File( new File( directory, "127.0.0.1_3979" ), String.format( "%016x", fp ) ).list().length );
+    }
+
+    @Test
+    public void testReopen() throws IOException
+    {
+        long fp = fill( new MetricStore( directory, 16 + 100 * MetricSegment.RECORD_SIZE ) );
+        MetricStore reopened = new MetricStore( directory );
+        assertEquals( 1, reopened.getFingerprints( server ).size() );
+        assertEquals( fp, reopened.getFingerprints( server ).get( 0 ).longValue() );
+
+        MetricCursor cursor = reopened.scan( server, fp, 999000, Long.MAX_VALUE );
+        assertTrue( cursor.next() );
+        assertEquals( 999, cursor.get( CompanyMetric.BALANCE ) );
+        assertTrue( cursor.next() );
+        assertEquals( -999, cursor.get( CompanyMetric.BALANCE ) );
+        assertFalse( cursor.next() );
+        assertFalse( reopened.scan( server, fp + 1, 0, Long.MAX_VALUE ).next() );
+    }
+
+    @Test
+    public void testGamesWithSameSettingsAreKeptApart() throws IOException
+    {
+        MetricStore store = new MetricStore( directory );
+        // Two games of the same random map, one after the other
+        store.eventsOccured( new MonitorState( server, game( 0, company( 0, 100, 0, 10 ) ), null, false, 1000, 0 ), Collections.<OpenTTDEvent>emptyList() );
+        store.eventsOccured( new MonitorState( server, game( 1, company( 0, 200, 0, 10 ) ), null, false, 2000, 0 ), Collections.<OpenTTDEvent>emptyList() );
+        store.append( server, game( 2, company( 0, 300, 0, 10 ) ), 3000 );
+
+        List<Long> fingerprints = store.getFingerprints( server );
+        assertEquals( 2, fingerprints.size() );
+        assertTrue( fingerprints.contains( MetricStore.fingerprint( game( 0 ).getServerDetails(), 1000 ) ) );
+        MetricCursor first = store.scan( server, MetricStore.fingerprint( game( 0 ).getServerDetails(), 1000 ), 0, Long.MAX_VALUE );
+        assertTrue( first.next() );
+        assertEquals( 100, first.get( CompanyMetric.VALUE ) );
+        assertFalse( first.next() );
+        MetricCursor second = store.scan( server, MetricStore.fingerprint( game( 0 ).getServerDetails(), 2000 ), 0, Long.MAX_VALUE );
+        assertTrue( second.next() );
+        assertEquals( 200, second.get( CompanyMetric.VALUE ) );
+        assertTrue( second.next() );
+        assertEquals( 300, second.get( CompanyMetric.VALUE ) );
+        assertFalse( second.next() );
+    }
+
+    @Test
+    public void testClose() throws IOException
+    {
+        MetricStore store = new MetricStore( directory );
+        long fp = fill( store );
+        MetricCursor cursor = store.scan( server, fp, 0, Long.MAX_VALUE );
+        store.close();
+        assertTrue( cursor.next() );
+        try
+        {
+            store.append( server, game( 0 ), 0 );
+            fail( "Appended to a closed store." );
+        }
+        catch ( IllegalStateException ex )
+        {
+            // Expected
+        }
+        assertTrue( new MetricStore( directory ).scan( server, fp, 999000, Long.MAX_VALUE ).next() );
+    }
+}
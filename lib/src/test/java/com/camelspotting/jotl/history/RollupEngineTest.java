@@ -0,0 +1,92 @@
+package com.camelspotting.jotl.history;
+
+import static com.camelspotting.jotl.GameFixtures.*;
+import com.camelspotting.jotl.domain.CompanyMetric;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.domain.ServerMetric;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class RollupEngineTest
+{
+
+    private static final long MINUTE = Resolution.MINUTE.getMillis();
+    private final Server server = new Server( "127.0.0.1", 3979, null );
+
+    @Test
+    public void testAggregatesPerBucket()
+    {
+        RollupEngine engine = new RollupEngine();
+        // Twelve polls a minute for ten minutes, one more client every poll
+        for ( int i = 0; i < 120; i++ )
+        {
+            engine.add( server, game( START, i, company( 0, 1000 + i, 0, 10 ) ), i * 5000L );
+        }
+        List<Rollup> minutes = engine.getServerRollups( server, ServerMetric.CLIENTS, Resolution.MINUTE, 0, Long.MAX_VALUE );
+        assertEquals( 10, minutes.size() );
+        Rollup second = minutes.get( 1 );
+        assertEquals( MINUTE, second.getStart() );
+        assertEquals( 12, second.getCount() );
+        assertEquals( 12, second.getMin() );
+        assertEquals( 23, second.getMax() );
+        assertEquals( 17.5, second.getAverage(), 0.001 );
+        assertEquals( 23, second.getLast() );
+
+        List<Rollup> hour = engine.getCompanyRollups( server, company( 0, 0, 0, 0 ), CompanyMetric.VALUE, Resolution.HOUR, 0, 0 );
+        assertEquals( 1, hour.size() );
+        assertEquals( 1000, hour.get( 0 ).getMin() );
+        assertEquals( 1119, hour.get( 0 ).getLast() );
+
+        // Only the buckets overlapping the range are returned
+        assertEquals( 3, engine.getServerRollups( server, ServerMetric.CLIENTS, Resolution.MINUTE, 2 * MINUTE + 1, 4 * MINUTE ).size() );
+    }
+
+    @Test
+    public void testRetention()
+    {
+        RollupEngine engine = new RollupEngine( 5, 5, 5 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            engine.add( server, game( START, i ), i * MINUTE );
+        }
+        List<Rollup> minutes = engine.getServerRollups( server, ServerMetric.CLIENTS, Resolution.MINUTE, 0, Long.MAX_VALUE );
+        assertEquals( 5, minutes.size() );
+        assertEquals( 95, minutes.get( 0 ).getLast() );
+        assertEquals( 99, minutes.get( 4 ).getLast() );
+        assertTrue( engine.getServerRollups( new Server( "127.0.0.2", 3979, null ), ServerMetric.CLIENTS, Resolution.DAY, 0, Long.MAX_VALUE ).isEmpty() );
+    }
+
+    @Test
+    public void testDropsBucketsOfCompaniesNoLongerSeen()
+    {
+        RollupEngine engine = new RollupEngine( 5, 5, 5 );
+        long day = Resolution.DAY.getMillis();
+        engine.add( server, game( START, 1, company( 0, 1000, 0, 10 ) ), 0 );
+        engine.add( server, game( START, 1 ), 2 * day );
+        assertTrue( engine.getCompanyRollups( server, company( 0, 0, 0, 0 ), CompanyMetric.VALUE, Resolution.MINUTE, 0, Long.MAX_VALUE ).isEmpty() );
+        assertTrue( engine.getCompanyRollups( server, company( 0, 0, 0, 0 ), CompanyMetric.VALUE, Resolution.HOUR, 0, Long.MAX_VALUE ).isEmpty() );
+        assertEquals( 1, engine.getCompanyRollups( server, company( 0, 0, 0, 0 ), CompanyMetric.VALUE, Resolution.DAY, 0, Long.MAX_VALUE ).size() );
+
+        // Seen again, the company gets its minutes back
+        engine.add( server, game( START, 1, company( 0, 2000, 0, 10 ) ), 3 * day );
+        assertEquals( 1, engine.getCompanyRollups( server, company( 0, 0, 0, 0 ), CompanyMetric.VALUE, Resolution.MINUTE, 0, Long.MAX_VALUE ).size() );
+
+        engine.add( server, game( START, 1 ), 9 * day );
+        assertTrue( engine.getCompanyRollups( server, company( 0, 0, 0, 0 ), CompanyMetric.VALUE, Resolution.DAY, 0, Long.MAX_VALUE ).isEmpty() );
+    }
+
+    @Test
+    public void testNewGameStartsCompaniesOver()
+    {
+        RollupEngine engine = new RollupEngine();
+        engine.add( server, game( START, 1, company( 0, 1000, 0, 10 ) ), 0 );
+        engine.newGame( server );
+        // The same id and inauguration year as the company of the last game
+        engine.add( server, game( START, 1, company( 0, 5, 0, 10 ) ), MINUTE );
+        List<Rollup> days = engine.getCompanyRollups( server, company( 0, 0, 0, 0 ), CompanyMetric.VALUE, Resolution.DAY, 0, Long.MAX_VALUE );
+        assertEquals( 1, days.size() );
+        assertEquals( 1, days.get( 0 ).getCount() );
+        assertEquals( 5, days.get( 0 ).getMax() );
+    }
+}
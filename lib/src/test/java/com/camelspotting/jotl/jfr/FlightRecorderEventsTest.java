@@ -0,0 +1,77 @@
+package com.camelspotting.jotl.jfr;
+
+import static com.camelspotting.jotl.GameFixtures.*;
+import com.camelspotting.jotl.ServerMonitor;
+import com.camelspotting.jotl.StubGameQuerier;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import com.camelspotting.jotl.event.OpenTTDListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.EventType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class FlightRecorderEventsTest
+{
+
+    @Test
+    public void testDisabledByDefault()
+    {
+        assertFalse( EventType.getEventType( MonitorUpdateEvent.class ).isEnabled() );
+        assertFalse( EventType.getEventType( DispatchEvent.class ).isEnabled() );
+        assertFalse( EventType.getEventType( QuerySentEvent.class ).isEnabled() );
+    }
+
+    @Test
+    public void testRecordsUpdateAndDispatch() throws Exception
+    {
+        ServerMonitor monitor = new ServerMonitor( new StubGameQuerier( game( 10 ) ), 0, false, new OpenTTDListener()
+        {
+            @Override
+            public void eventOccured( OpenTTDEvent evt )
+            {
+            }
+        } );
+        File file = File.createTempFile( "jotl", ".jfr" );
+        List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+        try
+        {
+            Recording recording = new Recording();
+            recording.enable( MonitorUpdateEvent.class );
+            recording.enable( DispatchEvent.class );
+            recording.start();
+            monitor.update();
+            recording.stop();
+            recording.dump( file.toPath() );
+            recording.close();
+            events.addAll( RecordingFile.readAllEvents( file.toPath() ) );
+        }
+        finally
+        {
+            file.delete();
+        }
+        RecordedEvent update = find( events, "com.camelspotting.jotl.MonitorUpdate" );
+        assertTrue( update.getBoolean( "succeeded" ) );
+        assertEquals( "127.0.0.1:3979", update.getString( "server" ) );
+        RecordedEvent dispatch = find( events, "com.camelspotting.jotl.Dispatch" );
+        assertEquals( "GAME_START", dispatch.getString( "event" ) );
+        assertTrue( dispatch.getString( "listener" ).startsWith( FlightRecorderEventsTest.class.getName() ) );
+    }
+
+    private static RecordedEvent find( List<RecordedEvent> events, String name )
+    {
+        for ( RecordedEvent event : events )
+        {
+            if ( event.getEventType().getName().equals( name ) )
+            {
+                return event;
+            }
+        }
+        fail( "No " + name + " in " + events );
+        return null;
+    }
+}
@@ -0,0 +1,113 @@
+package com.camelspotting.jotl.replay;
+
+import static com.camelspotting.jotl.GameFixtures.*;
+import com.camelspotting.jotl.MonitorState;
+import com.camelspotting.jotl.ServerMonitor;
+import com.camelspotting.jotl.StubGameQuerier;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import com.camelspotting.jotl.event.OpenTTDEventType;
+import com.camelspotting.jotl.event.OpenTTDListener;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ReplayGameQuerierTest
+{
+
+    private final Server server = new Server( "127.0.0.1", 3979, null );
+
+    @Test
+    public void testReplaysMonthsAtFullSpeed() throws JOTLException
+    {
+        // A game day every two seconds, paused for a while every 1000 days
+        List<Game> games = new ArrayList<Game>();
+        long[] timestamps = new long[ 20000 ];
+        int day = 0;
+        for ( int i = 0; i < timestamps.length; i++ )
+        {
+            if ( i % 1000 >= 10 )
+            {
+                day++;
+            }
+            int leader = ( day / 500 ) % 2;
+            games.add( game( day, company( leader, 0, 0, 20 ), company( 1 - leader, 0, 0, 10 ) ) );
+            timestamps[i] = 1000000L + i * 2000L;
+        }
+        final Map<OpenTTDEventType, Integer> counts = new EnumMap<OpenTTDEventType, Integer>( OpenTTDEventType.class );
+        ReplayGameQuerier replay = new ReplayGameQuerier( server, games, timestamps );
+        ServerMonitor monitor = new ServerMonitor( replay, 0, false, new OpenTTDListener()
+        {
+            @Override
+            public void eventOccured( OpenTTDEvent evt )
+            {
+                Integer count = counts.get( evt.getType() );
+                counts.put( evt.getType(), count == null ? 1 : count + 1 );
+            }
+        } );
+
+        assertEquals( 20000, replay.replayInto( monitor ) );
+        assertFalse( replay.hasNext() );
+        assertEquals( Integer.valueOf( 1 ), counts.get( OpenTTDEventType.GAME_START ) );
+        assertEquals( Integer.valueOf( 20 ), counts.get( OpenTTDEventType.PAUSED ) );
+        assertEquals( Integer.valueOf( 20 ), counts.get( OpenTTDEventType.UNPAUSED ) );
+        assertTrue( counts.get( OpenTTDEventType.NEW_LEADER ) >= 39 );
+
+        MonitorState state = monitor.getState();
+        assertEquals( timestamps[timestamps.length - 1], state.getLastSuccess() );
+        assertEquals( state.getLastSuccess(), replay.getClock().millis() );
+    }
+
+    @Test
+    public void testPeekAndEnd() throws JOTLException
+    {
+        Game first = game( 1 );
+        List<Game> games = new ArrayList<Game>();
+        games.add( first );
+        ReplayGameQuerier replay = new ReplayGameQuerier( server, games, new long[]
+        {
+            42
+        } );
+        assertSame( first.getServerDetails(), replay.getServerDetails() );
+        assertSame( first, replay.getAllInformation() );
+        assertEquals( 42, replay.getClock().millis() );
+        try
+        {
+            replay.getAllInformation();
+            fail( "Expected the replay to be finished" );
+        }
+        catch ( JOTLException ex )
+        {
+            // Expected
+        }
+        replay.rewind();
+        assertTrue( replay.hasNext() );
+    }
+
+    @Test
+    public void testRejectsMonitorOfOtherQuerier() throws JOTLException
+    {
+        List<Game> games = new ArrayList<Game>();
+        games.add( game( 1 ) );
+        ReplayGameQuerier replay = new ReplayGameQuerier( server, games, new long[]
+        {
+            42
+        } );
+        ServerMonitor monitor = new ServerMonitor( new StubGameQuerier( game( 1 ) ), 0, false );
+        try
+        {
+            replay.replayInto( monitor );
+            fail( "Replayed into a monitor of another querier." );
+        }
+        catch ( IllegalArgumentException ex )
+        {
+            // Expected, instead of updating the monitor forever
+        }
+        assertTrue( replay.hasNext() );
+    }
+}
@@ -0,0 +1,90 @@
+package com.camelspotting.jotl.udp;
+
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class DefaultQuerierMetricsTest
+{
+
+    @Test
+    public void testHistogramBuckets()
+    {
+        for ( int i = 0; i < LatencyHistogram.getBucketCount(); i++ )
+        {
+            assertEquals( i, LatencyHistogram.indexOf( LatencyHistogram.getLowerBound( i ) ) );
+            assertEquals( i, LatencyHistogram.indexOf( LatencyHistogram.getUpperBound( i ) ) );
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        for ( int i = 1; i <= 1000; i++ )
+        {
+            histogram.record( i * 1000L );
+        }
+        assertEquals( 1000, histogram.getCount() );
+        assertEquals( 1000000, histogram.getMax() );
+        long median = histogram.getValueAtPercentile( 50 );
+        assertTrue( String.valueOf( median ), median >= 500000 && median <= 500000 * 1.125 );
+        assertEquals( 1000000, histogram.getValueAtPercentile( 100 ) );
+    }
+
+    @Test
+    public void testQuerierReportsOutcomes() throws Exception
+    {
+        final DatagramSocket fake = new DatagramSocket( 0, InetAddress.getByName( "127.0.0.1" ) );
+        Thread responder = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    DatagramPacket query = new DatagramPacket( new byte[ 64 ], 64 );
+                    fake.receive( query );
+                    // A reply of the wrong type
+                    byte[] reply =
+                    {
+                        4, 0, 3, 0
+                    };
+                    fake.send( new DatagramPacket( reply, reply.length, query.getSocketAddress() ) );
+                }
+                catch ( Exception ex )
+                {
+                    // The test fails on the missing reply
+                }
+            }
+        };
+        responder.start();
+        DefaultQuerierMetrics metrics = new DefaultQuerierMetrics();
+        UDPGameQuerier querier = new UDPGameQuerier( "127.0.0.1", 0, fake.getLocalPort() );
+        querier.setMetrics( metrics );
+        try
+        {
+            querier.getServerDetails();
+            fail( "Expected a parse error" );
+        }
+        catch ( JOTLException ex )
+        {
+            // Expected
+        }
+        finally
+        {
+            responder.join( 5000 );
+            fake.close();
+        }
+
+        Server server = querier.getServer();
+        DefaultQuerierMetrics.ServerQueryMetrics m = metrics.get( server );
+        assertEquals( 1, m.getSent() );
+        assertEquals( 1, m.getCount( QueryOutcome.PARSE_ERROR ) );
+        assertEquals( 0, m.getCount( QueryOutcome.SUCCESS ) );
+        assertEquals( 4, m.getBytesReceived() );
+        assertEquals( 1, m.getRtt( PacketType.CLIENT_FIND_SERVER ).getCount() );
+        assertNull( m.getRtt( PacketType.CLIENT_DETAIL_INFO ) );
+        assertEquals( 1, querier.getStats().getParseErrors() );
+        assertEquals( 1, querier.getStats().getPacketsReceived() );
+    }
+}
@@ -22,4 +22,17 @@ public class PacketMetadataTest
         assertEquals( PacketType.SERVER_RESPONSE, pm.getType() );
         assertEquals( 4, pm.getVersion() );
     }
+
+    @Test
+    public void testParseLongPacket()
+    {
+        byte[] input = new byte[ 300 ];
+        input[0] = 44;
+        input[1] = 1;
+        input[2] = 3;
+        input[3] = 6;
+        PacketMetadata pm = PacketMetadata.parseMetadata( input );
+        assertEquals( 300, pm.getLength() );
+        assertEquals( PacketType.SERVER_DETAIL_INFO, pm.getType() );
+    }
 }
@@ -0,0 +1,130 @@
+package com.camelspotting.jotl.prometheus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A growable byte buffer for rendering the text exposition format. It is
+ * reused between scrapes, and numbers are written digit by digit, so a scrape
+ * does not create garbage once the buffer has grown to fit.
+ */
+final class ExpositionBuffer
+{
+
+    private byte[] bytes;
+    private int size;
+    /**
+     * Scratch space for the digits of one number
+     */
+    private final byte[] digits = new byte[ 20 ];
+
+    ExpositionBuffer( int capacity )
+    {
+        this.bytes = new byte[ capacity ];
+    }
+
+    /**
+     * Encodes a string once, for appending it many times.
+     *
+     * @param s the string
+     * @return the UTF-8 bytes
+     */
+    static byte[] encode( String s )
+    {
+        return s.getBytes( StandardCharsets.UTF_8 );
+    }
+
+    void reset()
+    {
+        size = 0;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    ExpositionBuffer append( byte[] b )
+    {
+        ensure( b.length );
+        System.arraycopy( b, 0, bytes, size, b.length );
+        size += b.length;
+        return this;
+    }
+
+    ExpositionBuffer append( char c )
+    {
+        ensure( 1 );
+        bytes[size++] = (byte) c;
+        return this;
+    }
+
+    ExpositionBuffer append( long value )
+    {
+        if ( value == Long.MIN_VALUE )
+        {
+            return append( encode( Long.toString( value ) ) );
+        }
+        if ( value < 0 )
+        {
+            append( '-' );
+            value = -value;
+        }
+        int n = 0;
+        do
+        {
+            digits[n++] = (byte) ( '0' + value % 10 );
+            value /= 10;
+        }
+        while ( value != 0 );
+        ensure( n );
+        while ( n > 0 )
+        {
+            bytes[size++] = digits[--n];
+        }
+        return this;
+    }
+
+    /**
+     * Appends a duration as seconds with nine decimals.
+     *
+     * @param nanos the duration in nanoseconds, not negative
+     * @return this buffer
+     */
+    ExpositionBuffer appendSeconds( long nanos )
+    {
+        append( nanos / 1000000000L );
+        append( '.' );
+        long fraction = nanos % 1000000000L;
+        ensure( 9 );
+        for ( int i = 8; i >= 0; i-- )
+        {
+            bytes[size + i] = (byte) ( '0' + fraction % 10 );
+            fraction /= 10;
+        }
+        size += 9;
+        return this;
+    }
+
+    void writeTo( OutputStream out ) throws IOException
+    {
+        out.write( bytes, 0, size );
+    }
+
+    @Override
+    public String toString()
+    {
+        return new String( bytes, 0, size, StandardCharsets.UTF_8 );
+    }
+
+    private void ensure( int extra )
+    {
+        if ( size + extra > bytes.length )
+        {
+            byte[] grown = new byte[ Math.max( bytes.length * 2, size + extra ) ];
+            System.arraycopy( bytes, 0, grown, 0, size );
+            bytes = grown;
+        }
+    }
+}
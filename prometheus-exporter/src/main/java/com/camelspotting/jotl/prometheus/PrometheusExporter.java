@@ -0,0 +1,402 @@
+package com.camelspotting.jotl.prometheus;
+
+import com.camelspotting.jotl.GameQuerier;
+import com.camelspotting.jotl.MonitorState;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.event.BatchOpenTTDListener;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import com.camelspotting.jotl.udp.DateUtil;
+import com.camelspotting.jotl.udp.QueryStats;
+import com.camelspotting.jotl.udp.UDPGameQuerier;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the state of the monitored servers, and the counters of their
+ * queriers, in the Prometheus text exposition format. The exporter is a batch
+ * listener keeping the latest state of every server it hears from:
+ *
+ * <pre>
+ * PrometheusExporter exporter = new PrometheusExporter();
+ * exporter.register( querier );
+ * monitor.addBatchListener( exporter );
+ * exporter.start( new InetSocketAddress( 9479 ) );
+ * </pre>
+ *
+ * Scrapes are rendered one at a time into a buffer that is kept between
+ * scrapes, and the labels of each server are encoded once, so a scrape of
+ * thousands of servers mostly copies bytes.
+ */
+public class PrometheusExporter implements BatchOpenTTDListener
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( PrometheusExporter.class );
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final byte[] RTT_HEADER = ExpositionBuffer.encode( "# HELP openttd_query_rtt_seconds Round trip time of the queries.\n# TYPE openttd_query_rtt_seconds histogram\n" );
+    private static final byte[] RTT_BUCKET = ExpositionBuffer.encode( "openttd_query_rtt_seconds_bucket" );
+    private static final byte[] RTT_SUM = ExpositionBuffer.encode( "openttd_query_rtt_seconds_sum" );
+    private static final byte[] RTT_COUNT = ExpositionBuffer.encode( "openttd_query_rtt_seconds_count" );
+    /**
+     * The le label of each round trip time bucket
+     */
+    private static final byte[][] RTT_LE = new byte[ QueryStats.getRttBucketCount() ][];
+
+    static
+    {
+        for ( int i = 0; i < RTT_LE.length; i++ )
+        {
+            long bound = QueryStats.getRttBound( i );
+            String le = bound == Long.MAX_VALUE ? "+Inf" : Double.toString( bound / 1000.0 );
+            RTT_LE[i] = ExpositionBuffer.encode( ",le=\"" + le + "\"} " );
+        }
+    }
+    private final Map<Server, Target> targets = new ConcurrentHashMap<Server, Target>();
+    /**
+     * The buffer a scrape is rendered into. Guarded by itself.
+     */
+    private final ExpositionBuffer buffer = new ExpositionBuffer( 64 * 1024 );
+    /**
+     * The targets of the scrape being rendered. Guarded by the buffer.
+     */
+    private final List<Target> snapshot = new ArrayList<Target>();
+    private HttpServer httpServer;
+
+    /**
+     * Adds the counters of a querier to the scrapes. Only
+     * {@link UDPGameQuerier}s keep counters, other queriers are only shown
+     * with the state of their server.
+     *
+     * @param querier the querier
+     */
+    public void register( GameQuerier querier )
+    {
+        QueryStats stats = querier instanceof UDPGameQuerier ? ( (UDPGameQuerier) querier ).getStats() : null;
+        target( querier.getServer() ).stats = stats;
+    }
+
+    /**
+     * Removes a server from the scrapes.
+     *
+     * @param server the server
+     */
+    public void unregister( Server server )
+    {
+        targets.remove( server );
+    }
+
+    @Override
+    public void eventsOccured( MonitorState state, List<OpenTTDEvent> evts )
+    {
+        target( state.getServer() ).state = state;
+    }
+
+    private Target target( Server server )
+    {
+        Target target = targets.get( server );
+        if ( target == null )
+        {
+            Target created = new Target( server );
+            target = targets.putIfAbsent( server, created );
+            if ( target == null )
+            {
+                target = created;
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Starts serving the scrapes over HTTP on the path /metrics.
+     *
+     * @param address the address to listen on
+     * @throws IOException if the server could not be started
+     */
+    public synchronized void start( InetSocketAddress address ) throws IOException
+    {
+        if ( httpServer != null )
+        {
+            throw new IllegalStateException( "Exporter is already started." );
+        }
+        httpServer = HttpServer.create( address, 0 );
+        httpServer.createContext( "/metrics", new HttpHandler()
+        {
+            @Override
+            public void handle( HttpExchange exchange ) throws IOException
+            {
+                serve( exchange );
+            }
+        } );
+        httpServer.start();
+        LOG.info( "Serving metrics on {}.", httpServer.getAddress() );
+    }
+
+    /**
+     * Stops serving the scrapes.
+     */
+    public synchronized void stop()
+    {
+        if ( httpServer != null )
+        {
+            httpServer.stop( 0 );
+            httpServer = null;
+        }
+    }
+
+    /**
+     * Getter for the address the exporter listens on.
+     *
+     * @return the address, or null if not started
+     */
+    public synchronized InetSocketAddress getAddress()
+    {
+        return httpServer != null ? httpServer.getAddress() : null;
+    }
+
+    private void serve( HttpExchange exchange ) throws IOException
+    {
+        try
+        {
+            String method = exchange.getRequestMethod();
+            if ( !"GET".equals( method ) && !"HEAD".equals( method ) )
+            {
+                exchange.sendResponseHeaders( 405, -1 );
+                return;
+            }
+            exchange.getResponseHeaders().set( "Content-Type", CONTENT_TYPE );
+            synchronized ( buffer )
+            {
+                render();
+                if ( "HEAD".equals( method ) )
+                {
+                    exchange.sendResponseHeaders( 200, -1 );
+                    return;
+                }
+                exchange.sendResponseHeaders( 200, buffer.size() );
+                buffer.writeTo( exchange.getResponseBody() );
+            }
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Renders a scrape.
+     *
+     * @param out the stream to write it to
+     * @throws IOException if writing fails
+     */
+    public void writeTo( OutputStream out ) throws IOException
+    {
+        synchronized ( buffer )
+        {
+            render();
+            buffer.writeTo( out );
+        }
+    }
+
+    /**
+     * Renders a scrape into the buffer. Must hold the buffer's lock.
+     */
+    private void render()
+    {
+        buffer.reset();
+        snapshot.clear();
+        for ( Target target : targets.values() )
+        {
+            snapshot.add( target );
+        }
+        for ( Gauge gauge : Gauge.values() )
+        {
+            buffer.append( gauge.header );
+            for ( Target target : snapshot )
+            {
+                MonitorState state = target.state;
+                if ( state != null && state.getGame() != null )
+                {
+                    buffer.append( gauge.name ).append( target.label ).append( gauge.valueOf( state ) ).append( '\n' );
+                }
+            }
+        }
+        for ( Counter counter : Counter.values() )
+        {
+            buffer.append( counter.header );
+            for ( Target target : snapshot )
+            {
+                QueryStats stats = target.stats;
+                if ( stats != null )
+                {
+                    buffer.append( counter.name ).append( target.label ).append( counter.valueOf( stats ) ).append( '\n' );
+                }
+            }
+        }
+        buffer.append( RTT_HEADER );
+        for ( Target target : snapshot )
+        {
+            QueryStats stats = target.stats;
+            if ( stats != null )
+            {
+                long cumulative = 0;
+                for ( int i = 0; i < RTT_LE.length; i++ )
+                {
+                    cumulative += stats.getRttCount( i );
+                    buffer.append( RTT_BUCKET ).append( target.labelPrefix ).append( RTT_LE[i] ).append( cumulative ).append( '\n' );
+                }
+                buffer.append( RTT_SUM ).append( target.label ).appendSeconds( stats.getRttSumNanos() ).append( '\n' );
+                buffer.append( RTT_COUNT ).append( target.label ).append( cumulative ).append( '\n' );
+            }
+        }
+        snapshot.clear();
+    }
+
+    /**
+     * What is known about one server
+     */
+    private static final class Target
+    {
+
+        /**
+         * The label set followed by a space
+         */
+        private final byte[] label;
+        /**
+         * The label set without the closing brace, for adding more labels
+         */
+        private final byte[] labelPrefix;
+        private volatile MonitorState state;
+        private volatile QueryStats stats;
+
+        Target( Server server )
+        {
+            String prefix = "{server=\"" + escape( server.getIpAddress() ) + ":" + server.getPort() + "\"";
+            this.labelPrefix = ExpositionBuffer.encode( prefix );
+            this.label = ExpositionBuffer.encode( prefix + "} " );
+        }
+
+        private static String escape( String value )
+        {
+            return String.valueOf( value ).replace( "\\", "\\\\" ).replace( "\"", "\\\"" ).replace( "\n", "\\n" );
+        }
+    }
+
+    /**
+     * The gauges taken from the state of a server
+     */
+    private enum Gauge
+    {
+
+        CLIENTS( "openttd_clients", "Active clients." )
+        {
+            @Override
+            long valueOf( MonitorState state )
+            {
+                return state.getGame().getServerDetails().getNumberOfActiveClients();
+            }
+        },
+        COMPANIES( "openttd_companies", "Active companies." )
+        {
+            @Override
+            long valueOf( MonitorState state )
+            {
+                return state.getGame().getServerDetails().getNumberOfActiveCompanies();
+            }
+        },
+        GAME_DATE( "openttd_game_date", "The game date as days since year 0, like OpenTTD counts them." )
+        {
+            @Override
+            long valueOf( MonitorState state )
+            {
+                ServerDetails details = state.getGame().getServerDetails();
+                return DateUtil.convertYMDToDate( details.getGameDate() );
+            }
+        },
+        PAUSED( "openttd_paused", "Whether the game is paused." )
+        {
+            @Override
+            long valueOf( MonitorState state )
+            {
+                return state.isPaused() ? 1 : 0;
+            }
+        };
+        private final byte[] name;
+        private final byte[] header;
+
+        private Gauge( String name, String help )
+        {
+            this.name = ExpositionBuffer.encode( name );
+            this.header = ExpositionBuffer.encode( String.format( "# HELP %s %s\n# TYPE %s gauge\n", name, help, name ) );
+        }
+
+        abstract long valueOf( MonitorState state );
+    }
+
+    /**
+     * The counters taken from the querier of a server
+     */
+    private enum Counter
+    {
+
+        PACKETS_SENT( "openttd_query_packets_sent_total", "Query packets sent." )
+        {
+            @Override
+            long valueOf( QueryStats stats )
+            {
+                return stats.getPacketsSent();
+            }
+        },
+        PACKETS_RECEIVED( "openttd_query_packets_received_total", "Reply packets received." )
+        {
+            @Override
+            long valueOf( QueryStats stats )
+            {
+                return stats.getPacketsReceived();
+            }
+        },
+        BYTES_RECEIVED( "openttd_query_received_bytes_total", "Bytes received in replies." )
+        {
+            @Override
+            long valueOf( QueryStats stats )
+            {
+                return stats.getBytesReceived();
+            }
+        },
+        TIMEOUTS( "openttd_query_timeouts_total", "Queries without a reply in time." )
+        {
+            @Override
+            long valueOf( QueryStats stats )
+            {
+                return stats.getTimeouts();
+            }
+        },
+        PARSE_ERRORS( "openttd_query_parse_errors_total", "Replies that could not be parsed." )
+        {
+            @Override
+            long valueOf( QueryStats stats )
+            {
+                return stats.getParseErrors();
+            }
+        };
+        private final byte[] name;
+        private final byte[] header;
+
+        private Counter( String name, String help )
+        {
+            this.name = ExpositionBuffer.encode( name );
+            this.header = ExpositionBuffer.encode( String.format( "# HELP %s %s\n# TYPE %s counter\n", name, help, name ) );
+        }
+
+        abstract long valueOf( QueryStats stats );
+    }
+}
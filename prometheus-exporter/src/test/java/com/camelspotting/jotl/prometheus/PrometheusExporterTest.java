@@ -0,0 +1,109 @@
+package com.camelspotting.jotl.prometheus;
+
+import com.camelspotting.jotl.MonitorState;
+import com.camelspotting.jotl.domain.ClientsDetailsV5;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.event.OpenTTDEvent;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import com.camelspotting.jotl.udp.UDPGameQuerier;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import org.joda.time.LocalDate;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PrometheusExporterTest
+{
+
+    private static MonitorState state( Server server, int clients, boolean paused )
+    {
+        ServerDetails details = new ServerDetails( null, "Test server", new LocalDate( 1950, 1, 2 ), new LocalDate( 1950, 1, 1 ), 15, 2, 10, 0, 25, clients, "1.2.3", 1, false, true, 0, 256, 512, "Random map" );
+        Game game = new Game( details, new ClientsDetailsV5( new ArrayList<Company>() ) );
+        return MonitorState.initial( server ).withUpdate( game, null, paused, 1 );
+    }
+
+    @Test
+    public void testRendersGaugesAndCounters() throws IOException, JOTLException
+    {
+        PrometheusExporter exporter = new PrometheusExporter();
+        UDPGameQuerier querier = new UDPGameQuerier( "127.0.0.1", 0, 3979 );
+        exporter.register( querier );
+        exporter.eventsOccured( state( querier.getServer(), 3, true ), Collections.<OpenTTDEvent>emptyList() );
+
+        String text = scrape( exporter );
+        assertTrue( text, text.contains( "# TYPE openttd_clients gauge\nopenttd_clients{server=\"127.0.0.1:3979\"} 3\n" ) );
+        assertTrue( text, text.contains( "openttd_companies{server=\"127.0.0.1:3979\"} 2\n" ) );
+        assertTrue( text, text.contains( "openttd_game_date{server=\"127.0.0.1:3979\"} 712224\n" ) );
+        assertTrue( text, text.contains( "openttd_paused{server=\"127.0.0.1:3979\"} 1\n" ) );
+        assertTrue( text, text.contains( "openttd_query_timeouts_total{server=\"127.0.0.1:3979\"} 0\n" ) );
+        assertTrue( text, text.contains( "openttd_query_rtt_seconds_bucket{server=\"127.0.0.1:3979\",le=\"0.001\"} 0\n" ) );
+        assertTrue( text, text.contains( "openttd_query_rtt_seconds_bucket{server=\"127.0.0.1:3979\",le=\"+Inf\"} 0\n" ) );
+        assertTrue( text, text.contains( "openttd_query_rtt_seconds_sum{server=\"127.0.0.1:3979\"} 0.000000000\n" ) );
+
+        exporter.unregister( querier.getServer() );
+        assertFalse( scrape( exporter ).contains( "127.0.0.1" ) );
+    }
+
+    @Test
+    public void testServesManyServersOverHttp() throws IOException
+    {
+        PrometheusExporter exporter = new PrometheusExporter();
+        for ( int i = 0; i < 5000; i++ )
+        {
+            Server server = new Server( "10.0." + ( i / 256 ) + "." + ( i % 256 ), 3979, null );
+            exporter.eventsOccured( state( server, i, false ), Collections.<OpenTTDEvent>emptyList() );
+        }
+        exporter.start( new InetSocketAddress( "127.0.0.1", 0 ) );
+        try
+        {
+            URL url = new URL( "http://127.0.0.1:" + exporter.getAddress().getPort() + "/metrics" );
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals( 200, connection.getResponseCode() );
+            assertTrue( connection.getContentType().startsWith( "text/plain" ) );
+            String text = read( connection.getInputStream() );
+            assertTrue( text.contains( "openttd_clients{server=\"10.0.19.135:3979\"} 4999\n" ) );
+            assertEquals( text, scrape( exporter ) );
+        }
+        finally
+        {
+            exporter.stop();
+        }
+        assertNull( exporter.getAddress() );
+    }
+
+    private static String scrape( PrometheusExporter exporter ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.writeTo( out );
+        return new String( out.toByteArray(), StandardCharsets.UTF_8 );
+    }
+
+    private static String read( InputStream in ) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[ 8192 ];
+            int n;
+            while ( ( n = in.read( chunk ) ) != -1 )
+            {
+                out.write( chunk, 0, n );
+            }
+            return new String( out.toByteArray(), StandardCharsets.UTF_8 );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.camelspotting.jotl.simulator;
+
+import com.camelspotting.jotl.NewGRF;
+import com.camelspotting.jotl.domain.ClientsDetails;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.parsing.Station;
+import com.camelspotting.jotl.parsing.Vehicle;
+import com.camelspotting.jotl.udp.DateUtil;
+import com.camelspotting.jotl.udp.PacketType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.joda.time.LocalDate;
+
+/**
+ * Writes the replies of an OpenTTD server, in the versions read by
+ * {@link com.camelspotting.jotl.udp.UDPPacketParser}.
+ */
+public final class PacketWriter
+{
+
+    /**
+     * The largest packet OpenTTD sends
+     */
+    public static final int MTU = 1460;
+    /**
+     * The version of the server response written
+     */
+    private static final int SERVER_RESPONSE_VERSION = 4;
+    /**
+     * The version of the detail info written
+     */
+    private static final int DETAIL_INFO_VERSION = 6;
+
+    private PacketWriter()
+    {
+    }
+
+    /**
+     * Writes the reply to {@link PacketType#CLIENT_FIND_SERVER}.
+     *
+     * @param details the details of the server
+     * @param gameDate the current date of the game, replacing the one in the
+     * details
+     * @return the packet
+     */
+    public static byte[] serverResponse( ServerDetails details, LocalDate gameDate )
+    {
+        ByteBuffer out = header( PacketType.SERVER_RESPONSE, SERVER_RESPONSE_VERSION );
+        List<NewGRF> grfs = details.getNewGRFs();
+        if ( grfs == null )
+        {
+            out.put( (byte) 0 );
+        }
+        else
+        {
+            out.put( (byte) grfs.size() );
+            for ( NewGRF grf : grfs )
+            {
+                out.putInt( (int) Long.parseLong( grf.getId(), 16 ) );
+                out.put( md5( grf.getMD5Checksum() ) );
+            }
+        }
+        out.putInt( DateUtil.convertYMDToDate( gameDate ) );
+        out.putInt( DateUtil.convertYMDToDate( details.getStartDate() ) );
+        out.put( (byte) details.getMaxNumberOfCompanies() );
+        out.put( (byte) details.getNumberOfActiveCompanies() );
+        out.put( (byte) details.getMaxNumberOfSpectators() );
+        string( out, details.getServerName() );
+        string( out, details.getVersion() );
+        out.put( (byte) details.getServerLanguage() );
+        out.put( (byte) ( details.isPasswordProtected() ? 1 : 0 ) );
+        out.put( (byte) details.getMaxNumberOfClients() );
+        out.put( (byte) details.getNumberOfActiveClients() );
+        out.put( (byte) details.getNumberOfActiveSpectators() );
+        string( out, details.getMapName() );
+        out.putShort( (short) details.getMapWidth() );
+        out.putShort( (short) details.getMapHeight() );
+        out.put( (byte) details.getTileset() );
+        out.put( (byte) ( details.isDedicated() ? 1 : 0 ) );
+        return finish( out );
+    }
+
+    /**
+     * Writes the reply to {@link PacketType#CLIENT_DETAIL_INFO}.
+     *
+     * @param clients the companies in the game
+     * @return the packet
+     */
+    public static byte[] detailInfo( ClientsDetails clients )
+    {
+        ByteBuffer out = header( PacketType.SERVER_DETAIL_INFO, DETAIL_INFO_VERSION );
+        List<Company> companies = clients.getCompanies();
+        out.put( (byte) companies.size() );
+        for ( Company c : companies )
+        {
+            out.put( (byte) c.getCurrentId() );
+            string( out, c.getCompanyName() );
+            out.putInt( c.getInaugerationYear() );
+            out.putLong( c.getCompanyValue() );
+            out.putLong( c.getBalance() );
+            out.putLong( c.getIncome() );
+            out.putShort( (short) c.getRating() );
+            out.put( (byte) ( c.isPasswordProtected() ? 1 : 0 ) );
+            for ( Vehicle v : Vehicle.values() )
+            {
+                out.putShort( (short) c.getVehicleCount( v ) );
+            }
+            for ( Station s : Station.values() )
+            {
+                out.putShort( (short) c.getStationCount( s ) );
+            }
+        }
+        return finish( out );
+    }
+
+    private static ByteBuffer header( PacketType type, int version )
+    {
+        ByteBuffer out = ByteBuffer.allocate( MTU ).order( ByteOrder.LITTLE_ENDIAN );
+        // The length is filled in when finished
+        out.putShort( (short) 0 );
+        out.put( (byte) type.getValue() );
+        out.put( (byte) version );
+        return out;
+    }
+
+    private static byte[] finish( ByteBuffer out )
+    {
+        out.putShort( 0, (short) out.position() );
+        return Arrays.copyOf( out.array(), out.position() );
+    }
+
+    private static void string( ByteBuffer out, String s )
+    {
+        if ( s != null )
+        {
+            out.put( s.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        out.put( (byte) 0 );
+    }
+
+    /**
+     * Turns a checksum back into bytes. Checksums that are not 32 hexadecimal
+     * digits, e.g. those parsed from a reply, cannot be turned back and are
+     * written as zeros.
+     */
+    private static byte[] md5( String checksum )
+    {
+        byte[] md5 = new byte[ 16 ];
+        if ( checksum != null && checksum.length() == 32 )
+        {
+            for ( int k = 0; k < 16; k++ )
+            {
+                md5[k] = (byte) Integer.parseInt( checksum.substring( k * 2, k * 2 + 2 ), 16 );
+            }
+        }
+        return md5;
+    }
+}
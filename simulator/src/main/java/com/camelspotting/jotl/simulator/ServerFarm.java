@@ -0,0 +1,364 @@
+package com.camelspotting.jotl.simulator;
+
+import com.camelspotting.jotl.domain.ClientsDetails;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.udp.PacketType;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A farm of simulated OpenTTD servers on loopback, for measuring queriers
+ * against many servers without a network. Every server has its own port, but
+ * all of them are served by one thread with one selector, so thousands of
+ * servers cost no more than a thread.
+ * <p>
+ * The servers answer {@link PacketType#CLIENT_FIND_SERVER} and
+ * {@link PacketType#CLIENT_DETAIL_INFO} and ignore anything else. Delays and
+ * losses are drawn from one random generator with a given seed, so a run
+ * sending the same queries in the same order is repeated exactly.
+ * <pre>
+ * ServerFarm farm = new ServerFarm( 42 );
+ * SimulatedServer s = farm.add( details, clients );
+ * s.setLatency( 20, 5 );
+ * s.setLoss( 0.01 );
+ * farm.start();
+ * GameQuerier q = new UDPGameQuerier( "127.0.0.1", 0, s.getServer().getPort() );
+ * </pre>
+ */
+public class ServerFarm implements Closeable
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( ServerFarm.class );
+    private final Selector selector;
+    private final Random random;
+    private final List<SimulatedServer> servers = new CopyOnWriteArrayList<SimulatedServer>();
+    /**
+     * Servers added but not yet registered with the selector by the event
+     * loop
+     */
+    private final Queue<SimulatedServer> pending = new ConcurrentLinkedQueue<SimulatedServer>();
+    /**
+     * Delayed replies by when they are due, only used by the event loop
+     */
+    private final PriorityQueue<Reply> delayed = new PriorityQueue<Reply>();
+    /**
+     * Counts the replies delayed so far, keeping replies due at the same time
+     * in order
+     */
+    private long sequence;
+    private Thread loop;
+    private volatile boolean running;
+
+    /**
+     * Creates a farm drawing delays and losses with the seed 0.
+     *
+     * @throws IOException if no selector could be opened
+     */
+    public ServerFarm() throws IOException
+    {
+        this( 0 );
+    }
+
+    /**
+     * Creates a farm.
+     *
+     * @param seed the seed for the delays and losses
+     * @throws IOException if no selector could be opened
+     */
+    public ServerFarm( long seed ) throws IOException
+    {
+        this.selector = Selector.open();
+        this.random = new Random( seed );
+    }
+
+    /**
+     * Adds a server answering on a free port on loopback. Servers may be added
+     * while the farm is running.
+     *
+     * @param details the details answered, whose game date is the date when
+     * the server starts
+     * @param clients the companies answered
+     * @return the server
+     * @throws IOException if no port could be bound
+     */
+    public SimulatedServer add( ServerDetails details, ClientsDetails clients ) throws IOException
+    {
+        DatagramChannel channel = DatagramChannel.open();
+        try
+        {
+            channel.configureBlocking( false );
+            channel.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+        }
+        catch ( IOException ex )
+        {
+            channel.close();
+            throw ex;
+        }
+        SimulatedServer server = new SimulatedServer( channel, (InetSocketAddress) channel.getLocalAddress(), details, clients );
+        servers.add( server );
+        pending.add( server );
+        selector.wakeup();
+        return server;
+    }
+
+    /**
+     * Getter for all servers in the farm.
+     *
+     * @return the servers in the order they were added
+     */
+    public List<SimulatedServer> getServers()
+    {
+        return Collections.unmodifiableList( servers );
+    }
+
+    /**
+     * Starts answering queries.
+     */
+    public synchronized void start()
+    {
+        if ( loop != null )
+        {
+            throw new IllegalStateException( "The farm has already been started." );
+        }
+        running = true;
+        loop = new Thread( "jotl-server-farm" )
+        {
+            @Override
+            public void run()
+            {
+                serve();
+            }
+        };
+        loop.setDaemon( true );
+        loop.start();
+        LOG.info( "Started a farm of {} servers.", servers.size() );
+    }
+
+    /**
+     * Stops answering and closes all servers.
+     *
+     * @throws IOException if the channels could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        running = false;
+        selector.wakeup();
+        if ( loop != null )
+        {
+            try
+            {
+                loop.join();
+            }
+            catch ( InterruptedException ex )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for ( SimulatedServer server : servers )
+        {
+            server.getChannel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * The event loop: registers new servers, answers every query that has
+     * arrived and sends the replies that are due.
+     */
+    private void serve()
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect( PacketWriter.MTU );
+        while ( running )
+        {
+            try
+            {
+                SimulatedServer added;
+                while ( ( added = pending.poll() ) != null )
+                {
+                    added.getChannel().register( selector, SelectionKey.OP_READ, added );
+                }
+                Reply next = delayed.peek();
+                if ( next == null )
+                {
+                    selector.select();
+                }
+                else
+                {
+                    // Rounded up, so as not to spin until the reply is due
+                    long wait = TimeUnit.NANOSECONDS.toMillis( next.due - System.nanoTime() + 999999 );
+                    if ( wait > 0 )
+                    {
+                        selector.select( wait );
+                    }
+                    else
+                    {
+                        selector.selectNow();
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while ( keys.hasNext() )
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    receive( (SimulatedServer) key.attachment(), buffer );
+                }
+                sendDue();
+            }
+            catch ( IOException ex )
+            {
+                if ( running )
+                {
+                    LOG.error( "The server farm failed.", ex );
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answers all queries waiting on a server's channel.
+     */
+    private void receive( SimulatedServer server, ByteBuffer buffer ) throws IOException
+    {
+        DatagramChannel channel = server.getChannel();
+        SocketAddress client;
+        while ( true )
+        {
+            buffer.clear();
+            client = channel.receive( buffer );
+            if ( client == null )
+            {
+                return;
+            }
+            server.getQueryCounter().incrementAndGet();
+            // The type follows the 16 bit length
+            if ( buffer.position() < 3 )
+            {
+                continue;
+            }
+            byte[] reply;
+            int type = buffer.get( 2 );
+            if ( type == PacketType.CLIENT_FIND_SERVER.getValue() )
+            {
+                reply = server.getServerResponse();
+            }
+            else if ( type == PacketType.CLIENT_DETAIL_INFO.getValue() )
+            {
+                reply = server.getDetailInfo();
+            }
+            else
+            {
+                LOG.debug( "{} ignored a packet of type {}.", server, type );
+                continue;
+            }
+            double loss = server.getLoss();
+            if ( loss > 0 && random.nextDouble() < loss )
+            {
+                server.getDropCounter().incrementAndGet();
+                continue;
+            }
+            long delay = server.getLatency();
+            int jitter = server.getJitter();
+            if ( jitter > 0 )
+            {
+                delay += random.nextInt( 2 * jitter + 1 ) - jitter;
+            }
+            if ( delay <= 0 )
+            {
+                send( server, client, reply );
+            }
+            else
+            {
+                delayed.add( new Reply( System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( delay ), sequence++, server, client, reply ) );
+            }
+        }
+    }
+
+    private void sendDue()
+    {
+        long now = System.nanoTime();
+        Reply next;
+        while ( ( next = delayed.peek() ) != null && next.due - now <= 0 )
+        {
+            delayed.poll();
+            send( next.server, next.client, next.packet );
+        }
+    }
+
+    /**
+     * Sends a reply. A reply that cannot be sent is lost like any other, and
+     * does not stop the farm.
+     */
+    private void send( SimulatedServer server, SocketAddress client, byte[] packet )
+    {
+        // Counted before sending, so a querier holding the reply sees it counted
+        server.getReplyCounter().incrementAndGet();
+        try
+        {
+            if ( server.getChannel().send( ByteBuffer.wrap( packet ), client ) > 0 )
+            {
+                return;
+            }
+        }
+        catch ( IOException ex )
+        {
+            LOG.debug( "{} could not reply to {}.", server, client, ex );
+        }
+        server.getReplyCounter().decrementAndGet();
+    }
+
+    /**
+     * A reply waiting to be sent
+     */
+    private static final class Reply implements Comparable<Reply>
+    {
+
+        /**
+         * When to send it, from {@link System#nanoTime()}
+         */
+        private final long due;
+        private final long sequence;
+        private final SimulatedServer server;
+        private final SocketAddress client;
+        private final byte[] packet;
+
+        Reply( long due, long sequence, SimulatedServer server, SocketAddress client, byte[] packet )
+        {
+            this.due = due;
+            this.sequence = sequence;
+            this.server = server;
+            this.client = client;
+            this.packet = packet;
+        }
+
+        @Override
+        public int compareTo( Reply o )
+        {
+            long d = due - o.due;
+            if ( d != 0 )
+            {
+                return d < 0 ? -1 : 1;
+            }
+            return sequence < o.sequence ? -1 : ( sequence == o.sequence ? 0 : 1 );
+        }
+    }
+}
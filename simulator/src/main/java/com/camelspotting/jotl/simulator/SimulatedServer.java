@@ -0,0 +1,315 @@
+package com.camelspotting.jotl.simulator;
+
+import com.camelspotting.jotl.domain.ClientsDetails;
+import com.camelspotting.jotl.domain.Server;
+import com.camelspotting.jotl.domain.ServerDetails;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.joda.time.LocalDate;
+
+/**
+ * One simulated OpenTTD server in a {@link ServerFarm}. It answers with the
+ * configured details, while its game date moves on with the wall clock. How
+ * it answers can be changed at any time.
+ */
+public final class SimulatedServer
+{
+
+    /**
+     * How long a day lasts in OpenTTD at normal speed, 74 ticks of 30 ms
+     */
+    public static final long DAY_LENGTH = 2220;
+    /**
+     * The channel this server answers on
+     */
+    private final DatagramChannel channel;
+    /**
+     * The address queriers should contact
+     */
+    private final Server server;
+    private volatile ServerDetails details;
+    private volatile ClientsDetails clients;
+    /**
+     * How fast the game date currently moves on
+     */
+    private volatile Pace pace = new Pace( System.nanoTime(), 0, DAY_LENGTH );
+    /**
+     * The least time before answering, in milliseconds
+     */
+    private volatile int latency;
+    /**
+     * How much the time before answering varies either way, in milliseconds
+     */
+    private volatile int jitter;
+    /**
+     * The share of queries not answered, from 0 to 1
+     */
+    private volatile double loss;
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong replies = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * The latest server response, and the details and day it was written for,
+     * only used by the event loop
+     */
+    private byte[] serverResponse;
+    private ServerDetails serverResponseDetails;
+    private int serverResponseDay;
+    /**
+     * The latest detail info and the companies it was written for, only used
+     * by the event loop
+     */
+    private byte[] detailInfo;
+    private ClientsDetails detailInfoClients;
+
+    SimulatedServer( DatagramChannel channel, InetSocketAddress address, ServerDetails details, ClientsDetails clients )
+    {
+        this.channel = channel;
+        this.server = new Server( details.getServerName(), address.getAddress().getHostAddress(), address.getPort(), address.getAddress() );
+        this.details = details;
+        this.clients = clients;
+    }
+
+    DatagramChannel getChannel()
+    {
+        return channel;
+    }
+
+    /**
+     * Getter for where this server answers.
+     *
+     * @return the server to query
+     */
+    public Server getServer()
+    {
+        return server;
+    }
+
+    public ServerDetails getDetails()
+    {
+        return details;
+    }
+
+    /**
+     * Changes the details answered. The game date of the details becomes the
+     * date when the server was started.
+     *
+     * @param details the new details
+     */
+    public void setDetails( ServerDetails details )
+    {
+        this.details = details;
+    }
+
+    public ClientsDetails getClients()
+    {
+        return clients;
+    }
+
+    /**
+     * Changes the companies answered, e.g. to make a company go bankrupt.
+     *
+     * @param clients the new companies
+     */
+    public void setClients( ClientsDetails clients )
+    {
+        this.clients = clients;
+    }
+
+    /**
+     * Sets how fast the game date moves on from now. The date reached so far
+     * is kept, so the date never jumps. The default is the normal speed of
+     * OpenTTD, {@link #DAY_LENGTH}.
+     *
+     * @param ms how many milliseconds a day lasts, or 0 to stop the date
+     */
+    public synchronized void setDayLength( long ms )
+    {
+        if ( ms < 0 )
+        {
+            throw new IllegalArgumentException( String.format( "Illegal day length: %d ms", ms ) );
+        }
+        long now = System.nanoTime();
+        this.pace = new Pace( now, pace.getDaysPassed( now ), ms );
+    }
+
+    /**
+     * Sets how long the server takes to answer. Each answer is delayed by the
+     * latency plus or minus a uniformly random jitter.
+     *
+     * @param latency the least delay in milliseconds
+     * @param jitter how much the delay varies either way, in milliseconds
+     */
+    public void setLatency( int latency, int jitter )
+    {
+        if ( latency < 0 || jitter < 0 )
+        {
+            throw new IllegalArgumentException( String.format( "Illegal latency: %d ms +/- %d ms", latency, jitter ) );
+        }
+        this.latency = latency;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Sets the share of queries the server does not answer.
+     *
+     * @param loss from 0 for none to 1 for all
+     */
+    public void setLoss( double loss )
+    {
+        if ( loss < 0 || loss > 1 )
+        {
+            throw new IllegalArgumentException( String.format( "Illegal loss: %f", loss ) );
+        }
+        this.loss = loss;
+    }
+
+    int getLatency()
+    {
+        return latency;
+    }
+
+    int getJitter()
+    {
+        return jitter;
+    }
+
+    double getLoss()
+    {
+        return loss;
+    }
+
+    /**
+     * Getter for the current game date, the date of the details plus the
+     * days passed since the server was started.
+     *
+     * @return the game date
+     */
+    public LocalDate getGameDate()
+    {
+        return details.getGameDate().plusDays( getDaysPassed() );
+    }
+
+    private int getDaysPassed()
+    {
+        return pace.getDaysPassed( System.nanoTime() );
+    }
+
+    /**
+     * Returns the reply to a find server query, rewritten when the day
+     * changes. Only called by the event loop.
+     */
+    byte[] getServerResponse()
+    {
+        ServerDetails current = details;
+        int day = getDaysPassed();
+        if ( current != serverResponseDetails || day != serverResponseDay )
+        {
+            serverResponse = PacketWriter.serverResponse( current, current.getGameDate().plusDays( day ) );
+            serverResponseDetails = current;
+            serverResponseDay = day;
+        }
+        return serverResponse;
+    }
+
+    /**
+     * Returns the reply to a detail info query. Only called by the event
+     * loop.
+     */
+    byte[] getDetailInfo()
+    {
+        ClientsDetails current = clients;
+        if ( current != detailInfoClients )
+        {
+            detailInfo = PacketWriter.detailInfo( current );
+            detailInfoClients = current;
+        }
+        return detailInfo;
+    }
+
+    AtomicLong getQueryCounter()
+    {
+        return queries;
+    }
+
+    AtomicLong getReplyCounter()
+    {
+        return replies;
+    }
+
+    AtomicLong getDropCounter()
+    {
+        return dropped;
+    }
+
+    /**
+     * Getter for the number of queries received.
+     *
+     * @return the count
+     */
+    public long getQueries()
+    {
+        return queries.get();
+    }
+
+    /**
+     * Getter for the number of replies sent.
+     *
+     * @return the count
+     */
+    public long getReplies()
+    {
+        return replies.get();
+    }
+
+    /**
+     * Getter for the number of queries left unanswered on purpose.
+     *
+     * @return the count
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "SimulatedServer: %s @ %d", details.getServerName(), server.getPort() );
+    }
+
+    /**
+     * The days passed at a point in time and the day length from then on
+     */
+    private static final class Pace
+    {
+
+        /**
+         * From {@link System#nanoTime()}
+         */
+        private final long since;
+        private final int days;
+        /**
+         * In milliseconds, or 0 if the date stands still
+         */
+        private final long dayLength;
+
+        Pace( long since, int days, long dayLength )
+        {
+            this.since = since;
+            this.days = days;
+            this.dayLength = dayLength;
+        }
+
+        int getDaysPassed( long now )
+        {
+            if ( dayLength == 0 )
+            {
+                return days;
+            }
+            return days + (int) ( TimeUnit.NANOSECONDS.toMillis( now - since ) / dayLength );
+        }
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * The simulator package contains a farm of simulated OpenTTD servers answering
+ * queries on loopback, for measuring queriers against many servers without a
+ * network.
+ */
+package com.camelspotting.jotl.simulator;
@@ -0,0 +1,186 @@
+package com.camelspotting.jotl.simulator;
+
+import com.camelspotting.jotl.NewGRF;
+import com.camelspotting.jotl.domain.ClientsDetails;
+import com.camelspotting.jotl.domain.ClientsDetailsV5;
+import com.camelspotting.jotl.domain.Company;
+import com.camelspotting.jotl.domain.Game;
+import com.camelspotting.jotl.domain.ServerDetails;
+import com.camelspotting.jotl.exceptions.JOTLException;
+import com.camelspotting.jotl.exceptions.UnreachableHostException;
+import com.camelspotting.jotl.parsing.Station;
+import com.camelspotting.jotl.parsing.Vehicle;
+import com.camelspotting.jotl.udp.UDPGameQuerier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ServerFarmTest
+{
+
+    private static final LocalDate START = new LocalDate( 1950, 1, 1 );
+    private ServerFarm farm;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        farm = new ServerFarm( 1 );
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        farm.close();
+    }
+
+    private static ServerDetails details( String name )
+    {
+        List<NewGRF> grfs = new ArrayList<NewGRF>();
+        grfs.add( new NewGRF( "4A4F0001", "00112233445566778899AABBCCDDEEFF" ) );
+        return new ServerDetails( grfs, name, START.plusYears( 10 ), START, 15, 2, 10, 0, 25, 3, "1.2.3", 1, false, true, 0, 256, 512, "Random map" );
+    }
+
+    private static ClientsDetails clients( int count )
+    {
+        List<Company> companies = new ArrayList<Company>();
+        for ( int id = 0; id < count; id++ )
+        {
+            EnumMap<Vehicle, Integer> vehicles = new EnumMap<Vehicle, Integer>( Vehicle.class );
+            for ( Vehicle v : Vehicle.values() )
+            {
+                vehicles.put( v, id + v.getId() );
+            }
+            EnumMap<Station, Integer> stations = new EnumMap<Station, Integer>( Station.class );
+            for ( Station s : Station.values() )
+            {
+                stations.put( s, id * 2 );
+            }
+            companies.add( new Company( id, "Company " + id, 1950 + id, 100000L * ( id + 1 ), -5000L * id, 1000L, 100 + id, id % 2 == 1, vehicles, stations ) );
+        }
+        return new ClientsDetailsV5( companies );
+    }
+
+    private static UDPGameQuerier querier( SimulatedServer server ) throws JOTLException
+    {
+        UDPGameQuerier querier = new UDPGameQuerier( "127.0.0.1", 0, server.getServer().getPort() );
+        querier.setTimeout( 1000 );
+        return querier;
+    }
+
+    @Test
+    public void testAnswersQueries() throws Exception
+    {
+        List<SimulatedServer> servers = new ArrayList<SimulatedServer>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            servers.add( farm.add( details( "Server " + i ), clients( i % 4 ) ) );
+        }
+        farm.start();
+        // Added while running
+        servers.add( farm.add( details( "Late server" ), clients( 15 ) ) );
+
+        for ( int i = 0; i < servers.size(); i++ )
+        {
+            SimulatedServer server = servers.get( i );
+            Game game = querier( server ).getAllInformation();
+            assertEquals( server.getDetails().getServerName(), game.getServerDetails().getServerName() );
+            assertEquals( "Random map", game.getServerDetails().getMapName() );
+            assertEquals( 512, game.getServerDetails().getMapWidth() );
+            assertEquals( "4A4F0001", game.getServerDetails().getNewGRFs().get( 0 ).getId() );
+            assertEquals( START, game.getServerDetails().getStartDate() );
+
+            List<Company> expected = server.getClients().getCompanies();
+            List<Company> companies = game.getClientDetails().getCompanies();
+            assertEquals( expected.size(), companies.size() );
+            for ( int c = 0; c < companies.size(); c++ )
+            {
+                Company e = expected.get( c );
+                Company a = companies.get( c );
+                assertEquals( e.getCompanyName(), a.getCompanyName() );
+                assertEquals( e.getCompanyValue(), a.getCompanyValue() );
+                assertEquals( e.getBalance(), a.getBalance() );
+                assertEquals( e.getRating(), a.getRating() );
+                assertEquals( e.isPasswordProtected(), a.isPasswordProtected() );
+                assertEquals( e.getNumberOfVehicles(), a.getNumberOfVehicles() );
+                assertEquals( e.getNumberOfStations(), a.getNumberOfStations() );
+            }
+            assertEquals( 2, server.getQueries() );
+            assertEquals( 2, server.getReplies() );
+        }
+    }
+
+    @Test
+    public void testGameDateMovesOn() throws Exception
+    {
+        SimulatedServer server = farm.add( details( "Fast" ), clients( 1 ) );
+        server.setDayLength( 20 );
+        farm.start();
+        UDPGameQuerier querier = querier( server );
+        LocalDate first = querier.getServerDetails().getGameDate();
+        Thread.sleep( 100 );
+        LocalDate second = querier.getServerDetails().getGameDate();
+        assertTrue( second + " is not after " + first, second.isAfter( first ) );
+
+        server.setClients( clients( 3 ) );
+        assertEquals( 3, querier.getClientsDetails().getCompanies().size() );
+    }
+
+    @Test
+    public void testFrozenDateHolds() throws Exception
+    {
+        SimulatedServer server = farm.add( details( "Frozen" ), clients( 1 ) );
+        server.setDayLength( 10 );
+        farm.start();
+        UDPGameQuerier querier = querier( server );
+        Thread.sleep( 100 );
+        server.setDayLength( 0 );
+        LocalDate frozen = querier.getServerDetails().getGameDate();
+        assertTrue( frozen.isAfter( server.getDetails().getGameDate() ) );
+        Thread.sleep( 100 );
+        assertEquals( frozen, querier.getServerDetails().getGameDate() );
+        assertEquals( frozen, server.getGameDate() );
+
+        // Going on slowly again carries on from the frozen date
+        server.setDayLength( SimulatedServer.DAY_LENGTH );
+        assertEquals( frozen, querier.getServerDetails().getGameDate() );
+    }
+
+    @Test
+    public void testLatencyAndLoss() throws Exception
+    {
+        SimulatedServer slow = farm.add( details( "Slow" ), clients( 1 ) );
+        slow.setLatency( 150, 20 );
+        SimulatedServer lossy = farm.add( details( "Lossy" ), clients( 1 ) );
+        lossy.setLoss( 1 );
+        farm.start();
+
+        long before = System.nanoTime();
+        querier( slow ).getServerDetails();
+        assertTrue( System.nanoTime() - before >= 130000000L );
+
+        UDPGameQuerier querier = querier( lossy );
+        querier.setTimeout( 200 );
+        try
+        {
+            querier.getServerDetails();
+            fail( "Expected a timeout" );
+        }
+        catch ( UnreachableHostException ex )
+        {
+            assertEquals( 1, lossy.getDropped() );
+            assertEquals( 0, lossy.getReplies() );
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testIllegalLoss() throws Exception
+    {
+        farm.add( details( "Server" ), new ClientsDetailsV5( Collections.<Company>emptyList() ) ).setLoss( 2 );
+    }
+}